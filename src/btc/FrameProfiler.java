@@ -0,0 +1,561 @@
+package btc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import lib.Histogram;
+import lib.jog.graphics;
+import lib.jog.window;
+
+/**
+ * Profiles the phases of each frame.
+ * <p>
+ * Each phase is timed with {@link System#nanoTime()}: take the time
+ * before the phase begins, and pass it to {@link #record(Phase, long)}
+ * once the phase ends. Recording neither allocates nor locks, so
+ * phases may be timed every frame.
+ * </p>
+ * <p>
+ * The times are kept in rolling windows of {@link #WINDOW_SECONDS}
+ * seconds, and the percentiles reported are those of the last complete
+ * window, so that a regression shows up within a few seconds rather
+ * than being averaged away over the whole game. Alongside the phases,
+ * the bytes the game thread allocates each frame (where the JVM can
+ * measure it) and the length of each garbage collection (where the JVM
+ * reports it) are recorded.
+ * </p>
+ * <p>
+ * The profile can be drawn in game using {@link #getSummary()}, and
+ * written out with {@link #writeCsv(File)}.
+ * </p>
+ * <p>
+ * Apart from the garbage collections, which are recorded as they are
+ * reported, the profiler should only be used by the game thread.
+ * </p>
+ */
+public class FrameProfiler {
+
+	/**
+	 * The phases of a frame which are timed.
+	 */
+	public enum Phase {
+		/** The whole frame, including waiting to keep to the frame rate */
+		FRAME("Frame"),
+		/** Updating the audio */
+		AUDIO("Audio"),
+		/** Handling input */
+		INPUT("Input"),
+		/** Updating the window, including waiting to keep to the frame rate */
+		WINDOW("Window + sync"),
+		/** Handling instructions from the network */
+		NETWORK("Network"),
+		/** Updating the current scene */
+		UPDATE("Scene update"),
+		/** Checking for collisions, as part of the scene update */
+		COLLISION("Collision"),
+		/** Drawing the current scene */
+		DRAW("Draw"),
+		/** Drawing the map's static layer, as part of the draw */
+		DRAW_STATIC("Draw static"),
+		/** Drawing the aircraft and waypoints, as part of the draw */
+		DRAW_MAP("Draw map"),
+		/** Drawing the scores and controls, as part of the draw */
+		DRAW_HUD("Draw HUD");
+
+		/** The name to show the phase as */
+		private final String label;
+
+		/**
+		 * Constructs a phase.
+		 * @param label - the name to show the phase as
+		 */
+		private Phase(String label) {
+			this.label = label;
+		}
+	}
+
+	/** The length of each window the percentiles are taken over, in seconds */
+	public static final int WINDOW_SECONDS = 5;
+
+	/** The length of each window, in ns */
+	private static final long WINDOW_NANOS = WINDOW_SECONDS * 1000000000L;
+
+	/** The time between rebuilding the summary, in ns */
+	private static final long SUMMARY_NANOS = 1000000000L;
+
+	/** The directory profiles are written to */
+	private static final File PROFILE_DIRECTORY = new File(
+			System.getProperty("user.home"), ".flyhard" + File.separator
+					+ "profiles");
+
+	/** The length of each garbage collection, in ms */
+	private static final Histogram gcTimes = new Histogram();
+
+	/** The total length of the garbage collections, in ms */
+	private static final AtomicLong gcTotalTime = new AtomicLong();
+
+	/** Measures the bytes allocated by the game thread, or null if the
+	 * JVM cannot measure them */
+	private static final AllocationCounter allocations = AllocationCounter.create();
+
+	/** Whether garbage collections are being recorded */
+	private static final boolean gcReported = GcListener.register();
+
+	/** The profiler instance */
+	private static final FrameProfiler instance = new FrameProfiler();
+
+	/** The times of each phase in the current window, in us */
+	private Histogram[] current;
+
+	/** The times of each phase in the last complete window, in us */
+	private Histogram[] previous;
+
+	/** The bytes allocated each frame in the current window */
+	private Histogram currentAllocations = new Histogram();
+
+	/** The bytes allocated each frame in the last complete window */
+	private Histogram previousAllocations = new Histogram();
+
+	/** Whether a window has been completed */
+	private boolean windowCompleted;
+
+	/** The time the current window began, from {@link System#nanoTime()} */
+	private long windowStart = System.nanoTime();
+
+	/** The bytes allocated by the game thread at the end of the last frame */
+	private long allocatedBytes = -1;
+
+	/** The bytes allocated in the current window */
+	private long windowAllocatedBytes;
+
+	/** The bytes allocated each second in the last complete window */
+	private long allocationRate;
+
+	/** The summary, kept between rebuilds so that drawing it does not
+	 * skew the allocation figures */
+	private List<String> summary = Collections.emptyList();
+
+	/** The time the summary was last rebuilt, from {@link System#nanoTime()} */
+	private long summaryTime;
+
+	/** The file the profile was last written to, or null if it has not been */
+	private File writtenTo;
+
+
+	/**
+	 * Constructs a new profiler.
+	 * <p>
+	 * The game's frames are recorded by the instance returned by
+	 * {@link #getInstance()}; others are only of use for tests.
+	 * </p>
+	 */
+	public FrameProfiler() {
+		current = newHistograms();
+		previous = newHistograms();
+	}
+
+	/**
+	 * Gets the profiler instance.
+	 * @return the profiler instance
+	 */
+	public static FrameProfiler getInstance() {
+		return instance;
+	}
+
+
+	// Recording -------------------------------------------------------------------------
+
+	/**
+	 * Records that a phase has ended.
+	 * @param phase - the phase which has ended
+	 * @param startTime - the time the phase began, from
+	 * 			{@link System#nanoTime()}
+	 */
+	public void record(Phase phase, long startTime) {
+		current[phase.ordinal()].record((System.nanoTime() - startTime) / 1000);
+	}
+
+	/**
+	 * Records that a frame has ended, and moves on to a new window
+	 * if the current one is complete.
+	 * @param startTime - the time the frame began, from
+	 * 			{@link System#nanoTime()}
+	 */
+	public void endFrame(long startTime) {
+		long now = System.nanoTime();
+		current[Phase.FRAME.ordinal()].record((now - startTime) / 1000);
+
+		if (allocations != null) {
+			long allocated = allocations.getAllocatedBytes(
+					Thread.currentThread().getId());
+
+			if (allocatedBytes >= 0) {
+				currentAllocations.record(allocated - allocatedBytes);
+				windowAllocatedBytes += allocated - allocatedBytes;
+			}
+
+			allocatedBytes = allocated;
+		}
+
+		if (now - windowStart >= WINDOW_NANOS) {
+			roll(now);
+		}
+	}
+
+	/**
+	 * Completes the current window, and begins a new one.
+	 * @param now - the current time, from {@link System#nanoTime()}
+	 */
+	private void roll(long now) {
+		allocationRate = (windowAllocatedBytes * 1000000000L)
+				/ (now - windowStart);
+		windowAllocatedBytes = 0;
+
+		Histogram[] completed = current;
+		current = previous;
+		previous = completed;
+
+		for (Histogram histogram : current) {
+			histogram.reset();
+		}
+
+		Histogram completedAllocations = currentAllocations;
+		currentAllocations = previousAllocations;
+		previousAllocations = completedAllocations;
+		currentAllocations.reset();
+
+		windowStart = now;
+		windowCompleted = true;
+	}
+
+
+	// Summary ---------------------------------------------------------------------------
+
+	/**
+	 * Gets a summary of the profile, for display in game.
+	 * <p>
+	 * The summary is rebuilt at most once a second.
+	 * </p>
+	 * @return the lines of the summary
+	 */
+	public List<String> getSummary() {
+		long now = System.nanoTime();
+		if (!summary.isEmpty() && now - summaryTime < SUMMARY_NANOS) {
+			return summary;
+		}
+
+		Histogram[] phases = getPhases();
+		List<String> lines = new ArrayList<String>();
+
+		lines.add("Frame profile, last " + WINDOW_SECONDS + "s (us):");
+
+		for (Phase phase : Phase.values()) {
+			lines.add(phase.label + ": "
+					+ describe(phases[phase.ordinal()]));
+		}
+
+		if (allocations != null) {
+			lines.add("Allocated: " + (getAllocationRate() / 1024)
+					+ " KB/s, per frame (B): " + describe(getAllocations()));
+		} else {
+			lines.add("Allocated: not measured by this JVM");
+		}
+
+		if (gcReported) {
+			lines.add("GC (ms): " + describe(gcTimes) + "  total "
+					+ gcTotalTime.get() + " in " + gcTimes.getCount());
+		} else {
+			lines.add("GC: not reported by this JVM");
+		}
+
+		lines.add("Draw calls: " + graphics.getDrawCalls()
+				+ ", state changes: " + graphics.getStateChanges()
+				+ ", dropped frames: " + window.getDroppedFrames());
+
+		if (writtenTo != null) {
+			lines.add("Written to " + writtenTo.getPath());
+		}
+
+		summary = lines;
+		summaryTime = now;
+
+		return lines;
+	}
+
+	/**
+	 * Writes the profile to a new file in the profile directory.
+	 * <p>
+	 * The summary gives the file written to from then on.
+	 * </p>
+	 * @return the file written to
+	 * @throws IOException if the file cannot be written
+	 */
+	public File writeCsv() throws IOException {
+		PROFILE_DIRECTORY.mkdirs();
+
+		String name = new SimpleDateFormat("yyyyMMdd-HHmmss")
+				.format(new Date());
+		File file = new File(PROFILE_DIRECTORY, name + ".csv");
+
+		for (int i = 2; file.exists(); i++) {
+			file = new File(PROFILE_DIRECTORY, name + "-" + i + ".csv");
+		}
+
+		writeCsv(file);
+
+		// Rebuild the summary, to give the file written to
+		writtenTo = file;
+		summary = Collections.emptyList();
+
+		return file;
+	}
+
+	/**
+	 * Writes the profile as comma-separated values, one metric to a row.
+	 * @param file - the file to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeCsv(File file) throws IOException {
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+
+		try {
+			out.println("metric,unit,count,mean,p50,p95,p99,max");
+
+			Histogram[] phases = getPhases();
+			for (Phase phase : Phase.values()) {
+				writeRow(out, phase.name().toLowerCase(), "us",
+						phases[phase.ordinal()]);
+			}
+
+			if (allocations != null) {
+				writeRow(out, "allocated_per_frame", "B", getAllocations());
+			}
+			if (gcReported) {
+				writeRow(out, "gc", "ms", gcTimes);
+			}
+		} finally {
+			out.close();
+		}
+
+		if (out.checkError()) {
+			throw new IOException("Could not write profile to " + file);
+		}
+	}
+
+	/**
+	 * Writes a histogram as a row of comma-separated values.
+	 * @param out - the writer to write the row to
+	 * @param metric - the name of the metric
+	 * @param unit - the unit of the metric's values
+	 * @param histogram - the histogram of the metric's values
+	 */
+	private static void writeRow(PrintWriter out, String metric, String unit,
+			Histogram histogram) {
+		out.println(metric + "," + unit + "," + histogram.getCount()
+				+ "," + Math.round(histogram.getMean())
+				+ "," + histogram.getPercentile(50)
+				+ "," + histogram.getPercentile(95)
+				+ "," + histogram.getPercentile(99)
+				+ "," + histogram.getMax());
+	}
+
+	/**
+	 * Describes the distribution of a histogram.
+	 * @param histogram - the histogram to describe
+	 * @return the histogram's percentiles
+	 */
+	private static String describe(Histogram histogram) {
+		return "p50 " + histogram.getPercentile(50)
+				+ "  p95 " + histogram.getPercentile(95)
+				+ "  p99 " + histogram.getPercentile(99)
+				+ "  max " + histogram.getMax();
+	}
+
+
+	// Accessors -------------------------------------------------------------------------
+
+	/**
+	 * Gets the times of a phase, from the last complete window, or
+	 * from the current window if none has been completed.
+	 * @param phase - the phase
+	 * @return the phase's times, in us
+	 */
+	public Histogram getTimes(Phase phase) {
+		return getPhases()[phase.ordinal()];
+	}
+
+	/**
+	 * Gets the bytes the game thread allocated each frame, from the
+	 * last complete window, or from the current window if none has been
+	 * completed.
+	 * @return the bytes allocated each frame
+	 */
+	public Histogram getAllocations() {
+		return windowCompleted ? previousAllocations : currentAllocations;
+	}
+
+	/**
+	 * Gets the bytes the game thread allocated each second, over the
+	 * last complete window.
+	 * @return the allocation rate, in bytes per second, or 0 if no
+	 * 			window has been completed
+	 */
+	public long getAllocationRate() {
+		return allocationRate;
+	}
+
+	/**
+	 * Gets the phases' times to report.
+	 * @return the times of each phase, in us
+	 */
+	private Histogram[] getPhases() {
+		return windowCompleted ? previous : current;
+	}
+
+	/**
+	 * Creates a histogram for each phase.
+	 * @return the histograms
+	 */
+	private static Histogram[] newHistograms() {
+		Histogram[] histograms = new Histogram[Phase.values().length];
+
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new Histogram();
+		}
+
+		return histograms;
+	}
+
+	/**
+	 * Measures the bytes allocated by each thread.
+	 * <p>
+	 * This uses <code>com.sun.management</code>, which not every JVM
+	 * provides, so is kept apart from the profiler, and only used once
+	 * the JVM has been checked for it.
+	 * </p>
+	 */
+	private static class AllocationCounter {
+
+		/** The bean used to measure the bytes allocated */
+		private final com.sun.management.ThreadMXBean threads;
+
+		/**
+		 * Constructs a new allocation counter.
+		 * @param threads - the bean used to measure the bytes allocated
+		 */
+		private AllocationCounter(com.sun.management.ThreadMXBean threads) {
+			this.threads = threads;
+		}
+
+		/**
+		 * Creates an allocation counter, enabling the measurement if
+		 * need be.
+		 * @return the counter, or null if the JVM cannot measure
+		 * 			allocations
+		 */
+		private static AllocationCounter create() {
+			try {
+				Class.forName("com.sun.management.ThreadMXBean");
+			} catch (ClassNotFoundException e) {
+				return null;
+			}
+
+			java.lang.management.ThreadMXBean bean =
+					ManagementFactory.getThreadMXBean();
+
+			if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+
+			com.sun.management.ThreadMXBean threads =
+					(com.sun.management.ThreadMXBean) bean;
+			if (!threads.isThreadAllocatedMemorySupported()) return null;
+
+			try {
+				threads.setThreadAllocatedMemoryEnabled(true);
+			} catch (UnsupportedOperationException | SecurityException e) {
+				e.printStackTrace();
+				return null;
+			}
+
+			return new AllocationCounter(threads);
+		}
+
+		/**
+		 * Gets the bytes a thread has allocated.
+		 * @param threadId - the thread's ID
+		 * @return the bytes the thread has allocated since it started
+		 */
+		private long getAllocatedBytes(long threadId) {
+			return threads.getThreadAllocatedBytes(threadId);
+		}
+
+	}
+
+	/**
+	 * Records each garbage collection as it is reported.
+	 * <p>
+	 * Garbage collections are reported through
+	 * <code>com.sun.management</code>, which not every JVM provides, so
+	 * the listener is only registered once the JVM has been checked for it.
+	 * </p>
+	 */
+	private static class GcListener implements NotificationListener {
+
+		/**
+		 * Registers a listener with each garbage collector which reports
+		 * its collections.
+		 * @return whether any garbage collector reports its collections
+		 */
+		private static boolean register() {
+			try {
+				Class.forName(
+						"com.sun.management.GarbageCollectionNotificationInfo");
+			} catch (ClassNotFoundException e) {
+				return false;
+			}
+
+			GcListener listener = new GcListener();
+			boolean registered = false;
+
+			for (GarbageCollectorMXBean collector
+					: ManagementFactory.getGarbageCollectorMXBeans()) {
+				if (collector instanceof NotificationEmitter) {
+					((NotificationEmitter) collector)
+							.addNotificationListener(listener, null, null);
+					registered = true;
+				}
+			}
+
+			return registered;
+		}
+
+		@Override
+		public void handleNotification(Notification notification,
+				Object handback) {
+			if (com.sun.management.GarbageCollectionNotificationInfo
+					.GARBAGE_COLLECTION_NOTIFICATION
+					.equals(notification.getType())) {
+				long duration = com.sun.management.GarbageCollectionNotificationInfo
+						.from((CompositeData) notification.getUserData())
+						.getGcInfo().getDuration();
+				gcTimes.record(duration);
+				gcTotalTime.addAndGet(duration);
+			}
+		}
+
+	}
+
+}
@@ -8,16 +8,24 @@ import java.io.IOException;
 import java.util.Random;
 import java.util.Stack;
 
+import net.InstructionHandler;
 import net.NetworkManager;
+import net.NetworkMetrics;
 
 import org.lwjgl.Sys;
 import org.newdawn.slick.TrueTypeFont;
 import org.newdawn.slick.util.ResourceLoader;
 
+import scn.CommandLog;
+import scn.Replay;
+import scn.SaveGame;
 import scn.Scene;
 import scn.Title;
+import lib.Overlay;
 import lib.jog.*;
 
+import btc.FrameProfiler.Phase;
+
 /**
  * <h1>Main</h1>
  * <p>
@@ -79,6 +87,9 @@ public class Main implements input.EventHandler {
 	/** The random instance to use to synchronise across the network */
 	private static Random random = new Random();
 
+	/** The seed most recently given to the random instance */
+	private static int randomSeed;
+
 	/** Whether the game is being exited */
 	private static boolean exiting;
 
@@ -97,8 +108,21 @@ public class Main implements input.EventHandler {
 	private static Stack<Scene> sceneStack;
 	private static Scene currentScene;
 	private int fpsCounter;
+
+	/** The overlay showing network metrics, toggled with F3 */
+	private Overlay networkOverlay = new Overlay(10, 10, 520);
+
+	/** The overlay showing the frame profile, toggled with F4; F5 writes the profile out */
+	private Overlay profileOverlay = new Overlay(540, 10, 620);
+
+	/** The profiler timing the phases of each frame */
+	private FrameProfiler profiler = FrameProfiler.getInstance();
 	private long lastFpsTime;
 
+	/** The mouse position at the last update, to tell when the mouse moves */
+	private int lastMouseX;
+	private int lastMouseY;
+
 	/**
 	 * Constructor for Main. Initialises the jog library classes, and then
 	 * begins the game loop, calculating time between frames, and then when
@@ -138,10 +162,16 @@ public class Main implements input.EventHandler {
 
 		start(width, height, xOffset, yOffset, fullscreen);
 
+		// Draw frames on a thread of their own, so a slow frame does not hold
+		// up input, audio or the network
+		window.startRenderThread();
+
 		while(!window.isClosed() && !exiting) {
+			long frameStart = System.nanoTime();
 			timeDifference = getTimeSinceLastFrame();
 			update(timeDifference);
 			draw();
+			profiler.endFrame(frameStart);
 		}
 		quit();
 	}
@@ -212,19 +242,54 @@ public class Main implements input.EventHandler {
 		sceneStack = new Stack<Scene>();
 		setScene(new Title());
 
+		// Replay a recorded game, if one has been given
+		String replay = System.getProperty(Replay.FILE_PROPERTY);
+		if (replay != null) {
+			try {
+				setScene(new Replay(new File(replay), Double.parseDouble(
+						System.getProperty(Replay.SPEED_PROPERTY, "1"))));
+			} catch (IOException | NumberFormatException e) {
+				e.printStackTrace();
+			}
+		}
+
 		lastFrameTime = (double)(Sys.getTime()) / Sys.getTimerResolution();
 		lastFpsTime = Sys.getTime()* 1000 / Sys.getTimerResolution(); // Set to current Time
 	}
 
 	/**
-	 * Updates audio, input handling, the window, the current scene and FPS.
+	 * Updates audio, input handling, the window, network instructions,
+	 * the current scene and FPS.
 	 * @param timeDifference - the time elapsed since the last frame.
 	 */
 	private void update(double timeDifference) {
+		long start = System.nanoTime();
 		audio.update();
+		profiler.record(Phase.AUDIO, start);
+
+		start = System.nanoTime();
 		input.update(this);
+		profiler.record(Phase.INPUT, start);
+
+		start = System.nanoTime();
 		window.update();
+		profiler.record(Phase.WINDOW, start);
+
+		start = System.nanoTime();
+		InstructionHandler.processInstructions();
+		profiler.record(Phase.NETWORK, start);
+
+		// Moving the mouse may change which button is highlighted
+		if (input.mouseX() != lastMouseX || input.mouseY() != lastMouseY) {
+			lastMouseX = input.mouseX();
+			lastMouseY = input.mouseY();
+			currentScene.setChanged();
+		}
+
+		start = System.nanoTime();
 		currentScene.update(timeDifference);
+		profiler.record(Phase.UPDATE, start);
+
 		updateFPS();
 	}
 
@@ -243,19 +308,43 @@ public class Main implements input.EventHandler {
 	/**
 	 * Clears the graphical viewport and calls the draw function of the current
 	 * scene.
+	 * <p>
+	 * If the scene has not changed since it was last drawn, and the window
+	 * has not been damaged, the window is left showing the last frame.
+	 * </p>
 	 */
 	private void draw() {
+		if (!currentScene.hasChanged() && !window.isDamaged()
+				&& !networkOverlay.isVisible() && !profileOverlay.isVisible()) {
+			window.skipFrame();
+			return;
+		}
+
+		long start = System.nanoTime();
 		graphics.clear();
 		currentScene.draw();
+		currentScene.clearChanged();
+		profiler.record(Phase.DRAW, start);
+
+		if (networkOverlay.isVisible()) {
+			networkOverlay.draw(NetworkMetrics.getInstance().getSummary());
+		}
+
+		if (profileOverlay.isVisible()) {
+			profileOverlay.draw(profiler.getSummary());
+		}
 	}
 
 	/**
-	 * Closes the current scene, closes the window, releases the audio
-	 * resources and quits the process.
+	 * Closes the current scene, waits for any save to be written,
+	 * closes the window, releases the audio resources and quits the
+	 * process.
 	 */
 	public static void quit() {
 		currentScene.close();
+		SaveGame.awaitWrites(1000);
 		NetworkManager.stopThread();
+		NetworkManager.awaitMessages(1000);
 		window.dispose();
 		audio.dispose();
 		System.exit(0);
@@ -280,6 +369,7 @@ public class Main implements input.EventHandler {
 		currentScene.close();
 		sceneStack.pop();
 		currentScene = sceneStack.peek();
+		currentScene.setChanged();
 	}
 
 	/**
@@ -311,7 +401,13 @@ public class Main implements input.EventHandler {
 	}
 
 	public static void setRandomSeed(int seed) {
+		randomSeed = seed;
 		random.setSeed(seed);
+		CommandLog.recordSeed(seed);
+	}
+
+	public static int getRandomSeed() {
+		return randomSeed;
 	}
 
 	public static void setExiting() {
@@ -321,21 +417,50 @@ public class Main implements input.EventHandler {
 	@Override
 	public void mousePressed(int key, int x, int y) {
 		currentScene.mousePressed(key, x, y);
+		currentScene.setChanged();
 	}
 
 	@Override
 	public void mouseReleased(int key, int x, int y) {
 		currentScene.mouseReleased(key, x, y);
+		currentScene.setChanged();
 	}
 
 	@Override
 	public void keyPressed(int key) {
 		currentScene.keyPressed(key);
+		currentScene.setChanged();
 	}
 
 	@Override
 	public void keyReleased(int key) {
+		if (key == input.KEY_F3) {
+			networkOverlay.toggle();
+			currentScene.setChanged();
+			return;
+		}
+
+		if (key == input.KEY_F4) {
+			profileOverlay.toggle();
+			currentScene.setChanged();
+			return;
+		}
+
+		if (key == input.KEY_F5) {
+			try {
+				profiler.writeCsv();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+
+			// The profile overlay gives the file written to
+			if (!profileOverlay.isVisible()) profileOverlay.toggle();
+			currentScene.setChanged();
+			return;
+		}
+
 		currentScene.keyReleased(key);
+		currentScene.setChanged();
 	}
 
 }
@@ -1,6 +1,10 @@
 package cls;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 
@@ -8,11 +12,11 @@ import btc.Main;
 import scn.Game;
 import scn.Game.DifficultySetting;
 import scn.MultiPlayerGame;
+import lib.TextBuilder;
 import lib.jog.audio;
 import lib.jog.audio.Sound;
 import lib.jog.graphics;
 import lib.jog.input;
-import lib.jog.window;
 
 /**
  * <h1>Aircraft</h1>
@@ -20,7 +24,7 @@ import lib.jog.window;
  * Represents an aircraft. Calculates velocity, route-following, etc.
  * </p>
  */
-public class Aircraft implements Serializable {
+public strictfp class Aircraft implements Serializable {
 
 	/** Serialisation ID */
 	private static final long serialVersionUID = 3827944832233974467L;
@@ -40,6 +44,18 @@ public class Aircraft implements Serializable {
 	/** The size of the compass circle */
 	public final static int COMPASS_RADIUS = 64;
 
+	/** The labels of the angles marked on the compass circle */
+	private final static String[] COMPASS_LABELS = new String[] {
+		"0", "60", "120", "180", "240", "300"
+	};
+
+	/** The positions of the compass labels relative to the compass's centre,
+	 * as {x, y} pairs */
+	private final static double[] COMPASS_LABEL_OFFSETS = compassLabelOffsets();
+
+	/** The width of the lines drawn on the compass */
+	private final static double COMPASS_LINE_WIDTH = 3;
+
 	/** The sound to play when the separation distance is violated */
 	private final static Sound WARNING_SOUND = audio.newSoundEffect("sfx"
 			+ File.separator + "beep.ogg");
@@ -94,6 +110,9 @@ public class Aircraft implements Serializable {
 	/** The point the aircraft is currently heading towards */
 	public Vector currentTarget;
 
+	/** The ID of the waypoint the aircraft is currently heading towards */
+	private int currentTargetID;
+
 	/** The bearing specified whilst the aircraft is under manual control */
 	private double manualBearingTarget = Double.NaN;
 
@@ -104,10 +123,20 @@ public class Aircraft implements Serializable {
 	private int altitudeState;
 
 	/** Whether the collision warning sound is currently playing */
-	private boolean collisionWarningSoundFlag = false;
+	private transient boolean collisionWarningSoundFlag = false;
 
 	/** A list of the aircraft violation this aircraft's separation distance */
-	private ArrayList<Aircraft> planesTooNear = new ArrayList<Aircraft>();
+	private transient ArrayList<Aircraft> planesTooNear = new ArrayList<Aircraft>();
+
+	/** The text of the aircraft's altitude label, kept between frames */
+	private transient TextBuilder altitudeLabel = new TextBuilder();
+
+	/** The text of the aircraft's score, kept between frames */
+	private transient TextBuilder scoreLabel = new TextBuilder();
+
+	/** The player whose snapshots hold the aircraft, which is told
+	 * whenever the aircraft changes (see {@link Player#snapshot()}) */
+	private transient Player owner;
 	
 	private boolean inDanger = false;
 	
@@ -150,19 +179,24 @@ public class Aircraft implements Serializable {
 
 		// Set aircraft's altitude to a random height
 		int altitudeOffset = (Main.getRandom().nextInt(2)) == 0 ? 28000 : 30000;
-		this.position = position.add(new Vector(0, 0, altitudeOffset));
+		this.position = position.add(new Vector(0, 0, altitudeOffset, true));
 
 		// Calculate initial velocity (direction)
-		this.currentTarget = flightPlan.getRoute()[0].getLocation();
-		double x = currentTarget.getX() - position.getX();
-		double y = currentTarget.getY() - position.getY();
-		this.velocity = new Vector(x, y, 0).normalise().scaleBy(speed);
+		setTarget(flightPlan.getRoute()[0]);
+		double x = currentTarget.getAirspaceX() - position.getAirspaceX();
+		double y = currentTarget.getAirspaceY() - position.getAirspaceY();
+		this.velocity = Vector.inAirspace(x, y, 0).normalise().scaleBy(speed);
 
 		// Set the aircraft's difficulty settings
 		// e.g. the minimum separation distance, turning speed, velocity
 		setDifficultySettings(difficulty);
 	}
 	
+	/**
+	 * Constructor for an aircraft whose state is about to be read.
+	 */
+	private Aircraft() {}
+
 	/**
 	 * Constructor for an aircraft.
 	 * @param aircraft - the aircraft to copy
@@ -188,6 +222,7 @@ public class Aircraft implements Serializable {
 		isLanding = aircraft.isLanding;
 		currentTarget = (aircraft.currentTarget != null)
 				? aircraft.currentTarget.clone() : null;
+		currentTargetID = aircraft.currentTargetID;
 		manualBearingTarget = aircraft.manualBearingTarget;
 		currentRouteStage = aircraft.currentRouteStage;
 		altitudeState = aircraft.altitudeState;
@@ -245,6 +280,7 @@ public class Aircraft implements Serializable {
 	 */
 	public void update(double timeDifference) {
 		if (hasFinished) return;
+		changed();
 
 		separationViolationCounter += timeDifference;
 		
@@ -303,8 +339,7 @@ public class Aircraft implements Serializable {
 		
 
 		// Update target
-		if (currentTarget.equals(flightPlan.getDestination())
-				&& isAtDestination()) { // At finishing point
+		if (isHeadingToDestination() && isAtDestination()) { // At finishing point
 			if (!isWaitingToLand) { // Ready to land
 				hasFinished = true;
 				if (flightPlan.getDestinationAirport() != null) { // Landed at airport
@@ -315,9 +350,11 @@ public class Aircraft implements Serializable {
 			currentRouteStage++;
 			// Next target is the destination if you're at the end of the plan,
 			// otherwise it's the next waypoint
-			currentTarget = (currentRouteStage >= flightPlan.getRoute().length) ? flightPlan
-					.getDestination()
-					: flightPlan.getRoute()[currentRouteStage].getLocation();
+			if (currentRouteStage >= flightPlan.getRoute().length) {
+				setTargetToDestination();
+			} else {
+				setTarget(flightPlan.getRoute()[currentRouteStage]);
+			}
 		}
 
 		// Update bearing
@@ -326,6 +363,61 @@ public class Aircraft implements Serializable {
 		}
 	}
 
+	/**
+	 * Sets the waypoint the aircraft is heading towards.
+	 * @param waypoint - the new target
+	 */
+	private void setTarget(Waypoint waypoint) {
+		currentTarget = waypoint.getLocation();
+		currentTargetID = waypoint.getID();
+	}
+
+	/**
+	 * Sets the aircraft to head towards the end of its flight plan.
+	 */
+	private void setTargetToDestination() {
+		currentTarget = flightPlan.getDestination();
+		currentTargetID = flightPlan.getDestinationID();
+	}
+
+	/**
+	 * Checks whether the aircraft is heading towards a waypoint.
+	 * <p>
+	 * Waypoints in the airspace map are compared by ID. Other waypoints
+	 * are compared by location.
+	 * </p>
+	 * @param waypoint - the waypoint to check
+	 * @return <code>true</code> if the waypoint is the aircraft's
+	 * 			current target, otherwise <code>false</code>
+	 */
+	public boolean isHeadingTo(Waypoint waypoint) {
+		return isTarget(waypoint.getID(), waypoint.getLocation());
+	}
+
+	/**
+	 * Checks whether the aircraft is heading towards the end of its
+	 * flight plan.
+	 * @return <code>true</code> if the aircraft's current target is
+	 * 			its destination, otherwise <code>false</code>
+	 */
+	private boolean isHeadingToDestination() {
+		return isTarget(flightPlan.getDestinationID(),
+				flightPlan.getDestination());
+	}
+
+	/**
+	 * Checks whether a point is the aircraft's current target.
+	 * @param id - the ID of the point's waypoint, or -1 if it is not
+	 * 			part of the airspace map
+	 * @param location - the point's location, compared if it has no ID
+	 * @return <code>true</code> if the point is the current target,
+	 * 			otherwise <code>false</code>
+	 */
+	private boolean isTarget(int id, Vector location) {
+		return (id != -1) ? (currentTargetID == id)
+				: currentTarget.equals(location);
+	}
+
 	/**
 	 * Calculates the angle from the plane's position, to its current target.
 	 * @return the angle in radians to the plane's current target
@@ -335,9 +427,9 @@ public class Aircraft implements Serializable {
 			return (manualBearingTarget == Double.NaN) ? getBearing()
 					: manualBearingTarget;
 		} else {
-			return Math.atan2(currentTarget.getY() - position.getY()
-					+ Waypoint.WAYPOINT_ICON_RADIUS/2,
-					currentTarget.getX() - position.getX()
+			return StrictMath.atan2(currentTarget.getAirspaceY()
+					- position.getAirspaceY() + Waypoint.WAYPOINT_ICON_RADIUS/2,
+					currentTarget.getAirspaceX() - position.getAirspaceX()
 					+ Waypoint.WAYPOINT_ICON_RADIUS/2);
 		}
 	}
@@ -347,12 +439,12 @@ public class Aircraft implements Serializable {
 	 * @return <code>true</code> if the aircraft is outside the game area
 	 */
 	public boolean isOutOfAirspaceBounds() {
-		double x = position.getX();
-		double y = position.getY();
+		double x = position.getAirspaceX();
+		double y = position.getAirspaceY();
 		return ((x < (RADIUS / 2))
-				|| (x > window.width() - (RADIUS / 2) - (2 * Game.getXOffset()))
-				|| (y < (RADIUS / 2)) || (y > window.height() + (RADIUS / 2)
-						- (2 * Game.getYOffset())));
+				|| (x > Vector.AIRSPACE_WIDTH - (RADIUS / 2))
+				|| (y < (RADIUS / 2))
+				|| (y > Vector.AIRSPACE_HEIGHT + (RADIUS / 2)));
 	}
 
 	/**
@@ -363,10 +455,27 @@ public class Aircraft implements Serializable {
 	 * @return <code>true</code> if the aircraft is inside the middle zone
 	 */
 	public boolean isInMiddleZone() {
-		double x = position.getX();
+		double x = position.getAirspaceX();
+
+		return (x > (MultiPlayerGame.LEFT_ENTRY)
+				&& x < (MultiPlayerGame.RIGHT_ENTRY));
+	}
+
+	/**
+	 * Checks whether the aircraft is inside, or close to, the middle zone.
+	 * <p>
+	 * Specific to multiplayer.
+	 * </p>
+	 * @param margin - the distance from the middle zone's borders
+	 * 			which counts as close
+	 * @return <code>true</code> if the aircraft is within the margin
+	 * 			of the middle zone
+	 */
+	public boolean isNearMiddleZone(int margin) {
+		double x = position.getAirspaceX();
 
-		return (x > (MultiPlayerGame.leftEntryX)
-				&& x < (MultiPlayerGame.rightEntryX));
+		return (x > (MultiPlayerGame.LEFT_ENTRY - margin)
+				&& x < (MultiPlayerGame.RIGHT_ENTRY + margin));
 	}
 
 	/**
@@ -375,7 +484,7 @@ public class Aircraft implements Serializable {
 	 * 			the other player's airspace
 	 */
 	public boolean isOutOfPlayersAirspace() {
-		double x = position.getX() + Game.getXOffset();
+		double x = position.getAirspaceX() + Game.getXOffset();
 		Player player = null;
 
 		if (Game.getInstance() != null) {
@@ -383,9 +492,9 @@ public class Aircraft implements Serializable {
 			
 			if (player != null) {
 				if (Game.getInstance().getPlayerFromAircraft(this).getID() == 0) {
-					return (x > MultiPlayerGame.rightEntryX);
+					return (x > MultiPlayerGame.RIGHT_ENTRY);
 				} else {
-					return (x < MultiPlayerGame.leftEntryX);
+					return (x < MultiPlayerGame.LEFT_ENTRY);
 				}
 			}
 		}
@@ -408,8 +517,8 @@ public class Aircraft implements Serializable {
 	 * @return <code>true</code> if the aircraft is at the specified point
 	 */
 	public boolean isAt(Vector point, int leniencyRadius) {
-		double dy = point.getY() - position.getY();
-		double dx = point.getX() - position.getX();
+		double dy = point.getAirspaceY() - position.getAirspaceY();
+		double dx = point.getAirspaceX() - position.getAirspaceX();
 		return (dy * dy) + (dx * dx) < (leniencyRadius * leniencyRadius);
 	}
 
@@ -420,6 +529,7 @@ public class Aircraft implements Serializable {
 	 * @param newWaypoint - the new waypoint to travel to
 	 */
 	public void alterPath(int routeStage, Waypoint newWaypoint) {
+		changed();
 		if ((!newWaypoint.isEntryOrExit()) && (routeStage > -1)) {
 			flightPlan.alterPath(routeStage, newWaypoint);
 			
@@ -431,7 +541,7 @@ public class Aircraft implements Serializable {
 			}
 			
 			if (routeStage == currentRouteStage) {
-				currentTarget = newWaypoint.getLocation();
+				setTarget(newWaypoint);
 			}
 		}
 	}
@@ -477,6 +587,7 @@ public class Aircraft implements Serializable {
 	 * @param timeDifference - the time since the last update
 	 */
 	public void turnLeft(double timeDifference) {
+		changed();
 		turnBy(timeDifference * -turnSpeed);
 		manualBearingTarget = Double.NaN;
 	}
@@ -486,6 +597,7 @@ public class Aircraft implements Serializable {
 	 * @param timeDifference - the time since the last update
 	 */
 	public void turnRight(double timeDifference) {
+		changed();
 		turnBy(timeDifference * turnSpeed);
 		manualBearingTarget = Double.NaN;
 	}
@@ -498,13 +610,13 @@ public class Aircraft implements Serializable {
 	 * @param angle - the angle by which to turn
 	 */
 	private void turnBy(double angle) {
-		double cosA = Math.cos(angle);
-		double sinA = Math.sin(angle);
-		double x = velocity.getX();
-		double y = velocity.getY();
+		double cosA = StrictMath.cos(angle);
+		double sinA = StrictMath.sin(angle);
+		double x = velocity.getAirspaceX();
+		double y = velocity.getAirspaceY();
 
-		velocity = new Vector((x * cosA) - (y * sinA), (y * cosA) + (x * sinA),
-				velocity.getZ());
+		velocity = Vector.inAirspace((x * cosA) - (y * sinA),
+				(y * cosA) + (x * sinA), velocity.getZ());
 	}
 
 	/**
@@ -561,6 +673,22 @@ public class Aircraft implements Serializable {
 	 * @param offset - a manual offset to apply
 	 */
 	public void draw(Integer[] colour, int highlightedAltitude, Vector offset) {
+		draw(colour, highlightedAltitude, offset, getBearing());
+	}
+
+	/**
+	 * Draws the plane and any warning circles if necessary.
+	 * <p>
+	 * Also allows an offset and a bearing to be applied. This is used
+	 * to draw remote aircraft at their smoothed positions.
+	 * </p>
+	 * @param colour - the colour to draw the aircraft
+	 * @param highlightedAltitude - the altitude to highlight aircraft at
+	 * @param offset - a manual offset to apply
+	 * @param bearing - the bearing to draw the aircraft at
+	 */
+	public void draw(Integer[] colour, int highlightedAltitude, Vector offset,
+			double bearing) {
 		double alpha;
 		if (position.getZ() >= 28000 && position.getZ() <= 29000) { // 28000-29000
 			// 255 if highlighted, else 128
@@ -583,24 +711,27 @@ public class Aircraft implements Serializable {
 					position.getX() - (Game.aircraftImage.width() / 2)
 					+ offset.getX(), position.getY()
 					- (Game.aircraftImage.height() / 2)
-					+ offset.getY(), getBearing(), (RADIUS / 2), (RADIUS / 2));
+					+ offset.getY(), bearing, (RADIUS / 2), (RADIUS / 2));
 		} else {
 			graphics.draw(Game.aircraftImage, scale,
 					position.getX() - (Game.aircraftImage.width() / 2),
 					position.getY()
-					- (Game.aircraftImage.height() / 2), getBearing(),
+					- (Game.aircraftImage.height() / 2), bearing,
 					(RADIUS / 2), (RADIUS / 2));
 		}
 
 		// Draw altitude label
 		graphics.setColour(128, 128, 128, alpha / 2.5);
 
+		String altitude = altitudeLabel.clear()
+				.appendFixed(position.getZ(), 0).append('+').toString();
+
 		if (offset != null) {
-			graphics.print(String.format("%.0f", position.getZ()) + "+",
+			graphics.print(altitude,
 					position.getX() + (RADIUS / 2) + offset.getX(),
 					position.getY() - (RADIUS / 2) + offset.getY());
 		} else {
-			graphics.print(String.format("%.0f", position.getZ()) + "+",
+			graphics.print(altitude,
 					position.getX() + (RADIUS / 2), position.getY()
 					- (RADIUS / 2));
 		}
@@ -623,16 +754,13 @@ public class Aircraft implements Serializable {
 		Double ypos = position.getY() - (Game.aircraftImage.height() / 2);
 
 		// Draw the compass circle
-		graphics.circle(false, xpos, ypos, COMPASS_RADIUS, 30);
+		graphics.ring(xpos, ypos, COMPASS_RADIUS - 1, COMPASS_RADIUS, 30);
 
 		// Draw the angle labels (0, 60 .. 300)
-		for (int i = 0; i < 360; i += 60) {
-			double r = Math.toRadians(i - 90);
-			double x = xpos + (1.1 * COMPASS_RADIUS * Math.cos(r));
-			double y = ypos - 2 + (1.1 * COMPASS_RADIUS * Math.sin(r));
-			if (i > 170) x -= 24;
-			if (i == 180) x += 12;
-			graphics.print(String.valueOf(i), x, y);
+		for (int i = 0; i < COMPASS_LABELS.length; i++) {
+			graphics.print(COMPASS_LABELS[i],
+					xpos + COMPASS_LABEL_OFFSETS[2 * i],
+					ypos + COMPASS_LABEL_OFFSETS[2 * i + 1]);
 		}
 
 		// Draw the line to the mouse pointer
@@ -646,12 +774,7 @@ public class Aircraft implements Serializable {
 			x = xpos + (COMPASS_RADIUS * Math.cos(r));
 			y = ypos + (COMPASS_RADIUS * Math.sin(r));
 
-			// Draw several lines to make the line thicker
-			graphics.line(xpos, ypos, x, y);
-			graphics.line(xpos - 1, ypos, x, y);
-			graphics.line(xpos, ypos - 1, x, y);
-			graphics.line(xpos + 1, ypos, x, y);
-			graphics.line(xpos + 1, ypos + 1, x, y);
+			graphics.line(xpos, ypos, x, y, COMPASS_LINE_WIDTH);
 			graphics.setColour(0, 128, 0, 16);
 		}
 
@@ -659,12 +782,27 @@ public class Aircraft implements Serializable {
 		x = xpos + (COMPASS_RADIUS * Math.cos(getBearing()));
 		y = ypos + (COMPASS_RADIUS * Math.sin(getBearing()));
 
-		// Draw several lines to make it thicker
-		graphics.line(xpos, ypos, x, y);
-		graphics.line(xpos - 1, ypos, x, y);
-		graphics.line(xpos, ypos - 1, x, y);
-		graphics.line(xpos + 1, ypos, x, y);
-		graphics.line(xpos + 1, ypos + 1, x, y);
+		graphics.line(xpos, ypos, x, y, COMPASS_LINE_WIDTH);
+	}
+
+	/**
+	 * Works out where the compass labels are drawn, relative to the
+	 * compass's centre.
+	 * @return the positions of the labels, as {x, y} pairs
+	 */
+	private static double[] compassLabelOffsets() {
+		double[] offsets = new double[2 * COMPASS_LABELS.length];
+
+		for (int i = 0; i < COMPASS_LABELS.length; i++) {
+			int angle = i * 60;
+			double r = Math.toRadians(angle - 90);
+			offsets[2 * i] = 1.1 * COMPASS_RADIUS * Math.cos(r);
+			offsets[2 * i + 1] = (1.1 * COMPASS_RADIUS * Math.sin(r)) - 2;
+			if (angle > 170) offsets[2 * i] -= 24;
+			if (angle == 180) offsets[2 * i] += 12;
+		}
+
+		return offsets;
 	}
 
 	/**
@@ -691,6 +829,28 @@ public class Aircraft implements Serializable {
 	 * destination.
 	 */
 	public void drawFlightPath() {
+		drawFlightPath(null);
+	}
+
+	/**
+	 * Draws lines starting from the aircraft, along its flight path to its
+	 * destination.
+	 * <p>
+	 * Also allows an offset to be applied to the start of the path, so that
+	 * it starts from the aircraft where it is drawn (see
+	 * {@link #draw(Integer[], int, Vector, double)}).
+	 * </p>
+	 * @param offset - a manual offset to apply, or null
+	 */
+	public void drawFlightPath(Vector offset) {
+		double x = position.getX() - Game.aircraftImage.width() / 2;
+		double y = position.getY() - Game.aircraftImage.height() / 2;
+
+		if (offset != null) {
+			x += offset.getX();
+			y += offset.getY();
+		}
+
 		if (Game.getInstance().getPlayer().getSelectedAircraft() != null
 				&& Game.getInstance().getPlayer().getSelectedAircraft() == this) {
 			graphics.setColour(0, 128, 128);
@@ -701,19 +861,13 @@ public class Aircraft implements Serializable {
 		Waypoint[] route = flightPlan.getRoute();
 		Vector destination = flightPlan.getDestination();
 
-		if (currentTarget != destination) {
+		if (!isHeadingToDestination()) {
 			// Draw line from plane to next waypoint
-			graphics.line(position.getX() - Game.aircraftImage.width() / 2,
-					position.getY()
-					- Game.aircraftImage.height() / 2, route[currentRouteStage]
-							.getLocation().getX(), route[currentRouteStage]
-									.getLocation().getY());
+			graphics.line(x, y, route[currentRouteStage].getLocation().getX(),
+					route[currentRouteStage].getLocation().getY());
 		} else {
 			// Draw line from plane to destination
-			graphics.line(position.getX() - Game.aircraftImage.width() / 2,
-					position.getY()
-					- Game.aircraftImage.height() / 2, destination.getX(),
-					destination.getY());
+			graphics.line(x, y, destination.getX(), destination.getY());
 		}
 
 		// Draw lines between successive waypoints
@@ -743,7 +897,7 @@ public class Aircraft implements Serializable {
 					route[modified - 1].getLocation().getY(), mouseX, mouseY);
 		}
 
-		if (currentTarget == destination) {
+		if (isHeadingToDestination()) {
 			graphics.line(mouseX, mouseY, destination.getX(),
 					destination.getY());
 		} else {
@@ -762,7 +916,27 @@ public class Aircraft implements Serializable {
 	}
 	
 	public void drawScore() {
-		graphics.print(Integer.toString(score), position.getX() + 4, position.getY() + 5);
+		drawScore(null);
+	}
+
+	/**
+	 * Draws the aircraft's score beside it.
+	 * <p>
+	 * Also allows an offset to be applied, so that the score is drawn
+	 * beside the aircraft where it is drawn.
+	 * </p>
+	 * @param offset - a manual offset to apply, or null
+	 */
+	public void drawScore(Vector offset) {
+		double x = position.getX() + 4;
+		double y = position.getY() + 5;
+
+		if (offset != null) {
+			x += offset.getX();
+			y += offset.getY();
+		}
+
+		graphics.print(scoreLabel.clear().append(score).toString(), x, y);
 	}
 
 	/**
@@ -774,6 +948,7 @@ public class Aircraft implements Serializable {
 	 *         -1 if no planes are in violation.
 	 */
 	public Aircraft updateCollisions(double timeDifference, ArrayList<Aircraft> aircraft) {
+		changed();
 		planesTooNear.clear();
 		for (int i = 0; i < aircraft.size(); i++) {
 			Aircraft plane = aircraft.get(i);
@@ -803,6 +978,7 @@ public class Aircraft implements Serializable {
 	}
 	
 	public void crashPlane() {
+		changed();
 		planesTooNear.clear();
 		hasFinished = true;
 		hasCrashed = true;
@@ -815,8 +991,8 @@ public class Aircraft implements Serializable {
 	 * @return true, if the aircraft is within the distance. False, otherwise.
 	 */
 	private boolean isWithin(Aircraft aircraft, int distance) {
-		double dx = aircraft.getPosition().getX() - position.getX();
-		double dy = aircraft.getPosition().getY() - position.getY();
+		double dx = aircraft.getPosition().getAirspaceX() - position.getAirspaceX();
+		double dy = aircraft.getPosition().getAirspaceY() - position.getAirspaceY();
 		double dz = aircraft.getPosition().getZ() - position.getZ();
 		return dx * dx + dy * dy + dz * dz < distance * distance;
 	}
@@ -829,6 +1005,7 @@ public class Aircraft implements Serializable {
 	 * </p>
 	 */
 	public void toggleManualControl() {
+		changed();
 		if (isLanding) { // Can't manually control while landing
 			isManuallyControlled = false;
 		} else {
@@ -847,11 +1024,11 @@ public class Aircraft implements Serializable {
 	 * the new target.
 	 */
 	public void resetBearing() {
+		changed();
 		try { //FIXME
 			if (currentRouteStage < flightPlan.getRoute().length
 					&& flightPlan.getRoute()[currentRouteStage] != null) {
-				currentTarget = flightPlan.getRoute()[currentRouteStage]
-						.getLocation();
+				setTarget(flightPlan.getRoute()[currentRouteStage]);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -870,7 +1047,8 @@ public class Aircraft implements Serializable {
 		if (position.getZ() >= 30000) {
 			setAltitude(0);
 			altitudeState = ALTITUDE_LEVEL;
-			position = new Vector(position.getX(), position.getY(), 30000);
+			position = new Vector(position.getRelativeX(),
+					position.getRelativeY(), 30000, true);
 		}
 	}
 
@@ -883,7 +1061,8 @@ public class Aircraft implements Serializable {
 		if (position.getZ() <= 28000) {
 			setAltitude(0);
 			altitudeState = ALTITUDE_LEVEL;
-			position = new Vector(position.getX(), position.getY(), 28000);
+			position = new Vector(position.getRelativeX(),
+					position.getRelativeY(), 28000, true);
 		}
 	}
 
@@ -891,6 +1070,7 @@ public class Aircraft implements Serializable {
 	 * Causes the aircraft to land at its airport.
 	 */
 	public void land() {
+		changed();
 		isWaitingToLand = false;
 		isLanding = true;
 		
@@ -907,6 +1087,7 @@ public class Aircraft implements Serializable {
 	 * Adds this aircraft to the player whose airport it is departing from.
 	 */
 	public void takeOff() {
+		changed();
 
 		if (flightPlan.getOriginAirport() != null) {
 
@@ -933,8 +1114,8 @@ public class Aircraft implements Serializable {
 	 * @return <code>true</code> if it is close
 	 */
 	public boolean isCloseToEntry(Vector position) {
-		double x = this.getPosition().getX() - position.getX();
-		double y = this.getPosition().getY() - position.getY();
+		double x = this.getPosition().getAirspaceX() - position.getAirspaceX();
+		double y = this.getPosition().getAirspaceY() - position.getAirspaceY();
 		return x * x + y * y <= 300 * 300;
 	}
 
@@ -1004,7 +1185,8 @@ public class Aircraft implements Serializable {
 	 */
 	public double getBearing() {
 		Vector scaledVelocity = velocity.scaleBy(getSpeedScale());
-		return Math.atan2(scaledVelocity.getY(), scaledVelocity.getX());
+		return StrictMath.atan2(scaledVelocity.getAirspaceY(),
+				scaledVelocity.getAirspaceX());
 	}
 	
 	/** 
@@ -1061,6 +1243,7 @@ public class Aircraft implements Serializable {
 	 * @param newHeading - the new bearing to follow
 	 */
 	public void setBearing(double newHeading) {
+		changed();
 		this.manualBearingTarget = newHeading;
 	}
 
@@ -1078,6 +1261,7 @@ public class Aircraft implements Serializable {
 	 *            		-1 = falling
 	 */
 	public void setAltitudeState(int state) {
+		changed();
 		this.altitudeState = state;
 	}
 	
@@ -1103,6 +1287,7 @@ public class Aircraft implements Serializable {
 	 * </p>
 	 */
 	public void decrementScoreSmall() {
+		changed();
 		if(this.score > 0){
 			this.score = this.score - 1;
 		}
@@ -1116,6 +1301,7 @@ public class Aircraft implements Serializable {
 	 * </p>
 	 */
 	public void decrementScoreLarge() {
+		changed();
 		if(this.score > 0) {
 			this.score = this.score - 10;
 		}
@@ -1127,6 +1313,7 @@ public class Aircraft implements Serializable {
 	}
 
 	public void setAirportPenaltyApplied(boolean airportPenaltyApplied) {
+		changed();
 		this.airportPenaltyApplied = airportPenaltyApplied;
 	}
 
@@ -1135,17 +1322,19 @@ public class Aircraft implements Serializable {
 	}
 
 	public void setTimeWaiting(int timeWaiting) {
+		changed();
 		this.timeWaiting = timeWaiting;
 	}
 	
 	public void generateFlightPlan(Waypoint[] sceneWaypoints,
 			String nameDestination, Waypoint destinationPoint,
 			Airport destinationAirport) {
+		changed();
 		flightPlan = new FlightPlan(sceneWaypoints,
 				flightPlan.getOriginName(),
 				nameDestination,
-				new Waypoint(position.getX(), position.getY(),
-						false, false),
+				new Waypoint(position.getRelativeX(), position.getRelativeY(),
+						false, true),
 				destinationPoint,
 				flightPlan.getOriginAirport(),
 				destinationAirport);
@@ -1204,5 +1393,532 @@ public class Aircraft implements Serializable {
 	public Aircraft clone() {
 		return new Aircraft(this);
 	}
+	
+	/**
+	 * Reads the aircraft from a stream.
+	 * <p>
+	 * The aircraft which are too near to it are not sent, as these
+	 * are found again on the next update.
+	 * </p>
+	 * @param in - the stream to read from
+	 * @throws IOException if the aircraft could not be read
+	 * @throws ClassNotFoundException if a class in the stream could not
+	 * 			be found
+	 */
+	private void readObject(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		
+		planesTooNear = new ArrayList<Aircraft>();
+		altitudeLabel = new TextBuilder();
+		scoreLabel = new TextBuilder();
+	}
+	
+	/**
+	 * Writes the aircraft's state in a compact binary form.
+	 * <p>
+	 * The aircraft's flight plan is written as indices into the
+	 * airspace's waypoints and airports, so the aircraft must be
+	 * read back into the same airspace. The aircraft which are
+	 * too near to it are not written, as these are found again on
+	 * the next update.
+	 * </p>
+	 * @param out - the output to write to
+	 * @param waypoints - the waypoints in the airspace
+	 * @param airports - the airports in the airspace
+	 * @throws IOException if the aircraft could not be written
+	 */
+	public void write(DataOutput out, Waypoint[] waypoints,
+			Airport[] airports) throws IOException {
+		out.writeUTF(flightName);
+		out.writeUTF(airline);
+		flightPlan.write(out, waypoints, airports);
+		position.write(out);
+		velocity.write(out);
+		currentTarget.write(out);
+		out.writeDouble(turnSpeed);
+		out.writeInt(verticalVelocity);
+		out.writeInt(score);
+		out.writeDouble(separationViolationCounter);
+		out.writeDouble(manualBearingTarget);
+		out.writeInt(currentRouteStage);
+		out.writeByte(altitudeState);
+		out.writeInt(timeWaiting);
+		out.writeByte((isManuallyControlled ? 0x01 : 0)
+				| (hasFinished ? 0x02 : 0)
+				| (hasCrashed ? 0x04 : 0)
+				| (isWaitingToLand ? 0x08 : 0)
+				| (isLanding ? 0x10 : 0)
+				| (inDanger ? 0x20 : 0)
+				| (airportPenaltyApplied ? 0x40 : 0));
+	}
+	
+	/**
+	 * Reads an aircraft written by
+	 * {@link #write(DataOutput, Waypoint[], Airport[])}.
+	 * @param in - the input to read from
+	 * @param waypoints - the waypoints in the airspace
+	 * @param airports - the airports in the airspace
+	 * @param difficulty - the difficulty of the game
+	 * @return the aircraft read
+	 * @throws IOException if the aircraft could not be read
+	 */
+	public static Aircraft read(DataInput in, Waypoint[] waypoints,
+			Airport[] airports, DifficultySetting difficulty)
+					throws IOException {
+		Aircraft aircraft = new Aircraft();
+
+		aircraft.flightName = in.readUTF();
+		aircraft.airline = in.readUTF();
+		aircraft.flightPlan = FlightPlan.read(in, waypoints, airports);
+		aircraft.position = Vector.read(in);
+		Vector velocity = Vector.read(in);
+		aircraft.currentTarget = Vector.read(in);
+
+		// The minimum separation is shared by all aircraft, so is set
+		// from the difficulty rather than read; this also scales the
+		// velocity, so the velocity read is restored afterwards
+		aircraft.velocity = velocity;
+		aircraft.setDifficultySettings(difficulty);
+		aircraft.velocity = velocity;
+
+		aircraft.turnSpeed = in.readDouble();
+		aircraft.verticalVelocity = in.readInt();
+		aircraft.score = in.readInt();
+		aircraft.separationViolationCounter = in.readDouble();
+		aircraft.manualBearingTarget = in.readDouble();
+		aircraft.currentRouteStage = in.readInt();
+		aircraft.altitudeState = in.readByte();
+		aircraft.timeWaiting = in.readInt();
+
+		int flags = in.readByte();
+		aircraft.isManuallyControlled = (flags & 0x01) != 0;
+		aircraft.hasFinished = (flags & 0x02) != 0;
+		aircraft.hasCrashed = (flags & 0x04) != 0;
+		aircraft.isWaitingToLand = (flags & 0x08) != 0;
+		aircraft.isLanding = (flags & 0x10) != 0;
+		aircraft.inDanger = (flags & 0x20) != 0;
+		aircraft.airportPenaltyApplied = (flags & 0x40) != 0;
+
+		// The target is not written as a waypoint, so is found from
+		// the stage of the route the aircraft is at
+		Waypoint[] route = aircraft.flightPlan.getRoute();
+		aircraft.currentTargetID = (aircraft.currentRouteStage < route.length)
+				? route[aircraft.currentRouteStage].getID()
+				: aircraft.flightPlan.getDestinationID();
+
+		return aircraft;
+	}
+	
+	/**
+	 * Takes a snapshot of the aircraft's current state.
+	 * @return a snapshot of the aircraft
+	 */
+	public Snapshot snapshot() {
+		return snapshot(null);
+	}
+	
+	/**
+	 * Sets the player whose snapshots hold the aircraft, which is told
+	 * whenever the aircraft changes from then on.
+	 * @param owner - the player
+	 */
+	void setOwner(Player owner) {
+		this.owner = owner;
+	}
+	
+	/**
+	 * Gets the player whose snapshots hold the aircraft.
+	 * @return the player, or <code>null</code> if the aircraft is not
+	 * 			yet in a snapshot
+	 */
+	Player getOwner() {
+		return owner;
+	}
+	
+	/**
+	 * Tells the aircraft's owner that it has changed, so that its next
+	 * snapshot is taken again.
+	 */
+	private void changed() {
+		if (owner != null) owner.aircraftChanged(this);
+	}
+	
+	/**
+	 * Takes a snapshot of the aircraft's current state.
+	 * <p>
+	 * If the aircraft has not changed since the previous snapshot
+	 * was taken, the previous snapshot is returned instead.
+	 * </p>
+	 * @param previous - the previous snapshot of the aircraft, or
+	 * 			<code>null</code> if there is none
+	 * @return a snapshot of the aircraft
+	 */
+	public Snapshot snapshot(Snapshot previous) {
+		if (previous != null && previous.matches(this)) {
+			return previous;
+		}
+		
+		return new Snapshot(this, previous);
+	}
+	
+	/**
+	 * Updates the aircraft to match a snapshot.
+	 * <p>
+	 * This is used to bring a remote aircraft up to date. Route
+	 * stages which have been altered are replaced by the waypoint
+	 * at the same location in the waypoints provided.
+	 * </p>
+	 * @param snapshot - the snapshot to apply
+	 * @param waypoints - the waypoints the aircraft's route may
+	 * 			be altered to use
+	 */
+	public void applySnapshot(Snapshot snapshot, Waypoint[] waypoints) {
+		changed();
+		position = new Vector(snapshot.x, snapshot.y, snapshot.z, true);
+		velocity = new Vector(snapshot.velocityX, snapshot.velocityY,
+				snapshot.velocityZ, true);
+		currentTarget = new Vector(snapshot.targetX, snapshot.targetY,
+				snapshot.targetZ, true);
+		currentTargetID = snapshot.targetID;
+		score = snapshot.score;
+		separationViolationCounter = snapshot.separationViolationCounter;
+		isManuallyControlled = snapshot.isManuallyControlled;
+		hasFinished = snapshot.hasFinished;
+		hasCrashed = snapshot.hasCrashed;
+		isWaitingToLand = snapshot.isWaitingToLand;
+		isLanding = snapshot.isLanding;
+		manualBearingTarget = snapshot.manualBearingTarget;
+		currentRouteStage = snapshot.currentRouteStage;
+		altitudeState = snapshot.altitudeState;
+		inDanger = snapshot.inDanger;
+		timeWaiting = snapshot.timeWaiting;
+		airportPenaltyApplied = snapshot.airportPenaltyApplied;
+		
+		// Apply any alterations to the route
+		Waypoint[] route = flightPlan.getRoute();
+		
+		for (int i = 0; i < route.length && i < snapshot.routeX.length; i++) {
+			Vector location = route[i].getLocation();
+			
+			if (location.getRelativeX() == snapshot.routeX[i]
+					&& location.getRelativeY() == snapshot.routeY[i]) {
+				continue;
+			}
+			
+			for (Waypoint waypoint : waypoints) {
+				if (waypoint.getLocation().getRelativeX() == snapshot.routeX[i]
+						&& waypoint.getLocation().getRelativeY()
+						== snapshot.routeY[i]) {
+					flightPlan.alterPath(i, waypoint);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * An immutable snapshot of an aircraft's state.
+	 * <p>
+	 * Snapshots hold only values, never references to live objects,
+	 * so may be read (or serialised) on any thread while the aircraft
+	 * continues to be updated.
+	 * </p>
+	 * <p>
+	 * Positions are stored relative to the size of the airspace.
+	 * </p>
+	 */
+	public static final class Snapshot implements Serializable {
+		
+		/** Serialisation ID */
+		private static final long serialVersionUID = -2250364710958326312L;
+		
+		/** The aircraft's name */
+		private final String name;
+		
+		/** The aircraft's airline */
+		private final String airline;
+		
+		/** The aircraft's x position */
+		private final double x;
+		
+		/** The aircraft's y position */
+		private final double y;
+		
+		/** The aircraft's altitude */
+		private final double z;
+		
+		/** The x component of the aircraft's velocity */
+		private final double velocityX;
+		
+		/** The y component of the aircraft's velocity */
+		private final double velocityY;
+		
+		/** The z component of the aircraft's velocity */
+		private final double velocityZ;
+		
+		/** The x position of the aircraft's current target */
+		private final double targetX;
+		
+		/** The y position of the aircraft's current target */
+		private final double targetY;
+		
+		/** The altitude of the aircraft's current target */
+		private final double targetZ;
+		
+		/** The ID of the waypoint the aircraft is heading towards */
+		private final int targetID;
+		
+		/** The aircraft's bearing */
+		private final double bearing;
+		
+		/** The aircraft's score */
+		private final int score;
+		
+		/** The time since a separation violation last occured */
+		private final double separationViolationCounter;
+		
+		/** Whether the aircraft is under manual control */
+		private final boolean isManuallyControlled;
+		
+		/** Whether the aircraft has reached its destination */
+		private final boolean hasFinished;
+		
+		/** Whether the aircraft has crashed */
+		private final boolean hasCrashed;
+		
+		/** Whether the aircraft is waiting to land */
+		private final boolean isWaitingToLand;
+		
+		/** Whether the aircraft is landing */
+		private final boolean isLanding;
+		
+		/** The bearing specified whilst under manual control */
+		private final double manualBearingTarget;
+		
+		/** The stage of its route the aircraft is at */
+		private final int currentRouteStage;
+		
+		/** Whether the aircraft is climbing or falling */
+		private final int altitudeState;
+		
+		/** Whether the aircraft is in danger of colliding */
+		private final boolean inDanger;
+		
+		/** How long the aircraft has been waiting to take off */
+		private final int timeWaiting;
+		
+		/** Whether the airport penalty has been applied */
+		private final boolean airportPenaltyApplied;
+		
+		/** The x positions of the waypoints in the aircraft's route */
+		private final double[] routeX;
+		
+		/** The y positions of the waypoints in the aircraft's route */
+		private final double[] routeY;
+		
+		
+		/**
+		 * Constructs a snapshot of an aircraft.
+		 * <p>
+		 * The route is shared with the previous snapshot if it
+		 * has not changed.
+		 * </p>
+		 * @param aircraft - the aircraft
+		 * @param previous - the previous snapshot of the aircraft, or
+		 * 			<code>null</code> if there is none
+		 */
+		private Snapshot(Aircraft aircraft, Snapshot previous) {
+			name = aircraft.flightName;
+			airline = aircraft.airline;
+			x = aircraft.position.getRelativeX();
+			y = aircraft.position.getRelativeY();
+			z = aircraft.position.getZ();
+			velocityX = aircraft.velocity.getRelativeX();
+			velocityY = aircraft.velocity.getRelativeY();
+			velocityZ = aircraft.velocity.getZ();
+			targetX = aircraft.currentTarget.getRelativeX();
+			targetY = aircraft.currentTarget.getRelativeY();
+			targetZ = aircraft.currentTarget.getZ();
+			targetID = aircraft.currentTargetID;
+			// The speed scale does not affect the direction of travel
+			bearing = StrictMath.atan2(aircraft.velocity.getAirspaceY(),
+					aircraft.velocity.getAirspaceX());
+			score = aircraft.score;
+			separationViolationCounter = aircraft.separationViolationCounter;
+			isManuallyControlled = aircraft.isManuallyControlled;
+			hasFinished = aircraft.hasFinished;
+			hasCrashed = aircraft.hasCrashed;
+			isWaitingToLand = aircraft.isWaitingToLand;
+			isLanding = aircraft.isLanding;
+			manualBearingTarget = aircraft.manualBearingTarget;
+			currentRouteStage = aircraft.currentRouteStage;
+			altitudeState = aircraft.altitudeState;
+			inDanger = aircraft.inDanger;
+			timeWaiting = aircraft.timeWaiting;
+			airportPenaltyApplied = aircraft.airportPenaltyApplied;
+			
+			if (previous != null && previous.routeMatches(aircraft)) {
+				routeX = previous.routeX;
+				routeY = previous.routeY;
+			} else {
+				Waypoint[] route = aircraft.flightPlan.getRoute();
+				routeX = new double[route.length];
+				routeY = new double[route.length];
+				
+				for (int i = 0; i < route.length; i++) {
+					routeX[i] = route[i].getLocation().getRelativeX();
+					routeY[i] = route[i].getLocation().getRelativeY();
+				}
+			}
+		}
+		
+		
+		/**
+		 * Checks whether this snapshot still matches an aircraft.
+		 * @param aircraft - the aircraft to check
+		 * @return <code>true</code> if the aircraft has not changed
+		 * 			since the snapshot was taken
+		 */
+		private boolean matches(Aircraft aircraft) {
+			return name.equals(aircraft.flightName)
+					&& x == aircraft.position.getRelativeX()
+					&& y == aircraft.position.getRelativeY()
+					&& z == aircraft.position.getZ()
+					&& velocityX == aircraft.velocity.getRelativeX()
+					&& velocityY == aircraft.velocity.getRelativeY()
+					&& velocityZ == aircraft.velocity.getZ()
+					&& targetX == aircraft.currentTarget.getRelativeX()
+					&& targetY == aircraft.currentTarget.getRelativeY()
+					&& targetZ == aircraft.currentTarget.getZ()
+					&& targetID == aircraft.currentTargetID
+					&& score == aircraft.score
+					&& separationViolationCounter
+							== aircraft.separationViolationCounter
+					&& isManuallyControlled == aircraft.isManuallyControlled
+					&& hasFinished == aircraft.hasFinished
+					&& hasCrashed == aircraft.hasCrashed
+					&& isWaitingToLand == aircraft.isWaitingToLand
+					&& isLanding == aircraft.isLanding
+					&& Double.compare(manualBearingTarget,
+							aircraft.manualBearingTarget) == 0
+					&& currentRouteStage == aircraft.currentRouteStage
+					&& altitudeState == aircraft.altitudeState
+					&& inDanger == aircraft.inDanger
+					&& timeWaiting == aircraft.timeWaiting
+					&& airportPenaltyApplied == aircraft.airportPenaltyApplied
+					&& routeMatches(aircraft);
+		}
+		
+		/**
+		 * Checks whether this snapshot's route matches an aircraft's.
+		 * @param aircraft - the aircraft to check
+		 * @return <code>true</code> if the aircraft's route has not
+		 * 			changed since the snapshot was taken
+		 */
+		private boolean routeMatches(Aircraft aircraft) {
+			Waypoint[] route = aircraft.flightPlan.getRoute();
+			
+			if (route.length != routeX.length) return false;
+			
+			for (int i = 0; i < route.length; i++) {
+				if (route[i].getLocation().getRelativeX() != routeX[i]
+						|| route[i].getLocation().getRelativeY() != routeY[i]) {
+					return false;
+				}
+			}
+			
+			return true;
+		}
+		
+		/**
+		 * Gets the aircraft's name.
+		 * @return the aircraft's name
+		 */
+		public String getName() {
+			return name;
+		}
+		
+		/**
+		 * Gets the aircraft's airline.
+		 * @return the aircraft's airline
+		 */
+		public String getAirline() {
+			return airline;
+		}
+		
+		/**
+		 * Gets the aircraft's x position, relative to the airspace's width.
+		 * @return the aircraft's relative x position
+		 */
+		public double getRelativeX() {
+			return x;
+		}
+		
+		/**
+		 * Gets the aircraft's y position, relative to the airspace's height.
+		 * @return the aircraft's relative y position
+		 */
+		public double getRelativeY() {
+			return y;
+		}
+		
+		/**
+		 * Gets the aircraft's altitude.
+		 * @return the aircraft's altitude
+		 */
+		public double getAltitude() {
+			return z;
+		}
+		
+		/**
+		 * Gets the aircraft's bearing.
+		 * @return the aircraft's bearing
+		 */
+		public double getBearing() {
+			return bearing;
+		}
+		
+		/**
+		 * Gets the aircraft's score.
+		 * @return the aircraft's score
+		 */
+		public int getScore() {
+			return score;
+		}
+		
+		/**
+		 * Gets whether the aircraft was under manual control.
+		 * @return <code>true</code> if the aircraft was under manual control
+		 */
+		public boolean isManuallyControlled() {
+			return isManuallyControlled;
+		}
+		
+		/**
+		 * Gets whether the aircraft had finished its flight.
+		 * @return <code>true</code> if the aircraft had finished
+		 */
+		public boolean isFinished() {
+			return hasFinished;
+		}
+		
+		/**
+		 * Gets the aircraft's altitude state.
+		 * @return the aircraft's altitude state
+		 */
+		public int getAltitudeState() {
+			return altitudeState;
+		}
+		
+		/**
+		 * Gets the stage of its route the aircraft was at.
+		 * @return the aircraft's route stage
+		 */
+		public int getRouteStage() {
+			return currentRouteStage;
+		}
+		
+	}
 
 }
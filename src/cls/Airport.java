@@ -8,6 +8,7 @@ import cls.Powerup.PowerupEffect;
 
 import btc.Main;
 import scn.Game;
+import lib.TextBuilder;
 import lib.jog.graphics;
 import lib.jog.input;
 import lib.jog.window;
@@ -43,15 +44,21 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 	/** The relative height of the departures area */
 	private static final double RELATIVE_DEPARTURES_HEIGHT = 37;
 	
+	/** The scale of the airport in airspace units, which is its minimum
+	 * scale in a window of the target size */
+	private static final double AIRSPACE_SCALE = Math.min(
+			Vector.AIRSPACE_WIDTH / Main.TARGET_WIDTH,
+			Vector.AIRSPACE_HEIGHT / Main.TARGET_HEIGHT);
+	
 	/** Whether the airport currently in use - i.e. whether an aircraft is either
 	 * arriving or departing */
 	public boolean isActive = false;
 	
 	/** Whether the arrivals area has been clicked */
-	private boolean isArrivalsClicked = false;
+	private transient boolean isArrivalsClicked = false;
 	
 	/** Whether the departures area has been clicked */
-	private boolean isDeparturesClicked = false;
+	private transient boolean isDeparturesClicked = false;
 	
 	/** A list of aircraft waiting to land at the airport */
 	public ArrayList<Aircraft> aircraftWaitingToLand = new ArrayList<Aircraft>();
@@ -67,11 +74,16 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 	private int hangarSize = 3;
 	
 	/** THe alpha of the fog effect rendered on an airport */
-	private double fogRender = 0;
+	private transient double fogRender = 0;
+	
+	/** The text of the number of aircraft in the hangar, created when first drawn */
+	private transient TextBuilder departuresLabel;
+	
+	/** The text of the number of aircraft waiting to land, created when first drawn */
+	private transient TextBuilder arrivalsLabel;
 	
-	private static final Image FOG =
-			graphics.newImage("gfx" + File.separator + "apt"
-					+ File.separator + "fog.png");
+	/** The image drawn over an airport affected by fog, loaded when first drawn */
+	private static Image fog;
 	
 	/**
 	 * Constructs an airport.
@@ -119,10 +131,38 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 	public void update(ArrayList<Aircraft> aircraft) {
 		aircraftWaitingToLand.clear();
 		for (Aircraft a : aircraft) {
-			if (a.currentTarget.equals(getLocation())) {
+			if (a.isHeadingTo(this)) {
 				aircraftWaitingToLand.add(a);
 			}
 		}
+		
+		updateHangar();
+	}
+	
+	/**
+	 * Updates how long the aircraft in the hangar have been waiting.
+	 * <p>
+	 * Aircraft which have waited for 5 seconds or more have their
+	 * score decremented, once only. This is done when updating rather
+	 * than drawing, so a game plays out the same whether or not it is
+	 * drawn (e.g. when a recorded game is replayed).
+	 * </p>
+	 */
+	private void updateHangar() {
+		if (aircraftHangar.size() == 0) return;
+		
+		int timeWaiting = getHangarTimeWaiting();
+		
+		for (Aircraft aircraft : aircraftHangar) {
+			aircraft.setTimeWaiting(timeWaiting);
+			
+			//Decrement the score of an aircraft that has stayed in the airport too long
+			//Only decrement score once
+			if (timeWaiting >= 5 && !aircraft.isAirportPenaltyApplied()) {
+				aircraft.decrementScoreLarge();
+				aircraft.setAirportPenaltyApplied(true);
+			}
+		}
 	}
 	
 	/**
@@ -134,10 +174,31 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 	 */
 	@Override
 	public void draw() {
+		drawImage();
+		drawStatus();
+	}
+	
+	/**
+	 * Draws the airport image.
+	 * <p>
+	 * The image does not change during the game, so may be drawn to a
+	 * layer which is kept between frames.
+	 * </p>
+	 */
+	public void drawImage() {
 		// Draw the airport image, applying the scale factor
 		graphics.drawScaled(Game.airportImage,
 				getLocationX(), getLocationY(), getMinScale());
-		
+	}
+	
+	/**
+	 * Draws the airport's state.
+	 * <p>
+	 * This includes the rectangles displayed when arrivals or departures
+	 * is active, and the fog drawn over the airport.
+	 * </p>
+	 */
+	public void drawStatus() {
 		int greenFine = 128;
 		int greenDanger = 0;
 		int redFine = 0;
@@ -147,12 +208,7 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 		if (aircraftHangar.size() > 0) {
 			// Colour fades from green (fine) to red (danger)
 			// over 5 seconds as plane is waiting
-			int timeWaiting = (int)(Game.getInstance().getTime() - timeEntered.get(0));
-			
-			for(int i = 0; i < aircraftHangar.size(); i++ ) {
-				int planeTimeWaiting = (int)(Game.getInstance().getTime() - timeEntered.get(0));
-				aircraftHangar.get(i).setTimeWaiting(planeTimeWaiting);
-			}
+			int timeWaiting = getHangarTimeWaiting();
 			
 			// Assume it hasn't been waiting
 			int greenNow = greenFine; 
@@ -162,17 +218,6 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 				if (timeWaiting >= 5) { // Cap at 5 seconds
 					greenNow = greenDanger;
 					redNow = redDanger;
-					
-					//Decrement the score of an aircraft that has stayed in the airport too long
-					//Only decrement score once
-					for(int i = 0; i < aircraftHangar.size(); i++ ) {
-						Aircraft currentAircraft = aircraftHangar.get(i);
-						if(currentAircraft.isAirportPenaltyApplied() == false && currentAircraft.getTimeWaiting() >= 5) {
-							currentAircraft.decrementScoreLarge();
-							currentAircraft.setAirportPenaltyApplied(true);
-						}
-					}
-					
 				} else {
 					// Colour between fine and danger, scaled by timeWaiting
 					greenNow = greenFine - (int)(Math.abs(greenFine-greenDanger)
@@ -194,8 +239,9 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 					getDeparturesWidth() - 1, getDeparturesHeight() - 1);
 			
 			// Print number of aircraft waiting
+			if (departuresLabel == null) departuresLabel = new TextBuilder();
 			graphics.setColour(255, 255, 255, 128);
-			graphics.print(Integer.toString(aircraftHangar.size()),
+			graphics.print(departuresLabel.clear().append(aircraftHangar.size()).toString(),
 					getDeparturesX() + (getDeparturesWidth() / 2),
 					getDeparturesY() + (getDeparturesHeight() / 2));
 		}
@@ -213,8 +259,9 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 					getArrivalsWidth() - 1, getArrivalsHeight() - 1);
 			
 			// Print number of aircraft waiting
+			if (arrivalsLabel == null) arrivalsLabel = new TextBuilder();
 			graphics.setColour(255, 255, 255, 128);
-			graphics.print(Integer.toString(aircraftWaitingToLand.size()),
+			graphics.print(arrivalsLabel.clear().append(aircraftWaitingToLand.size()).toString(),
 					getArrivalsX() + (getArrivalsWidth() / 2),
 					getArrivalsY() + (getArrivalsHeight() / 2));
 		}
@@ -229,7 +276,14 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 		}
 		if (dec) fogRender -= fogRender * 0.04;
 		graphics.setColour( 255, 255, 255, fogRender * 255 );
-		if (fogRender>0.001) graphics.drawScaled( FOG, getLocationX(), getLocationY()-getMinScale()*FOG.height()/3, getMinScale());
+		if (fogRender>0.001) {
+			if (fog == null) {
+				fog = graphics.newImage("gfx" + File.separator + "apt"
+						+ File.separator + "fog.png");
+			}
+			
+			graphics.drawScaled( fog, getLocationX(), getLocationY()-getMinScale()*fog.height()/3, getMinScale());
+		}
 	}
 
 	/**
@@ -337,6 +391,11 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 	
 	/**
 	 * Calculates whether a position is within the arrivals area, with an optional offset.
+	 * <p>
+	 * Without the offset, the position is checked in airspace units, as
+	 * the simulation does, so the result does not depend on the size
+	 * of the window.
+	 * </p>
 	 * @param position - the position to check
 	 * @param applyOffset - <code>true</code> if the airspace offset should be taken
 	 * 							into consideration, otherwise <code>false</code>
@@ -345,12 +404,14 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 	 */
 	public boolean isWithinArrivals(Vector position, boolean applyOffset) {
 		return (applyOffset ? isWithinArrivals(position) : isWithinRect(
-				(int)position.getX(),
-				(int)position.getY(),
-				(int)getArrivalsX(),
-				(int)getArrivalsY(),
-				(int)getArrivalsWidth(),
-				(int)getArrivalsHeight()));
+				(int)position.getAirspaceX(),
+				(int)position.getAirspaceY(),
+				(int)(getLocation().getAirspaceX()
+						- (RELATIVE_ARRIVALS_WIDTH / 2) * AIRSPACE_SCALE),
+				(int)(getLocation().getAirspaceY()
+						- (RELATIVE_ARRIVALS_HEIGHT / 2) * AIRSPACE_SCALE),
+				(int)(RELATIVE_ARRIVALS_WIDTH * AIRSPACE_SCALE),
+				(int)(RELATIVE_ARRIVALS_HEIGHT * AIRSPACE_SCALE)));
 	}
 	
 	/**
@@ -439,11 +500,31 @@ public class Airport extends Waypoint implements EventHandler, Serializable {
 	
 	/**
 	 * Gets the centre of the departures area.
+	 * <p>
+	 * Aircraft depart from here, so it is found in airspace units,
+	 * rather than from the departures area as drawn.
+	 * </p>
 	 * @return a waypoint at the centre of the departures area
 	 */
 	public Waypoint getDeparturesCentre() {
-		return new Waypoint(getDeparturesX() + (getDeparturesWidth() / 2),
-				getDeparturesY() + (getDeparturesHeight() / 2), true, false);
+		double x = getLocation().getAirspaceX() + (RELATIVE_DEPARTURES_X
+				+ (RELATIVE_DEPARTURES_WIDTH / 2) - RELATIVE_ARRIVALS_X
+				- (RELATIVE_ARRIVALS_WIDTH / 2)) * AIRSPACE_SCALE;
+		double y = getLocation().getAirspaceY() + (RELATIVE_DEPARTURES_Y
+				+ (RELATIVE_DEPARTURES_HEIGHT / 2) - RELATIVE_ARRIVALS_Y
+				- (RELATIVE_ARRIVALS_HEIGHT / 2)) * AIRSPACE_SCALE;
+		
+		return new Waypoint(x / Vector.AIRSPACE_WIDTH,
+				y / Vector.AIRSPACE_HEIGHT, true, true);
+	}
+	
+	/**
+	 * Gets how long the first aircraft in the hangar has been waiting.
+	 * @return the time the first aircraft in the hangar has been
+	 * 			waiting, in whole seconds
+	 */
+	private int getHangarTimeWaiting() {
+		return (int)(Game.getInstance().getTime() - timeEntered.get(0));
 	}
 	
 	/**
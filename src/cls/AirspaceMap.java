@@ -0,0 +1,185 @@
+package cls;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * The fixed waypoints and airports which make up the airspace.
+ * <p>
+ * The map is built once, when a game starts, and is not changed
+ * afterwards. Each waypoint in it is given a small integer ID: its
+ * position in the map. Players, aircraft and flight plans refer to
+ * the map's waypoints directly while the game runs, but when they are
+ * serialised (e.g. to be sent to the other player), the map's
+ * waypoints are written as their IDs, and are read back as the
+ * receiver's own waypoints with the same IDs. The waypoints'
+ * coordinates, names and airports' images are therefore never sent.
+ * </p>
+ * <p>
+ * Both clients build their maps from the same waypoints, in the same
+ * order, so IDs agree between them. Waypoints which are not part of
+ * the map (e.g. the multiplayer game's powerup points, whose powerups
+ * change during play) are still serialised in full.
+ * </p>
+ * <p>
+ * Airports are serialised by ID as well, so the state of their
+ * hangars is not sent; each client keeps its own.
+ * </p>
+ */
+public final class AirspaceMap {
+
+	/** The map of the game currently being played */
+	private static volatile AirspaceMap current;
+
+	/** The map's waypoints, indexed by ID */
+	private final Waypoint[] waypoints;
+
+
+	/**
+	 * Constructs a new airspace map.
+	 * <p>
+	 * The waypoints are given IDs in the order they are passed in, and
+	 * must not already belong to another map.
+	 * </p>
+	 * @param airspaceWaypoints - the waypoints aircraft can be routed
+	 * 			through
+	 * @param locationWaypoints - the entry points, exit points and
+	 * 			airports
+	 */
+	public AirspaceMap(Waypoint[] airspaceWaypoints,
+			Waypoint[] locationWaypoints) {
+		waypoints = new Waypoint[airspaceWaypoints.length
+		                         + locationWaypoints.length];
+
+		System.arraycopy(airspaceWaypoints, 0, waypoints, 0,
+				airspaceWaypoints.length);
+		System.arraycopy(locationWaypoints, 0, waypoints,
+				airspaceWaypoints.length, locationWaypoints.length);
+
+		for (int i = 0; i < waypoints.length; i++) {
+			waypoints[i].id = i;
+		}
+	}
+
+
+	/**
+	 * Gets the map of the game currently being played.
+	 * @return the current map, or <code>null</code> if no game
+	 * 			has been started
+	 */
+	public static AirspaceMap getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Sets the map of the game currently being played.
+	 * <p>
+	 * Waypoints received from the other player are resolved against
+	 * this map.
+	 * </p>
+	 * @param map - the new current map
+	 */
+	public static void setCurrent(AirspaceMap map) {
+		current = map;
+	}
+
+	/**
+	 * Gets a waypoint by ID.
+	 * @param id - the ID of the waypoint
+	 * @return the waypoint, or <code>null</code> if there is no
+	 * 			waypoint with the ID
+	 */
+	public Waypoint getWaypoint(int id) {
+		return (id >= 0 && id < waypoints.length) ? waypoints[id] : null;
+	}
+
+	/**
+	 * Gets the ID of a waypoint.
+	 * @param waypoint - the waypoint
+	 * @return the waypoint's ID, or -1 if the waypoint is not part of
+	 * 			the map
+	 */
+	public int getID(Waypoint waypoint) {
+		return contains(waypoint) ? waypoint.id : -1;
+	}
+
+	/**
+	 * Gets the ID of the waypoint at a location.
+	 * <p>
+	 * This searches the whole map, so should only be used where the
+	 * waypoint itself is not known, e.g. when reading a saved game.
+	 * </p>
+	 * @param location - the location of the waypoint
+	 * @return the ID of the waypoint, or -1 if there is no waypoint
+	 * 			at the location
+	 */
+	public int getID(Vector location) {
+		for (int i = 0; i < waypoints.length; i++) {
+			if (waypoints[i].getLocation().equals(location)) return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Checks whether a waypoint is part of the map.
+	 * <p>
+	 * Only the map's own waypoints are part of it; copies of them
+	 * are not.
+	 * </p>
+	 * @param waypoint - the waypoint to check
+	 * @return <code>true</code> if the waypoint is part of the map,
+	 * 			otherwise <code>false</code>
+	 */
+	public boolean contains(Waypoint waypoint) {
+		return waypoint != null && getWaypoint(waypoint.id) == waypoint;
+	}
+
+	/**
+	 * Gets the number of waypoints in the map.
+	 * @return the number of waypoints
+	 */
+	public int size() {
+		return waypoints.length;
+	}
+
+
+	/**
+	 * The serialised form of a waypoint which is part of the map.
+	 */
+	static final class Reference implements Serializable {
+
+		/** Serialisation ID */
+		private static final long serialVersionUID = -6021466358925390231L;
+
+		/** The ID of the waypoint */
+		private final int id;
+
+		/**
+		 * Constructs a new reference to a waypoint.
+		 * @param id - the ID of the waypoint
+		 */
+		Reference(int id) {
+			this.id = id;
+		}
+
+		/**
+		 * Replaces the reference with the current map's waypoint.
+		 * @return the waypoint with the referenced ID
+		 * @throws ObjectStreamException if there is no such waypoint
+		 */
+		private Object readResolve() throws ObjectStreamException {
+			AirspaceMap map = current;
+			Waypoint waypoint = (map != null) ? map.getWaypoint(id) : null;
+
+			if (waypoint == null) {
+				throw new InvalidObjectException("No waypoint with ID " + id);
+			}
+
+			return waypoint;
+		}
+
+	}
+
+}
@@ -1,5 +1,8 @@
 package cls;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 
@@ -23,6 +26,9 @@ public class FlightPlan implements Serializable {
 	/** The position which the aircraft following this path will exit at */
 	private Vector destination;
 	
+	/** The ID of the waypoint which the aircraft following this path will exit at */
+	private int destinationID;
+	
 	/** The airport which the aircraft following this path originated at */
 	private Airport originAirport;
 	
@@ -48,10 +54,40 @@ public class FlightPlan implements Serializable {
 		this.origin = originPoint.getLocation();
 		this.destinationName = destinationName;
 		this.destination = destinationPoint.getLocation();
+		this.destinationID = destinationPoint.getID();
 		this.originAirport = originAirport;
 		this.destinationAirport= destinationAirport;
 	}
 	
+	/**
+	 * Constructs a flight plan which has already been planned.
+	 * <p>
+	 * The destination's ID is looked up from its position in the
+	 * current airspace map.
+	 * </p>
+	 * @param route - the route to follow
+	 * @param originName - the name of the origin location
+	 * @param origin - the position at which the flight plan starts
+	 * @param destinationName - the name of the destination location
+	 * @param destination - the position at which the flight plan ends
+	 * @param originAirport - the airport which the aircraft originated at
+	 * @param destinationAirport - the airport which the aircraft is travelling to
+	 */
+	private FlightPlan(Waypoint[] route, String originName, Vector origin,
+			String destinationName, Vector destination,
+			Airport originAirport, Airport destinationAirport) {
+		this.route = route;
+		this.originName = originName;
+		this.origin = origin;
+		this.destinationName = destinationName;
+		this.destination = destination;
+		this.originAirport = originAirport;
+		this.destinationAirport = destinationAirport;
+		
+		AirspaceMap map = AirspaceMap.getCurrent();
+		this.destinationID = (map != null) ? map.getID(destination) : -1;
+	}
+	
 	/**
 	 * Constructs a flight plan.
 	 * @param flightPlan - the flight plan to copy
@@ -65,10 +101,10 @@ public class FlightPlan implements Serializable {
 		destinationName = flightPlan.destinationName;
 		destination = (flightPlan.destination != null)
 				? flightPlan.destination.clone() : null;
-		originAirport = (flightPlan.originAirport != null)
-				? flightPlan.originAirport.clone() : null;
-		destinationAirport = (flightPlan.destinationAirport != null)
-				? flightPlan.destinationAirport.clone() : null;
+		destinationID = flightPlan.destinationID;
+		// Airports are part of the airspace map, so are shared
+		originAirport = flightPlan.originAirport;
+		destinationAirport = flightPlan.destinationAirport;
 	}
 	
 	
@@ -112,6 +148,15 @@ public class FlightPlan implements Serializable {
 		return destination;
 	}
 	
+	/**
+	 * Gets the ID of the waypoint at the end of the flight plan.
+	 * @return the ID of the waypoint at the end of the flight plan, or -1
+	 * 			if it is not part of the airspace map
+	 */
+	public int getDestinationID() {
+		return destinationID;
+	}
+	
 	/**
 	 * Gets the airport at the beginning of the flight plan.
 	 * @return the airport at the beginning of the flight plan.
@@ -220,7 +265,7 @@ public class FlightPlan implements Serializable {
 					// Check we have not already selected the waypoint
 					// If we have, skip evaluating the point
 					// This protects the aircraft from getting stuck looping between points
-					if (routePoints.getLocation().equals(point.getLocation())) {
+					if (routePoints.equals(point)) {
 						skip = true; //flag to skip
 						break; // no need to check rest of list, already found a match.
 					}
@@ -230,10 +275,10 @@ public class FlightPlan implements Serializable {
 				// Do not consider offscreen waypoints which are not the destination
 				// Also skip if flagged as a previously selected waypoint
 				if (skip == true
-						|| point.getLocation().equals(currentPos.getLocation())
-						|| point.getLocation().equals(origin.getLocation())
+						|| point.equals(currentPos)
+						|| point.equals(origin)
 						|| ((point.isEntryOrExit())
-								&& (!point.getLocation().equals(destination.getLocation())))) {
+								&& (!point.equals(destination)))) {
 					skip = false;
 					continue;
 				} else {
@@ -255,7 +300,7 @@ public class FlightPlan implements Serializable {
 
 			// If the cheapest waypoint is the destination, then we have sucessfully
 			// generated a route to the aircraft's destination, so break out of loop
-			if (cheapest.getLocation().equals(destination.getLocation())) {
+			if (cheapest.equals(destination)) {
 				// route has reached destination 
 				// break out of while loop
 				atDestination = true;
@@ -302,4 +347,84 @@ public class FlightPlan implements Serializable {
 		return new FlightPlan(this);
 	}
 	
+	/**
+	 * Writes the flight plan in a compact binary form.
+	 * <p>
+	 * Waypoints and airports are written as their indices in the
+	 * airspace's arrays, so the flight plan must be read back into
+	 * the same airspace.
+	 * </p>
+	 * @param out - the output to write to
+	 * @param waypoints - the waypoints in the airspace
+	 * @param airports - the airports in the airspace
+	 * @throws IOException if the flight plan could not be written, or
+	 * 			uses a waypoint which is not in the airspace
+	 */
+	public void write(DataOutput out, Waypoint[] waypoints,
+			Airport[] airports) throws IOException {
+		out.writeInt(route.length);
+		
+		for (Waypoint waypoint : route) {
+			int index = indexOf(waypoint, waypoints);
+			
+			if (index == -1) {
+				throw new IOException("Waypoint not in airspace: " + waypoint);
+			}
+			
+			out.writeInt(index);
+		}
+		
+		out.writeUTF(originName);
+		origin.write(out);
+		out.writeUTF(destinationName);
+		destination.write(out);
+		out.writeInt(indexOf(originAirport, airports));
+		out.writeInt(indexOf(destinationAirport, airports));
+	}
+	
+	/**
+	 * Reads a flight plan written by
+	 * {@link #write(DataOutput, Waypoint[], Airport[])}.
+	 * @param in - the input to read from
+	 * @param waypoints - the waypoints in the airspace
+	 * @param airports - the airports in the airspace
+	 * @return the flight plan read
+	 * @throws IOException if the flight plan could not be read
+	 */
+	public static FlightPlan read(DataInput in, Waypoint[] waypoints,
+			Airport[] airports) throws IOException {
+		Waypoint[] route = new Waypoint[in.readInt()];
+		
+		for (int i = 0; i < route.length; i++) {
+			route[i] = waypoints[in.readInt()];
+		}
+		
+		String originName = in.readUTF();
+		Vector origin = Vector.read(in);
+		String destinationName = in.readUTF();
+		Vector destination = Vector.read(in);
+		int originAirport = in.readInt();
+		int destinationAirport = in.readInt();
+		
+		return new FlightPlan(route, originName, origin, destinationName,
+				destination,
+				(originAirport != -1) ? airports[originAirport] : null,
+				(destinationAirport != -1) ? airports[destinationAirport] : null);
+	}
+	
+	/**
+	 * Finds an object in an array by identity.
+	 * @param object - the object to find
+	 * @param array - the array to search
+	 * @return the index of the object in the array, or -1 if it is
+	 * 			not in the array (or is <code>null</code>)
+	 */
+	private static int indexOf(Object object, Object[] array) {
+		for (int i = 0; object != null && i < array.length; i++) {
+			if (array[i] == object) return i;
+		}
+		
+		return -1;
+	}
+	
 }
\ No newline at end of file
@@ -12,6 +12,7 @@ import org.newdawn.slick.Color;
 
 import btc.Main;
 import scn.Game;
+import lib.TextBuilder;
 import lib.jog.graphics;
 import lib.jog.input;
 import lib.jog.window;
@@ -63,6 +64,9 @@ public class FlightStrip implements Serializable {
     /** The flight strip's vertical position */
     private double yOffset;
 
+    /** The text of the aircraft's altitude, created when first drawn */
+    private transient TextBuilder altitudeLabel;
+
 
     /**
      * Constructor for flight strips.
@@ -225,7 +229,10 @@ public class FlightStrip implements Serializable {
     }
 
     private void drawAltitude() {
-    	graphics.print(String.format("%,dFT", (int) (aircraft.getPosition().getZ())),
+    	if (altitudeLabel == null) altitudeLabel = new TextBuilder();
+    	graphics.print(altitudeLabel.clear()
+    			.appendGrouped((int) (aircraft.getPosition().getZ()))
+    			.append("FT").toString(),
     			(xOffset + 4 + 40), ((yOffset + positionY + height) - 30));
     }
 
@@ -416,6 +416,15 @@ public class InputBox {
 		this.alertDuration = alertDuration / 1000;
 	}
 	
+	/**
+	 * Determines if the input box is flashing red.
+	 * @return <code>true</code> if the input box is alerting,
+	 * 			otherwise <code>false</code>
+	 */
+	public boolean isAlerting() {
+		return alerting;
+	}
+	
 	/**
 	 * Determines if the input box contains any text.
 	 * @return <code>true</code> if the input box contains text,
@@ -1,7 +1,15 @@
 package cls;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import btc.Main;
 
@@ -40,28 +48,28 @@ public class Player implements Serializable {
 	private ArrayList<Aircraft> aircraft;
 	
 	/** Array list of flight-strips and ting */
-	private ArrayList<FlightStrip> flightStrips;
+	private transient ArrayList<FlightStrip> flightStrips;
 	
 	/** The waypoints under the player's control */
 	private Waypoint[] waypoints;
 	
 	/** The colour to draw this player's aircraft */
-	private Integer[] aircraftColour;
+	private transient Integer[] aircraftColour;
 	
 	/** The aircraft which this player has selected */
 	private Aircraft selectedAircraft;
 	
 	/** The currently selected waypoint */
-	private Waypoint selectedWaypoint;
+	private transient Waypoint selectedWaypoint;
 
 	/** The position of the selected waypoint in the selected aircraft's route */
-	private int selectedPathpoint;
+	private transient int selectedPathpoint;
 	
 	/** Tracks if the manual heading compass of an aircraft has been clicked */
-	private boolean compassClicked;
+	private transient boolean compassClicked;
 	
 	/** Tracks if a waypoint in the selected aircraft's flight plan has been clicked */
-	private boolean waypointClicked;
+	private transient boolean waypointClicked;
 	
 	/** The player's current turning state */
 	private TurningState turningState;
@@ -96,6 +104,15 @@ public class Player implements Serializable {
 	/** The number of planes that reached their destinations */
 	private int planesCleared;
 	
+	/** The most recent snapshot of the player */
+	private transient Snapshot lastSnapshot;
+	
+	/** The snapshot of each aircraft in the most recent snapshot */
+	private transient Map<Aircraft, Aircraft.Snapshot> aircraftSnapshots;
+	
+	/** The aircraft which have changed since the most recent snapshot */
+	private transient Set<Aircraft> changedAircraft;
+	
 	
 	// Constructor: ---------------------------------------------------------------------
 	
@@ -139,9 +156,7 @@ public class Player implements Serializable {
 		
 		
 		// Set aircraft colour
-		// Default is white
-		aircraftColour = (id < AIRCRAFT_COLOURS.length)
-				? AIRCRAFT_COLOURS[id] : new Integer[] {255, 255, 255};
+		aircraftColour = getAircraftColour(id);
 	}
 	
 	/**
@@ -158,8 +173,7 @@ public class Player implements Serializable {
 		this.maxAircraft = player.maxAircraft;
 		this.selectedAircraft = (player.selectedAircraft != null)
 				? player.selectedAircraft.clone() : null;
-		this.selectedWaypoint = (player.selectedWaypoint != null)
-				? player.selectedWaypoint.clone() : null;
+		this.selectedWaypoint = player.selectedWaypoint;
 		this.selectedPathpoint = player.selectedPathpoint;
 		this.compassClicked = player.compassClicked;
 		this.waypointClicked = player.waypointClicked;
@@ -173,7 +187,7 @@ public class Player implements Serializable {
 				? (ArrayList<FlightStrip>) player.flightStrips.clone() : null;
 		this.powerups = (player.powerups != null)
 				? (ArrayList<Powerup>) player.powerups.clone() : null;
-		this.aircraftColour = player.aircraftColour.clone();
+		this.aircraftColour = player.aircraftColour;
 		this.planesCollided = player.planesCollided;
 		this.powerUpsCollected = player.powerUpsCollected;
 		this.planesLanded = player.planesLanded;
@@ -222,7 +236,25 @@ public class Player implements Serializable {
 		return aircraft;
 	}
 	
+	/**
+	 * Gets a list of the player's flight strips.
+	 * <p>
+	 * Flight strips are not serialised, so a player received from the
+	 * network is given a new strip for each of its aircraft the first
+	 * time its strips are needed.
+	 * </p>
+	 * @return a list of the player's flight strips
+	 */
 	public ArrayList<FlightStrip> getFlightStrips() {
+		if (flightStrips == null) {
+			flightStrips = new ArrayList<FlightStrip>();
+			
+			for (Aircraft a : aircraft) {
+				flightStrips.add(new FlightStrip(a,
+						FlightStrip.BACKGROUND_COLOURS[id]));
+			}
+		}
+		
 		return flightStrips;
 	}
 	
@@ -600,6 +632,37 @@ public class Player implements Serializable {
 	}
 	
 	
+	/**
+	 * Gets the colour to draw a player's aircraft.
+	 * @param id - the player's ID
+	 * @return the player's aircraft colour; white if the player has no
+	 * 			colour of their own
+	 */
+	private static Integer[] getAircraftColour(int id) {
+		return (id < AIRCRAFT_COLOURS.length)
+				? AIRCRAFT_COLOURS[id] : new Integer[] {255, 255, 255};
+	}
+	
+	/**
+	 * Reads the player from a stream.
+	 * <p>
+	 * Only the player's state is sent; the selection, which is local to
+	 * each client, is cleared, and the aircraft colour is looked up
+	 * from the player's ID.
+	 * </p>
+	 * @param in - the stream to read from
+	 * @throws IOException if the player could not be read
+	 * @throws ClassNotFoundException if a class in the stream could not
+	 * 			be found
+	 */
+	private void readObject(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		
+		selectedPathpoint = -1;
+		aircraftColour = getAircraftColour(id);
+	}
+	
 	/**
 	 * Clones the player.
 	 */
@@ -607,6 +670,330 @@ public class Player implements Serializable {
 		return new Player(this);
 	}
 	
+	/**
+	 * Takes a snapshot of the player's current state.
+	 * <p>
+	 * Aircraft tell the player when they change, and only those
+	 * aircraft (and any which are new to the player) are snapshotted
+	 * again; the snapshots of the others are shared with the last
+	 * snapshot without being looked at. If nothing has changed, the
+	 * last snapshot is returned.
+	 * </p>
+	 * <p>
+	 * This must only be called from the game thread.
+	 * </p>
+	 * @return a snapshot of the player
+	 */
+	public Snapshot snapshot() {
+		if (aircraftSnapshots == null) {
+			aircraftSnapshots = new IdentityHashMap<Aircraft, Aircraft.Snapshot>();
+			changedAircraft = Collections.newSetFromMap(
+					new IdentityHashMap<Aircraft, Boolean>());
+		}
+		
+		List<Aircraft.Snapshot> snapshots =
+				new ArrayList<Aircraft.Snapshot>(aircraft.size());
+		
+		for (Aircraft a : aircraft) {
+			Aircraft.Snapshot previous = aircraftSnapshots.get(a);
+			
+			if (previous == null || a.getOwner() != this
+					|| changedAircraft.contains(a)) {
+				previous = a.snapshot(previous);
+				aircraftSnapshots.put(a, previous);
+				a.setOwner(this);
+			}
+			
+			snapshots.add(previous);
+		}
+		
+		changedAircraft.clear();
+		
+		// Forget any aircraft which the player no longer has
+		if (aircraftSnapshots.size() > aircraft.size()) {
+			Set<Aircraft> current = Collections.newSetFromMap(
+					new IdentityHashMap<Aircraft, Boolean>());
+			current.addAll(aircraft);
+			aircraftSnapshots.keySet().retainAll(current);
+		}
+		
+		Snapshot snapshot = new Snapshot(this, snapshots);
+		
+		if (!snapshot.equals(lastSnapshot)) {
+			lastSnapshot = snapshot;
+		}
+		
+		return lastSnapshot;
+	}
+	
+	/**
+	 * Notes that one of the player's aircraft has changed, so that it is
+	 * snapshotted again by the next {@link #snapshot()}.
+	 * @param changed - the aircraft which has changed
+	 */
+	void aircraftChanged(Aircraft changed) {
+		if (changedAircraft != null) changedAircraft.add(changed);
+	}
+	
+	/**
+	 * Updates the player's scores and statistics to match a snapshot.
+	 * <p>
+	 * The player's aircraft are not changed.
+	 * </p>
+	 * @param snapshot - the snapshot to apply
+	 */
+	public void applySnapshot(Snapshot snapshot) {
+		name = snapshot.name;
+		maxAircraft = snapshot.maxAircraft;
+		flightGenerationTimeElapsed = snapshot.flightGenerationTimeElapsed;
+		controlAltitude = snapshot.controlAltitude;
+		score = snapshot.score;
+		lives = snapshot.lives;
+		planesCollided = snapshot.planesCollided;
+		powerUpsCollected = snapshot.powerUpsCollected;
+		planesLanded = snapshot.planesLanded;
+		planesTakenOff = snapshot.planesTakenOff;
+		planesCleared = snapshot.planesCleared;
+	}
+	
+	
+	/**
+	 * An immutable snapshot of a player's state.
+	 * <p>
+	 * Snapshots hold only values and aircraft snapshots, never
+	 * references to live objects, so may be read (or serialised) on
+	 * any thread while the game continues to be updated.
+	 * </p>
+	 */
+	public static final class Snapshot implements Serializable {
+		
+		/** Serialisation ID */
+		private static final long serialVersionUID = 6139702258316477207L;
+		
+		/** The player's unique ID */
+		private final int id;
+		
+		/** The player's name */
+		private final String name;
+		
+		/** The maximum number of aircraft allowed */
+		private final int maxAircraft;
+		
+		/** The time elapsed since the last flight was generated */
+		private final double flightGenerationTimeElapsed;
+		
+		/** The player's control altitude */
+		private final int controlAltitude;
+		
+		/** The player's score */
+		private final int score;
+		
+		/** The player's remaining lives */
+		private final int lives;
+		
+		/** The number of planes that collided */
+		private final int planesCollided;
+		
+		/** The number of power-ups collected */
+		private final int powerUpsCollected;
+		
+		/** The number of planes landed */
+		private final int planesLanded;
+		
+		/** The number of planes taken off */
+		private final int planesTakenOff;
+		
+		/** The number of planes that reached their destinations */
+		private final int planesCleared;
+		
+		/** The name of the selected aircraft, or <code>null</code> */
+		private final String selectedAircraftName;
+		
+		/** The snapshots of the player's aircraft, in order */
+		private final List<Aircraft.Snapshot> aircraft;
+		
+		
+		/**
+		 * Constructs a snapshot of a player.
+		 * @param player - the player
+		 * @param aircraft - the snapshots of the player's aircraft
+		 */
+		private Snapshot(Player player, List<Aircraft.Snapshot> aircraft) {
+			id = player.id;
+			name = player.name;
+			maxAircraft = player.maxAircraft;
+			flightGenerationTimeElapsed = player.flightGenerationTimeElapsed;
+			controlAltitude = player.controlAltitude;
+			score = player.score;
+			lives = player.lives;
+			planesCollided = player.planesCollided;
+			powerUpsCollected = player.powerUpsCollected;
+			planesLanded = player.planesLanded;
+			planesTakenOff = player.planesTakenOff;
+			planesCleared = player.planesCleared;
+			selectedAircraftName = (player.selectedAircraft != null)
+					? player.selectedAircraft.getName() : null;
+			this.aircraft = Collections.unmodifiableList(aircraft);
+		}
+		
+		/**
+		 * Constructs a snapshot holding only some of another
+		 * snapshot's aircraft.
+		 * @param snapshot - the snapshot to copy
+		 * @param aircraft - the aircraft snapshots to hold
+		 */
+		private Snapshot(Snapshot snapshot, List<Aircraft.Snapshot> aircraft) {
+			id = snapshot.id;
+			name = snapshot.name;
+			maxAircraft = snapshot.maxAircraft;
+			flightGenerationTimeElapsed = snapshot.flightGenerationTimeElapsed;
+			controlAltitude = snapshot.controlAltitude;
+			score = snapshot.score;
+			lives = snapshot.lives;
+			planesCollided = snapshot.planesCollided;
+			powerUpsCollected = snapshot.powerUpsCollected;
+			planesLanded = snapshot.planesLanded;
+			planesTakenOff = snapshot.planesTakenOff;
+			planesCleared = snapshot.planesCleared;
+			selectedAircraftName = snapshot.selectedAircraftName;
+			this.aircraft = Collections.unmodifiableList(aircraft);
+		}
+		
+		
+		/**
+		 * Creates a snapshot holding only some of this snapshot's aircraft.
+		 * @param names - the names of the aircraft to keep
+		 * @return a snapshot holding only the named aircraft
+		 */
+		public Snapshot retain(Collection<String> names) {
+			List<Aircraft.Snapshot> retained = new ArrayList<Aircraft.Snapshot>();
+			
+			for (Aircraft.Snapshot a : aircraft) {
+				if (names.contains(a.getName())) retained.add(a);
+			}
+			
+			return new Snapshot(this, retained);
+		}
+		
+		/**
+		 * Finds the snapshot of one of the player's aircraft.
+		 * @param aircraftName - the name of the aircraft
+		 * @return the aircraft's snapshot, or <code>null</code> if the
+		 * 			snapshot does not hold the aircraft
+		 */
+		public Aircraft.Snapshot getAircraft(String aircraftName) {
+			for (Aircraft.Snapshot a : aircraft) {
+				if (a.getName().equals(aircraftName)) return a;
+			}
+			
+			return null;
+		}
+		
+		/**
+		 * Gets the snapshots of the player's aircraft.
+		 * @return the player's aircraft, which cannot be modified
+		 */
+		public List<Aircraft.Snapshot> getAircraft() {
+			return aircraft;
+		}
+		
+		public int getID() {
+			return id;
+		}
+		
+		public String getName() {
+			return name;
+		}
+		
+		public int getScore() {
+			return score;
+		}
+		
+		public int getLives() {
+			return lives;
+		}
+		
+		public int getPlanesCollided() {
+			return planesCollided;
+		}
+		
+		public int getPowerUpsCollected() {
+			return powerUpsCollected;
+		}
+		
+		public int getPlanesLanded() {
+			return planesLanded;
+		}
+		
+		public int getPlanesTakenOff() {
+			return planesTakenOff;
+		}
+		
+		public int getPlanesCleared() {
+			return planesCleared;
+		}
+		
+		public String getSelectedAircraftName() {
+			return selectedAircraftName;
+		}
+		
+		/**
+		 * Compares this snapshot to another snapshot.
+		 * <p>
+		 * Aircraft snapshots are compared by identity, as an aircraft
+		 * snapshot is only replaced when the aircraft changes.
+		 * </p>
+		 * @param obj - the object to compare with
+		 * @return <code>true</code> if and only if obj is an
+		 * 			equivalent snapshot
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Snapshot)) return false;
+			
+			Snapshot other = (Snapshot) obj;
+			
+			if (aircraft.size() != other.aircraft.size()) return false;
+			
+			for (int i = 0; i < aircraft.size(); i++) {
+				if (aircraft.get(i) != other.aircraft.get(i)) return false;
+			}
+			
+			return id == other.id
+					&& ((name == null) ? other.name == null
+							: name.equals(other.name))
+					&& maxAircraft == other.maxAircraft
+					&& flightGenerationTimeElapsed
+							== other.flightGenerationTimeElapsed
+					&& controlAltitude == other.controlAltitude
+					&& score == other.score
+					&& lives == other.lives
+					&& planesCollided == other.planesCollided
+					&& powerUpsCollected == other.powerUpsCollected
+					&& planesLanded == other.planesLanded
+					&& planesTakenOff == other.planesTakenOff
+					&& planesCleared == other.planesCleared
+					&& ((selectedAircraftName == null)
+							? other.selectedAircraftName == null
+							: selectedAircraftName
+									.equals(other.selectedAircraftName));
+		}
+		
+		/**
+		 * Generates the hash code for this snapshot.
+		 * @return the hash code for this snapshot
+		 */
+		@Override
+		public int hashCode() {
+			int result = id;
+			result = 31 * result + score;
+			result = 31 * result + aircraft.size();
+			return result;
+		}
+		
+	}
+	
 }
 
 	
@@ -0,0 +1,150 @@
+package cls;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An update of a player's state which only carries some of its aircraft.
+ * <p>
+ * The update is built from a {@link Player.Snapshot}, so holds no
+ * references to the live game state, and may be serialised on the
+ * network thread while the game continues.
+ * </p>
+ * <p>
+ * The player's scores and statistics are always sent in full, along
+ * with the names of all of its aircraft. Aircraft which are left out
+ * of the update are kept as they were when it is applied, and
+ * continue to be simulated locally until they are next included.
+ * </p>
+ * <p>
+ * Aircraft snapshots only carry an aircraft's changing state, so
+ * each aircraft must be sent in full once, when it first appears
+ * (see {@link #apply(Player, Map)}).
+ * </p>
+ * <p>
+ * Each update is complete in itself, so it does not matter if
+ * earlier updates were lost or superseded.
+ * </p>
+ */
+public class PlayerUpdate implements Serializable {
+
+	/** Serialisation ID */
+	private static final long serialVersionUID = -4195012587021538468L;
+
+	/** The snapshot of the player, holding only the included aircraft */
+	private Player.Snapshot player;
+
+	/** The names of all of the player's aircraft, in order */
+	private String[] aircraftNames;
+
+
+	/**
+	 * Constructs a new player update.
+	 * @param snapshot - the snapshot of the player to send
+	 * @param included - the names of the aircraft to include
+	 */
+	public PlayerUpdate(Player.Snapshot snapshot, Collection<String> included) {
+		this.player = snapshot.retain(included);
+		this.aircraftNames = new String[snapshot.getAircraft().size()];
+
+		for (int i = 0; i < aircraftNames.length; i++) {
+			aircraftNames[i] = snapshot.getAircraft().get(i).getName();
+		}
+	}
+
+
+	/**
+	 * Applies the update to the previous state of the player.
+	 * <p>
+	 * Aircraft which are not yet known are taken from the aircraft
+	 * which have been sent in full. Aircraft which are in neither
+	 * (e.g. aircraft which have just been generated, and have not
+	 * yet arrived) are left out until the update which follows
+	 * their arrival.
+	 * </p>
+	 * @param previous - the previous state of the player
+	 * @param arrived - the aircraft which have been sent in full,
+	 * 			by name; aircraft are removed once they have been added
+	 * @return the updated player
+	 */
+	public Player apply(Player previous, Map<String, Aircraft> arrived) {
+		ArrayList<Aircraft> aircraft = new ArrayList<Aircraft>();
+		ArrayList<FlightStrip> flightStrips = new ArrayList<FlightStrip>();
+
+		previous.applySnapshot(player);
+
+		for (String name : aircraftNames) {
+			Aircraft current = findAircraft(previous, name);
+			FlightStrip fs = null;
+
+			if (current != null) {
+				fs = findFlightStrip(previous, current);
+			} else {
+				current = arrived.remove(name);
+			}
+
+			if (current == null) continue;
+
+			Aircraft.Snapshot snapshot = player.getAircraft(name);
+			if (snapshot != null) {
+				current.applySnapshot(snapshot, previous.getWaypoints());
+			}
+
+			aircraft.add(current);
+			flightStrips.add((fs != null) ? fs : new FlightStrip(current,
+					FlightStrip.BACKGROUND_COLOURS[previous.getID()]));
+		}
+
+		previous.setAircraft(aircraft);
+		previous.getFlightStrips().clear();
+		previous.getFlightStrips().addAll(flightStrips);
+
+		return previous;
+	}
+
+	/**
+	 * Finds one of a player's aircraft by name.
+	 * @param player - the player to search
+	 * @param name - the name of the aircraft
+	 * @return the aircraft, or <code>null</code> if the player does
+	 * 			not have an aircraft with that name
+	 */
+	private static Aircraft findAircraft(Player player, String name) {
+		for (Aircraft a : player.getAircraft()) {
+			if (name.equals(a.getName())) return a;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Finds the flight strip showing an aircraft.
+	 * @param player - the player to search
+	 * @param aircraft - the aircraft shown on the flight strip
+	 * @return the flight strip, or <code>null</code> if the player
+	 * 			does not have a flight strip for the aircraft
+	 */
+	private static FlightStrip findFlightStrip(Player player,
+			Aircraft aircraft) {
+		for (FlightStrip fs : player.getFlightStrips()) {
+			if (aircraft.equals(fs.getAircraft())) return fs;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the snapshots of the aircraft included in the update.
+	 * <p>
+	 * These are the only aircraft whose positions are up-to-date.
+	 * </p>
+	 * @return the aircraft included in the update
+	 */
+	public List<Aircraft.Snapshot> getIncludedAircraft() {
+		return player.getAircraft();
+	}
+
+}
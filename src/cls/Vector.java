@@ -1,18 +1,39 @@
 package cls;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
+import btc.Main;
 import lib.jog.window;
 import scn.Game;
 
 /**
  * Simplified 3D vector class with basic operations.
+ * <p>
+ * Positions are stored relative to the airspace, so do not depend on
+ * the size of the window. The simulation works in airspace units,
+ * which are pixels in a window of the target size (see
+ * {@link #getAirspaceX()}), so that it runs the same whatever the
+ * size of the window. Only {@link #getX()} and {@link #getY()}, which
+ * are used for drawing and for mouse input, are scaled by the size
+ * of the window.
+ * </p>
  */
-public class Vector implements Serializable {
+public strictfp class Vector implements Serializable {
 	
 	/** Serialisation ID */
 	private static final long serialVersionUID = -5086652815637818053L;
 
+	/** The width of the airspace, in airspace units */
+	public static final double AIRSPACE_WIDTH = Main.TARGET_WIDTH
+			- (2 * Game.getXOffsetDirect());
+
+	/** The height of the airspace, in airspace units */
+	public static final double AIRSPACE_HEIGHT = Main.TARGET_HEIGHT
+			- (2 * Game.getYOffsetDirect());
+
 	/** The vector's x position */
 	private double x;
 	
@@ -58,6 +79,17 @@ public class Vector implements Serializable {
 		z = vector.z;
 	}
 	
+	/**
+	 * Creates a vector from a position in airspace units.
+	 * @param x - the vector's x position, in airspace units
+	 * @param y - the vector's y position, in airspace units
+	 * @param z - the vector's z position
+	 * @return the vector
+	 */
+	public static Vector inAirspace(double x, double y, double z) {
+		return new Vector(x / AIRSPACE_WIDTH, y / AIRSPACE_HEIGHT, z, true);
+	}
+	
 	
 	/**
 	 * Gets the x position of the vector.
@@ -91,6 +123,26 @@ public class Vector implements Serializable {
 		return y;
 	}
 	
+	/**
+	 * Gets the x position of the vector in airspace units.
+	 * <p>
+	 * The simulation uses this, rather than {@link #getX()}, so that
+	 * it does not depend on the size of the window.
+	 * </p>
+	 * @return the x position of the vector, in airspace units
+	 */
+	public double getAirspaceX() {
+		return x * AIRSPACE_WIDTH;
+	}
+
+	/**
+	 * Gets the y position of the vector in airspace units.
+	 * @return the y position of the vector, in airspace units
+	 */
+	public double getAirspaceY() {
+		return y * AIRSPACE_HEIGHT;
+	}
+	
 	/**
 	 * Gets the z position of the vector.
 	 * @return the z position of the vector
@@ -108,7 +160,7 @@ public class Vector implements Serializable {
 	}
 	
 	/**
-	 * Calculates the magnitude of the vector.
+	 * Calculates the magnitude of the vector, in airspace units.
 	 * @return the magnitude of the vector
 	 */
 	public double magnitude() {
@@ -116,11 +168,12 @@ public class Vector implements Serializable {
 	}
 	
 	/**
-	 * Calculates the square of the magnitude of the vector.
+	 * Calculates the square of the magnitude of the vector, in airspace units.
 	 * @return the square of the magnitude of the vector
 	 */
 	public double magnitudeSquared() {
-		return (getX()*getX()) + (getY()*getY()) + (getZ()*getZ());
+		return (getAirspaceX()*getAirspaceX()) + (getAirspaceY()*getAirspaceY())
+				+ (getZ()*getZ());
 	}
 	
 	/**
@@ -137,7 +190,7 @@ public class Vector implements Serializable {
 	 * @return the scaled vector
 	 */
 	public Vector scaleBy(double n) {
-		return new Vector(getX() * n, getY() * n, getZ() * n);
+		return new Vector(x * n, y * n, z * n, true);
 	}
 	
 	/**
@@ -155,9 +208,7 @@ public class Vector implements Serializable {
 	 * @return the sum of the vectors
 	 */
 	public Vector add(Vector v) {
-		return new Vector(getX() + v.getX(),
-				getY() + v.getY(),
-				getZ() + v.getZ());
+		return new Vector(x + v.x, y + v.y, z + v.z, true);
 	}
 	
 	/**
@@ -166,9 +217,7 @@ public class Vector implements Serializable {
 	 * @return the result of the subtractions
 	 */
 	public Vector sub(Vector v) {
-		return new Vector(getX() - v.getX(),
-				getY() - v.getY(),
-				getZ() - v.getZ());
+		return new Vector(x - v.x, y - v.y, z - v.z, true);
 	}
 	
 	/**
@@ -177,10 +226,11 @@ public class Vector implements Serializable {
 	 * @return the angle between this vector and another
 	 */
 	public double angleBetween(Vector v) {
-		double a = Math.acos((getX()*v.getX() + getY()*v.getY() + getZ()*v.getZ())
+		double a = StrictMath.acos((getAirspaceX()*v.getAirspaceX()
+				+ getAirspaceY()*v.getAirspaceY() + getZ()*v.getZ())
 				/ (magnitude() * v.magnitude()));
 		
-		return (v.getY() < getY()) ? a * -1 : a;
+		return (v.y < y) ? a * -1 : a;
 	}
 	
 	@Override
@@ -206,9 +256,7 @@ public class Vector implements Serializable {
 	public boolean equals(Object o) {
 		if (o instanceof Vector) {
 			Vector v = (Vector) o;
-			return (getX() == v.getX())
-					&& (getY() == v.getY())
-					&& (getZ() == v.getZ());
+			return (x == v.x) && (y == v.y) && (z == v.z);
 		} else {
 			return false;
 		}
@@ -232,5 +280,27 @@ public class Vector implements Serializable {
 	public Vector clone() {
 		return new Vector(this);
 	}
+	
+	/**
+	 * Writes the vector in a compact binary form.
+	 * @param out - the output to write to
+	 * @throws IOException if the vector could not be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeDouble(x);
+		out.writeDouble(y);
+		out.writeDouble(z);
+	}
+	
+	/**
+	 * Reads a vector written by {@link #write(DataOutput)}.
+	 * @param in - the input to read from
+	 * @return the vector read
+	 * @throws IOException if the vector could not be read
+	 */
+	public static Vector read(DataInput in) throws IOException {
+		return new Vector(in.readDouble(), in.readDouble(), in.readDouble(),
+				true);
+	}
 
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package cls;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
 
 import org.newdawn.slick.Color;
@@ -29,6 +30,9 @@ public class Waypoint implements Serializable {
 	/** The powerup of this waypoint */
 	protected Powerup powerup = null;
 	
+	/** The waypoint's ID in the airspace map (shared by its copies), or -1 if it is not part of a map */
+	int id = -1;
+	
 	
 	/**
 	 * Constructor for waypoints.
@@ -81,6 +85,7 @@ public class Waypoint implements Serializable {
 				? waypoint.waypointLocation.clone() : null;
 		name = waypoint.name;
 		entryOrExit = waypoint.entryOrExit;
+		id = waypoint.id;
 		powerup = (waypoint.powerup != null)
 				? waypoint.powerup.clone() : null;
 	}
@@ -94,6 +99,19 @@ public class Waypoint implements Serializable {
 		return waypointLocation ;
 	}
 	
+	/**
+	 * Gets the waypoint's ID in the airspace map.
+	 * <p>
+	 * Waypoints with the same ID are the same waypoint, even if they
+	 * have been copied or sent over the network, so can be compared
+	 * without comparing their locations.
+	 * </p>
+	 * @return the waypoint's ID, or -1 if it is not part of a map
+	 */
+	public int getID() {
+		return id;
+	}
+	
 	/**
 	 * Gets whether the waypoint is an entry point, exit point or airport.
 	 * @return <code>true</code> if the waypoint is an entry point, exit point
@@ -230,6 +248,8 @@ public class Waypoint implements Serializable {
 		if (getClass() != obj.getClass())
 			return false;
 		Waypoint other = (Waypoint) obj;
+		if (id != -1 && other.id != -1)
+			return id == other.id;
 		if (waypointLocation == null) {
 			if (other.waypointLocation != null)
 				return false;
@@ -246,4 +266,19 @@ public class Waypoint implements Serializable {
 		return new Waypoint(this);
 	}
 	
+	/**
+	 * Replaces the waypoint with its ID when it is serialised, if it is
+	 * part of the current airspace map.
+	 * <p>
+	 * Otherwise, the waypoint is serialised in full.
+	 * </p>
+	 * @return the object to serialise in place of the waypoint
+	 * @throws ObjectStreamException never
+	 */
+	protected Object writeReplace() throws ObjectStreamException {
+		AirspaceMap map = AirspaceMap.getCurrent();
+		return (map != null && map.contains(this))
+				? new AirspaceMap.Reference(id) : this;
+	}
+	
 }
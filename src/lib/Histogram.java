@@ -0,0 +1,158 @@
+package lib;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of non-negative values.
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is
+ * split into eight equal buckets, so any percentile reported is
+ * within 12.5% of the true value. Recording a value is lock-free
+ * and allocation-free, so histograms may be updated from hot paths
+ * on any thread.
+ * </p>
+ */
+public class Histogram {
+
+	/** The number of buckets each power of two is split into, as a power of two */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/** The number of buckets each power of two is split into */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** The total number of buckets, enough to hold any long */
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	/** The number of values in each bucket */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/** The number of values recorded */
+	private final AtomicLong count = new AtomicLong();
+
+	/** The sum of the values recorded */
+	private final AtomicLong sum = new AtomicLong();
+
+	/** The largest value recorded */
+	private final AtomicLong max = new AtomicLong();
+
+
+	/**
+	 * Records a value.
+	 * <p>
+	 * Negative values are recorded as zero.
+	 * </p>
+	 * @param value - the value to record
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+
+		buckets.incrementAndGet(bucketOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long currentMax;
+		while (value > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, value)) break;
+		}
+	}
+
+	/**
+	 * Gets the approximate value below which a given proportion
+	 * of the recorded values fall.
+	 * @param percentile - the percentile to find, from 0 to 100
+	 * @return the value at the specified percentile, or 0 if no
+	 * 			values have been recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = count.get();
+		if (total == 0) return 0;
+
+		long target = (long) Math.ceil((percentile / 100d) * total);
+		if (target < 1) target = 1;
+
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+
+			if (seen >= target) {
+				return Math.min(valueOf(i), getMax());
+			}
+		}
+
+		return getMax();
+	}
+
+	/**
+	 * Gets the number of values recorded.
+	 * @return the number of values recorded
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets the mean of the values recorded.
+	 * @return the mean value, or 0 if no values have been recorded
+	 */
+	public double getMean() {
+		long total = count.get();
+		return (total == 0) ? 0 : sum.get() / (double) total;
+	}
+
+	/**
+	 * Gets the largest value recorded.
+	 * @return the largest value recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Clears all recorded values.
+	 * <p>
+	 * Values recorded while the histogram is being reset may be lost.
+	 * </p>
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+
+	/**
+	 * Gets the bucket which a value is counted in.
+	 * @param value - the value
+	 * @return the index of the value's bucket
+	 */
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+
+		return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS) + subBucket;
+	}
+
+	/**
+	 * Gets the largest value counted in a bucket.
+	 * @param bucket - the index of the bucket
+	 * @return the bucket's upper bound
+	 */
+	private static long valueOf(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+
+		int exponent = (bucket / SUB_BUCKETS) + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+
+		return (1L << exponent) + ((subBucket + 1) * width) - 1;
+	}
+
+}
@@ -0,0 +1,88 @@
+package lib;
+
+import java.util.List;
+
+import org.newdawn.slick.Color;
+
+import lib.jog.graphics;
+
+/**
+ * Draws lines of diagnostic text over a translucent background.
+ * <p>
+ * Overlays are hidden by default, and are intended to be toggled
+ * with a function key.
+ * </p>
+ */
+public class Overlay {
+
+	/** The height of each line of text */
+	private static final int LINE_HEIGHT = 18;
+
+	/** The space between the background's edge and the text */
+	private static final int PADDING = 8;
+
+	/** The colour of the overlay's text */
+	private static final Color TEXT_COLOUR = new Color(128, 255, 128);
+
+	/** The x coordinate of the overlay's top left corner */
+	private int x;
+
+	/** The y coordinate of the overlay's top left corner */
+	private int y;
+
+	/** The width of the overlay */
+	private int width;
+
+	/** Whether the overlay is visible */
+	private boolean visible;
+
+
+	/**
+	 * Constructs a new overlay.
+	 * @param x - the x coordinate of the overlay's top left corner
+	 * @param y - the y coordinate of the overlay's top left corner
+	 * @param width - the width of the overlay
+	 */
+	public Overlay(int x, int y, int width) {
+		this.x = x;
+		this.y = y;
+		this.width = width;
+	}
+
+
+	/**
+	 * Draws the overlay, if it is visible.
+	 * @param lines - the lines of text to draw
+	 */
+	public void draw(List<String> lines) {
+		if (!visible) return;
+
+		graphics.setColour(0, 0, 0, 192);
+		graphics.rectangle(true, x, y, width,
+				(lines.size() * LINE_HEIGHT) + (2 * PADDING));
+
+		for (int i = 0; i < lines.size(); i++) {
+			graphics.print(lines.get(i), x + PADDING,
+					y + PADDING + (i * LINE_HEIGHT), TEXT_COLOUR);
+		}
+
+		graphics.setColour(255, 255, 255);
+	}
+
+	/**
+	 * Shows the overlay if it is hidden, or hides it if it is shown.
+	 */
+	public void toggle() {
+		visible = !visible;
+	}
+
+	/**
+	 * Gets whether the overlay is visible.
+	 * @return <code>true</code> if the overlay is visible,
+	 * 			otherwise <code>false</code>
+	 */
+	public boolean isVisible() {
+		return visible;
+	}
+
+}
@@ -0,0 +1,249 @@
+package lib;
+
+/**
+ * A reusable buffer for building text which is redrawn every frame,
+ * such as scores, altitudes and timers.
+ * <p>
+ * Numbers are formatted straight into the buffer, so building text does
+ * not allocate. The text is only turned into a string when it differs
+ * from the string last returned, so text which is rebuilt each frame
+ * but has not changed is returned as the same string - which fonts
+ * have already laid out (see <code>lib.jog.TextCache</code>).
+ * </p>
+ * <p>
+ * Each method mirrors a <code>String.format</code> conversion, noted in
+ * its description, and writes the same text for the values the game
+ * draws. Builders are not thread-safe.
+ * </p>
+ */
+public final class TextBuilder {
+
+	/** The powers of ten which fixed-point numbers can be scaled by */
+	private static final long[] POWERS_OF_TEN = new long[] {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+		100000000L, 1000000000L
+	};
+
+	/** The characters of the text being built */
+	private char[] chars = new char[32];
+
+	/** The number of characters in the text being built */
+	private int length;
+
+	/** The string last returned */
+	private String text = "";
+
+
+	/**
+	 * Empties the builder, ready to build new text.
+	 * @return this builder
+	 */
+	public TextBuilder clear() {
+		length = 0;
+		return this;
+	}
+
+	/**
+	 * Appends a string.
+	 * @param string - the string to append
+	 * @return this builder
+	 */
+	public TextBuilder append(String string) {
+		ensureCapacity(length + string.length());
+		string.getChars(0, string.length(), chars, length);
+		length += string.length();
+		return this;
+	}
+
+	/**
+	 * Appends a character.
+	 * @param c - the character to append
+	 * @return this builder
+	 */
+	public TextBuilder append(char c) {
+		ensureCapacity(length + 1);
+		chars[length++] = c;
+		return this;
+	}
+
+	/**
+	 * Appends an integer, as <code>%d</code> would.
+	 * @param value - the integer to append
+	 * @return this builder
+	 */
+	public TextBuilder append(long value) {
+		return appendInteger(value, 0, ' ', false);
+	}
+
+	/**
+	 * Appends an integer, padded to a minimum width.
+	 * <p>
+	 * Padding with spaces is the same as <code>%6d</code> (for a width
+	 * of 6), and padding with zeros the same as <code>%06d</code>.
+	 * </p>
+	 * @param value - the integer to append
+	 * @param width - the minimum number of characters to append
+	 * @param padding - the character to pad the integer with
+	 * @return this builder
+	 */
+	public TextBuilder append(long value, int width, char padding) {
+		return appendInteger(value, width, padding, false);
+	}
+
+	/**
+	 * Appends an integer with its thousands separated by commas, as
+	 * <code>%,d</code> would in an English locale.
+	 * @param value - the integer to append
+	 * @return this builder
+	 */
+	public TextBuilder appendGrouped(long value) {
+		return appendInteger(value, 0, ' ', true);
+	}
+
+	/**
+	 * Appends a number with a fixed number of decimal places, as
+	 * <code>%.2f</code> would (for two decimal places).
+	 * @param value - the number to append
+	 * @param decimals - the number of decimal places, from 0 to 9
+	 * @return this builder
+	 */
+	public TextBuilder appendFixed(double value, int decimals) {
+		return appendFixed(value, 1, decimals);
+	}
+
+	/**
+	 * Appends a number with a fixed number of decimal places, and its
+	 * whole part padded with zeros to a minimum number of digits, as a
+	 * <code>DecimalFormat</code> of <code>"00.00"</code> would (for two
+	 * digits and two decimal places).
+	 * <p>
+	 * The number is rounded half up. Negative numbers which round to
+	 * zero are appended without a sign, and numbers too large to be
+	 * scaled to a <code>long</code> are not supported.
+	 * </p>
+	 * @param value - the number to append
+	 * @param digits - the minimum number of digits before the point
+	 * @param decimals - the number of decimal places, from 0 to 9
+	 * @return this builder
+	 */
+	public TextBuilder appendFixed(double value, int digits, int decimals) {
+		if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("Invalid number of decimals: "
+					+ decimals);
+		}
+
+		if (Double.isNaN(value)) return append("NaN");
+		if (Double.isInfinite(value)) {
+			return append(value > 0 ? "Infinity" : "-Infinity");
+		}
+
+		long scale = POWERS_OF_TEN[decimals];
+		long scaled = (long) Math.floor(Math.abs(value) * scale + 0.5);
+
+		if (value < 0 && scaled != 0) append('-');
+		appendInteger(scaled / scale, digits, '0', false);
+
+		if (decimals > 0) {
+			append('.');
+			appendInteger(scaled % scale, decimals, '0', false);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Appends an integer.
+	 * @param value - the integer to append
+	 * @param width - the minimum number of characters to append
+	 * @param padding - the character to pad the integer with; zeros
+	 * 			are placed after the sign, anything else before it
+	 * @param grouped - whether to separate thousands with commas
+	 * @return this builder
+	 */
+	private TextBuilder appendInteger(long value, int width, char padding,
+			boolean grouped) {
+		boolean negative = value < 0;
+
+		int digits = 1;
+		for (long rest = value / 10; rest != 0; rest /= 10) {
+			digits++;
+		}
+
+		int size = digits + (grouped ? (digits - 1) / 3 : 0);
+		int sized = size + (negative ? 1 : 0);
+		ensureCapacity(length + Math.max(width, sized));
+
+		if (negative && padding == '0') chars[length++] = '-';
+		for (int i = sized; i < width; i++) {
+			chars[length++] = padding;
+		}
+		if (negative && padding != '0') chars[length++] = '-';
+
+		// Write the digits from the last, working with the value's sign
+		// so that the smallest long can be appended
+		int end = length + size;
+		long rest = value;
+		for (int i = end, count = 0; i > length; count++) {
+			if (grouped && count > 0 && count % 3 == 0) chars[--i] = ',';
+			chars[--i] = (char) ('0' + Math.abs(rest % 10));
+			rest /= 10;
+		}
+
+		length = end;
+		return this;
+	}
+
+	/**
+	 * Makes sure the buffer can hold a number of characters.
+	 * @param capacity - the number of characters to hold
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > chars.length) {
+			char[] larger = new char[Math.max(capacity, chars.length * 2)];
+			System.arraycopy(chars, 0, larger, 0, length);
+			chars = larger;
+		}
+	}
+
+	/**
+	 * Gets the number of characters in the text being built.
+	 * @return the length of the text
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Gets the text which has been built.
+	 * <p>
+	 * If the text is the same as the string last returned, that string
+	 * is returned again, rather than a new one.
+	 * </p>
+	 * @return the text which has been built
+	 */
+	@Override
+	public String toString() {
+		if (!contentEquals(text)) {
+			text = new String(chars, 0, length);
+		}
+
+		return text;
+	}
+
+	/**
+	 * Checks whether the text being built is the same as a string.
+	 * @param string - the string to compare against
+	 * @return <code>true</code> if the text has the same characters
+	 * 			as the string, otherwise <code>false</code>
+	 */
+	private boolean contentEquals(String string) {
+		if (string.length() != length) return false;
+
+		for (int i = 0; i < length; i++) {
+			if (string.charAt(i) != chars[i]) return false;
+		}
+
+		return true;
+	}
+
+}
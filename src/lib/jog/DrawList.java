@@ -0,0 +1,149 @@
+package lib.jog;
+
+import java.util.Arrays;
+
+/**
+ * <h1>jog.DrawList</h1>
+ * <p>A frame's drawing, recorded as a list of commands.</p>
+ * <p>
+ * Each command is an opcode, followed by its numeric arguments and the
+ * objects it draws (e.g. a texture or a string), each kept in an array
+ * of its own. The arrays grow as needed and are kept when the list is
+ * cleared, so once a list has held a busy frame, recording another does
+ * not allocate.
+ * </p>
+ * <p>
+ * A list is recorded by one thread, then handed to another to be drawn
+ * (see {@link RenderThread}); it is not thread-safe in itself.
+ * </p>
+ */
+final class DrawList {
+
+	/** The opcodes of the commands recorded */
+	private int[] ops = new int[256];
+
+	/** The numeric arguments of the commands recorded */
+	private double[] args = new double[1024];
+
+	/** The objects drawn by the commands recorded */
+	private Object[] refs = new Object[256];
+
+	/** The number of opcodes recorded */
+	private int opCount;
+
+	/** The number of numeric arguments recorded */
+	private int argCount;
+
+	/** The number of objects recorded */
+	private int refCount;
+
+	/** The position of the next opcode to be read */
+	private int opIndex;
+
+	/** The position of the next numeric argument to be read */
+	private int argIndex;
+
+	/** The position of the next object to be read */
+	private int refIndex;
+
+
+	/**
+	 * Starts recording a command.
+	 * @param op the command's opcode.
+	 * @return this list, to record the command's arguments.
+	 */
+	DrawList add(int op) {
+		if (opCount == ops.length) ops = Arrays.copyOf(ops, opCount * 2);
+		ops[opCount++] = op;
+		return this;
+	}
+
+	/**
+	 * Records a numeric argument of the command being recorded.
+	 * @param value the argument.
+	 * @return this list.
+	 */
+	DrawList arg(double value) {
+		if (argCount == args.length) args = Arrays.copyOf(args, argCount * 2);
+		args[argCount++] = value;
+		return this;
+	}
+
+	/**
+	 * Records an object drawn by the command being recorded.
+	 * @param object the object.
+	 * @return this list.
+	 */
+	DrawList ref(Object object) {
+		if (refCount == refs.length) refs = Arrays.copyOf(refs, refCount * 2);
+		refs[refCount++] = object;
+		return this;
+	}
+
+	/**
+	 * Checks whether any commands have been recorded.
+	 * @return whether the list is empty.
+	 */
+	boolean isEmpty() {
+		return opCount == 0;
+	}
+
+	/**
+	 * Checks whether there are commands left to be read.
+	 * @return whether there is another command.
+	 */
+	boolean hasNext() {
+		return opIndex < opCount;
+	}
+
+	/**
+	 * Reads the opcode of the next command.
+	 * @return the opcode.
+	 */
+	int nextOp() {
+		return ops[opIndex++];
+	}
+
+	/**
+	 * Reads the next numeric argument.
+	 * @return the argument.
+	 */
+	double nextArg() {
+		return args[argIndex++];
+	}
+
+	/**
+	 * Reads the next numeric argument, recorded as an int.
+	 * @return the argument.
+	 */
+	int nextInt() {
+		return (int) args[argIndex++];
+	}
+
+	/**
+	 * Reads the next numeric argument, recorded as a boolean (1 or 0).
+	 * @return the argument.
+	 */
+	boolean nextBoolean() {
+		return args[argIndex++] != 0;
+	}
+
+	/**
+	 * Reads the next object.
+	 * @return the object.
+	 */
+	Object nextRef() {
+		return refs[refIndex++];
+	}
+
+	/**
+	 * Empties the list, ready to record another frame. The objects recorded
+	 * are let go of, so the list does not keep them from being collected.
+	 */
+	void clear() {
+		Arrays.fill(refs, 0, refCount, null);
+		opCount = argCount = refCount = 0;
+		opIndex = argIndex = refIndex = 0;
+	}
+
+}
@@ -0,0 +1,264 @@
+package lib.jog;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import org.newdawn.slick.opengl.Texture;
+import org.newdawn.slick.opengl.TextureImpl;
+
+/**
+ * <h1>jog.RenderState</h1>
+ * <p>Keeps track of the OpenGL state graphics draws with.</p>
+ * <p>
+ * The current colour, whether texturing, blending and the scissor test
+ * are enabled, the bound texture and the scissor box are remembered, and
+ * each is only sent to OpenGL when it actually changes. Drawing the same
+ * colour, or image after image, then costs no driver calls at all.
+ * </p>
+ * <p>
+ * Colours are packed into an int as <code>0xRRGGBBAA</code>, so changing
+ * the colour does not allocate. Anything which changes the state without
+ * going through the tracker (e.g. loading a texture, which binds it) must
+ * call {@link #invalidate()} afterwards, so that the state is sent again
+ * the next time it is needed.
+ * </p>
+ * <p>
+ * This class is not thread-safe; it should only be used by the thread
+ * which owns the OpenGL context.
+ * </p>
+ */
+final class RenderState {
+
+	/** The value of a capability whose state is not known */
+	private static final int UNKNOWN = -1;
+
+	/** The value of a capability which is disabled */
+	private static final int DISABLED = 0;
+
+	/** The value of a capability which is enabled */
+	private static final int ENABLED = 1;
+
+	/** The current colour, as 0xRRGGBBAA */
+	private int colour;
+
+	/** Whether the current colour is known */
+	private boolean colourKnown;
+
+	/** Whether texturing is enabled */
+	private int texturing = UNKNOWN;
+
+	/** Whether blending is enabled */
+	private int blending = UNKNOWN;
+
+	/** Whether the scissor test is enabled */
+	private int scissoring = UNKNOWN;
+
+	/** The scissor box, as {x, y, width, height}, or null if not known */
+	private int[] scissor;
+
+	/** The scissor box last set, kept so that setting it does not allocate */
+	private final int[] scissorBox = new int[4];
+
+	/** The number of state changes sent since the count was last reset */
+	private int changes;
+
+
+	/**
+	 * Packs a colour's components into an int.
+	 * @param r the red component, from 0 to 255.
+	 * @param g the green component, from 0 to 255.
+	 * @param b the blue component, from 0 to 255.
+	 * @param a the alpha component, from 0 to 255.
+	 * @return the colour, as 0xRRGGBBAA.
+	 */
+	static int pack(int r, int g, int b, int a) {
+		return (clamp(r) << 24) | (clamp(g) << 16) | (clamp(b) << 8) | clamp(a);
+	}
+
+	/**
+	 * Packs a colour's components into an int.
+	 * @param r the red component, from 0 to 1.
+	 * @param g the green component, from 0 to 1.
+	 * @param b the blue component, from 0 to 1.
+	 * @param a the alpha component, from 0 to 1.
+	 * @return the colour, as 0xRRGGBBAA.
+	 */
+	static int pack(float r, float g, float b, float a) {
+		return pack(Math.round(r * 255), Math.round(g * 255),
+				Math.round(b * 255), Math.round(a * 255));
+	}
+
+	/**
+	 * Limits a colour component to the range a byte can hold.
+	 * @param component the component.
+	 * @return the component, from 0 to 255.
+	 */
+	private static int clamp(int component) {
+		return Math.max(0, Math.min(255, component));
+	}
+
+	/**
+	 * Gets a component of a packed colour.
+	 * @param colour the colour, as 0xRRGGBBAA.
+	 * @param shift 24 for red, 16 for green, 8 for blue or 0 for alpha.
+	 * @return the component, from 0 to 1.
+	 */
+	static float component(int colour, int shift) {
+		return ((colour >>> shift) & 0xFF) / 255f;
+	}
+
+	/**
+	 * Sets the current colour.
+	 * @param rgba the colour, as 0xRRGGBBAA.
+	 * @return whether the colour changed.
+	 */
+	boolean setColour(int rgba) {
+		if (colourKnown && rgba == colour) return false;
+
+		colour = rgba;
+		colourKnown = true;
+		restoreColour();
+		return true;
+	}
+
+	/**
+	 * Sends the current colour again, after something (e.g. a colour
+	 * array) has left OpenGL's colour undefined.
+	 */
+	void restoreColour() {
+		glColor4ub((byte) (colour >>> 24), (byte) (colour >>> 16),
+				(byte) (colour >>> 8), (byte) colour);
+		changes++;
+	}
+
+	/**
+	 * Gets the current colour.
+	 * @return the colour, as 0xRRGGBBAA.
+	 */
+	int getColour() {
+		return colour;
+	}
+
+	/**
+	 * Enables texturing, and binds a texture.
+	 * <p>
+	 * Slick's textures remember which texture was last bound through
+	 * them, so that is used to tell whether the texture is bound.
+	 * </p>
+	 * @param texture the texture to bind.
+	 */
+	void bindTexture(Texture texture) {
+		if (TextureImpl.getLastBind() != texture) {
+			// Binding through slick also enables texturing
+			texture.bind();
+			texturing = ENABLED;
+			changes++;
+		} else {
+			setTexturing(true);
+		}
+	}
+
+	/**
+	 * Notes that a texture has been bound without the tracker knowing
+	 * which, e.g. by calling a display list, which enables texturing.
+	 */
+	void textureBoundElsewhere() {
+		TextureImpl.unbind();
+		texturing = ENABLED;
+	}
+
+	/**
+	 * Enables or disables texturing.
+	 * @param enabled whether texturing should be enabled.
+	 */
+	void setTexturing(boolean enabled) {
+		texturing = enable(GL_TEXTURE_2D, texturing, enabled);
+	}
+
+	/**
+	 * Enables or disables blending.
+	 * @param enabled whether blending should be enabled.
+	 */
+	void setBlending(boolean enabled) {
+		blending = enable(GL_BLEND, blending, enabled);
+	}
+
+	/**
+	 * Enables or disables the scissor test, leaving the scissor box as it is.
+	 * @param enabled whether the scissor test should be enabled.
+	 */
+	void setScissoring(boolean enabled) {
+		scissoring = enable(GL_SCISSOR_TEST, scissoring, enabled);
+	}
+
+	/**
+	 * Enables the scissor test, and sets the scissor box.
+	 * @param x the x coordinate of the box's lower-left corner.
+	 * @param y the y coordinate of the box's lower-left corner.
+	 * @param width the width of the box.
+	 * @param height the height of the box.
+	 */
+	void setScissor(int x, int y, int width, int height) {
+		setScissoring(true);
+
+		if (scissor != null && scissor[0] == x && scissor[1] == y
+				&& scissor[2] == width && scissor[3] == height) return;
+
+		glScissor(x, y, width, height);
+		scissor = scissorBox;
+		scissor[0] = x;
+		scissor[1] = y;
+		scissor[2] = width;
+		scissor[3] = height;
+		changes++;
+	}
+
+	/**
+	 * Enables or disables a capability, if it is not already.
+	 * @param capability the capability, e.g. GL_BLEND.
+	 * @param current the capability's current value.
+	 * @param enabled whether the capability should be enabled.
+	 * @return the capability's new value.
+	 */
+	private int enable(int capability, int current, boolean enabled) {
+		int value = enabled ? ENABLED : DISABLED;
+		if (value == current) return current;
+
+		if (enabled) {
+			glEnable(capability);
+		} else {
+			glDisable(capability);
+		}
+		changes++;
+
+		return value;
+	}
+
+	/**
+	 * Forgets the state, so that each part of it is sent again the next
+	 * time it is set.
+	 * <p>
+	 * This must be called after the state has been changed without the
+	 * tracker, e.g. by creating a texture.
+	 * </p>
+	 */
+	void invalidate() {
+		colourKnown = false;
+		texturing = UNKNOWN;
+		blending = UNKNOWN;
+		scissoring = UNKNOWN;
+		scissor = null;
+		TextureImpl.unbind();
+	}
+
+	/**
+	 * Gets the number of state changes sent, and resets the count.
+	 * @return the number of state changes sent since the count was
+	 * 			last reset.
+	 */
+	int resetChanges() {
+		int count = changes;
+		changes = 0;
+		return count;
+	}
+
+}
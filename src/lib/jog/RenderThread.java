@@ -0,0 +1,257 @@
+package lib.jog;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.lwjgl.LWJGLException;
+import org.lwjgl.opengl.Display;
+
+/**
+ * <h1>jog.RenderThread</h1>
+ * <p>Draws the frames recorded by the game thread on a thread of its own.</p>
+ * <p>
+ * The render thread holds the OpenGL context. The game thread records
+ * each frame into a {@link DrawList}, and hands it over; the render
+ * thread draws it and swaps the buffers, while the game thread goes on
+ * to handle input and the network and update the next frame. The window
+ * itself (its messages and input) stays with the thread which created it,
+ * as LWJGL requires.
+ * </p>
+ * <p>
+ * Frames are triple buffered: one list is being recorded, one is waiting
+ * to be drawn, and one is being drawn. If the game thread hands over a
+ * frame before the one waiting has been drawn, the older frame is dropped,
+ * so the game thread never waits for the render thread, and the frame
+ * drawn is always the newest.
+ * </p>
+ * <p>
+ * Anything else which uses OpenGL, such as loading a texture, must be run
+ * on the render thread with {@link #invokeAndWait(Runnable)}.
+ * </p>
+ */
+final class RenderThread implements Runnable {
+
+	/** The number of frames which can be recorded, waiting, or being drawn at once */
+	private static final int FRAMES = 3;
+
+	/** Guards the frames and tasks passed between the threads */
+	private final Object mutex = new Object();
+
+	/** The lists not in use */
+	private final Deque<DrawList> free = new ArrayDeque<DrawList>();
+
+	/** The newest frame, waiting to be drawn, or null if there is none */
+	private DrawList pending;
+
+	/** The tasks waiting to be run on the render thread */
+	private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+	/** Whether the thread should keep drawing */
+	private boolean running = true;
+
+	/** Counted down once the thread has, or has failed to, take the context */
+	private final CountDownLatch started = new CountDownLatch(1);
+
+	/** Whether the thread has taken the context */
+	private volatile boolean current;
+
+	/** The number of frames dropped before being drawn */
+	private volatile int droppedFrames;
+
+	/** The thread drawing the frames */
+	private Thread thread;
+
+
+	/**
+	 * Constructor for a render thread.
+	 */
+	RenderThread() {
+		for (int i = 0; i < FRAMES; i++) {
+			free.push(new DrawList());
+		}
+	}
+
+	/**
+	 * Starts the thread, and waits for it to take the OpenGL context.
+	 * <p>
+	 * The context must have been released by the calling thread first.
+	 * </p>
+	 * @return whether the thread has taken the context, and is drawing.
+	 */
+	boolean start() {
+		thread = new Thread(this, "Render Thread");
+		thread.start();
+
+		try {
+			started.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return current;
+	}
+
+	/**
+	 * Stops the thread once it has run any tasks waiting, and waits for it
+	 * to release the OpenGL context.
+	 */
+	void stop() {
+		synchronized (mutex) {
+			running = false;
+			mutex.notifyAll();
+		}
+
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Checks whether the calling thread is the render thread.
+	 * @return whether OpenGL can be used from the calling thread.
+	 */
+	boolean isCurrentThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Gets an empty list to record a frame into.
+	 * @return an empty list.
+	 */
+	DrawList acquire() {
+		synchronized (mutex) {
+			return free.pop();
+		}
+	}
+
+	/**
+	 * Hands a recorded frame over to be drawn, in place of any frame still
+	 * waiting, and gets an empty list to record the next frame into.
+	 * @param frame the recorded frame.
+	 * @return an empty list.
+	 */
+	DrawList publish(DrawList frame) {
+		synchronized (mutex) {
+			if (pending != null) {
+				pending.clear();
+				free.push(pending);
+				droppedFrames++;
+			}
+			pending = frame;
+			mutex.notifyAll();
+
+			return free.pop();
+		}
+	}
+
+	/**
+	 * Runs a task on the render thread, and waits for it to finish.
+	 * @param task the task to run.
+	 */
+	void invokeAndWait(Runnable task) {
+		if (isCurrentThread()) {
+			task.run();
+			return;
+		}
+
+		FutureTask<Void> future = new FutureTask<Void>(task, null);
+
+		synchronized (mutex) {
+			tasks.add(future);
+			mutex.notifyAll();
+		}
+
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gets the number of frames which were replaced by a newer frame
+	 * before they could be drawn.
+	 * @return the number of frames dropped.
+	 */
+	int getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * Takes the context, then draws each frame handed over, and runs each
+	 * task, until stopped.
+	 */
+	@Override
+	public void run() {
+		try {
+			Display.makeCurrent();
+			current = true;
+		} catch (LWJGLException e) {
+			e.printStackTrace();
+		} finally {
+			started.countDown();
+		}
+
+		if (!current) return;
+
+		while (true) {
+			Runnable task;
+			DrawList frame;
+
+			synchronized (mutex) {
+				while (running && tasks.isEmpty() && pending == null) {
+					try {
+						mutex.wait();
+					} catch (InterruptedException e) {
+						running = false;
+					}
+				}
+
+				task = tasks.poll();
+				frame = (task == null && running) ? pending : null;
+				if (frame != null) pending = null;
+
+				if (task == null && frame == null) break;
+			}
+
+			if (task != null) {
+				task.run();
+			} else {
+				draw(frame);
+			}
+		}
+
+		try {
+			Display.releaseContext();
+		} catch (LWJGLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Draws a frame, shows it, and returns its list to be recorded into again.
+	 * @param frame the frame to draw.
+	 */
+	private void draw(DrawList frame) {
+		try {
+			graphics.replay(frame);
+			Display.swapBuffers();
+		} catch (LWJGLException | RuntimeException e) {
+			e.printStackTrace();
+		}
+
+		synchronized (mutex) {
+			frame.clear();
+			free.push(frame);
+		}
+	}
+
+}
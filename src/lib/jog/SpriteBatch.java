@@ -0,0 +1,226 @@
+package lib.jog;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GLContext;
+import org.newdawn.slick.opengl.Texture;
+
+/**
+ * <h1>jog.SpriteBatch</h1>
+ * <p>Collects textured quads and draws them together.</p>
+ * <p>
+ * Each quad is transformed as it is added, and its vertices written
+ * to a buffer along with the current colour. The buffer is drawn with
+ * a single call when a quad with a different texture is added, when
+ * it fills, or when {@link #flush()} is called - which must be done
+ * before anything else is drawn, or the matrix or scissor state is
+ * changed, so that everything is drawn in order.
+ * </p>
+ * <p>
+ * The vertices are streamed to a vertex buffer object if OpenGL 1.5
+ * is available, and drawn from a client-side vertex array otherwise.
+ * Texturing is left enabled after a batch is drawn; anything drawn
+ * without a texture must disable it through the {@link RenderState}.
+ * </p>
+ * <p>
+ * This class is not thread-safe; it should only be used by the thread
+ * which owns the OpenGL context.
+ * </p>
+ */
+final class SpriteBatch {
+
+	/** The maximum number of quads drawn by a single call */
+	private static final int MAX_QUADS = 1024;
+
+	/** The number of floats in each vertex (x, y, u, v, r, g, b, a) */
+	private static final int VERTEX_SIZE = 8;
+
+	/** The number of bytes in each vertex */
+	private static final int STRIDE = VERTEX_SIZE * 4;
+
+	/** The vertices of the quads waiting to be drawn */
+	private final FloatBuffer vertices = BufferUtils.createFloatBuffer(
+			MAX_QUADS * 4 * VERTEX_SIZE);
+
+	/** The texture of the quads waiting to be drawn */
+	private Texture texture;
+
+	/** The number of quads waiting to be drawn */
+	private int quadCount;
+
+	/** The vertex buffer object, 0 if not supported, or -1 if not yet created */
+	private int bufferID = -1;
+
+	/** The red component of the current colour */
+	private float red = 1;
+
+	/** The green component of the current colour */
+	private float green = 1;
+
+	/** The blue component of the current colour */
+	private float blue = 1;
+
+	/** The alpha component of the current colour */
+	private float alpha = 1;
+
+	/** The number of draw calls made since the count was last reset */
+	private int drawCalls;
+
+	/** The OpenGL state the batches are drawn with */
+	private final RenderState state;
+
+
+	/**
+	 * Constructor for a sprite batch.
+	 * @param state the OpenGL state to draw the batches with.
+	 */
+	SpriteBatch(RenderState state) {
+		this.state = state;
+	}
+
+	/**
+	 * Sets the colour which quads added are tinted with.
+	 * <p>
+	 * This must follow the render state's current colour, which is
+	 * restored after each batch is drawn.
+	 * </p>
+	 * @param r the red component, from 0 to 1.
+	 * @param g the green component, from 0 to 1.
+	 * @param b the blue component, from 0 to 1.
+	 * @param a the alpha component, from 0 to 1.
+	 */
+	void setColour(float r, float g, float b, float a) {
+		red = r;
+		green = g;
+		blue = b;
+		alpha = a;
+	}
+
+	/**
+	 * Adds a textured quad to the batch.
+	 * <p>
+	 * The quad's corners are given relative to its origin, which is
+	 * rotated, then moved to the position given.
+	 * </p>
+	 * @param texture the texture to draw the quad with.
+	 * @param x the x coordinate to move the quad's origin to.
+	 * @param y the y coordinate to move the quad's origin to.
+	 * @param angle the angle in radians to rotate the quad anticlockwise.
+	 * @param x0 the x coordinate of the quad's first and fourth corners.
+	 * @param y0 the y coordinate of the quad's first and second corners.
+	 * @param x1 the x coordinate of the quad's second and third corners.
+	 * @param y1 the y coordinate of the quad's third and fourth corners.
+	 * @param u0 the texture coordinate at x0.
+	 * @param v0 the texture coordinate at y0.
+	 * @param u1 the texture coordinate at x1.
+	 * @param v1 the texture coordinate at y1.
+	 */
+	void add(Texture texture, double x, double y, double angle,
+			double x0, double y0, double x1, double y1,
+			double u0, double v0, double u1, double v1) {
+		if (texture != this.texture || quadCount == MAX_QUADS) {
+			flush();
+			this.texture = texture;
+		}
+
+		if (angle == 0) {
+			vertex(x + x0, y + y0, u0, v0);
+			vertex(x + x1, y + y0, u1, v0);
+			vertex(x + x1, y + y1, u1, v1);
+			vertex(x + x0, y + y1, u0, v1);
+		} else {
+			double cos = Math.cos(angle);
+			double sin = Math.sin(angle);
+
+			vertex(x + cos * x0 - sin * y0, y + sin * x0 + cos * y0, u0, v0);
+			vertex(x + cos * x1 - sin * y0, y + sin * x1 + cos * y0, u1, v0);
+			vertex(x + cos * x1 - sin * y1, y + sin * x1 + cos * y1, u1, v1);
+			vertex(x + cos * x0 - sin * y1, y + sin * x0 + cos * y1, u0, v1);
+		}
+
+		quadCount++;
+	}
+
+	/**
+	 * Writes a vertex to the buffer, in the current colour.
+	 * @param x the x coordinate of the vertex.
+	 * @param y the y coordinate of the vertex.
+	 * @param u the horizontal texture coordinate of the vertex.
+	 * @param v the vertical texture coordinate of the vertex.
+	 */
+	private void vertex(double x, double y, double u, double v) {
+		vertices.put((float) x).put((float) y).put((float) u).put((float) v)
+				.put(red).put(green).put(blue).put(alpha);
+	}
+
+	/**
+	 * Draws the quads in the batch, and empties it.
+	 */
+	void flush() {
+		if (quadCount == 0) return;
+
+		if (bufferID == -1) {
+			bufferID = GLContext.getCapabilities().OpenGL15
+					? glGenBuffers() : 0;
+		}
+
+		vertices.flip();
+
+		state.bindTexture(texture);
+		glEnableClientState(GL_VERTEX_ARRAY);
+		glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+		glEnableClientState(GL_COLOR_ARRAY);
+
+		if (bufferID != 0) {
+			// Orphan the previous contents, so the driver need not wait
+			// for them to be drawn before they are replaced
+			glBindBuffer(GL_ARRAY_BUFFER, bufferID);
+			glBufferData(GL_ARRAY_BUFFER, vertices.capacity() * 4,
+					GL_STREAM_DRAW);
+			glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+			glVertexPointer(2, GL_FLOAT, STRIDE, 0);
+			glTexCoordPointer(2, GL_FLOAT, STRIDE, 2 * 4);
+			glColorPointer(4, GL_FLOAT, STRIDE, 4 * 4);
+		} else {
+			vertices.position(0);
+			glVertexPointer(2, STRIDE, vertices);
+			vertices.position(2);
+			glTexCoordPointer(2, STRIDE, vertices);
+			vertices.position(4);
+			glColorPointer(4, STRIDE, vertices);
+		}
+
+		glDrawArrays(GL_QUADS, 0, quadCount * 4);
+
+		if (bufferID != 0) {
+			glBindBuffer(GL_ARRAY_BUFFER, 0);
+		}
+
+		glDisableClientState(GL_COLOR_ARRAY);
+		glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+		glDisableClientState(GL_VERTEX_ARRAY);
+
+		// The colour array leaves the current colour undefined
+		state.restoreColour();
+
+		vertices.clear();
+		quadCount = 0;
+		drawCalls++;
+	}
+
+	/**
+	 * Gets the number of draw calls made, and resets the count.
+	 * @return the number of draw calls made since the count was
+	 * 			last reset.
+	 */
+	int resetDrawCalls() {
+		int count = drawCalls;
+		drawCalls = 0;
+		return count;
+	}
+
+}
@@ -0,0 +1,107 @@
+package lib.jog;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h1>jog.TextCache</h1>
+ * <p>Keeps the glyph quads of the text a font has printed.</p>
+ * <p>
+ * The first time a string is printed, its quads are laid out by the
+ * font and compiled into a display list; each time it is printed
+ * after that, the list is called, so the text is neither laid out nor
+ * sent to OpenGL again. Text which changes (e.g. a score) is compiled
+ * again only when its content changes.
+ * </p>
+ * <p>
+ * The lists are laid out at the origin, without setting the colour,
+ * so the same list can be drawn anywhere in any colour. Only the most
+ * recently printed strings are kept; the list of the string printed
+ * least recently is deleted when the cache fills.
+ * </p>
+ * <p>
+ * This class is not thread-safe; it should only be used by the thread
+ * which owns the OpenGL context.
+ * </p>
+ */
+final class TextCache {
+
+	/** The number of strings kept by each cache */
+	private static final int MAX_ENTRIES = 128;
+
+	/** The font which lays out the text */
+	private final Layout layout;
+
+	/** The display list of each string, least recently printed first */
+	private final Map<String, Integer> lists;
+
+
+	/**
+	 * Lays out the glyph quads of a font's text.
+	 */
+	interface Layout {
+
+		/**
+		 * Draws a string's glyph quads, with the first glyph at the origin.
+		 * <p>
+		 * This is called while a display list is being compiled, so must
+		 * only make OpenGL calls which can be compiled into a list, and
+		 * must not set the colour.
+		 * </p>
+		 * @param text the text to lay out.
+		 */
+		void layout(String text);
+
+	}
+
+
+	/**
+	 * Constructor for a text cache.
+	 * @param layout the font which lays out the text.
+	 */
+	TextCache(Layout layout) {
+		this.layout = layout;
+		this.lists = new LinkedHashMap<String, Integer>(MAX_ENTRIES, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+				if (size() <= MAX_ENTRIES) return false;
+
+				glDeleteLists(eldest.getValue(), 1);
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Draws a string at the origin, laying it out if it has not been
+	 * printed recently.
+	 * @param text the text to draw.
+	 */
+	void draw(String text) {
+		Integer list = lists.get(text);
+
+		if (list == null) {
+			int id = glGenLists(1);
+
+			// Without a list, lay out the text each time it is printed
+			if (id == 0) {
+				layout.layout(text);
+				return;
+			}
+
+			glNewList(id, GL_COMPILE);
+			layout.layout(text);
+			glEndList();
+
+			list = id;
+			lists.put(text, list);
+		}
+
+		glCallList(list);
+	}
+
+}
@@ -0,0 +1,411 @@
+package lib.jog;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.BufferUtils;
+import org.newdawn.slick.opengl.InternalTextureLoader;
+import org.newdawn.slick.opengl.LoadableImageData;
+import org.newdawn.slick.opengl.ImageDataFactory;
+import org.newdawn.slick.opengl.Texture;
+import org.newdawn.slick.util.ResourceLoader;
+
+/**
+ * <h1>jog.TextureAtlas</h1>
+ * <p>Packs the images which are drawn together into shared textures.</p>
+ * <p>
+ * Images are packed in groups, so that the images drawn in the same
+ * scene share a texture, and can be drawn in one batch (see
+ * {@link SpriteBatch}). The atlas is built the first time one of its
+ * images is loaded. Each image is packed at the size of the texture it
+ * would otherwise have been given (i.e. rounded up to a power of two),
+ * so that it is drawn exactly as before.
+ * </p>
+ * <p>
+ * Images are packed without any space between them; instead, the
+ * texture coordinates of each image are inset by half a texel, so
+ * that filtering never samples a neighbouring image.
+ * </p>
+ * <p>
+ * This class is not thread-safe; it should only be used by the thread
+ * which owns the OpenGL context.
+ * </p>
+ */
+final class TextureAtlas {
+
+	/** The largest size of texture to pack images into */
+	private static final int MAX_PAGE_SIZE = 2048;
+
+	/** The groups of images to pack together */
+	private static final String[][] GROUPS = new String[][] {
+		// Drawn while playing
+		new String[] {
+				"gfx/air/plane.png",
+				"gfx/apt/Airport.png",
+				"gfx/apt/fog.png",
+				"gfx/ani/explosionFrames.png",
+				"gfx/pup/base_32.png",
+				"gfx/pup/cloud_32.png",
+				"gfx/pup/slow_32.png",
+				"gfx/pup/speed_32.png",
+				"gfx/pup/transfer_32.png"
+		},
+		// Drawn in the menus
+		new String[] {
+				"gfx/pup/singleplayer_512.png",
+				"gfx/pup/multiplayer_512.png",
+				"gfx/pup/credits_512.png",
+				"gfx/pup/help_512.png",
+				"gfx/pup/exit_512.png",
+				"gfx/pup/difficulty1_512.png",
+				"gfx/pup/difficulty2_512.png",
+				"gfx/pup/difficulty3_512.png"
+		}
+	};
+
+	/** The region of each packed image, by path */
+	private static Map<String, Region> regions;
+
+
+	/**
+	 * The part of a texture which an image has been packed into.
+	 */
+	static final class Region {
+
+		/** The texture the image has been packed into */
+		final Texture texture;
+
+		/** The texture coordinates of the image's left edge */
+		final double u0;
+
+		/** The texture coordinates of the image's top edge */
+		final double v0;
+
+		/** The texture coordinates of the image's right edge */
+		final double u1;
+
+		/** The texture coordinates of the image's bottom edge */
+		final double v1;
+
+		/** The x coordinate of the image in the texture, in pixels */
+		final int x;
+
+		/** The y coordinate of the image in the texture, in pixels */
+		final int y;
+
+		/** The width of the image, in pixels */
+		final int width;
+
+		/** The height of the image, in pixels */
+		final int height;
+
+		/**
+		 * Constructor for a region.
+		 * @param texture the texture the image has been packed into.
+		 * @param x the x coordinate of the image in the texture.
+		 * @param y the y coordinate of the image in the texture.
+		 * @param width the width of the image.
+		 * @param height the height of the image.
+		 */
+		private Region(Texture texture, int x, int y, int width, int height) {
+			double textureWidth = texture.getTextureWidth();
+			double textureHeight = texture.getTextureHeight();
+
+			this.texture = texture;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.u0 = (x + 0.5) / textureWidth;
+			this.v0 = (y + 0.5) / textureHeight;
+			this.u1 = (x + width - 0.5) / textureWidth;
+			this.v1 = (y + height - 0.5) / textureHeight;
+		}
+
+	}
+
+	/**
+	 * An image waiting to be packed.
+	 */
+	private static final class Entry {
+
+		/** The path of the image */
+		private final String path;
+
+		/** The image's pixels, as RGBA bytes */
+		private final ByteBuffer pixels;
+
+		/** The width of the image, including any padding */
+		private final int width;
+
+		/** The height of the image, including any padding */
+		private final int height;
+
+		/** The page the image has been packed into */
+		private Page page;
+
+		/** The x coordinate of the image in the page */
+		private int x;
+
+		/** The y coordinate of the image in the page */
+		private int y;
+
+		/**
+		 * Constructor for an entry.
+		 * @param path the path of the image.
+		 * @param pixels the image's pixels.
+		 * @param width the width of the image.
+		 * @param height the height of the image.
+		 */
+		private Entry(String path, ByteBuffer pixels, int width, int height) {
+			this.path = path;
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+		}
+
+	}
+
+	/**
+	 * A texture being packed.
+	 * <p>
+	 * Images are placed as low as possible on the skyline formed by the
+	 * images already placed, which packs images whose sizes are powers
+	 * of two without any gaps.
+	 * </p>
+	 */
+	private static final class Page {
+
+		/** The width and height of the page */
+		private final int size;
+
+		/** The top edge of the images placed, as {x, y, width} segments */
+		private final List<int[]> skyline = new ArrayList<int[]>();
+
+		/** The width of the area used */
+		private int usedWidth;
+
+		/** The height of the area used */
+		private int usedHeight;
+
+		/** The texture created for the page */
+		private Texture texture;
+
+		/**
+		 * Constructor for a page.
+		 * @param size the width and height of the page.
+		 */
+		private Page(int size) {
+			this.size = size;
+			skyline.add(new int[] {0, 0, size});
+		}
+
+		/**
+		 * Places an image on the page.
+		 * @param width the width of the image.
+		 * @param height the height of the image.
+		 * @return the {x, y} coordinates of the image, or <code>null</code>
+		 * 			if there is no room for it.
+		 */
+		private int[] place(int width, int height) {
+			int bestIndex = -1;
+			int bestX = 0;
+			int bestY = Integer.MAX_VALUE;
+
+			for (int i = 0; i < skyline.size(); i++) {
+				int x = skyline.get(i)[0];
+				if (x + width > size) break;
+
+				// The image rests on the highest segment beneath it
+				int y = 0;
+				for (int j = i, covered = 0; covered < width; j++) {
+					y = Math.max(y, skyline.get(j)[1]);
+					covered += skyline.get(j)[2];
+				}
+
+				if (y + height <= size && y < bestY) {
+					bestIndex = i;
+					bestX = x;
+					bestY = y;
+				}
+			}
+
+			if (bestIndex == -1) return null;
+
+			// Raise the skyline beneath the image
+			int end = bestX + width;
+			skyline.add(bestIndex, new int[] {bestX, bestY + height, width});
+
+			for (int j = bestIndex + 1; j < skyline.size();) {
+				int[] segment = skyline.get(j);
+				if (segment[0] >= end) break;
+
+				int overlap = end - segment[0];
+				if (overlap >= segment[2]) {
+					skyline.remove(j);
+				} else {
+					segment[0] += overlap;
+					segment[2] -= overlap;
+					break;
+				}
+			}
+
+			// Join segments of the same height
+			for (int j = 0; j < skyline.size() - 1;) {
+				int[] segment = skyline.get(j);
+				int[] next = skyline.get(j + 1);
+
+				if (segment[1] == next[1]) {
+					segment[2] += next[2];
+					skyline.remove(j + 1);
+				} else {
+					j++;
+				}
+			}
+
+			usedWidth = Math.max(usedWidth, end);
+			usedHeight = Math.max(usedHeight, bestY + height);
+
+			return new int[] {bestX, bestY};
+		}
+
+	}
+
+
+	/**
+	 * Gets the region an image has been packed into.
+	 * @param filepath the path to the image file.
+	 * @return the image's region, or <code>null</code> if the image is
+	 * 			not in the atlas.
+	 */
+	static Region getRegion(String filepath) {
+		if (regions == null) {
+			regions = new HashMap<String, Region>();
+
+			for (String[] group : GROUPS) {
+				pack(group);
+			}
+		}
+
+		return regions.get(filepath.replace(File.separatorChar, '/'));
+	}
+
+	/**
+	 * Packs a group of images into as few textures as possible.
+	 * <p>
+	 * Images which cannot be loaded or packed are left out of the atlas,
+	 * so are loaded into textures of their own.
+	 * </p>
+	 * @param group the paths of the images to pack.
+	 */
+	private static void pack(String[] group) {
+		int pageSize = Math.min(MAX_PAGE_SIZE, glGetInteger(GL_MAX_TEXTURE_SIZE));
+
+		// Load the images, largest first
+		List<Entry> entries = new ArrayList<Entry>();
+
+		for (String path : group) {
+			Entry entry = load(path);
+			if (entry != null) entries.add(entry);
+		}
+
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				if (a.height != b.height) return b.height - a.height;
+				return b.width - a.width;
+			}
+		});
+
+		// Place each image on the first page with room for it
+		List<Page> pages = new ArrayList<Page>();
+
+		for (Entry entry : entries) {
+			if (entry.width > pageSize || entry.height > pageSize) continue;
+
+			for (int i = 0; entry.page == null; i++) {
+				if (i == pages.size()) pages.add(new Page(pageSize));
+
+				int[] position = pages.get(i).place(entry.width, entry.height);
+
+				if (position != null) {
+					entry.page = pages.get(i);
+					entry.x = position[0];
+					entry.y = position[1];
+				}
+			}
+		}
+
+		// Create the textures, only as large as they need to be
+		for (Page page : pages) {
+			try {
+				page.texture = InternalTextureLoader.get().createTexture(
+						page.usedWidth, page.usedHeight, GL_LINEAR);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		for (Entry entry : entries) {
+			if (entry.page == null || entry.page.texture == null) continue;
+
+			entry.page.texture.bind();
+			glTexSubImage2D(GL_TEXTURE_2D, 0, entry.x, entry.y,
+					entry.width, entry.height, GL_RGBA, GL_UNSIGNED_BYTE,
+					entry.pixels);
+
+			regions.put(entry.path, new Region(entry.page.texture,
+					entry.x, entry.y, entry.width, entry.height));
+		}
+
+		// Binding a texture enables texturing
+		glDisable(GL_TEXTURE_2D);
+	}
+
+	/**
+	 * Loads an image's pixels.
+	 * @param path the path of the image.
+	 * @return the image, or <code>null</code> if it could not be loaded
+	 * 			as RGBA pixels.
+	 */
+	private static Entry load(String path) {
+		LoadableImageData data = ImageDataFactory.getImageDataFor(path);
+		InputStream in = null;
+
+		try {
+			in = ResourceLoader.getResourceAsStream(path);
+			ByteBuffer pixels = data.loadImage(in, false, true, null);
+
+			if (data.getDepth() != 32) return null;
+
+			if (!pixels.isDirect()) {
+				pixels = BufferUtils.createByteBuffer(pixels.remaining())
+						.put(pixels);
+				pixels.flip();
+			}
+
+			return new Entry(path, pixels, data.getTexWidth(),
+					data.getTexHeight());
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			try {
+				if (in != null) in.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
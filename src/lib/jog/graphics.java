@@ -2,14 +2,21 @@ package lib.jog;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.EXTFramebufferObject.*;
 
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GLContext;
 import org.newdawn.slick.Color;
 import org.newdawn.slick.TrueTypeFont;
+import org.newdawn.slick.opengl.InternalTextureLoader;
 import org.newdawn.slick.opengl.Texture;
 import org.newdawn.slick.opengl.TextureLoader;
+import org.newdawn.slick.opengl.TextureImpl;
 import org.newdawn.slick.util.ResourceLoader;
 
 /**
@@ -17,6 +24,9 @@ import org.newdawn.slick.util.ResourceLoader;
  * <p>Provides a layer upon OpenGL methods. jog.graphics allows drawing basic shapes to the screen,
  * as well as images and limited font capabilities. jog.graphics (unlike OpenGL) has the graphical origin to be the window's
  * upper-left corner.</p>
+ * <p>Once a render thread has been started (see {@link window#startRenderThread()}), everything drawn is recorded
+ * into a {@link DrawList} instead, and drawn by the render thread when the frame ends. Textures, fonts and layers
+ * are still created when asked for, on the render thread.</p>
  * @author IMP1
  */
 public abstract class graphics {
@@ -28,11 +38,11 @@ public abstract class graphics {
 	 */
 	public static abstract class Font {
 		
-		protected abstract void print(double x, double y, String text, double size, Color colour);
+		protected abstract void print(double x, double y, String text, double size, int colour);
 
-		protected abstract void printCentred(double x, double y, double width, String text, double size, Color colour);
+		protected abstract void printCentred(double x, double y, double width, String text, double size, int colour);
 		
-		protected abstract void printRight(double x, double y, double width, String text, double size, Color colour);
+		protected abstract void printRight(double x, double y, double width, String text, double size, int colour);
 		
 	}
 	
@@ -41,14 +51,24 @@ public abstract class graphics {
 	 * <p>A font generated from an image. Each glyph is as wide as the entire image as high.</p>
 	 * @author IMP1
 	 */
-	private static class BitmapFont extends Font {
+	private static class BitmapFont extends Font implements TextCache.Layout {
 		
 		/**
 		 * A string containing the characters in the same order that the image has them.
 		 */
 		private String glyphs;
+		
+		/** The position of each character's glyph in the image, by character, or -1 if the image has no glyph for it */
+		private int[] glyphIndices;
+		
 		private Image image;
 		
+		/** The glyph quads of the text printed */
+		private final TextCache cache = new TextCache(this);
+		
+		/** Whether the image's texture has been set not to be smoothed when magnified */
+		private boolean nearestFilter;
+		
 		/**
 		 * Constructor for a bitmap font.
 		 * @param filepath the path to the image file.
@@ -57,6 +77,26 @@ public abstract class graphics {
 		private BitmapFont(String filepath, String chars) {
 			image = newImage(filepath);
 			glyphs = chars;
+			
+			int maxChar = 0;
+			for (int i = 0; i < glyphs.length(); i ++) {
+				maxChar = Math.max(maxChar, glyphs.charAt(i));
+			}
+			
+			glyphIndices = new int[maxChar + 1];
+			Arrays.fill(glyphIndices, -1);
+			for (int i = glyphs.length() - 1; i >= 0; i --) {
+				glyphIndices[glyphs.charAt(i)] = i;
+			}
+		}
+		
+		/**
+		 * Gets the position of a character's glyph in the image.
+		 * @param c the character.
+		 * @return the position of the glyph, or -1 if the image has no glyph for the character.
+		 */
+		private int glyphIndex(char c) {
+			return (c < glyphIndices.length) ? glyphIndices[c] : -1;
 		}
 		
 		/**
@@ -67,34 +107,8 @@ public abstract class graphics {
 		 * @param size The size of the drawn text.
 		 */
 		@Override
-		protected void print(double x, double y, String text, double size, Color colour) {
-			y = window.height() - y;
-			double w = image.height();
-			double h = -image.height();
-			double qw = w / image.width();
-			double qh = 1;
-			
-	    	glEnable(GL_TEXTURE_2D);
-	    	glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-	    	image.texture.bind();
-			glPushMatrix();
-			glTranslated(x, y, 0);
-			glScaled(size, size, 1);
-			glBegin(GL_QUADS);
-			for (int i = 0; i < text.length(); i ++) {
-				double qx = glyphs.indexOf(text.charAt(i)) * w / image.width();
-				glTexCoord2d(qx, 0);
-				glVertex2d(w * i, 0);
-				glTexCoord2d(qx + qw, 0);
-				glVertex2d(w * (i+1), 0);
-				glTexCoord2d(qx + qw, qh);
-				glVertex2d(w * (i+1), h);
-				glTexCoord2d(qx, qh);
-				glVertex2d(w * i, h);
-			}
-			glEnd();
-			glPopMatrix();
-			glDisable(GL_TEXTURE_2D);
+		protected void print(double x, double y, String text, double size, int colour) {
+			draw(x, window.height() - y, text, size);
 		}
 		
 		/**
@@ -106,55 +120,53 @@ public abstract class graphics {
 		 * @param size The size of the drawn text.
 		 */
 		@Override
-		protected void printCentred(double x, double y, double width, String text, double size, Color colour) {
-			y = window.height() - y;
-			double w = image.height();
-			double h = -image.height();
-			double qw = w / image.width();
-			double qh = 1;
-			x += (width - (w * text.length() * size)) / 2;
-			
-			glEnable(GL_TEXTURE_2D);
-	    	image.texture.bind();
+		protected void printCentred(double x, double y, double width, String text, double size, int colour) {
+			x += (width - (image.height() * text.length() * size)) / 2;
+			draw(x, window.height() - y, text, size);
+		}
+
+		/**
+		 * Hacked above method that prints to the right of the x and y coordinates.
+		 */
+		protected void printRight(double x, double y, double width, String text, double size, int colour) {
+			x += (width - (image.height() * text.length() * size));
+			draw(x, window.height() - y, text, size);
+		}
+		
+		/**
+		 * Draws the text, using the quads laid out the last time it was printed if possible.
+		 * @param x The x coordinate for the text to be drawn to, from the bottom of the window.
+		 * @param y The y coordinate for the text to be drawn to, from the bottom of the window.
+		 * @param text The text to be drawn.
+		 * @param size The size of the drawn text.
+		 */
+		private void draw(double x, double y, String text, double size) {
+			state.bindTexture(image.texture);
+			if (!nearestFilter) {
+				glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+				nearestFilter = true;
+			}
 			glPushMatrix();
 			glTranslated(x, y, 0);
 			glScaled(size, size, 1);
-			glBegin(GL_QUADS);
-			for (int i = 0; i < text.length(); i ++) {
-				double qx = glyphs.indexOf(text.charAt(i)) * w / image.width();
-				glTexCoord2d(qx, 0);
-				glVertex2d(w * i, 0);
-				glTexCoord2d(qx + qw, 0);
-				glVertex2d(w * (i+1), 0);
-				glTexCoord2d(qx + qw, qh);
-				glVertex2d(w * (i+1), h);
-				glTexCoord2d(qx, qh);
-				glVertex2d(w * i, h);
-			}
-			glEnd();
+			cache.draw(text);
 			glPopMatrix();
-			glDisable(GL_TEXTURE_2D);
 		}
-
+		
 		/**
-		 * Hacked above method that prints to the right of the x and y coordinates.
+		 * Lays out a quad for each character of the text.
+		 * @param text The text to be laid out.
 		 */
-		protected void printRight(double x, double y, double width, String text, double size, Color colour) {
-			y = window.height() - y;
+		@Override
+		public void layout(String text) {
 			double w = image.height();
 			double h = -image.height();
 			double qw = w / image.width();
 			double qh = 1;
-			x += (width - (w * text.length() * size));
-		
-			glEnable(GL_TEXTURE_2D);
-			image.texture.bind();
-			glPushMatrix();
-			glTranslated(x, y, 0);
-			glScaled(size, size, 1);
+			
 			glBegin(GL_QUADS);
 			for (int i = 0; i < text.length(); i ++) {
-				double qx = glyphs.indexOf(text.charAt(i)) * w / image.width();
+				double qx = glyphIndex(text.charAt(i)) * qw;
 				glTexCoord2d(qx, 0);
 				glVertex2d(w * i, 0);
 				glTexCoord2d(qx + qw, 0);
@@ -165,8 +177,6 @@ public abstract class graphics {
 				glVertex2d(w * i, h);
 			}
 			glEnd();
-			glPopMatrix();
-			glDisable(GL_TEXTURE_2D);
 		}
 
 }
@@ -179,18 +189,37 @@ public abstract class graphics {
 	 * @author IMP1
 	 * @see TrueTypeFont
 	 */
-	private static class SystemFont extends Font {
+	private static class SystemFont extends Font implements TextCache.Layout {
+
+		/** A colour which leaves the current colour as it is, so text can be laid out without one */
+		private static final Color NO_COLOUR = new Color(1f, 1f, 1f, 1f) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void bind() {
+			}
+		};
 
 		private TrueTypeFont _font;
 		
+		/** The glyph quads of the text printed */
+		private final TextCache cache = new TextCache(this);
+		
 		/**
 		 * Constructor for a system font.
 		 * @param name name of the system font.
 		 * @param size the size of the created font.
 		 */
-		private SystemFont(String name, int size) {
-			java.awt.Font font = new java.awt.Font("Times New Roman", java.awt.Font.PLAIN, size);
-			_font = new TrueTypeFont(font, false);
+		private SystemFont(String name, final int size) {
+			window.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					java.awt.Font font = new java.awt.Font("Times New Roman", java.awt.Font.PLAIN, size);
+					_font = new TrueTypeFont(font, false);
+					// Creating the font's texture binds it
+					state.invalidate();
+				}
+			});
 		}
 		
 		/**
@@ -208,15 +237,8 @@ public abstract class graphics {
 		 * @param text The text to be drawn.
  		 */
 		@Override
-		protected void print(double x, double y, String text, double size, Color colour) {
-			y = y - window.height();
-			
-			glEnable(GL_TEXTURE_2D);
-			glPushMatrix();
-			glScaled(1, -1, 0);
-			_font.drawString((int)x, (int)y, text, colour);
-			glPopMatrix();
-			glDisable(GL_TEXTURE_2D);
+		protected void print(double x, double y, String text, double size, int colour) {
+			draw((int)x, (int)(y - window.height()), text, colour);
 		}
 
 		/**
@@ -228,35 +250,51 @@ public abstract class graphics {
 		 * @param size The size of the drawn text.
 		 */
 		@Override
-		public void printCentred(double x, double y, double width, String text, double size, Color colour) {
-			y = y - window.height();
+		public void printCentred(double x, double y, double width, String text, double size, int colour) {
 			x += (width - _font.getWidth(text)) / 2;
-			
-			glEnable(GL_TEXTURE_2D);
-			glPushMatrix();
-			glScaled(1, -1, 0);
-			_font.drawString((int)x, (int)y, text, colour);
-			glPopMatrix();
-			glDisable(GL_TEXTURE_2D);
+			draw((int)x, (int)(y - window.height()), text, colour);
 		}
 		
 		/**
 		 * Hacked above method that prints to the right of the x and y coordinates.
 		 */
-		public void printRight(double x, double y, double width, String text, double size, Color colour) {
-			y = y - window.height();
+		public void printRight(double x, double y, double width, String text, double size, int colour) {
 			x += (width - _font.getWidth(text));
-			
-			glEnable(GL_TEXTURE_2D);
+			draw((int)x, (int)(y - window.height()), text, colour);
+		}
+		
+		/**
+		 * Draws the text, using the quads laid out the last time it was printed if possible.
+		 * @param x The x coordinate for the text to be drawn to.
+		 * @param y The y coordinate for the text to be drawn to, from the bottom of the window.
+		 * @param text The text to be drawn.
+		 * @param colour The colour to draw the text, as 0xRRGGBBAA.
+		 */
+		private void draw(int x, int y, String text, int colour) {
 			glPushMatrix();
 			glScaled(1, -1, 0);
-			_font.drawString((int)x, (int)y, text, colour);
+			glTranslatef(x, y, 0);
+			applyColour(colour);
+			cache.draw(text);
+			// The text's list binds the font's texture without the texture loader knowing
+			state.textureBoundElsewhere();
 			glPopMatrix();
-			glDisable(GL_TEXTURE_2D);
+		}
+		
+		/**
+		 * Lays out a quad for each character of the text.
+		 * @param text The text to be laid out.
+		 */
+		@Override
+		public void layout(String text) {
+			// Make sure the font's texture is bound in the list
+			TextureImpl.bindNone();
+			_font.drawString(0, 0, text, NO_COLOUR);
 		}
 		
 	
 	}
+
 	
 	/**
 	 * <h1>jog.graphics.Image</h1>
@@ -268,6 +306,9 @@ public abstract class graphics {
 		
 		private Texture texture;
 		
+		/** The region of the texture the image was packed into, or null if it has its own texture */
+		private TextureAtlas.Region region;
+		
 		/** The x-xoordinate of the image */
 		private double x;
 		
@@ -279,13 +320,7 @@ public abstract class graphics {
 		 * @param filepath the path to the image file.
 		 */
 		private Image(String filepath) {
-			try {
-				String format = filepath.split("\\.")[1].toUpperCase();
-				InputStream in = ResourceLoader.getResourceAsStream(filepath);
-				texture = TextureLoader.getTexture(format, in);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			load(filepath);
 		}
 		
 		/**
@@ -298,14 +333,63 @@ public abstract class graphics {
 		private Image(String filepath, int x, int y, double scale) {
 			this.x = x*scale;
 			this.y = y*scale;
+			load(filepath);
+		}
+		
+		/**
+		 * Loads the image's texture, on the render thread.
+		 * @param filepath the path to the image file.
+		 */
+		private void load(final String filepath) {
+			window.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					loadTexture(filepath);
+				}
+			});
+		}
+		
+		/**
+		 * Loads the image's texture.
+		 * <p>If the image has been packed into the texture atlas, the atlas's texture is used.
+		 * Otherwise, the image is loaded into a texture of its own.</p>
+		 * @param filepath the path to the image file.
+		 */
+		private void loadTexture(String filepath) {
+			region = TextureAtlas.getRegion(filepath);
 			
-			try {
-				String format = filepath.split("\\.")[1].toUpperCase();
-				InputStream in = ResourceLoader.getResourceAsStream(filepath);
-				texture = TextureLoader.getTexture(format, in);
-			} catch (IOException e) {
-				e.printStackTrace();
+			if (region != null) {
+				texture = region.texture;
+			} else {
+				try {
+					String format = filepath.split("\\.")[1].toUpperCase();
+					InputStream in = ResourceLoader.getResourceAsStream(filepath);
+					texture = TextureLoader.getTexture(format, in);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 			}
+			
+			// Loading textures binds them
+			state.invalidate();
+		}
+		
+		/**
+		 * Converts a horizontal position within the image to a texture coordinate.
+		 * @param s the position, from 0 (the left edge) to 1 (the right edge).
+		 * @return the texture coordinate of the position.
+		 */
+		private double u(double s) {
+			return (region == null) ? s : region.u0 + s * (region.u1 - region.u0);
+		}
+		
+		/**
+		 * Converts a vertical position within the image to a texture coordinate.
+		 * @param t the position, from 0 (the top edge) to 1 (the bottom edge).
+		 * @return the texture coordinate of the position.
+		 */
+		private double v(double t) {
+			return (region == null) ? t : region.v0 + t * (region.v1 - region.v0);
 		}
 		
 		/**
@@ -329,7 +413,7 @@ public abstract class graphics {
 		 * @return the width of the image in pixels.
 		 */
 		public double width() { 
-			return texture.getTextureWidth();
+			return (region == null) ? texture.getTextureWidth() : region.width;
 		}
 		
 		/**
@@ -339,7 +423,7 @@ public abstract class graphics {
 		 * @return the width of the image in pixels scaled
 		 */
 		public double scaledWidth(double scale) {
-			return texture.getTextureWidth() * scale;
+			return width() * scale;
 
 		}
 		
@@ -348,7 +432,7 @@ public abstract class graphics {
 		 * @return the height of the image in pixels.
 		 */
 		public double height() { 
-			return texture.getTextureHeight(); 
+			return (region == null) ? texture.getTextureHeight() : region.height; 
 		}
 		
 		/**
@@ -358,7 +442,7 @@ public abstract class graphics {
 		 * @return the height of the image in pixels scaled
 		 */
 		public double scaledHeight(double scale) {
-			return texture.getTextureHeight() * scale;
+			return height() * scale;
 		}
 		
 		/**
@@ -368,15 +452,146 @@ public abstract class graphics {
 		 * @return the colour at the specified pixel.
 		 */
 		public Color pixelAt(int x, int y) {
-			int r = texture.getTextureData()[y * (int)width() + x ] * -255;
-			int g = texture.getTextureData()[y * (int)width() + x + 1] * -255;
-			int b = texture.getTextureData()[y * (int)width() + x + 2] * -255;
-			int a = texture.getTextureData()[y * (int)width() + x + 3] * -255;
+			if (region != null) {
+				x += region.x;
+				y += region.y;
+			}
+			// Reading the texture uses OpenGL
+			final byte[][] data = new byte[1][];
+			window.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					data[0] = texture.getTextureData();
+				}
+			});
+			int w = texture.getTextureWidth();
+			int r = data[0][y * w + x ] * -255;
+			int g = data[0][y * w + x + 1] * -255;
+			int b = data[0][y * w + x + 2] * -255;
+			int a = data[0][y * w + x + 3] * -255;
 			return new Color(r, g, b, a);
 		}
 		
 	}
 	
+	/**
+	 * <h1>jog.graphics.Layer</h1>
+	 * <p>An image the size of the window which things can be drawn to, then drawn to the window
+	 * as a whole. Things which rarely change can be drawn to a layer once, and the layer drawn
+	 * each frame in their place.</p>
+	 * <p>A layer is drawn to through a framebuffer object, so is only available where OpenGL
+	 * supports them. Its contents are lost when the window changes size.</p>
+	 * @see graphics#beginLayer(Layer)
+	 */
+	public static class Layer {
+		
+		/** The framebuffer object the layer is drawn to, or 0 if not yet created */
+		private int framebuffer;
+		
+		/** The texture holding the layer's contents */
+		private Texture texture;
+		
+		/** The width of the window when the layer was created */
+		private volatile int width;
+		
+		/** The height of the window when the layer was created */
+		private volatile int height;
+		
+		/** The number of times the layer has been marked out of date, so that a frame drawn to it
+		 * before it last was can be told apart from one drawn since */
+		private volatile int generation;
+		
+		/** The generation the layer's contents were drawn in, or -1 if it holds nothing */
+		private volatile int validGeneration = -1;
+		
+		/** Whether the layer could not be created, so can never be drawn to */
+		private volatile boolean unsupported;
+		
+		/**
+		 * Checks whether the layer holds what was last drawn to it, at the current size of the window.
+		 * @return whether the layer can be drawn without being drawn to first.
+		 */
+		public boolean isValid() {
+			return validGeneration == generation && width == window.width() && height == window.height();
+		}
+		
+		/**
+		 * Marks the layer's contents as out of date, so that it is drawn to again.
+		 * <p>Contents drawn in a frame recorded before this was called do not make the layer valid
+		 * again, even if the render thread only draws that frame afterwards.</p>
+		 */
+		public void invalidate() {
+			generation++;
+		}
+		
+		/**
+		 * Creates the layer's framebuffer and texture, the size of the window.
+		 */
+		private void create() {
+			release();
+			
+			if (!GLContext.getCapabilities().GL_EXT_framebuffer_object) {
+				unsupported = true;
+				return;
+			}
+			
+			width = window.width();
+			height = window.height();
+			
+			try {
+				texture = InternalTextureLoader.get().createTexture(width, height, GL_NEAREST);
+			} catch (IOException e) {
+				e.printStackTrace();
+				unsupported = true;
+				return;
+			} finally {
+				state.invalidate();
+			}
+			
+			framebuffer = glGenFramebuffersEXT();
+			glBindFramebufferEXT(GL_FRAMEBUFFER_EXT, framebuffer);
+			glFramebufferTexture2DEXT(GL_FRAMEBUFFER_EXT, GL_COLOR_ATTACHMENT0_EXT,
+					GL_TEXTURE_2D, texture.getTextureID(), 0);
+			int status = glCheckFramebufferStatusEXT(GL_FRAMEBUFFER_EXT);
+			glBindFramebufferEXT(GL_FRAMEBUFFER_EXT, 0);
+			
+			if (status != GL_FRAMEBUFFER_COMPLETE_EXT) {
+				Exception e = new Exception("Layer framebuffer incomplete: " + status);
+				e.printStackTrace();
+				release();
+				unsupported = true;
+			}
+		}
+		
+		/**
+		 * Frees the layer's framebuffer and texture. The layer is created again if it is drawn to.
+		 */
+		public void delete() {
+			window.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					release();
+				}
+			});
+		}
+		
+		/**
+		 * Frees the layer's framebuffer and texture, on the render thread.
+		 */
+		private void release() {
+			if (framebuffer != 0) {
+				glDeleteFramebuffersEXT(framebuffer);
+				framebuffer = 0;
+			}
+			if (texture != null) {
+				texture.release();
+				texture = null;
+			}
+			validGeneration = -1;
+		}
+		
+	}
+	
 	/**
 	 * Represents a quad for drawing rectangular sections of images.
 	 * @author IMP1
@@ -405,10 +620,71 @@ public abstract class graphics {
 		
 	}
 	
+	/** The colour white, as 0xRRGGBBAA */
+	private static final int WHITE = 0xFFFFFFFF;
+	
 	private static Font currentFont;
-	private static Color currentColour;
 	private static boolean viewPortEnabled;
 	
+	/** The colour things are drawn in, as 0xRRGGBBAA */
+	private static int currentColour = WHITE;
+	
+	/** The current colour as a slick colour, or null if not yet asked for */
+	private static Color currentColourObject;
+	
+	/** The font created for each truetype font, so the text they print stays cached */
+	private static final Map<TrueTypeFont, SystemFont> systemFonts = new IdentityHashMap<TrueTypeFont, SystemFont>();
+	
+	/** The OpenGL state things are drawn with, so that only changes to it are sent */
+	private static final RenderState state = new RenderState();
+	
+	/** Collects the images drawn, so they are drawn together */
+	private static final SpriteBatch batch = new SpriteBatch(state);
+	
+	/** The number of batches of images drawn in the last frame */
+	private static volatile int lastFrameDrawCalls;
+	
+	/** The number of changes to the OpenGL state made in the last frame */
+	private static volatile int lastFrameStateChanges;
+	
+	/** The thread drawing the frames recorded, or null if drawing straight away */
+	private static RenderThread renderer;
+	
+	/** The frame being recorded, or null if drawing straight away */
+	private static DrawList recording;
+	
+	// The commands frames are recorded as
+	private static final int COLOUR = 0;
+	private static final int QUAD = 1;
+	private static final int LINE = 2;
+	private static final int THICK_LINE = 3;
+	private static final int TRIANGLE = 4;
+	private static final int RECTANGLE = 5;
+	private static final int ARC = 6;
+	private static final int CIRCLE = 7;
+	private static final int RING = 8;
+	private static final int PRINT = 9;
+	private static final int PRINT_CENTRED = 10;
+	private static final int PRINT_RIGHT = 11;
+	private static final int VIEWPORT = 12;
+	private static final int RESET_VIEWPORT = 13;
+	private static final int CLEAR = 14;
+	private static final int BEGIN_LAYER = 15;
+	private static final int END_LAYER = 16;
+	private static final int DRAW_LAYER = 17;
+	private static final int PUSH = 18;
+	private static final int TRANSLATE = 19;
+	private static final int POP = 20;
+	
+	/** The largest number of segments whose circles are kept once made */
+	private static final int MAX_CACHED_SEGMENTS = 256;
+	
+	/** The vertices of a unit circle, as {cos, sin} pairs, by number of segments */
+	private static final double[][] unitCircles = new double[MAX_CACHED_SEGMENTS + 1][];
+	
+	/** The display lists of unit circles, by number of segments; outlines at even indices, filled circles at odd */
+	private static final int[] circleLists = new int[2 * (MAX_CACHED_SEGMENTS + 1)];
+	
 	/**
 	 * Intialises OpenGL with the appropriate matrix modes and orthographic dimensions. 
 	 */
@@ -417,7 +693,7 @@ public abstract class graphics {
 		glLoadIdentity();
 		glOrtho(0, window.width(), 0, window.height(), -1, 1);
 		glMatrixMode(GL_MODELVIEW);
-		glEnable(GL_BLEND);
+		state.setBlending(true);
 		glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
 		viewPortEnabled = false;
 	}
@@ -428,8 +704,9 @@ public abstract class graphics {
 	 * @param colour the colour to draw things.
 	 */
 	static public void setColour(Color colour) {
-		currentColour = colour;
-		glColor4f(currentColour.r, currentColour.g, currentColour.b, currentColour.a);
+		currentColour = RenderState.pack(colour.r, colour.g, colour.b, colour.a);
+		currentColourObject = colour;
+		colour(currentColour);
 	}
 
 	/**
@@ -441,12 +718,10 @@ public abstract class graphics {
 	 * @param a the alpha component of the colour to draw things.
 	 */
 	static public void setColour(double r, double g, double b, double a) {
-		currentColour = new Color((int)r, (int)g, (int)b, (int)a);
-		double red = (Math.max(0, Math.min(255, r)) / 255);
-		double green = Math.max(0, Math.min(255, g)) / 255;
-		double blue = Math.max(0, Math.min(255, b)) / 255;
-		double alpha = Math.max(0, Math.min(255, a)) / 255;
-		glColor4d(red, green, blue, alpha);
+		int colour = RenderState.pack((int)Math.round(r), (int)Math.round(g), (int)Math.round(b), (int)Math.round(a));
+		if (colour != currentColour) currentColourObject = null;
+		currentColour = colour;
+		colour(currentColour);
 	}
 	
 	static public void setColour(int r, int g, int b) {
@@ -458,7 +733,35 @@ public abstract class graphics {
 	 * @return the current colour.
 	 */
 	static public Color getColour() {
-		return currentColour;
+		if (currentColourObject == null) {
+			currentColourObject = new Color(RenderState.component(currentColour, 24), RenderState.component(currentColour, 16),
+					RenderState.component(currentColour, 8), RenderState.component(currentColour, 0));
+		}
+		return currentColourObject;
+	}
+	
+	/**
+	 * Sets the colour things are drawn in, or records it if the frame is being recorded.
+	 * @param rgba the colour, as 0xRRGGBBAA.
+	 */
+	private static void colour(int rgba) {
+		if (recording != null) {
+			recording.add(COLOUR).arg(rgba);
+		} else {
+			applyColour(rgba);
+		}
+	}
+	
+	/**
+	 * Sets the colour OpenGL draws in, and images are tinted with. Nothing is sent
+	 * to OpenGL if the colour has not changed.
+	 * @param rgba the colour, as 0xRRGGBBAA.
+	 */
+	private static void applyColour(int rgba) {
+		if (state.setColour(rgba)) {
+			batch.setColour(RenderState.component(rgba, 24), RenderState.component(rgba, 16),
+					RenderState.component(rgba, 8), RenderState.component(rgba, 0));
+		}
 	}
 	
 	/**
@@ -488,11 +791,26 @@ public abstract class graphics {
 	 * @param height the height of the new viewport, in pixels.
 	 */
 	static public void setViewport(int x, int y, int width, int height) {
+		if (recording != null) {
+			recording.add(VIEWPORT).arg(x).arg(y).arg(width).arg(height);
+		} else {
+			applyViewport(x, y, width, height);
+		}
+	}
+	
+	/**
+	 * Sets a new viewport for graphics to be drawn to.
+	 * @param x the x coordinate of the new viewport, relative to the window.
+	 * @param y the y coordinate of the new viewport, relative to the window.
+	 * @param width the width of the new viewport, in pixels.
+	 * @param height the height of the new viewport, in pixels.
+	 */
+	private static void applyViewport(int x, int y, int width, int height) {
+		batch.flush();
 		glPushMatrix();
 		glTranslated(x, -y, 0);
 		y = window.height() - y;
-		glEnable(GL_SCISSOR_TEST);		
-		glScissor(x, y - height, width, height);
+		state.setScissor(x, y - height, width, height);
 		viewPortEnabled = true;
 	}
 	
@@ -500,7 +818,19 @@ public abstract class graphics {
 	 * Sets the current viewport back to the default, that is, the window.
 	 */
 	static public void setViewport() {
-		glDisable(GL_SCISSOR_TEST);
+		if (recording != null) {
+			recording.add(RESET_VIEWPORT);
+		} else {
+			resetViewport();
+		}
+	}
+	
+	/**
+	 * Sets the current viewport back to the window.
+	 */
+	private static void resetViewport() {
+		batch.flush();
+		state.setScissoring(false);
 		glPopMatrix();
 		viewPortEnabled = false;
 	}
@@ -528,7 +858,12 @@ public abstract class graphics {
 		return newSystemFont(fontName, 24);
 	}
 	static public SystemFont newSystemFont(TrueTypeFont font) {
-		return new SystemFont(font);
+		SystemFont systemFont = systemFonts.get(font);
+		if (systemFont == null) {
+			systemFont = new SystemFont(font);
+			systemFonts.put(font, systemFont);
+		}
+		return systemFont;
 	}
 		
 	/**
@@ -552,6 +887,14 @@ public abstract class graphics {
 		return new Image(filepath, x, y, scale);
 	}
 	
+	/**
+	 * Creates and returns a new Layer. The layer's framebuffer is not created until it is first drawn to.
+	 * @return the created layer.
+	 */
+	static public Layer newLayer() {
+		return new Layer();
+	}
+	
 	/**
 	 * Creates and returns a new Quad.
 	 * @param x the beginning horizontal coordinate of the quad in pixels.
@@ -576,51 +919,19 @@ public abstract class graphics {
 	 * @param oy the y coordinate of the origin of the image around which it is rotated.
 	 */
 	static public void draw(Image drawable, double x, double y, double r, double ox, double oy) {
-		y = window.height() - y;
-		r = -Math.toDegrees(r);
-		
-    	glEnable(GL_TEXTURE_2D);
-    	drawable.texture.bind();
-		glPushMatrix();
-	    glTranslated(x, y, 0);
-	    glRotated(r, 0, 0, 1);
-	    glScaled(2, 2, 1);
-		glBegin(GL_QUADS);
-			glTexCoord2d(0, 0);
-			glVertex2d(-ox/2, -oy/2);
-			glTexCoord2d(1, 0);
-			glVertex2d(ox/2, -oy/2);
-			glTexCoord2d(1, 1);
-			glVertex2d(ox/2, oy/2);
-			glTexCoord2d(0, 1);
-			glVertex2d(-ox/2, oy/2);
-		glEnd();
-		glPopMatrix();
-		glDisable(GL_TEXTURE_2D);
+		// Scaled by 2, then rotated about the origin
+		quad(drawable.texture, x, window.height() - y, -r,
+				-ox, -oy, ox, oy,
+				drawable.u(0), drawable.v(0), drawable.u(1), drawable.v(1));
 	}
 	
 	static public void draw(Image drawable, double scale, double x, double y, double r, double ox, double oy) {
-		y = window.height() - y;
-		r = -Math.toDegrees(r);
+		double w = scale * ox / 2;
+		double h = scale * oy / 2;
 		
-    	glEnable(GL_TEXTURE_2D);
-    	drawable.texture.bind();
-		glPushMatrix();
-	    glTranslated(x, y, 0);
-	    glRotated(r, 0, 0, 1);
-	    glScaled(scale, scale, 1);
-		glBegin(GL_QUADS);
-			glTexCoord2d(0, 0);
-			glVertex2d(-ox/2, -oy/2);
-			glTexCoord2d(1, 0);
-			glVertex2d(ox/2, -oy/2);
-			glTexCoord2d(1, 1);
-			glVertex2d(ox/2, oy/2);
-			glTexCoord2d(0, 1);
-			glVertex2d(-ox/2, oy/2);
-		glEnd();
-		glPopMatrix();
-		glDisable(GL_TEXTURE_2D);
+		quad(drawable.texture, x, window.height() - y, -r,
+				-w, -h, w, h,
+				drawable.u(0), drawable.v(0), drawable.u(1), drawable.v(1));
 	}
 	
 	/**
@@ -633,48 +944,16 @@ public abstract class graphics {
 		drawable.x = x; //Set the x-coordinate of the image drawn by that specified by the x parameter
 		y = window.height() - y;
 		drawable.y = y; //Set the y-coordinate of the image drawn by that specified by the y parameter
-		double w = drawable.width();
-		double h = -drawable.height();
 		
-		glEnable(GL_TEXTURE_2D);
-    	drawable.texture.bind();
-		glPushMatrix();
-	    glTranslated(x, y, 0);
-		glBegin(GL_QUADS);
-			glTexCoord2d(0, 0);
-			glVertex2d(0, 0);
-			glTexCoord2d(1, 0);
-			glVertex2d(w, 0);
-			glTexCoord2d(1, 1);
-			glVertex2d(w, h);
-			glTexCoord2d(0, 1);
-			glVertex2d(0, h);
-		glEnd();
-		glPopMatrix();
-		glDisable(GL_TEXTURE_2D);
+		quad(drawable.texture, x, y, 0,
+				0, 0, drawable.width(), -drawable.height(),
+				drawable.u(0), drawable.v(0), drawable.u(1), drawable.v(1));
 	}
 	
 	static public void drawScaled(Image drawable, double x, double y, double scale) {
-		y = window.height() - (y);
-		double w = drawable.scaledWidth(scale);
-		double h = -drawable.scaledHeight(scale);
-		
-		glEnable(GL_TEXTURE_2D);
-		drawable.texture.bind();
-		glPushMatrix();
-		glTranslated(x, y, 0);
-		glBegin(GL_QUADS);
-			glTexCoord2d(0, 0);
-			glVertex2d(0, 0);
-			glTexCoord2d(1, 0);
-			glVertex2d(w, 0);
-			glTexCoord2d(1, 1);
-			glVertex2d(w, h);
-			glTexCoord2d(0, 1);
-			glVertex2d(0, h);
-		glEnd();
-		glPopMatrix();
-		glDisable(GL_TEXTURE_2D);
+		quad(drawable.texture, x, window.height() - y, 0,
+				0, 0, drawable.scaledWidth(scale), -drawable.scaledHeight(scale),
+				drawable.u(0), drawable.v(0), drawable.u(1), drawable.v(1));
 	}
 	
 	/**
@@ -685,26 +964,34 @@ public abstract class graphics {
 	 * @param y the vertical pixel to draw at.
 	 */
 	static public void drawq(Image drawable, Quad quad, double x, double y) {
-		y = window.height() - y;
-		double w = quad.quadWidth;
-		double h = -quad.quadHeight;
-		
-    	glEnable(GL_TEXTURE_2D);
-		drawable.texture.bind();
-		glPushMatrix();
-		glTranslated(x, y, 0);
-		glBegin(GL_QUADS);
-			glTexCoord2d(quad.x, quad.y);
-			glVertex2d(0, 0);
-			glTexCoord2d(quad.x + quad.width, quad.y);
-			glVertex2d(w, 0);
-			glTexCoord2d(quad.x + quad.width, quad.y + quad.height);
-			glVertex2d(w, h);
-			glTexCoord2d(quad.x, quad.y + quad.height);
-			glVertex2d(0, h);
-		glEnd();
-		glPopMatrix();
-		glDisable(GL_TEXTURE_2D);
+		quad(drawable.texture, x, window.height() - y, 0,
+				0, 0, quad.quadWidth, -quad.quadHeight,
+				drawable.u(quad.x), drawable.v(quad.y),
+				drawable.u(quad.x + quad.width), drawable.v(quad.y + quad.height));
+	}
+	
+	/**
+	 * Adds a textured quad to the batch being drawn, or records it if the frame is being recorded.
+	 * @see SpriteBatch#add(Texture, double, double, double, double, double, double, double, double, double, double, double)
+	 */
+	private static void quad(Texture texture, double x, double y, double angle,
+			double x0, double y0, double x1, double y1,
+			double u0, double v0, double u1, double v1) {
+		if (recording != null) {
+			recording.add(QUAD).ref(texture).arg(x).arg(y).arg(angle)
+					.arg(x0).arg(y0).arg(x1).arg(y1)
+					.arg(u0).arg(v0).arg(u1).arg(v1);
+		} else {
+			batch.add(texture, x, y, angle, x0, y0, x1, y1, u0, v0, u1, v1);
+		}
+	}
+	
+	/**
+	 * Draws any images waiting to be drawn, and disables texturing, ready to draw a shape.
+	 */
+	private static void prepareShape() {
+		batch.flush();
+		state.setTexturing(false);
 	}
 	
 	/**
@@ -715,6 +1002,19 @@ public abstract class graphics {
 	 * @param y2 the y coordinate of the second point.
 	 */
 	static public void line(double x1, double y1, double x2, double y2) {
+		if (recording != null) {
+			recording.add(LINE).arg(x1).arg(y1).arg(x2).arg(y2);
+		} else {
+			drawLine(x1, y1, x2, y2);
+		}
+	}
+	
+	/**
+	 * Draws a line from one point to another, straight away.
+	 * @see #line(double, double, double, double)
+	 */
+	private static void drawLine(double x1, double y1, double x2, double y2) {
+		prepareShape();
 		y1 = window.height() - y1;
 		y2 = window.height() - y2;
 		
@@ -724,6 +1024,47 @@ public abstract class graphics {
 		glEnd();
 	}
 	
+	/**
+	 * Draws a line of a given width from one point to another.
+	 * The line is drawn as a rectangle, so is the same width whatever its angle.
+	 * @param x1 the x coordinate of the first point.
+	 * @param y1 the y coordinate of the first point.
+	 * @param x2 the x coordinate of the second point.
+	 * @param y2 the y coordinate of the second point.
+	 * @param width the width of the line.
+	 */
+	static public void line(double x1, double y1, double x2, double y2, double width) {
+		if (recording != null) {
+			recording.add(THICK_LINE).arg(x1).arg(y1).arg(x2).arg(y2).arg(width);
+		} else {
+			drawLine(x1, y1, x2, y2, width);
+		}
+	}
+	
+	/**
+	 * Draws a line of a given width from one point to another, straight away.
+	 * @see #line(double, double, double, double, double)
+	 */
+	private static void drawLine(double x1, double y1, double x2, double y2, double width) {
+		prepareShape();
+		y1 = window.height() - y1;
+		y2 = window.height() - y2;
+		
+		double length = Math.sqrt((x2 - x1) * (x2 - x1) + (y2 - y1) * (y2 - y1));
+		if (length == 0) return;
+		
+		// Offset the corners half the width either side of the line
+		double nx = (y1 - y2) * width / (2 * length);
+		double ny = (x2 - x1) * width / (2 * length);
+		
+		glBegin(GL_QUADS);
+		glVertex2d(x1 + nx, y1 + ny);
+		glVertex2d(x2 + nx, y2 + ny);
+		glVertex2d(x2 - nx, y2 - ny);
+		glVertex2d(x1 - nx, y1 - ny);
+		glEnd();
+	}
+	
 	/**
 	 * Draws a triangle.
 	 * @param fill whether to fill with colour (false just draws the lines).
@@ -735,6 +1076,19 @@ public abstract class graphics {
 	 * @param y3 the y coordinate of the third point of the triangle.
 	 */
 	public static void triangle(boolean fill, double x1, double y1, double x2, double y2, double x3, double y3) {
+		if (recording != null) {
+			recording.add(TRIANGLE).arg(fill ? 1 : 0).arg(x1).arg(y1).arg(x2).arg(y2).arg(x3).arg(y3);
+		} else {
+			drawTriangle(fill, x1, y1, x2, y2, x3, y3);
+		}
+	}
+	
+	/**
+	 * Draws a triangle, straight away.
+	 * @see #triangle(boolean, double, double, double, double, double, double)
+	 */
+	private static void drawTriangle(boolean fill, double x1, double y1, double x2, double y2, double x3, double y3) {
+		prepareShape();
 		y1 = window.height() - y1;
 		y2 = window.height() - y2;
 		y3 = window.height() - y3;
@@ -762,6 +1116,19 @@ public abstract class graphics {
 	 * @param height the height of the rectangle.
 	 */
 	static public void rectangle(boolean fill, double x, double y, double width, double height) {
+		if (recording != null) {
+			recording.add(RECTANGLE).arg(fill ? 1 : 0).arg(x).arg(y).arg(width).arg(height);
+		} else {
+			drawRectangle(fill, x, y, width, height);
+		}
+	}
+	
+	/**
+	 * Draws a rectangle, straight away.
+	 * @see #rectangle(boolean, double, double, double, double)
+	 */
+	private static void drawRectangle(boolean fill, double x, double y, double width, double height) {
+		prepareShape();
 		y = window.height() - y;
 		height = -height;
 		
@@ -792,27 +1159,7 @@ public abstract class graphics {
 	 * @param height the height of the rectangle.
 	 */
 	static public void rectangleScaled(boolean fill, double x, double y, double width, double height, double scale) {
-		x *= scale;
-		y *= scale;
-		y = window.height() - y;
-		height = -height;
-		
-		glPushMatrix();
-	    glTranslated(x, y, 0);
-	    if (fill) {
-		    glBegin(GL_QUADS);
-	    } else {
-	    	glBegin(GL_LINE_STRIP);
-	    }
-        glVertex2d(0, 0);
-        glVertex2d(width, 0);
-        glVertex2d(width, height);
-        glVertex2d(0, height);
-	    if (!fill) {
-	        glVertex2d(0, 0);
-	    }
-	    glEnd();
-	    glPopMatrix();
+		rectangle(fill, x * scale, y * scale, width, height);
 	}
 	
 	/**
@@ -826,6 +1173,19 @@ public abstract class graphics {
 	 * @param segments how many lines segments to draw to approximate the curve. 
 	 */
 	static public void arc(boolean fill, double x, double y, double r, double startAngle, double angle, double segments) {
+		if (recording != null) {
+			recording.add(ARC).arg(fill ? 1 : 0).arg(x).arg(y).arg(r).arg(startAngle).arg(angle).arg(segments);
+		} else {
+			drawArc(fill, x, y, r, startAngle, angle, segments);
+		}
+	}
+	
+	/**
+	 * Draws an arc, straight away.
+	 * @see #arc(boolean, double, double, double, double, double, double)
+	 */
+	private static void drawArc(boolean fill, double x, double y, double r, double startAngle, double angle, double segments) {
+		prepareShape();
 		y = window.height() - y;
 		startAngle = -startAngle;
 		angle = -angle;
@@ -839,9 +1199,16 @@ public abstract class graphics {
 	    } else {
 	    	glBegin(GL_LINE_STRIP);
 	    }
+		// Rotate each vertex to the next, rather than finding each one's angle
+		double cos = Math.cos(angle / segments);
+		double sin = Math.sin(angle / segments);
+		double vx = Math.cos(startAngle);
+		double vy = Math.sin(startAngle);
 		for (int i = 0; i <= segments; i++) {
-		    double theta = startAngle + (angle * i / segments);
-		    glVertex2d(Math.cos(theta), Math.sin(theta));
+		    glVertex2d(vx, vy);
+		    double rotated = (vx * cos) - (vy * sin);
+		    vy = (vx * sin) + (vy * cos);
+		    vx = rotated;
 		}
 		glEnd();
 		glPopMatrix();
@@ -859,11 +1226,140 @@ public abstract class graphics {
 	 * @param segments how many lines segments to draw to approximate the curve.
 	 */
 	static public void circle(boolean fill, double x, double y, double r, double segments) {
+		if (recording != null) {
+			recording.add(CIRCLE).arg(fill ? 1 : 0).arg(x).arg(y).arg(r).arg(segments);
+		} else {
+			drawCircle(fill, x, y, r, segments);
+		}
+	}
+	
+	/**
+	 * Draws a circle, straight away.
+	 * @see #circle(boolean, double, double, double, double)
+	 */
+	private static void drawCircle(boolean fill, double x, double y, double r, double segments) {
+		prepareShape();
 		y = window.height() - y;
 		
 		glPushMatrix();
 		glTranslated(x, y, 0);
 		glScaled(r, r, 1);
+		if (segments == (int)segments && segments >= 1 && segments <= MAX_CACHED_SEGMENTS) {
+			drawUnitCircle(fill, (int)segments);
+		} else {
+			if (fill) {
+				glBegin(GL_TRIANGLE_FAN);
+				glVertex2d(0, 0);
+		    } else {
+		    	glBegin(GL_LINE_STRIP);
+		    }
+			for (int i = 0; i <= segments; i++) {
+			    double angle = Math.PI * 2 * i / segments;
+			    glVertex2d(Math.cos(angle), Math.sin(angle));
+			}
+			glEnd();
+		}
+		glPopMatrix();
+	}
+	static public void circle(boolean fill, double x, double y, double r) {
+		circle(fill, x, y, r, 20);
+	}
+	
+	/**
+	 * Draws a ring. That is, the area between two circles with the same centre.
+	 * @param x the x coordinate of the centre of the ring.
+	 * @param y the y coordinate of the centre of the ring.
+	 * @param innerRadius the radius of the ring's inner edge.
+	 * @param outerRadius the radius of the ring's outer edge.
+	 * @param segments how many segments to draw to approximate the curves.
+	 */
+	static public void ring(double x, double y, double innerRadius, double outerRadius, int segments) {
+		if (recording != null) {
+			recording.add(RING).arg(x).arg(y).arg(innerRadius).arg(outerRadius).arg(segments);
+		} else {
+			drawRing(x, y, innerRadius, outerRadius, segments);
+		}
+	}
+	
+	/**
+	 * Draws a ring, straight away.
+	 * @see #ring(double, double, double, double, int)
+	 */
+	private static void drawRing(double x, double y, double innerRadius, double outerRadius, int segments) {
+		prepareShape();
+		y = window.height() - y;
+		double[] vertices = unitCircle(segments);
+		
+		glBegin(GL_TRIANGLE_STRIP);
+		for (int i = 0; i <= segments; i++) {
+			double cos = vertices[2 * i];
+			double sin = vertices[2 * i + 1];
+			glVertex2d(x + (cos * outerRadius), y + (sin * outerRadius));
+			glVertex2d(x + (cos * innerRadius), y + (sin * innerRadius));
+		}
+		glEnd();
+	}
+	
+	/**
+	 * Gets the vertices of a unit circle.
+	 * <p>The vertices of circles with up to MAX_CACHED_SEGMENTS segments are
+	 * worked out once, and kept.</p>
+	 * @param segments how many segments the circle has.
+	 * @return the vertices, as {cos, sin} pairs, with the first vertex repeated at the end.
+	 */
+	private static double[] unitCircle(int segments) {
+		double[] vertices = (segments <= MAX_CACHED_SEGMENTS) ? unitCircles[segments] : null;
+		
+		if (vertices == null) {
+			vertices = new double[2 * (segments + 1)];
+			for (int i = 0; i <= segments; i++) {
+				double angle = Math.PI * 2 * i / segments;
+				vertices[2 * i] = Math.cos(angle);
+				vertices[2 * i + 1] = Math.sin(angle);
+			}
+			if (segments <= MAX_CACHED_SEGMENTS) unitCircles[segments] = vertices;
+		}
+		
+		return vertices;
+	}
+	
+	/**
+	 * Draws a unit circle at the origin.
+	 * <p>Each circle is compiled into a display list the first time it is drawn,
+	 * so every circle with the same number of segments is drawn from the same
+	 * vertices, already held by OpenGL, at whatever position and size the
+	 * current matrix gives it.</p>
+	 * @param fill whether to fill with colour.
+	 * @param segments how many lines segments to draw to approximate the curve.
+	 */
+	private static void drawUnitCircle(boolean fill, int segments) {
+		int index = (2 * segments) + (fill ? 1 : 0);
+		
+		if (circleLists[index] == 0) {
+			int list = glGenLists(1);
+			if (list != 0) {
+				glNewList(list, GL_COMPILE);
+				layoutUnitCircle(fill, segments);
+				glEndList();
+				circleLists[index] = list;
+			}
+		}
+		
+		if (circleLists[index] != 0) {
+			glCallList(circleLists[index]);
+		} else {
+			layoutUnitCircle(fill, segments);
+		}
+	}
+	
+	/**
+	 * Sends the vertices of a unit circle at the origin.
+	 * @param fill whether to fill with colour.
+	 * @param segments how many lines segments to draw to approximate the curve.
+	 */
+	private static void layoutUnitCircle(boolean fill, int segments) {
+		double[] vertices = unitCircle(segments);
+		
 		if (fill) {
 			glBegin(GL_TRIANGLE_FAN);
 			glVertex2d(0, 0);
@@ -871,14 +1367,9 @@ public abstract class graphics {
 	    	glBegin(GL_LINE_STRIP);
 	    }
 		for (int i = 0; i <= segments; i++) {
-		    double angle = Math.PI * 2 * i / segments;
-		    glVertex2d(Math.cos(angle), Math.sin(angle));
+		    glVertex2d(vertices[2 * i], vertices[2 * i + 1]);
 		}
 		glEnd();
-		glPopMatrix();
-	}
-	static public void circle(boolean fill, double x, double y, double r) {
-		circle(fill, x, y, r, 20);
 	}
 	
 	/**
@@ -889,8 +1380,7 @@ public abstract class graphics {
 	 * @param size the size to draw the text at.
 	 */
 	static public void print(String text, double x, double y, double size) {
-		if (currentFont == null) currentFont = newSystemFont("Times New Roman");
-		currentFont.print(x, y, text, size, currentColour);
+		text(PRINT, text, x, y, size, 0, currentColour);
 	}
 	
 	/**
@@ -901,12 +1391,11 @@ public abstract class graphics {
 	 * @param size the size to draw the text at.
 	 */
 	static public void print(String text, double x, double y, double size, Color colour) {
-		if (currentFont == null) currentFont = newSystemFont("Times New Roman");
-		currentFont.print(x, y, text, size, colour);
+		text(PRINT, text, x, y, size, 0, rgba(colour));
 	}
 	
 	static public void print(String text, double x, double y) {
-		print(text, x, y, 1, currentColour);
+		print(text, x, y, 1, null);
 	}
 	
 	static public void print(String text, double x, double y, Color colour) {
@@ -922,7 +1411,7 @@ public abstract class graphics {
 	 * @param scale - The scale to be applied to the text
 	 */
 	static public void printScaled(String text, double x, double y, double size, double scale) {
-		print(text, x * scale, y * scale, size * scale, currentColour);
+		print(text, x * scale, y * scale, size * scale, null);
 	}
 	
 	/**
@@ -946,8 +1435,7 @@ public abstract class graphics {
 	 * @param width the width the text is centred around.
 	 */
 	static public void printCentred(String text, double x, double y, double size, double width) {
-		if (currentFont == null) currentFont = newSystemFont("Times New Roman");
-		currentFont.printCentred(x, y, width, text, size, currentColour);
+		text(PRINT_CENTRED, text, x, y, size, width, currentColour);
 	}
 	
 	/**
@@ -959,8 +1447,7 @@ public abstract class graphics {
 	 * @param width the width the text is centred around.
 	 */
 	static public void printCentred(String text, double x, double y, double size, double width, Color colour) {
-		if (currentFont == null) currentFont = newSystemFont("Times New Roman");
-		currentFont.printCentred(x, y, width, text, size, colour);
+		text(PRINT_CENTRED, text, x, y, size, width, rgba(colour));
 	}
 	
 	/**
@@ -972,8 +1459,7 @@ public abstract class graphics {
 	 * @param width is redundant.
 	 */
 	static public void printRight(String text, double x, double y, double size, double width) {
-		if (currentFont == null) currentFont = newSystemFont("Times New Roman");
-		currentFont.printRight(x, y, width, text, size, currentColour);
+		text(PRINT_RIGHT, text, x, y, size, width, currentColour);
 	}
 	
 	/**
@@ -985,24 +1471,226 @@ public abstract class graphics {
 	 * @param width is redundant.
 	 */
 	static public void printRight(String text, double x, double y, double size, double width, Color colour) {
-		if (currentFont == null) currentFont = newSystemFont("Times New Roman");
-		currentFont.printRight(x, y, width, text, size, colour);
+		text(PRINT_RIGHT, text, x, y, size, width, rgba(colour));
+	}
+	
+	/**
+	 * Draws text in the current font, or records it if the frame is being recorded.
+	 * @param op how to align the text: PRINT, PRINT_CENTRED or PRINT_RIGHT.
+	 * @param text the characters to be drawn.
+	 * @param x the x coordinate to draw the text at.
+	 * @param y the y coordinate to draw the text at.
+	 * @param size the size to draw the text at.
+	 * @param width the width the text is aligned within.
+	 * @param colour the colour to draw the text, as 0xRRGGBBAA.
+	 */
+	private static void text(int op, String text, double x, double y, double size, double width, int colour) {
+		Font font = getFont();
+		if (recording != null) {
+			recording.add(op).ref(font).ref(text).arg(x).arg(y).arg(size).arg(width).arg(colour);
+		} else {
+			drawText(op, font, text, x, y, size, width, colour);
+		}
+	}
+	
+	/**
+	 * Draws text, straight away.
+	 * @see #text(int, String, double, double, double, double, int)
+	 */
+	private static void drawText(int op, Font font, String text, double x, double y, double size, double width, int colour) {
+		batch.flush();
+		if (op == PRINT_CENTRED) {
+			font.printCentred(x, y, width, text, size, colour);
+		} else if (op == PRINT_RIGHT) {
+			font.printRight(x, y, width, text, size, colour);
+		} else {
+			font.print(x, y, text, size, colour);
+		}
+	}
+	
+	/**
+	 * Packs a colour into an int.
+	 * @param colour the colour, or null for the current colour.
+	 * @return the colour, as 0xRRGGBBAA.
+	 */
+	private static int rgba(Color colour) {
+		return (colour == null) ? currentColour : RenderState.pack(colour.r, colour.g, colour.b, colour.a);
 	}
 	
 	/**
 	 * Clears the screen ready for another draw process.
 	 */
 	public static void clear() {
-		/*
-		try {
-			org.lwjgl.opengl.Display.swapBuffers();
-		} catch (org.lwjgl.LWJGLException e) {
-			e.printStackTrace();
-		}
-		*/
-		if (viewPortEnabled) setViewport();
+		if (recording != null) {
+			recording.add(CLEAR);
+		} else {
+			clearWindow();
+		}
+	}
+	
+	/**
+	 * Clears the screen, straight away.
+	 */
+	private static void clearWindow() {
+		batch.flush();
+		// Send the whole state again each frame, in case anything changed it unnoticed
+		state.invalidate();
+		if (viewPortEnabled) resetViewport();
 		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
-		GL11.glColor3d(1, 1, 1);
+		applyColour(WHITE);
+	}
+	
+	/**
+	 * Draws any images which are waiting to be drawn.
+	 * <p>Images are collected into batches, and drawn together when an image
+	 * with a different texture is drawn, or when anything else is drawn.
+	 * This must be called before drawing with OpenGL directly.</p>
+	 * <p>While frames are being recorded, nothing is drawn until the frame
+	 * is replayed, so this does nothing.</p>
+	 */
+	public static void flush() {
+		if (recording == null) batch.flush();
+	}
+	
+	/**
+	 * Ends the frame being drawn.
+	 * <p>If frames are being recorded, the frame is handed over to the render
+	 * thread (unless nothing was recorded), and recording of the next frame
+	 * begins. Otherwise, any images which are waiting are drawn, and how many
+	 * batches and state changes the frame was drawn with is recorded.</p>
+	 */
+	static void endFrame() {
+		if (recording != null) {
+			if (!recording.isEmpty()) recording = renderer.publish(recording);
+			return;
+		}
+		
+		batch.flush();
+		lastFrameDrawCalls = batch.resetDrawCalls();
+		lastFrameStateChanges = state.resetChanges();
+	}
+	
+	/**
+	 * Starts recording frames for a render thread to draw, rather than drawing them.
+	 * @param thread the thread which draws the frames.
+	 */
+	static void startRecording(RenderThread thread) {
+		renderer = thread;
+		recording = thread.acquire();
+	}
+	
+	/**
+	 * Stops recording frames, and goes back to drawing them straight away.
+	 * Any frame part way through being recorded is dropped.
+	 */
+	static void stopRecording() {
+		recording = null;
+		renderer = null;
+	}
+	
+	/**
+	 * Draws a recorded frame, then any images left waiting, and records how
+	 * many batches and state changes the frame was drawn with.
+	 * @param frame the frame to draw.
+	 */
+	static void replay(DrawList frame) {
+		// Whether the layer being drawn to could not be, so is being drawn to the window
+		boolean layerFailed = false;
+		
+		while (frame.hasNext()) {
+			int op = frame.nextOp();
+			switch (op) {
+			case COLOUR:
+				applyColour(frame.nextInt());
+				break;
+			case QUAD:
+				batch.add((Texture) frame.nextRef(), frame.nextArg(), frame.nextArg(), frame.nextArg(),
+						frame.nextArg(), frame.nextArg(), frame.nextArg(), frame.nextArg(),
+						frame.nextArg(), frame.nextArg(), frame.nextArg(), frame.nextArg());
+				break;
+			case LINE:
+				drawLine(frame.nextArg(), frame.nextArg(), frame.nextArg(), frame.nextArg());
+				break;
+			case THICK_LINE:
+				drawLine(frame.nextArg(), frame.nextArg(), frame.nextArg(), frame.nextArg(), frame.nextArg());
+				break;
+			case TRIANGLE:
+				drawTriangle(frame.nextBoolean(), frame.nextArg(), frame.nextArg(), frame.nextArg(),
+						frame.nextArg(), frame.nextArg(), frame.nextArg());
+				break;
+			case RECTANGLE:
+				drawRectangle(frame.nextBoolean(), frame.nextArg(), frame.nextArg(), frame.nextArg(), frame.nextArg());
+				break;
+			case ARC:
+				drawArc(frame.nextBoolean(), frame.nextArg(), frame.nextArg(), frame.nextArg(),
+						frame.nextArg(), frame.nextArg(), frame.nextArg());
+				break;
+			case CIRCLE:
+				drawCircle(frame.nextBoolean(), frame.nextArg(), frame.nextArg(), frame.nextArg(), frame.nextArg());
+				break;
+			case RING:
+				drawRing(frame.nextArg(), frame.nextArg(), frame.nextArg(), frame.nextArg(), frame.nextInt());
+				break;
+			case PRINT:
+			case PRINT_CENTRED:
+			case PRINT_RIGHT:
+				drawText(op, (Font) frame.nextRef(), (String) frame.nextRef(), frame.nextArg(), frame.nextArg(),
+						frame.nextArg(), frame.nextArg(), frame.nextInt());
+				break;
+			case VIEWPORT:
+				applyViewport(frame.nextInt(), frame.nextInt(), frame.nextInt(), frame.nextInt());
+				break;
+			case RESET_VIEWPORT:
+				resetViewport();
+				break;
+			case CLEAR:
+				clearWindow();
+				break;
+			case BEGIN_LAYER:
+				layerFailed = !startLayer((Layer) frame.nextRef());
+				break;
+			case END_LAYER:
+				Layer layer = (Layer) frame.nextRef();
+				int generation = frame.nextInt();
+				if (!layerFailed) finishLayer(layer, generation);
+				layerFailed = false;
+				break;
+			case DRAW_LAYER:
+				blitLayer((Layer) frame.nextRef());
+				break;
+			case PUSH:
+				pushMatrix();
+				break;
+			case TRANSLATE:
+				translateMatrix(frame.nextArg(), frame.nextArg());
+				break;
+			case POP:
+				popMatrix();
+				break;
+			}
+		}
+		
+		batch.flush();
+		lastFrameDrawCalls = batch.resetDrawCalls();
+		lastFrameStateChanges = state.resetChanges();
+	}
+	
+	/**
+	 * Allows access to the number of batches of images drawn in the last frame.
+	 * @return the number of draw calls made for images in the last frame.
+	 */
+	public static int getDrawCalls() {
+		return lastFrameDrawCalls;
+	}
+	
+	/**
+	 * Allows access to the number of changes to the OpenGL state (colours, textures,
+	 * and enabled capabilities) sent in the last frame. Changes which would have left
+	 * the state as it was are not sent, so are not counted.
+	 * @return the number of state changes made in the last frame.
+	 */
+	public static int getStateChanges() {
+		return lastFrameStateChanges;
 	}
 
 	public static Font getFont() {
@@ -1010,15 +1698,152 @@ public abstract class graphics {
 		return currentFont;
 	}
 	
-	public static void push() {
+	/**
+	 * Starts drawing to a layer rather than to the window. The layer is cleared first.
+	 * <p>Everything is drawn to the layer as it would be to the window, until
+	 * {@link #endLayer(Layer)} is called.</p>
+	 * <p>While frames are being recorded, the layer is only created when the frame
+	 * is replayed; if it cannot be, what is drawn to it is drawn to the window instead.</p>
+	 * @param layer the layer to draw to.
+	 * @return whether the layer can be drawn to. If not, things should be drawn straight to the window instead.
+	 */
+	public static boolean beginLayer(Layer layer) {
+		if (layer.unsupported) return false;
+		
+		if (recording != null) {
+			recording.add(BEGIN_LAYER).ref(layer);
+			return true;
+		}
+		return startLayer(layer);
+	}
+	
+	/**
+	 * Starts drawing to a layer, straight away.
+	 * @param layer the layer to draw to.
+	 * @return whether the layer can be drawn to.
+	 */
+	private static boolean startLayer(Layer layer) {
+		if (layer.unsupported) return false;
+		
+		batch.flush();
+		if (layer.framebuffer == 0 || layer.width != window.width() || layer.height != window.height()) {
+			layer.create();
+			if (layer.unsupported) return false;
+		}
+		
+		glBindFramebufferEXT(GL_FRAMEBUFFER_EXT, layer.framebuffer);
+		state.setScissoring(false);
+		glClear(GL_COLOR_BUFFER_BIT);
+		if (viewPortEnabled) state.setScissoring(true);
+		return true;
+	}
+	
+	/**
+	 * Stops drawing to a layer, and goes back to drawing to the window.
+	 * @param layer the layer which was being drawn to.
+	 */
+	public static void endLayer(Layer layer) {
+		if (recording != null) {
+			recording.add(END_LAYER).ref(layer).arg(layer.generation);
+		} else {
+			finishLayer(layer, layer.generation);
+		}
+	}
+	
+	/**
+	 * Stops drawing to a layer, straight away.
+	 * <p>The layer is only valid while it has not been marked out of date since the frame was
+	 * recorded, which the game thread checks by comparing generations.</p>
+	 * @param layer the layer which was being drawn to.
+	 * @param generation the layer's generation when the frame was recorded.
+	 */
+	private static void finishLayer(Layer layer, int generation) {
+		batch.flush();
+		glBindFramebufferEXT(GL_FRAMEBUFFER_EXT, 0);
+		layer.validGeneration = generation;
+	}
+	
+	/**
+	 * Draws a layer over the whole window (or the viewport, if one is set).
+	 * <p>The layer replaces what is beneath it, rather than being blended with it, so that
+	 * translucent things drawn to the layer look as they would drawn straight to the window.
+	 * Layers should therefore be drawn before anything else.</p>
+	 * @param layer the layer to draw.
+	 */
+	public static void drawLayer(Layer layer) {
+		if (recording != null) {
+			recording.add(DRAW_LAYER).ref(layer);
+		} else {
+			blitLayer(layer);
+		}
+	}
+	
+	/**
+	 * Draws a layer over the whole window, straight away.
+	 * @param layer the layer to draw.
+	 */
+	private static void blitLayer(Layer layer) {
+		if (layer.texture == null) return;
+		
+		batch.flush();
+		state.setBlending(false);
+		state.bindTexture(layer.texture);
+		glTexEnvi(GL_TEXTURE_ENV, GL_TEXTURE_ENV_MODE, GL_REPLACE);
+		
 		glPushMatrix();
+		glLoadIdentity();
+		glBegin(GL_QUADS);
+		glTexCoord2f(0, 0);
+		glVertex2d(0, 0);
+		glTexCoord2f(layer.texture.getWidth(), 0);
+		glVertex2d(layer.width, 0);
+		glTexCoord2f(layer.texture.getWidth(), layer.texture.getHeight());
+		glVertex2d(layer.width, layer.height);
+		glTexCoord2f(0, layer.texture.getHeight());
+		glVertex2d(0, layer.height);
+		glEnd();
+		glPopMatrix();
+		
+		glTexEnvi(GL_TEXTURE_ENV, GL_TEXTURE_ENV_MODE, GL_MODULATE);
+		state.setBlending(true);
+	}
+	
+	public static void push() {
+		if (recording != null) {
+			recording.add(PUSH);
+		} else {
+			pushMatrix();
+		}
 	}
 
 	public static void translate(double x, double y) {
-		glTranslated(x, y, 0);
+		if (recording != null) {
+			recording.add(TRANSLATE).arg(x).arg(y);
+		} else {
+			translateMatrix(x, y);
+		}
 	}
 	
 	public static void pop() {
+		if (recording != null) {
+			recording.add(POP);
+		} else {
+			popMatrix();
+		}
+	}
+	
+	private static void pushMatrix() {
+		batch.flush();
+		glPushMatrix();
+	}
+	
+	private static void translateMatrix(double x, double y) {
+		batch.flush();
+		glTranslated(x, y, 0);
+	}
+	
+	private static void popMatrix() {
+		batch.flush();
 		glPopMatrix();
 	}
 
@@ -16,16 +16,89 @@ import org.newdawn.slick.util.ResourceLoader;
 /**
  * <h1>jog.window</h1>
  * <p>Provides a layer upon LWJGL and Slick. jog.window allows a window to be created and managed.</p>
+ * <p>Frames can be drawn on a render thread of their own (see {@link #startRenderThread()}), in
+ * which case the thread which created the window records each frame, and goes on handling the
+ * window's messages and input while the render thread draws it.</p>
+ * <p>How often frames are drawn is set by the window's {@link Pacing}. Whatever the pacing, while
+ * the window is minimised or another window has the focus, frames are throttled to a low rate.</p>
  * @author IMP1
  */
 public abstract class window {
 	
-	final private static int FPS = 60;
+	/** The system property used to disable the render thread */
+	public static final String RENDER_THREAD_PROPERTY = "flyhard.renderThread";
+	
+	/** The system property used to choose the pacing, e.g. <code>uncapped</code> */
+	public static final String PACING_PROPERTY = "flyhard.pacing";
+	
+	/** The system property used to set the frame rate frames are capped at */
+	public static final String FRAME_RATE_PROPERTY = "flyhard.fps";
+	
+	/** The system property used to set the frame rate while the window is in the background, or 0 not to throttle */
+	public static final String BACKGROUND_FRAME_RATE_PROPERTY = "flyhard.backgroundFps";
+	
+	/**
+	 * <h1>jog.window.Pacing</h1>
+	 * <p>The ways in which the rate frames are drawn at can be limited.</p>
+	 */
+	public enum Pacing {
+		/** Frames are drawn as fast as possible, e.g. for benchmarking */
+		UNCAPPED,
+		/** Frames are drawn at most at the frame rate (see {@link window#setFrameRate(int)}) */
+		CAPPED,
+		/** Frames are shown in time with the display's refresh */
+		VSYNC,
+		/** Frames are shown in time with the display's refresh while the game keeps up with it,
+		 * and as soon as they are ready while it does not, rather than waiting for the next refresh */
+		ADAPTIVE
+	}
+	
+	/** The frame rate frames are capped at, unless {@link #FRAME_RATE_PROPERTY} is set */
+	final private static int DEFAULT_FRAME_RATE = 60;
+	
+	/** The frame rate while the window is in the background, unless {@link #BACKGROUND_FRAME_RATE_PROPERTY} is set */
+	final private static int DEFAULT_BACKGROUND_FRAME_RATE = 10;
+	
+	/** The refresh rate assumed if the display's cannot be found */
+	final private static int DEFAULT_REFRESH_RATE = 60;
+	
+	/** The proportion of a refresh a frame's work must fit in for adaptive pacing to turn vsync back on */
+	final private static double ADAPTIVE_MARGIN = 0.9;
 	
 	private static int width;
 	private static int height;
 	private static boolean closed;
 	
+	/** Whether nothing was drawn this frame, so the window should be left as it is */
+	private static boolean skipFrame;
+	
+	/** The thread drawing the frames, or null if they are drawn by the thread which created the window */
+	private static volatile RenderThread renderThread;
+	
+	/** How the rate frames are drawn at is limited */
+	private static Pacing pacing = Pacing.CAPPED;
+	
+	/** The frame rate frames are capped at */
+	private static int frameRate = DEFAULT_FRAME_RATE;
+	
+	/** The frame rate while the window is in the background, or 0 not to throttle */
+	private static int backgroundFrameRate = DEFAULT_BACKGROUND_FRAME_RATE;
+	
+	/** The display's refresh rate */
+	private static int refreshRate = DEFAULT_REFRESH_RATE;
+	
+	/** Whether vsync is enabled */
+	private static boolean vsync;
+	
+	/** Whether the window is in the background, so frames are being throttled */
+	private static boolean throttled;
+	
+	/** The time the last frame's wait ended, from {@link System#nanoTime()} */
+	private static long paceTime;
+	
+	/** The time taken to prepare each frame, not counting waiting, smoothed over recent frames, in ns */
+	private static long frameWork;
+	
 	/**
 	 * Creates a new window.
 	 * @param title the title of the window.
@@ -44,6 +117,24 @@ public abstract class window {
 			setTitle(title);
 			Display.create();
 			closed = false;
+			
+			refreshRate = Display.getDisplayMode().getFrequency();
+			if (refreshRate <= 0) refreshRate = DEFAULT_REFRESH_RATE;
+			
+			frameRate = Integer.getInteger(FRAME_RATE_PROPERTY, DEFAULT_FRAME_RATE);
+			backgroundFrameRate = Integer.getInteger(BACKGROUND_FRAME_RATE_PROPERTY,
+					DEFAULT_BACKGROUND_FRAME_RATE);
+			pacing = fullscreen ? Pacing.VSYNC : Pacing.CAPPED;
+			
+			String chosen = System.getProperty(PACING_PROPERTY);
+			if (chosen != null) {
+				try {
+					pacing = Pacing.valueOf(chosen.toUpperCase());
+				} catch (IllegalArgumentException e) {
+					e.printStackTrace();
+				}
+			}
+			paceTime = System.nanoTime();
 		} catch (LWJGLException e) {
 			e.printStackTrace();
 			closed = true;
@@ -69,13 +160,28 @@ public abstract class window {
 		}
 	}
 	
+	/**
+	 * Sets the size of the window without a display, e.g. when a
+	 * game is being simulated without being drawn.
+	 * <p>
+	 * The game is simulated in the same way whatever the size of
+	 * the window, but positions are still scaled by it when they
+	 * are drawn or converted from the mouse's position.
+	 * </p>
+	 * @param width the width of the window.
+	 * @param height the height of the window.
+	 */
+	public static void setHeadlessSize(int width, int height) {
+		window.width = width;
+		window.height = height;
+	}
+	
 	/** 
 	 * Sets the window to be full-screen.
 	 */
 	public static void setFullscreen() {
 		try {
 			Display.setFullscreen(true);
-			Display.setVSyncEnabled(true);
 			window.width = Display.getWidth();
 			window.height = Display.getHeight();
 		} catch (LWJGLException e) {
@@ -164,20 +270,223 @@ public abstract class window {
 	}
 	
 	/**
-	 * Updates the window in sync with the specified FPS. 
+	 * Checks whether the window's contents have been damaged since the
+	 * last frame, e.g. by another window being moved over it, and so
+	 * must be drawn again.
+	 * @return whether the window needs to be drawn again.
+	 */
+	public static boolean isDamaged() {
+		return Display.isDirty();
+	}
+	
+	/**
+	 * Leaves the window showing the last frame drawn, rather than
+	 * presenting a new one.
+	 * <p>This should be called instead of drawing a frame which would
+	 * be the same as the last one; the buffers are then not swapped at
+	 * the next update, which still handles the window's messages and
+	 * input, and waits for the frame's time to pass.</p>
+	 */
+	public static void skipFrame() {
+		skipFrame = true;
+	}
+	
+	/**
+	 * Updates the window, and waits for the frame's time to pass, as set by the pacing.
 	 * It also updates whether the window has been closed or not.
 	 */
 	public static void update() {
 		closed = closed || Display.isCloseRequested();
 		if (closed) return;
-		Display.update();
-		Display.sync(FPS);
+		
+		// Smooth the time taken to prepare the frame over the last few frames
+		long work = System.nanoTime() - paceTime;
+		frameWork += (work - frameWork) / 8;
+		
+		graphics.endFrame();
+		boolean swapped = !skipFrame && renderThread == null;
+		if (swapped) {
+			Display.update();
+		} else {
+			// Handle the window's messages and input, without swapping the buffers
+			Display.processMessages();
+		}
+		skipFrame = false;
+		
+		throttled = backgroundFrameRate > 0 && (!Display.isActive() || !Display.isVisible());
+		pace(swapped);
+		paceTime = System.nanoTime();
+	}
+	
+	/**
+	 * Waits for the frame's time to pass, as set by the pacing.
+	 * <p>With vsync, swapping the buffers waits for the display's refresh; if the buffers
+	 * were not swapped by this thread, the wait is kept to the refresh rate instead.</p>
+	 * @param swapped whether the buffers were swapped by this thread.
+	 */
+	private static void pace(boolean swapped) {
+		int cap = 0;
+		
+		switch (pacing) {
+		case UNCAPPED:
+			setVSync(false);
+			break;
+		case CAPPED:
+			setVSync(false);
+			cap = frameRate;
+			break;
+		case VSYNC:
+			setVSync(true);
+			if (!swapped) cap = refreshRate;
+			break;
+		case ADAPTIVE:
+			// Waiting for the next refresh would halve the frame rate of a frame which
+			// has just missed one, so vsync is turned off until the game keeps up again
+			long refresh = 1000000000L / refreshRate;
+			if (frameWork > refresh) {
+				setVSync(false);
+			} else if (frameWork < refresh * ADAPTIVE_MARGIN) {
+				setVSync(true);
+			}
+			if (!swapped || !vsync) cap = refreshRate;
+			break;
+		}
+		
+		if (throttled) cap = backgroundFrameRate;
+		if (cap > 0) Display.sync(cap);
+	}
+	
+	/**
+	 * Enables or disables vsync, if it is not already, on the thread holding the context.
+	 * @param enabled whether vsync should be enabled.
+	 */
+	private static void setVSync(final boolean enabled) {
+		if (vsync == enabled) return;
+		
+		vsync = enabled;
+		invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				Display.setVSyncEnabled(enabled);
+			}
+		});
+	}
+	
+	/**
+	 * Sets how the rate frames are drawn at is limited.
+	 * @param pacing the pacing.
+	 */
+	public static void setPacing(Pacing pacing) {
+		window.pacing = pacing;
+	}
+	
+	/**
+	 * Gets how the rate frames are drawn at is limited.
+	 * @return the pacing.
+	 */
+	public static Pacing getPacing() {
+		return pacing;
+	}
+	
+	/**
+	 * Sets the frame rate frames are capped at, with {@link Pacing#CAPPED} pacing.
+	 * @param frameRate the frame rate, in frames per second.
+	 */
+	public static void setFrameRate(int frameRate) {
+		window.frameRate = frameRate;
+	}
+	
+	/**
+	 * Checks whether the window is in the background, i.e. minimised or without the focus,
+	 * so frames are being throttled. Anything which should not carry on unseen, such as a
+	 * single player game, can pause while it is.
+	 * @return whether the window is in the background.
+	 */
+	public static boolean isThrottled() {
+		return throttled;
+	}
+	
+	/**
+	 * Starts drawing frames on a render thread, which takes over the OpenGL context.
+	 * <p>From then on, frames are recorded as they are drawn, and handed over to the
+	 * render thread at each update. Anything else which uses OpenGL must be run with
+	 * {@link #invokeAndWait(Runnable)}.</p>
+	 * <p>The render thread is not started if {@link #RENDER_THREAD_PROPERTY} is set to
+	 * <code>false</code>, or if it cannot take the context, in which case frames go on
+	 * being drawn by the calling thread.</p>
+	 */
+	public static void startRenderThread() {
+		if (renderThread != null || closed) return;
+		if ("false".equalsIgnoreCase(System.getProperty(RENDER_THREAD_PROPERTY))) return;
+		
+		graphics.flush();
+		try {
+			Display.releaseContext();
+		} catch (LWJGLException e) {
+			e.printStackTrace();
+			return;
+		}
+		
+		RenderThread thread = new RenderThread();
+		if (thread.start()) {
+			renderThread = thread;
+			graphics.startRecording(thread);
+		} else {
+			makeCurrent();
+		}
+	}
+	
+	/**
+	 * Stops the render thread, if there is one, and takes the OpenGL context back.
+	 */
+	public static void stopRenderThread() {
+		if (renderThread == null) return;
+		
+		graphics.stopRecording();
+		renderThread.stop();
+		renderThread = null;
+		makeCurrent();
+	}
+	
+	/**
+	 * Gets the number of frames the render thread has dropped, because a newer frame was ready before they were drawn.
+	 * @return the number of frames dropped, or 0 if there is no render thread.
+	 */
+	public static int getDroppedFrames() {
+		RenderThread thread = renderThread;
+		return thread == null ? 0 : thread.getDroppedFrames();
+	}
+	
+	/**
+	 * Makes the OpenGL context current on the calling thread.
+	 */
+	private static void makeCurrent() {
+		try {
+			Display.makeCurrent();
+		} catch (LWJGLException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Runs a task which uses OpenGL on the thread holding the context, and waits for it to finish.
+	 * @param task the task to run.
+	 */
+	static void invokeAndWait(Runnable task) {
+		RenderThread thread = renderThread;
+		
+		if (thread == null) {
+			task.run();
+		} else {
+			thread.invokeAndWait(task);
+		}
 	}
 	
 	/**
 	 * Disposes of the resources used by the window.
 	 */
 	public static void dispose() {
+		stopRenderThread();
 		Display.destroy();
 	}
 
@@ -0,0 +1,94 @@
+package net;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream which writes into a pooled buffer.
+ * <p>
+ * Unlike a {@link java.io.ByteArrayOutputStream}, the data written is
+ * handed on in the buffer it was written to, rather than copied into
+ * a new array. The buffer grows (by exchanging it for a larger one
+ * from the pool) as needed.
+ * </p>
+ * <p>
+ * Space can be left at the start of the buffer, so that headers can
+ * be written in front of the data once its length is known.
+ * </p>
+ */
+class BufferOutputStream extends OutputStream {
+
+	/** The pool buffers are taken from */
+	private final BufferPool pool;
+
+	/** The buffer being written to */
+	private ByteBuffer buffer;
+
+
+	/**
+	 * Constructs a new buffer output stream.
+	 * @param pool - the pool to take buffers from
+	 * @param headroom - the number of bytes to leave free at the
+	 * 			start of the buffer
+	 */
+	BufferOutputStream(BufferPool pool, int headroom) {
+		this.pool = pool;
+		this.buffer = pool.acquire(headroom);
+		this.buffer.position(headroom);
+	}
+
+
+	@Override
+	public void write(int b) {
+		ensureRemaining(1);
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensureRemaining(len);
+		buffer.put(b, off, len);
+	}
+
+	/**
+	 * Gets the buffer holding the data written.
+	 * <p>
+	 * The buffer is flipped, so its limit marks the end of the data,
+	 * and its position is zero (i.e. the start of the headroom). The
+	 * caller becomes responsible for releasing the buffer, and the
+	 * stream must not be written to again.
+	 * </p>
+	 * @return the buffer holding the data written
+	 */
+	ByteBuffer toBuffer() {
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Releases the buffer without handing it on, e.g. if writing
+	 * failed.
+	 */
+	void discard() {
+		pool.release(buffer);
+		buffer = null;
+	}
+
+
+	/**
+	 * Makes sure the buffer has space for more data, moving the data
+	 * into a larger buffer if it does not.
+	 * @param length - the number of bytes about to be written
+	 */
+	private void ensureRemaining(int length) {
+		if (buffer.remaining() >= length) return;
+
+		ByteBuffer larger = pool.acquire(Math.max(buffer.capacity() * 2,
+				buffer.position() + length));
+		buffer.flip();
+		larger.put(buffer);
+		pool.release(buffer);
+		buffer = larger;
+	}
+
+}
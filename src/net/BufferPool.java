@@ -0,0 +1,124 @@
+package net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A pool of byte buffers, reused between network updates.
+ * <p>
+ * Serialised data is written into a pooled buffer, framed in place,
+ * and handed to the transport in the same buffer, which returns it
+ * to the pool once sent. Once the pool holds a buffer large enough
+ * for a typical update, sending an update allocates no buffers.
+ * </p>
+ * <p>
+ * Buffers are heap buffers, as serialisation, compression and
+ * datagram sockets all work on byte arrays. Buffers larger than
+ * {@link #MAX_POOLED_SIZE} are never pooled.
+ * </p>
+ * <p>
+ * A buffer must not be used after it has been released.
+ * </p>
+ */
+public class BufferPool {
+
+	/** The smallest buffer allocated, in bytes */
+	public static final int MIN_BUFFER_SIZE = 4096;
+
+	/** The largest buffer which will be pooled, in bytes */
+	public static final int MAX_POOLED_SIZE = 1 << 20;
+
+	/** The largest number of buffers held by the pool */
+	private static final int MAX_BUFFERS = 8;
+
+	/** The buffers available for reuse */
+	private final ArrayDeque<ByteBuffer> buffers;
+
+	/** The number of buffers allocated by the pool */
+	private long allocationCount;
+
+
+	/**
+	 * Constructs a new, empty buffer pool.
+	 */
+	public BufferPool() {
+		this.buffers = new ArrayDeque<ByteBuffer>(MAX_BUFFERS);
+		this.allocationCount = 0;
+	}
+
+
+	/**
+	 * Takes a buffer from the pool, allocating one if none is large
+	 * enough.
+	 * <p>
+	 * The smallest pooled buffer which is large enough is used, so
+	 * that larger buffers are kept for larger data.
+	 * The buffer is cleared, so its position is zero and its limit
+	 * is its capacity.
+	 * </p>
+	 * @param minCapacity - the smallest capacity required, in bytes
+	 * @return a buffer with at least the capacity required
+	 */
+	public synchronized ByteBuffer acquire(int minCapacity) {
+		ByteBuffer best = null;
+
+		for (ByteBuffer buffer : buffers) {
+			if (buffer.capacity() >= minCapacity && (best == null
+					|| buffer.capacity() < best.capacity())) {
+				best = buffer;
+			}
+		}
+
+		if (best != null) {
+			// Buffers are equal if their contents are, so remove by identity
+			Iterator<ByteBuffer> iterator = buffers.iterator();
+			while (iterator.next() != best);
+			iterator.remove();
+
+			best.clear();
+			return best;
+		}
+
+		int capacity = MIN_BUFFER_SIZE;
+		while (capacity < minCapacity && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+
+		allocationCount++;
+		return ByteBuffer.allocate(Math.max(capacity, minCapacity));
+	}
+
+	/**
+	 * Returns a buffer to the pool.
+	 * <p>
+	 * Buffers which are too large, which do not start at the start
+	 * of their array, or which arrive when the pool is full, are
+	 * left for the garbage collector.
+	 * </p>
+	 * @param buffer - the buffer to return, which may be
+	 * 			<code>null</code>
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.hasArray() || buffer.arrayOffset() != 0
+				|| buffer.capacity() > MAX_POOLED_SIZE
+				|| buffers.size() >= MAX_BUFFERS) {
+			return;
+		}
+
+		buffers.addFirst(buffer);
+	}
+
+	/**
+	 * Gets the number of buffers allocated by the pool.
+	 * <p>
+	 * This stops increasing once the pool holds enough buffers for
+	 * the data being sent.
+	 * </p>
+	 * @return the number of buffers allocated
+	 */
+	public synchronized long getAllocationCount() {
+		return allocationCount;
+	}
+
+}
@@ -0,0 +1,312 @@
+package net;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A command issued by a player.
+ * <p>
+ * Commands describe every way in which a player can change the
+ * simulation. Rather than changing the simulation directly, player
+ * input is turned into commands, which can be applied immediately,
+ * or exchanged between clients and applied on the same tick by both
+ * (see {@link Lockstep}).
+ * </p>
+ * <p>
+ * Most commands act on the issuing player's selected aircraft, so
+ * only {@link Type#SELECT} needs to name an aircraft.
+ * </p>
+ * <p>
+ * Commands are immutable, so may be passed freely between threads.
+ * </p>
+ */
+public final class Command {
+
+	/**
+	 * The types of command.
+	 */
+	public enum Type {
+		/** Selects an aircraft; takes the aircraft's name */
+		SELECT,
+		/** Deselects the selected aircraft; takes no parameters */
+		DESELECT,
+		/** Sets the turning state; takes the state's ordinal */
+		TURN,
+		/** Toggles manual control of the selected aircraft */
+		TOGGLE_MANUAL,
+		/** Causes the selected aircraft to climb */
+		CLIMB,
+		/** Causes the selected aircraft to descend */
+		DESCEND,
+		/** Sets the selected aircraft's bearing; takes the bearing */
+		SET_BEARING,
+		/** Alters the selected aircraft's path; takes the route stage
+		 * and the index of the new waypoint */
+		ALTER_PATH,
+		/** Lands the selected aircraft; takes the airport's index */
+		LAND,
+		/** Causes an aircraft to take off; takes the airport's index */
+		TAKE_OFF,
+		/** Transfers the selected aircraft to the other player */
+		TRANSFER
+	}
+
+	/** The types, cached to avoid copying on every decode */
+	private static final Type[] TYPES = Type.values();
+
+	/** The command's type */
+	private final Type type;
+
+	/** The command's index parameter */
+	private final int index;
+
+	/** The command's route stage parameter */
+	private final int routeStage;
+
+	/** The command's bearing parameter */
+	private final double bearing;
+
+	/** The command's aircraft name parameter */
+	private final String aircraftName;
+
+
+	/**
+	 * Constructs a new command.
+	 * @param type - the command's type
+	 * @param index - the command's index parameter
+	 * @param routeStage - the command's route stage parameter
+	 * @param bearing - the command's bearing parameter
+	 * @param aircraftName - the command's aircraft name parameter
+	 */
+	private Command(Type type, int index, int routeStage, double bearing,
+			String aircraftName) {
+		this.type = type;
+		this.index = index;
+		this.routeStage = routeStage;
+		this.bearing = bearing;
+		this.aircraftName = aircraftName;
+	}
+
+	/**
+	 * Constructs a command which takes no parameters.
+	 * @param type - the command's type
+	 */
+	public Command(Type type) {
+		this(type, 0, 0, 0, null);
+	}
+
+	/**
+	 * Constructs a command which takes an index.
+	 * @param type - the command's type
+	 * @param index - the command's index parameter
+	 */
+	public Command(Type type, int index) {
+		this(type, index, 0, 0, null);
+	}
+
+	/**
+	 * Creates a command selecting an aircraft.
+	 * @param aircraftName - the name of the aircraft to select
+	 * @return the new command
+	 */
+	public static Command select(String aircraftName) {
+		return new Command(Type.SELECT, 0, 0, 0, aircraftName);
+	}
+
+	/**
+	 * Creates a command setting the selected aircraft's bearing.
+	 * @param bearing - the new bearing
+	 * @return the new command
+	 */
+	public static Command setBearing(double bearing) {
+		return new Command(Type.SET_BEARING, 0, 0, bearing, null);
+	}
+
+	/**
+	 * Creates a command altering the selected aircraft's path.
+	 * @param routeStage - the stage of the route to alter
+	 * @param index - the index of the new waypoint in the player's waypoints
+	 * @return the new command
+	 */
+	public static Command alterPath(int routeStage, int index) {
+		return new Command(Type.ALTER_PATH, index, routeStage, 0, null);
+	}
+
+
+	/**
+	 * Writes the command in a compact binary form.
+	 * <p>
+	 * Only the parameters used by the command's type are written;
+	 * most commands take two bytes or fewer.
+	 * </p>
+	 * @param out - the output to write to
+	 * @throws IOException if the command could not be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(type.ordinal());
+
+		switch (type) {
+		case SELECT:
+			out.writeUTF(aircraftName);
+			break;
+		case TURN:
+		case LAND:
+		case TAKE_OFF:
+			out.writeByte(index);
+			break;
+		case SET_BEARING:
+			out.writeDouble(bearing);
+			break;
+		case ALTER_PATH:
+			out.writeByte(routeStage);
+			out.writeByte(index);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Reads a command written by {@link #write(DataOutput)}.
+	 * @param in - the input to read from
+	 * @return the command read
+	 * @throws IOException if the command could not be read
+	 */
+	public static Command read(DataInput in) throws IOException {
+		int ordinal = in.readUnsignedByte();
+
+		if (ordinal >= TYPES.length) {
+			throw new IOException("Unknown command type: " + ordinal);
+		}
+
+		Type type = TYPES[ordinal];
+
+		switch (type) {
+		case SELECT:
+			return select(in.readUTF());
+		case TURN:
+		case LAND:
+		case TAKE_OFF:
+			return new Command(type, in.readByte());
+		case SET_BEARING:
+			return setBearing(in.readDouble());
+		case ALTER_PATH:
+			int routeStage = in.readByte();
+			return alterPath(routeStage, in.readByte());
+		default:
+			return new Command(type);
+		}
+	}
+
+
+	/**
+	 * Gets the command's type.
+	 * @return the command's type
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the command's index parameter.
+	 * <p>
+	 * This is the turning state's ordinal for {@link Type#TURN}, the
+	 * airport's index for {@link Type#LAND} and {@link Type#TAKE_OFF},
+	 * and the waypoint's index for {@link Type#ALTER_PATH}.
+	 * </p>
+	 * @return the command's index parameter
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Gets the stage of the route to alter.
+	 * <p>
+	 * Only valid for {@link Type#ALTER_PATH} commands.
+	 * </p>
+	 * @return the route stage
+	 */
+	public int getRouteStage() {
+		return routeStage;
+	}
+
+	/**
+	 * Gets the bearing to set.
+	 * <p>
+	 * Only valid for {@link Type#SET_BEARING} commands.
+	 * </p>
+	 * @return the bearing
+	 */
+	public double getBearing() {
+		return bearing;
+	}
+
+	/**
+	 * Gets the name of the aircraft to select.
+	 * <p>
+	 * Only valid for {@link Type#SELECT} commands.
+	 * </p>
+	 * @return the aircraft's name
+	 */
+	public String getAircraftName() {
+		return aircraftName;
+	}
+
+	/**
+	 * Compares this command to another command.
+	 * @param obj - the object to compare with
+	 * @return <code>true</code> if and only if obj is an identical command
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof Command)) return false;
+
+		Command other = (Command) obj;
+
+		return type == other.type && index == other.index
+				&& routeStage == other.routeStage
+				&& Double.compare(bearing, other.bearing) == 0
+				&& ((aircraftName == null) ? other.aircraftName == null
+						: aircraftName.equals(other.aircraftName));
+	}
+
+	/**
+	 * Generates the hash code for this command.
+	 * @return the hash code for this command
+	 */
+	@Override
+	public int hashCode() {
+		int result = type.ordinal();
+		result = 31 * result + index;
+		result = 31 * result + routeStage;
+		result = 31 * result + (aircraftName == null
+				? 0 : aircraftName.hashCode());
+		return result;
+	}
+
+	/**
+	 * Returns a textual representation of the command.
+	 * @return a textual representation of the command
+	 */
+	@Override
+	public String toString() {
+		switch (type) {
+		case SELECT:
+			return type + ":" + aircraftName;
+		case TURN:
+		case LAND:
+		case TAKE_OFF:
+			return type + ":" + index;
+		case SET_BEARING:
+			return type + ":" + bearing;
+		case ALTER_PATH:
+			return type + ":" + routeStage + ":" + index;
+		default:
+			return type.name();
+		}
+	}
+
+}
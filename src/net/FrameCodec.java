@@ -0,0 +1,563 @@
+package net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import cls.Aircraft;
+import cls.Airport;
+import cls.FlightPlan;
+import cls.FlightStrip;
+import cls.Player;
+import cls.PlayerUpdate;
+import cls.Powerup;
+import cls.Vector;
+import cls.Waypoint;
+
+/**
+ * Frames serialised data for sending, compressing it where possible.
+ * <p>
+ * Every frame begins with a byte of flags, followed by the Adler-32
+ * checksum of the sender's dictionary. If the frame is compressed,
+ * this is followed by the length of the original data, and then the
+ * data deflated using {@link #DICTIONARY}; otherwise it is followed
+ * by the original data.
+ * </p>
+ * <p>
+ * Compression is negotiated per connection: each frame advertises
+ * whether its sender accepts compressed frames, and frames are only
+ * compressed once the other client has advertised that it does,
+ * using the same dictionary.
+ * Compression can be disabled by setting {@link #ENABLED_PROPERTY}
+ * to <code>false</code>.
+ * </p>
+ * <p>
+ * Frames are encoded in place: data is serialised into a pooled
+ * buffer after {@link #HEADER_SIZE} reserved bytes, and only copied
+ * again if it is compressed. Decoding reads directly from the buffer
+ * the frame was received into.
+ * </p>
+ * <p>
+ * The dictionary holds the class descriptors which begin every
+ * serialised player, so even small frames compress well. It is
+ * built from the classes themselves, so both clients build the
+ * same dictionary as long as they are running the same version;
+ * clients running different versions send uncompressed frames.
+ * </p>
+ * <p>
+ * This class is not thread-safe; it should only be used by the
+ * network thread.
+ * </p>
+ */
+public class FrameCodec {
+
+	/** The system property used to disable compression */
+	public static final String ENABLED_PROPERTY = "flyhard.compression";
+
+	/** The smallest data which is worth compressing, in bytes */
+	public static final int MIN_COMPRESSED_SIZE = 128;
+
+	/** The largest data which will be decompressed, in bytes */
+	public static final int MAX_FRAME_SIZE = 1 << 20;
+
+	/** The space reserved in front of data for an uncompressed frame's header */
+	public static final int HEADER_SIZE = 5;
+
+	/** Marks a frame as compressed */
+	private static final int FLAG_COMPRESSED = 0x01;
+
+	/** Marks the frame's sender as accepting compressed frames */
+	private static final int FLAG_ACCEPTS_COMPRESSION = 0x02;
+
+	/** The length of a compressed frame's header */
+	private static final int COMPRESSED_HEADER_SIZE = HEADER_SIZE + 4;
+
+	/** The first byte of data sent without a frame header */
+	private static final byte UNFRAMED =
+			(byte) (ObjectStreamConstants.STREAM_MAGIC >> 8);
+
+	/** The classes whose descriptors are included in the dictionary */
+	private static final Class<?>[] DICTIONARY_CLASSES = new Class<?>[] {
+		Powerup.PowerupEffect.class,
+		Player.TurningState.class,
+		Powerup.class,
+		FlightStrip.class,
+		Airport.class,
+		FlightPlan.class,
+		Waypoint.class,
+		Vector.class,
+		Aircraft.class,
+		PlayerUpdate.class,
+		Player.class
+	};
+
+	/** The preset dictionary used to compress frames */
+	public static final byte[] DICTIONARY = buildDictionary();
+
+	/** Whether this client accepts compressed frames */
+	private final boolean enabled;
+
+	/** The preset dictionary used by this client */
+	private final byte[] dictionary;
+
+	/** The checksum of this client's dictionary */
+	private final int dictionaryId;
+
+	/** Whether the other client accepts compressed frames */
+	private volatile boolean peerAcceptsCompression;
+
+	/** The compressor, reused between frames */
+	private final Deflater deflater;
+
+	/** The decompressor, reused between frames */
+	private final Inflater inflater;
+
+	/** The pool compressed frames are written into */
+	private final BufferPool pool;
+
+	/** The buffer frames are decompressed into, reused between frames */
+	private byte[] inflateBuffer;
+
+
+	/**
+	 * Constructs a new frame codec.
+	 * <p>
+	 * Compression is enabled unless {@link #ENABLED_PROPERTY} is set
+	 * to <code>false</code>.
+	 * </p>
+	 */
+	public FrameCodec() {
+		this(!"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY)),
+				NetworkManager.getBufferPool());
+	}
+
+	/**
+	 * Constructs a new frame codec with its own buffer pool.
+	 * @param enabled - whether this client accepts compressed frames
+	 */
+	public FrameCodec(boolean enabled) {
+		this(enabled, new BufferPool());
+	}
+
+	/**
+	 * Constructs a new frame codec.
+	 * @param enabled - whether this client accepts compressed frames
+	 * @param pool - the pool to take buffers for compressed frames from
+	 */
+	public FrameCodec(boolean enabled, BufferPool pool) {
+		this(enabled, pool, DICTIONARY);
+	}
+
+	/**
+	 * Constructs a new frame codec with its own dictionary.
+	 * <p>
+	 * Frames are only compressed between clients using the same
+	 * dictionary.
+	 * </p>
+	 * @param enabled - whether this client accepts compressed frames
+	 * @param pool - the pool to take buffers for compressed frames from
+	 * @param dictionary - the preset dictionary to compress frames with
+	 */
+	public FrameCodec(boolean enabled, BufferPool pool, byte[] dictionary) {
+		Adler32 checksum = new Adler32();
+		checksum.update(dictionary, 0, dictionary.length);
+
+		this.enabled = enabled;
+		this.dictionary = dictionary;
+		this.dictionaryId = (int) checksum.getValue();
+		this.peerAcceptsCompression = false;
+		this.deflater = new Deflater(Deflater.BEST_SPEED);
+		this.inflater = new Inflater();
+		this.pool = pool;
+		this.inflateBuffer = new byte[0];
+	}
+
+
+	/**
+	 * Frames data for sending.
+	 * <p>
+	 * This copies the data; {@link #encode(ByteBuffer)} should be
+	 * used where the data is already in a buffer.
+	 * </p>
+	 * @param data - the serialised data
+	 * @return the frame to send
+	 */
+	public byte[] encode(byte[] data) {
+		ByteBuffer buffer = pool.acquire(HEADER_SIZE + data.length);
+		buffer.position(HEADER_SIZE);
+		buffer.put(data);
+		buffer.flip();
+
+		ByteBuffer frame = encode(buffer);
+		byte[] bytes = Arrays.copyOfRange(frame.array(), frame.position(),
+				frame.limit());
+		pool.release(frame);
+
+		return bytes;
+	}
+
+	/**
+	 * Frames data for sending.
+	 * <p>
+	 * The frame starts at the buffer's position, and the data follows
+	 * the {@link #HEADER_SIZE} bytes reserved for the header, up to
+	 * the buffer's limit. Any bytes before the buffer's position are
+	 * left free for the transport's own header.
+	 * </p>
+	 * <p>
+	 * The data is compressed if the other client accepts compressed
+	 * frames using the same dictionary, the data is at least {@link #MIN_COMPRESSED_SIZE} bytes
+	 * long, and compressing it makes it smaller. Otherwise, the
+	 * header is written into the reserved space and the same buffer
+	 * is returned.
+	 * </p>
+	 * @param buffer - the buffer holding the serialised data; this is
+	 * 			handed over to the codec, and must not be used again
+	 * @return the buffer holding the frame, with the same space free
+	 * 			before its position; the caller is responsible for
+	 * 			releasing it to the pool
+	 */
+	public ByteBuffer encode(ByteBuffer buffer) {
+		int flags = enabled ? FLAG_ACCEPTS_COMPRESSION : 0;
+		int length = buffer.remaining() - HEADER_SIZE;
+
+		if (isCompressing() && length >= MIN_COMPRESSED_SIZE) {
+			long startTime = System.nanoTime();
+			ByteBuffer frame = compress(buffer, flags | FLAG_COMPRESSED);
+
+			if (frame != null) {
+				NetworkMetrics.getInstance().recordCompress(startTime,
+						length, frame.remaining());
+				pool.release(buffer);
+				return frame;
+			}
+
+			// The data is sent uncompressed, but the attempt still counts
+			NetworkMetrics.getInstance().recordCompress(startTime,
+					length, length + HEADER_SIZE);
+		}
+
+		buffer.put(buffer.position(), (byte) flags);
+		buffer.putInt(buffer.position() + 1, dictionaryId);
+
+		return buffer;
+	}
+
+	/**
+	 * Unframes received data.
+	 * <p>
+	 * This is equivalent to {@link #decode(ByteBuffer)}.
+	 * </p>
+	 * @param frame - the frame received
+	 * @return a stream holding the serialised data, or
+	 * 			<code>null</code> if the frame could not be read
+	 */
+	public ByteArrayInputStream decode(byte[] frame) {
+		return decode(ByteBuffer.wrap(frame));
+	}
+
+	/**
+	 * Unframes received data.
+	 * <p>
+	 * Data received without a frame header (i.e. from a client which
+	 * does not frame its data) is returned unchanged.
+	 * </p>
+	 * <p>
+	 * The stream reads directly from the frame's buffer, or, if the
+	 * frame was compressed, from a buffer reused by the next frame
+	 * decoded. It must therefore be read before either is reused.
+	 * </p>
+	 * @param frame - the frame received, from its position to its limit
+	 * @return a stream holding the serialised data, or
+	 * 			<code>null</code> if the frame could not be read
+	 */
+	public ByteArrayInputStream decode(ByteBuffer frame) {
+		if (!frame.hasRemaining()) {
+			return null;
+		}
+
+		byte[] array = frame.array();
+		int offset = frame.arrayOffset() + frame.position();
+		int length = frame.remaining();
+
+		if (array[offset] == UNFRAMED) {
+			return new ByteArrayInputStream(array, offset, length);
+		}
+
+		if (length < HEADER_SIZE) {
+			return null;
+		}
+
+		int flags = array[offset];
+		int peerDictionaryId = readInt(array, offset + 1);
+		peerAcceptsCompression = (flags & FLAG_ACCEPTS_COMPRESSION) != 0
+				&& peerDictionaryId == dictionaryId;
+
+		if ((flags & FLAG_COMPRESSED) == 0) {
+			return new ByteArrayInputStream(array, offset + HEADER_SIZE,
+					length - HEADER_SIZE);
+		}
+
+		try {
+			long startTime = System.nanoTime();
+			int dataLength = decompress(array, offset, length);
+			NetworkMetrics.getInstance().recordDecompress(startTime);
+			return new ByteArrayInputStream(inflateBuffer, 0, dataLength);
+		} catch (DataFormatException e) {
+			NetworkManager.print(e);
+			return null;
+		} catch (IllegalArgumentException e) {
+			// The frame was compressed with a different dictionary
+			NetworkManager.print(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether frames are currently being compressed.
+	 * @return <code>true</code> if both clients accept compressed
+	 * 			frames using the same dictionary, otherwise
+	 * 			<code>false</code>
+	 */
+	public boolean isCompressing() {
+		return enabled && peerAcceptsCompression;
+	}
+
+
+	/**
+	 * Compresses data into a frame.
+	 * @param buffer - the buffer holding the data to compress, laid
+	 * 			out as for {@link #encode(ByteBuffer)}
+	 * @param flags - the frame's flags
+	 * @return the buffer holding the compressed frame, or
+	 * 			<code>null</code> if compressing the data would not
+	 * 			make it smaller
+	 */
+	private ByteBuffer compress(ByteBuffer buffer, int flags) {
+		int headroom = buffer.position();
+		int length = buffer.remaining() - HEADER_SIZE;
+
+		// Only accept output which is smaller than the uncompressed frame
+		int maxFrameLength = length + HEADER_SIZE;
+		ByteBuffer frame = pool.acquire(headroom + maxFrameLength);
+		byte[] output = frame.array();
+
+		deflater.reset();
+		deflater.setDictionary(dictionary);
+		deflater.setInput(buffer.array(),
+				buffer.arrayOffset() + headroom + HEADER_SIZE, length);
+		deflater.finish();
+
+		int compressedLength = deflater.deflate(output,
+				headroom + COMPRESSED_HEADER_SIZE,
+				maxFrameLength - COMPRESSED_HEADER_SIZE);
+
+		if (!deflater.finished()) {
+			pool.release(frame);
+			return null;
+		}
+
+		frame.put(headroom, (byte) flags);
+		frame.putInt(headroom + 1, dictionaryId);
+		frame.putInt(headroom + HEADER_SIZE, length);
+
+		frame.limit(headroom + COMPRESSED_HEADER_SIZE + compressedLength);
+		frame.position(headroom);
+
+		return frame;
+	}
+
+	/**
+	 * Decompresses a compressed frame into {@link #inflateBuffer}.
+	 * @param frame - the array holding the frame
+	 * @param offset - the offset of the frame in the array
+	 * @param frameLength - the length of the frame
+	 * @return the length of the original data
+	 * @throws DataFormatException if the frame is not valid
+	 * @throws IllegalArgumentException if the frame was compressed
+	 * 			with a different dictionary
+	 */
+	private int decompress(byte[] frame, int offset, int frameLength)
+			throws DataFormatException {
+		if (frameLength < COMPRESSED_HEADER_SIZE) {
+			throw new DataFormatException("Truncated frame header");
+		}
+
+		int length = readInt(frame, offset + HEADER_SIZE);
+
+		if (length < 0 || length > MAX_FRAME_SIZE) {
+			throw new DataFormatException("Invalid frame length: " + length);
+		}
+
+		// Leave a spare byte, to detect data beyond the claimed length
+		if (inflateBuffer.length < length + 1) {
+			inflateBuffer = new byte[length + 1];
+		}
+
+		int read = 0;
+
+		inflater.reset();
+		inflater.setInput(frame, offset + COMPRESSED_HEADER_SIZE,
+				frameLength - COMPRESSED_HEADER_SIZE);
+
+		while (!inflater.finished()) {
+			if (inflater.needsDictionary()) {
+				inflater.setDictionary(dictionary);
+			} else if (inflater.needsInput()) {
+				throw new DataFormatException("Frame does not match its length");
+			}
+
+			if (read > length) {
+				// There is more data than the frame claims
+				throw new DataFormatException("Frame does not match its length");
+			}
+
+			read += inflater.inflate(inflateBuffer, read, length + 1 - read);
+		}
+
+		if (read != length) {
+			throw new DataFormatException("Frame does not match its length");
+		}
+
+		return length;
+	}
+
+
+	/**
+	 * Reads a big-endian int from an array.
+	 * @param array - the array to read from
+	 * @param offset - the offset of the int in the array
+	 * @return the int read
+	 */
+	private static int readInt(byte[] array, int offset) {
+		return ((array[offset] & 0xFF) << 24)
+				| ((array[offset + 1] & 0xFF) << 16)
+				| ((array[offset + 2] & 0xFF) << 8)
+				| (array[offset + 3] & 0xFF);
+	}
+
+	/**
+	 * Builds the preset dictionary.
+	 * <p>
+	 * Each class's descriptor is written in the same way as it is
+	 * by serialisation: the class name, then the fields in the order
+	 * serialisation writes them, with the type signature of each
+	 * object field. The descriptors which are most likely to occur
+	 * are written last, as deflate favours shorter distances.
+	 * </p>
+	 * @return the dictionary
+	 */
+	private static byte[] buildDictionary() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			out.writeUTF("java.lang.Enum");
+			out.writeUTF("java.lang.Integer");
+			out.writeUTF("java.lang.Number");
+			out.writeUTF("java.util.ArrayList");
+
+			for (Class<?> c : DICTIONARY_CLASSES) {
+				out.writeUTF(c.getName());
+
+				for (Field field : getSerialisedFields(c)) {
+					Class<?> type = field.getType();
+					String signature = getSignature(type);
+
+					out.writeByte(signature.charAt(0));
+					out.writeUTF(field.getName());
+
+					if (!type.isPrimitive()) {
+						out.writeByte(ObjectStreamConstants.TC_STRING);
+						out.writeUTF(signature);
+					}
+				}
+			}
+		} catch (IOException e) {
+			// Writing to a byte array never fails
+			NetworkManager.print(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Gets the fields of a class which are serialised, in the order
+	 * in which serialisation writes them: primitive fields first,
+	 * then in order of name.
+	 * @param c - the class
+	 * @return the class's serialised fields
+	 */
+	private static List<Field> getSerialisedFields(Class<?> c) {
+		List<Field> fields = new ArrayList<Field>();
+
+		for (Field field : c.getDeclaredFields()) {
+			int modifiers = field.getModifiers();
+
+			if (!Modifier.isStatic(modifiers)
+					&& !Modifier.isTransient(modifiers)) {
+				fields.add(field);
+			}
+		}
+
+		Collections.sort(fields, new Comparator<Field>() {
+			@Override
+			public int compare(Field a, Field b) {
+				boolean aPrimitive = a.getType().isPrimitive();
+				boolean bPrimitive = b.getType().isPrimitive();
+
+				if (aPrimitive != bPrimitive) {
+					return aPrimitive ? -1 : 1;
+				}
+
+				return a.getName().compareTo(b.getName());
+			}
+		});
+
+		return fields;
+	}
+
+	/**
+	 * Gets the type signature of a class, as written by serialisation.
+	 * @param type - the class
+	 * @return the class's type signature, e.g. <code>Lcls/Vector;</code>
+	 */
+	private static String getSignature(Class<?> type) {
+		if (type.isArray()) {
+			return "[" + getSignature(type.getComponentType());
+		} else if (type == int.class) {
+			return "I";
+		} else if (type == long.class) {
+			return "J";
+		} else if (type == double.class) {
+			return "D";
+		} else if (type == float.class) {
+			return "F";
+		} else if (type == boolean.class) {
+			return "Z";
+		} else if (type == byte.class) {
+			return "B";
+		} else if (type == char.class) {
+			return "C";
+		} else if (type == short.class) {
+			return "S";
+		} else {
+			return "L" + type.getName().replace('.', '/') + ";";
+		}
+	}
+
+}
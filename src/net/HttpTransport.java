@@ -0,0 +1,33 @@
+package net;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map.Entry;
+
+/**
+ * Exchanges game data with the server using HTTP POST requests.
+ * <p>
+ * Every request is answered by a response, so each call to
+ * {@link #exchange(Entry)} is a full round-trip to the server.
+ * </p>
+ */
+public class HttpTransport implements Transport {
+
+	@Override
+	public Entry<Long, ByteBuffer> exchange(Entry<Long, Serializable> dataEntry) {
+		Entry<Long, byte[]> receivedData = NetworkManager.postObject(dataEntry);
+
+		if (receivedData == null) return null;
+
+		return new SimpleImmutableEntry<Long, ByteBuffer>(receivedData.getKey(),
+				(receivedData.getValue() != null)
+						? ByteBuffer.wrap(receivedData.getValue()) : null);
+	}
+
+	@Override
+	public void close() {
+		// Connections are closed after each request
+	}
+
+}
@@ -0,0 +1,209 @@
+package net;
+
+import java.util.Collection;
+
+/**
+ * An instruction received from the server.
+ * <p>
+ * Instructions are parsed once, when they are received, into an
+ * opcode and its typed parameters. They can then be queued and
+ * handled later without any further string processing.
+ * </p>
+ * <p>
+ * Instructions are immutable, so may be passed freely between threads.
+ * </p>
+ */
+public final class Instruction {
+
+	/**
+	 * The operations which the server can instruct the game to perform.
+	 */
+	public enum Opcode {
+		/** Sets the random seed; takes the seed */
+		SET_SEED,
+		/** Starts a multiplayer game; takes the player's position */
+		START_GAME,
+		/** Ends the game; takes the names of the two colliding aircraft */
+		GAME_OVER,
+		/** Returns to the lobby; takes no parameters */
+		END_GAME
+	}
+
+	/** The opcodes, cached to avoid copying on every parse */
+	private static final Opcode[] OPCODES = Opcode.values();
+
+	/** The instruction's opcode */
+	private final Opcode opcode;
+
+	/** The instruction's numeric parameter */
+	private final int value;
+
+	/** The instruction's named parameters */
+	private final String[] names;
+
+
+	/**
+	 * Constructs a new instruction.
+	 * @param opcode - the instruction's opcode
+	 * @param value - the instruction's numeric parameter
+	 * @param names - the instruction's named parameters
+	 */
+	public Instruction(Opcode opcode, int value, String... names) {
+		this.opcode = opcode;
+		this.value = value;
+		this.names = names;
+	}
+
+
+	/**
+	 * Parses a list of instructions.
+	 * <p>
+	 * Instructions should be of the form:
+	 * 'COMMAND':'PARAMETERS', and are separated by
+	 * {@link InstructionHandler#LIST_DELIM}.
+	 * </p>
+	 * <p>
+	 * Unrecognised or malformed instructions are skipped.
+	 * </p>
+	 * @param instructions - the instruction(s) to parse
+	 * @param parsed - the collection to add the parsed instructions to
+	 */
+	public static void parse(String instructions,
+			Collection<Instruction> parsed) {
+		if (instructions == null) return;
+
+		int start = 0;
+
+		while (start < instructions.length()) {
+			int end = instructions.indexOf(InstructionHandler.LIST_DELIM, start);
+			if (end < 0) end = instructions.length();
+
+			Instruction instruction = parseIndividual(instructions, start, end);
+
+			if (instruction != null) {
+				parsed.add(instruction);
+			}
+
+			start = end + InstructionHandler.LIST_DELIM.length();
+		}
+	}
+
+	/**
+	 * Parses a single instruction from part of a string.
+	 * @param instructions - the string containing the instruction
+	 * @param start - the index the instruction starts at
+	 * @param end - the index the instruction ends at (exclusive)
+	 * @return the parsed instruction, or <code>null</code> if the
+	 * 			instruction could not be parsed
+	 */
+	private static Instruction parseIndividual(String instructions,
+			int start, int end) {
+		// Find the end of the command
+		int delim = instructions.indexOf(InstructionHandler.DELIM, start);
+		if (delim < 0 || delim > end) delim = end;
+
+		Opcode opcode = null;
+		for (Opcode candidate : OPCODES) {
+			if (candidate.name().length() == (delim - start)
+					&& instructions.regionMatches(start, candidate.name(),
+							0, delim - start)) {
+				opcode = candidate;
+				break;
+			}
+		}
+
+		if (opcode == null) return null;
+
+		int parameters = Math.min(delim + InstructionHandler.DELIM.length(),
+				end);
+
+		try {
+			switch (opcode) {
+			case SET_SEED:
+			case START_GAME:
+				return new Instruction(opcode, Integer.parseInt(
+						instructions.substring(parameters, end)));
+			case GAME_OVER:
+				int split = instructions.indexOf(InstructionHandler.DELIM,
+						parameters);
+				if (split < 0 || split >= end) return null;
+
+				return new Instruction(opcode, 0,
+						instructions.substring(parameters, split),
+						instructions.substring(split
+								+ InstructionHandler.DELIM.length(), end));
+			case END_GAME:
+				return new Instruction(opcode, 0);
+			}
+		} catch (NumberFormatException e) {
+			NetworkManager.print(e);
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Gets the instruction's opcode.
+	 * @return the instruction's opcode
+	 */
+	public Opcode getOpcode() {
+		return opcode;
+	}
+
+	/**
+	 * Gets the random seed to use.
+	 * <p>
+	 * Only valid for {@link Opcode#SET_SEED} instructions.
+	 * </p>
+	 * @return the random seed to use
+	 */
+	public int getSeed() {
+		return value;
+	}
+
+	/**
+	 * Gets the side of the screen the player will control.
+	 * <p>
+	 * Only valid for {@link Opcode#START_GAME} instructions.
+	 * </p>
+	 * @return the player's position
+	 */
+	public int getPlayerPosition() {
+		return value;
+	}
+
+	/**
+	 * Gets the names of the aircraft which collided.
+	 * <p>
+	 * Only valid for {@link Opcode#GAME_OVER} instructions.
+	 * </p>
+	 * @return the names of the colliding aircraft
+	 */
+	public String[] getAircraftNames() {
+		return names.clone();
+	}
+
+	/**
+	 * Returns a textual representation of the instruction.
+	 * @return a textual representation of the instruction
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(opcode.name());
+
+		switch (opcode) {
+		case SET_SEED:
+		case START_GAME:
+			builder.append(InstructionHandler.DELIM).append(value);
+			break;
+		default:
+			for (String name : names) {
+				builder.append(InstructionHandler.DELIM).append(name);
+			}
+		}
+
+		return builder.toString();
+	}
+
+}
@@ -1,5 +1,7 @@
 package net;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import cls.Aircraft;
 import btc.Main;
 import scn.Game;
@@ -20,6 +22,13 @@ import scn.MultiPlayerGame;
  * handled sequentially, in the order they appear in the
  * string.
  * </p>
+ * <p>
+ * Instructions may be received on any thread. They are parsed
+ * into {@link Instruction}s on arrival and queued, and the queue
+ * is then drained on the game thread by
+ * {@link #processInstructions()}. All changes to the game
+ * therefore happen on the game thread, without locking.
+ * </p>
  */
 public abstract class InstructionHandler {
 	
@@ -29,71 +38,63 @@ public abstract class InstructionHandler {
 	/** The instruction delimiter */
 	public static final String DELIM = ":";
 	
-	/** The messages to be delivered to the main thread */
-	private static String messages = "";
+	/** The instructions waiting to be handled by the game thread */
+	private static ConcurrentLinkedQueue<Instruction> instructions =
+			new ConcurrentLinkedQueue<Instruction>();
 	
 	
 	/**
-	 * Handles instructions.
+	 * Queues instructions to be handled by the game thread.
 	 * <p>
 	 * Takes a semicolon-delimited list of instructions and
-	 * processes them sequentially.
+	 * queues them in the order they appear.
+	 * </p>
+	 * <p>
+	 * This may be called from any thread.
 	 * </p>
 	 * @param instruction - the instruction(s) to handle
 	 */
 	public static void handleInstruction(String instruction) {
-		if (instruction != null) {
-			// Split the instruction string into individual instructions
-			String[] instructionList = instruction.split(LIST_DELIM);
-
-			// Check that there is at least one instruction
-			if (instructionList != null) {
-				if (instructionList.length > 0) {
-					// Loop through the instructions, handling them
-					// sequentially
-					for (String instr : instructionList) {
-						handleIndividualInstruction(instr);
-					}
-				}
-			}
+		Instruction.parse(instruction, instructions);
+	}
+	
+	/**
+	 * Handles all queued instructions.
+	 * <p>
+	 * This should be called once per frame from the game thread.
+	 * </p>
+	 */
+	public static void processInstructions() {
+		Instruction instruction;
+		
+		while ((instruction = instructions.poll()) != null) {
+			handleIndividualInstruction(instruction);
 		}
 	}
 	
 	/**
 	 * Handles an instruction.
 	 * <p>
-	 * Breaks an instruction down into an instruction part
-	 * and a parameter part, and passes these to the
-	 * appropriate method (as specified in the instruction
-	 * part.
+	 * Passes the instruction to the appropriate method (as
+	 * specified by its opcode).
 	 * </p>
 	 * @param instruction - the instruction to handle
 	 */
-	private static void handleIndividualInstruction(String instruction) {
-		// Get the instruction
-		String instr = instruction.split(DELIM)[0];
-		
-		// Return immediately if the instruction is invalid
-		if (instr == null) return;
-		
-		// Check if the received data has parameters
-		String parameters = null;
-		if (instruction != null && instruction.contains(DELIM)) {
-			parameters = instruction.substring(instruction.indexOf(DELIM) + 1);
-		}
+	private static void handleIndividualInstruction(Instruction instruction) {
+		NetworkManager.print("Handling instruction: " + instruction);
 		
 		// Switch to the appropriate method
-		switch (instr) {
-		case "SET_SEED":
-			handleSetSeed(parameters);
+		switch (instruction.getOpcode()) {
+		case SET_SEED:
+			handleSetSeed(instruction.getSeed());
 			break;
-		case "START_GAME":
-			handleStartGame(parameters);
+		case START_GAME:
+			handleStartGame(instruction.getPlayerPosition());
 			break;
-		case "GAME_OVER":
-			handleGameOver(parameters);
+		case GAME_OVER:
+			handleGameOver(instruction.getAircraftNames());
 			break;
-		case "END_GAME":
+		case END_GAME:
 			handleEndGame();
 			break;
 		}
@@ -109,17 +110,9 @@ public abstract class InstructionHandler {
 	 * This will cause random events to by synchronised across all
 	 * players using the seed provided.
 	 * </p>
-	 * @param parameters - the parameters accompanying the instruction
+	 * @param seedToSet - the seed to use
 	 */
-	private static void handleSetSeed(String parameters) {
-		// Get the player ID to set from the response
-		int seedToSet = 0;
-		try {
-			seedToSet = Integer.parseInt(parameters);
-		} catch (Exception e) {
-			NetworkManager.print(e);
-		}
-
+	private static void handleSetSeed(int seedToSet) {
 		// Set the current player's random seed
 		Main.setRandomSeed(seedToSet);
 
@@ -132,29 +125,14 @@ public abstract class InstructionHandler {
 	 * START_GAME instructions cause a new instance of MultiPlayerGame
 	 * to be created.
 	 * </p>
-	 * @param parameters - the parameters accompanying the instruction
+	 * @param playerPosition - the side of the screen the player
+	 * 			will control
 	 */
-	private static void handleStartGame(String parameters) {
-		if (Thread.currentThread().getId() != NetworkManager.getNetworkThreadID()) {
-			// Get the position to set from the response
-			int playerPosition = -1;
-			try {
-				playerPosition = Integer.parseInt(parameters);
-			} catch (Exception e) {
-				NetworkManager.print(e);
-			}
-
-			// Start a new multiplayer game
-			Main.setScene(MultiPlayerGame
-					.createMultiPlayerGame(DifficultySetting.EASY,
-							playerPosition));
-		} else {
-			// Obtain a lock on the message buffer
-			synchronized (messages) {
-				// Add a START_GAME instruction to the message buffer
-				messages = "START_GAME:" + parameters;
-			}
-		}
+	private static void handleStartGame(int playerPosition) {
+		// Start a new multiplayer game
+		Main.setScene(MultiPlayerGame
+				.createMultiPlayerGame(DifficultySetting.EASY,
+						playerPosition));
 	}
 	
 	/**
@@ -163,23 +141,18 @@ public abstract class InstructionHandler {
 	 * GAME_OVER instructions cause the current game instance to end,
 	 * directing the player to the GameOver scene.
 	 * </p>
-	 * @param parameters - the parameters accompanying the instruction
+	 * @param aircraftNames - the names of the colliding aircraft
 	 */
-	private static void handleGameOver(String parameters) {
-		// Get aircraft ID's from the parameters
-		String[] params = parameters.split(DELIM);
-		
-		// Get the aircraft from their IDs
-		Aircraft a1 = Game.getInstance().getAircraftFromName(params[0]);
-		Aircraft a2 = Game.getInstance().getAircraftFromName(params[1]);
-		
-		if (Game.getInstance() != null) {
-			// Obtain a lock on the game instance
-			synchronized(Game.getInstance()) {
-				((MultiPlayerGame) Game.getInstance())
-						.setPassedCollidingAircraft(new Aircraft[] {a1, a2});
-				((MultiPlayerGame) Game.getInstance()).setExitingToGameOver();
-			}
+	private static void handleGameOver(String[] aircraftNames) {
+		if (Game.getInstance() instanceof MultiPlayerGame) {
+			MultiPlayerGame game = (MultiPlayerGame) Game.getInstance();
+			
+			// Get the aircraft from their IDs
+			Aircraft a1 = game.getAircraftFromName(aircraftNames[0]);
+			Aircraft a2 = game.getAircraftFromName(aircraftNames[1]);
+			
+			game.setPassedCollidingAircraft(new Aircraft[] {a1, a2});
+			game.setExitingToGameOver();
 		}
 	}
 	
@@ -190,29 +163,8 @@ public abstract class InstructionHandler {
 	 * </p>
 	 */
 	private static void handleEndGame() {
-		if (Game.getInstance() != null) {
-			// Obtain a lock on the game instance
-			synchronized(Game.getInstance()) {
-				((MultiPlayerGame) Game.getInstance()).setExitingToLobby();
-			}
-		}
-	}
-	
-	
-	/**
-	 * Gets any messages which need to be processed by the main thread.
-	 * <p>
-	 * This operation is <b>destructive</b>, i.e. the message buffer will
-	 * be cleared after it has been read.
-	 * </p>
-	 * @return the contents of the message buffer
-	 */
-	public static String getMessages() {
-		// Obtain a lock on the message buffer
-		synchronized (messages) {
-			String messageBuffer = messages;
-			messages = "";
-			return messageBuffer;
+		if (Game.getInstance() instanceof MultiPlayerGame) {
+			((MultiPlayerGame) Game.getInstance()).setExitingToLobby();
 		}
 	}
 	
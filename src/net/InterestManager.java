@@ -0,0 +1,200 @@
+package net;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Decides which entities to include in each update, within a budget.
+ * <p>
+ * Each time an update is built, every entity is given a priority,
+ * which is added to its accumulated priority. An entity becomes due
+ * once its accumulated priority reaches 1; the due entities with the
+ * highest accumulated priority are then selected, up to the budget,
+ * and their accumulated priority is reset.
+ * </p>
+ * <p>
+ * An entity with a priority of {@link #FULL_RATE} is therefore sent
+ * in every update, and one with a priority of 0.25 in every fourth
+ * update, as long as the budget allows. Full rate entities count
+ * against the budget like any other.
+ * </p>
+ * <p>
+ * When more entities are due than the budget allows, those which miss
+ * out keep their accumulated priority, so full rate entities take
+ * turns. So that a crowd of full rate entities cannot starve the
+ * others, the first place in each such update goes to the due entity
+ * which has waited longest since it was last sent, whatever its
+ * priority: every due entity is sent within as many updates as there
+ * are entities.
+ * </p>
+ * <p>
+ * Entities which have not been seen before are due immediately.
+ * </p>
+ * <p>
+ * This class is not thread-safe.
+ * </p>
+ * @param <K> - the type of key identifying each entity
+ */
+public class InterestManager<K> {
+
+	/** The priority of entities which should be sent in every update */
+	public static final double FULL_RATE = 1;
+
+	/** The maximum number of entities to select for each update */
+	private int budget;
+
+	/** The accumulated priority of each entity */
+	private HashMap<K, Interest> accumulated;
+
+	/** Orders entries by descending accumulated priority, then by how
+	 * long they have waited */
+	private Comparator<Entry<K, Interest>> byPriority;
+
+	/** The number of updates selected so far */
+	private long updates;
+
+
+	/**
+	 * Constructs a new interest manager.
+	 * @param budget - the maximum number of entities to select
+	 * 			for each update
+	 */
+	public InterestManager(int budget) {
+		this.budget = budget;
+		this.accumulated = new HashMap<K, Interest>();
+		this.byPriority = new Comparator<Entry<K, Interest>>() {
+			@Override
+			public int compare(Entry<K, Interest> a, Entry<K, Interest> b) {
+				int order = Double.compare(b.getValue().priority,
+						a.getValue().priority);
+				return (order != 0) ? order
+						: Long.compare(a.getValue().lastSent,
+								b.getValue().lastSent);
+			}
+		};
+	}
+
+
+	/**
+	 * Adds to an entity's accumulated priority.
+	 * <p>
+	 * This should be called once for each entity before each call
+	 * to {@link #select()}.
+	 * </p>
+	 * @param key - the entity's key
+	 * @param priority - the entity's current priority
+	 */
+	public void accumulate(K key, double priority) {
+		Interest current = accumulated.get(key);
+
+		if (current == null) {
+			// Entities which have not been seen before are due immediately
+			current = new Interest(updates);
+			current.priority = Math.max(priority, FULL_RATE);
+			accumulated.put(key, current);
+		} else {
+			current.priority += priority;
+		}
+	}
+
+	/**
+	 * Selects the entities to include in the next update.
+	 * @return the keys of the selected entities, in descending order
+	 * 			of priority
+	 */
+	public List<K> select() {
+		updates++;
+
+		List<Entry<K, Interest>> due = new ArrayList<Entry<K, Interest>>();
+
+		for (Entry<K, Interest> entry : accumulated.entrySet()) {
+			if (entry.getValue().priority >= FULL_RATE) {
+				due.add(entry);
+			}
+		}
+
+		Collections.sort(due, byPriority);
+
+		if (due.size() > budget && budget > 0) {
+			// Give the first place to the entity which has waited longest
+			int longest = 0;
+			for (int i = 1; i < due.size(); i++) {
+				if (due.get(i).getValue().lastSent
+						< due.get(longest).getValue().lastSent) {
+					longest = i;
+				}
+			}
+			due.add(0, due.remove(longest));
+		}
+
+		List<K> selected = new ArrayList<K>();
+
+		for (int i = 0; i < due.size() && i < budget; i++) {
+			Interest interest = due.get(i).getValue();
+			interest.priority = 0;
+			interest.lastSent = updates;
+
+			selected.add(due.get(i).getKey());
+		}
+
+		return selected;
+	}
+
+	/**
+	 * Forgets any entities which are not in a collection.
+	 * @param keys - the keys of the entities to keep
+	 */
+	public void retain(Collection<K> keys) {
+		Iterator<K> iterator = accumulated.keySet().iterator();
+
+		while (iterator.hasNext()) {
+			if (!keys.contains(iterator.next())) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Forgets all entities.
+	 */
+	public void clear() {
+		accumulated.clear();
+	}
+
+	/**
+	 * Gets the maximum number of entities selected for each update.
+	 * @return the budget
+	 */
+	public int getBudget() {
+		return budget;
+	}
+
+
+	/**
+	 * The interest in a single entity.
+	 */
+	private static class Interest {
+
+		/** The entity's accumulated priority */
+		private double priority;
+
+		/** The update the entity was last sent in */
+		private long lastSent;
+
+		/**
+		 * Constructs the interest in an entity which has just been seen.
+		 * @param updates - the number of updates selected so far
+		 */
+		private Interest(long updates) {
+			this.lastSent = updates;
+		}
+
+	}
+
+}
@@ -0,0 +1,411 @@
+package net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Schedules player commands for a deterministic lockstep simulation.
+ * <p>
+ * Both clients run the same simulation, advancing it in fixed ticks
+ * of {@link #TICK_LENGTH}. Commands issued by the local player are
+ * not applied straight away, but are scheduled for
+ * {@link #INPUT_DELAY} ticks in the future, and sent to the other
+ * client. A tick is only simulated once the commands for that tick
+ * have arrived from both players, so both clients apply exactly the
+ * same commands on exactly the same ticks.
+ * </p>
+ * <p>
+ * A batch of commands is created for every tick, even if it is empty,
+ * so each client always knows when the other has finished issuing
+ * commands for a tick. Batches are sent in packets, which may be
+ * lost, duplicated or arrive in any order. Each packet acknowledges
+ * the batches received so far, and carries every local batch which
+ * the other client has not yet acknowledged, so a lost packet is
+ * made up for by the next one to arrive. Only the newest packet is
+ * ever needed, so packets should be sent where they are superseded by
+ * newer ones, rather than queued behind them. While the simulation is
+ * waiting for the other client, the unacknowledged batches should be
+ * resent every {@link #RESEND_INTERVAL} (see {@link #createResend()}),
+ * so that neither client waits forever on a packet which was lost.
+ * </p>
+ * <p>
+ * Each packet also carries a checksum of the state of the simulation
+ * after the sender's most recent tick, so that the clients' simulations
+ * can be compared. If the checksums for a tick differ, the simulations
+ * have diverged, and the game cannot continue (see
+ * {@link #getDesyncTick()}).
+ * </p>
+ * <p>
+ * A packet carrying a single empty batch is 18 bytes long; the data
+ * sent does not depend on the number of aircraft in play.
+ * </p>
+ * <p>
+ * This class is not thread-safe; it should only be used by the
+ * game thread.
+ * </p>
+ */
+public class Lockstep {
+
+	/** The length of each simulation tick, in seconds */
+	public static final double TICK_LENGTH = 0.05;
+
+	/** The number of ticks between a command being issued and applied */
+	public static final int INPUT_DELAY = 4;
+
+	/** The time between resending unacknowledged batches while waiting
+	 * for the other client, in seconds */
+	public static final double RESEND_INTERVAL = 0.25;
+
+	/** How long to wait for the other client before giving up on the
+	 * game, in seconds */
+	public static final double STALL_TIMEOUT = 15;
+
+	/** The system property used to enable lockstep multiplayer */
+	public static final String ENABLED_PROPERTY = "flyhard.lockstep";
+
+	/** The maximum number of commands in a batch */
+	private static final int MAX_BATCH_SIZE = 255;
+
+	/** The number of ticks for which checksums are kept to be compared */
+	private static final int CHECKSUM_HISTORY = 64;
+
+	/** The next tick to be simulated */
+	private int currentTick;
+
+	/** The local commands which have not yet been sent */
+	private List<Command> pending;
+
+	/** The local commands sent, by tick */
+	private HashMap<Integer, List<Command>> localCommands;
+
+	/** The remote commands received, by tick */
+	private HashMap<Integer, List<Command>> remoteCommands;
+
+	/** The local batches sent, but not acknowledged, by tick */
+	private TreeMap<Integer, List<Command>> unacknowledged;
+
+	/** The checksums of the local simulation, by tick */
+	private HashMap<Integer, Integer> localChecksums;
+
+	/** The checksums of the remote simulation, by tick */
+	private HashMap<Integer, Integer> remoteChecksums;
+
+	/** The most recent tick simulated, or -1 if none has been */
+	private int checksumTick;
+
+	/** The checksum of the most recent tick simulated */
+	private int checksum;
+
+	/** The first tick on which the simulations differed, or -1 */
+	private int desyncTick;
+
+
+	/**
+	 * Constructs a new lockstep scheduler.
+	 * <p>
+	 * The ticks before the first command could arrive are treated
+	 * as having no commands from either player.
+	 * </p>
+	 */
+	public Lockstep() {
+		this.pending = new ArrayList<Command>();
+		this.localCommands = new HashMap<Integer, List<Command>>();
+		this.remoteCommands = new HashMap<Integer, List<Command>>();
+		this.unacknowledged = new TreeMap<Integer, List<Command>>();
+		this.localChecksums = new HashMap<Integer, Integer>();
+		this.remoteChecksums = new HashMap<Integer, Integer>();
+		this.checksumTick = -1;
+		this.desyncTick = -1;
+
+		for (int tick = 0; tick < INPUT_DELAY; tick++) {
+			List<Command> none = Collections.emptyList();
+			localCommands.put(tick, none);
+			remoteCommands.put(tick, none);
+		}
+	}
+
+
+	/**
+	 * Checks whether lockstep multiplayer has been enabled.
+	 * @return <code>true</code> if {@link #ENABLED_PROPERTY} is set
+	 * 			to <code>true</code>
+	 */
+	public static boolean isEnabled() {
+		return Boolean.getBoolean(ENABLED_PROPERTY);
+	}
+
+	/**
+	 * Issues a local command.
+	 * <p>
+	 * The command will be included in the next batch created.
+	 * </p>
+	 * @param command - the command to issue
+	 */
+	public void issue(Command command) {
+		pending.add(command);
+	}
+
+	/**
+	 * Creates the batch of local commands for the tick
+	 * {@link #INPUT_DELAY} ticks after the current tick.
+	 * <p>
+	 * This should be called once per tick, before the tick is
+	 * simulated, and the packet sent to the other client.
+	 * </p>
+	 * <p>
+	 * If more than {@link #MAX_BATCH_SIZE} commands are pending, the
+	 * remainder are held over for the next batch.
+	 * </p>
+	 * @return the encoded packet, carrying the new batch and any
+	 * 			earlier batches which have not been acknowledged
+	 */
+	public byte[] createBatch() {
+		int tick = currentTick + INPUT_DELAY;
+		List<Command> batch = pending.subList(0,
+				Math.min(pending.size(), MAX_BATCH_SIZE));
+		List<Command> commands = new ArrayList<Command>(batch);
+		batch.clear();
+
+		localCommands.put(tick, commands);
+		unacknowledged.put(tick, commands);
+
+		return encodePacket();
+	}
+
+	/**
+	 * Creates a packet resending the batches which the other client
+	 * has not acknowledged, without creating a new batch.
+	 * <p>
+	 * This should be sent every {@link #RESEND_INTERVAL} while the
+	 * current tick cannot be simulated.
+	 * </p>
+	 * @return the encoded packet
+	 */
+	public byte[] createResend() {
+		return encodePacket();
+	}
+
+	/**
+	 * Receives a packet of batches from the other client.
+	 * <p>
+	 * Batches which have already been received, or whose ticks have
+	 * already been simulated, are ignored.
+	 * </p>
+	 * @param packet - the encoded packet
+	 */
+	public void receiveBatch(byte[] packet) {
+		DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(packet));
+
+		try {
+			int ack = in.readInt();
+			int remoteChecksumTick = in.readInt();
+			int remoteChecksum = in.readInt();
+			int batches = in.readUnsignedByte();
+
+			for (int i = 0; i < batches; i++) {
+				int tick = in.readInt();
+				int count = in.readUnsignedByte();
+				List<Command> commands = new ArrayList<Command>(count);
+
+				for (int j = 0; j < count; j++) {
+					commands.add(Command.read(in));
+				}
+
+				if (tick >= currentTick && !remoteCommands.containsKey(tick)) {
+					remoteCommands.put(tick, commands);
+				}
+			}
+
+			// Stop resending the batches which have arrived
+			unacknowledged.headMap(ack, true).clear();
+
+			if (remoteChecksumTick >= 0) {
+				remoteChecksums.put(remoteChecksumTick, remoteChecksum);
+				compareChecksums(remoteChecksumTick);
+			}
+		} catch (IOException e) {
+			NetworkManager.print(e);
+		}
+	}
+
+	/**
+	 * Records the checksum of the simulation's state after the current
+	 * tick has been simulated.
+	 * <p>
+	 * This should be called once per tick, after the tick is simulated
+	 * and before {@link #advance()}. The checksum is sent with the
+	 * next packet, and compared with the other client's checksum for
+	 * the same tick.
+	 * </p>
+	 * @param checksum - the checksum of the simulation's state
+	 */
+	public void recordChecksum(int checksum) {
+		this.checksumTick = currentTick;
+		this.checksum = checksum;
+
+		localChecksums.put(currentTick, checksum);
+		compareChecksums(currentTick);
+	}
+	/**
+	 * Checks whether the commands for the current tick have arrived
+	 * from both players.
+	 * @return <code>true</code> if the current tick can be simulated,
+	 * 			otherwise <code>false</code>
+	 */
+	public boolean canAdvance() {
+		return localCommands.containsKey(currentTick)
+				&& remoteCommands.containsKey(currentTick);
+	}
+
+	/**
+	 * Gets the local player's commands for the current tick.
+	 * @return the local commands to apply
+	 */
+	public List<Command> getLocalCommands() {
+		return localCommands.get(currentTick);
+	}
+
+	/**
+	 * Gets the remote player's commands for the current tick.
+	 * @return the remote commands to apply
+	 */
+	public List<Command> getRemoteCommands() {
+		return remoteCommands.get(currentTick);
+	}
+
+	/**
+	 * Moves on to the next tick.
+	 * <p>
+	 * This should be called once the current tick has been simulated.
+	 * </p>
+	 */
+	public void advance() {
+		localCommands.remove(currentTick);
+		remoteCommands.remove(currentTick);
+		currentTick++;
+
+		// Forget checksums which can no longer be compared
+		localChecksums.remove(currentTick - CHECKSUM_HISTORY);
+		remoteChecksums.remove(currentTick - CHECKSUM_HISTORY);
+	}
+
+	/**
+	 * Gets the next tick to be simulated.
+	 * @return the current tick
+	 */
+	public int getCurrentTick() {
+		return currentTick;
+	}
+
+	/**
+	 * Gets the first tick on which the simulations were found to differ.
+	 * @return the tick the simulations diverged on, or -1 if they have
+	 * 			not been found to differ
+	 */
+	public int getDesyncTick() {
+		return desyncTick;
+	}
+
+	/**
+	 * Gets the number of local batches which the other client has not
+	 * yet acknowledged.
+	 * @return the number of batches being resent
+	 */
+	public int getUnacknowledgedCount() {
+		return unacknowledged.size();
+	}
+
+
+	/**
+	 * Compares the clients' checksums for a tick, if both have arrived.
+	 * <p>
+	 * The first difference found is recorded (see
+	 * {@link #getDesyncTick()}); the game should then be abandoned, as
+	 * the clients' simulations no longer match.
+	 * </p>
+	 * @param tick - the tick to compare
+	 */
+	private void compareChecksums(int tick) {
+		Integer local = localChecksums.get(tick);
+		Integer remote = remoteChecksums.get(tick);
+
+		if (local == null || remote == null) return;
+
+		localChecksums.remove(tick);
+		remoteChecksums.remove(tick);
+
+		if (!local.equals(remote) && desyncTick == -1) {
+			desyncTick = tick;
+			NetworkManager.print(new Exception("Lockstep simulations differ"
+					+ " from tick " + tick));
+		}
+	}
+
+	/**
+	 * Gets the latest tick for which every batch has been received from
+	 * the other client.
+	 * @return the tick to acknowledge
+	 */
+	private int getAcknowledgedTick() {
+		int tick = currentTick;
+
+		while (remoteCommands.containsKey(tick)) {
+			tick++;
+		}
+
+		return tick - 1;
+	}
+
+
+	/**
+	 * Encodes a packet of the unacknowledged batches.
+	 * <p>
+	 * Each packet is laid out as an int holding the latest tick whose
+	 * batches have all been received, an int holding the tick of the
+	 * checksum (or -1 if no tick has been simulated), an int holding
+	 * the checksum, a byte holding the number of batches, then the
+	 * batches. Each batch is laid out as an int holding the tick, a
+	 * byte holding the number of commands, then the commands
+	 * themselves.
+	 * </p>
+	 * @return the encoded packet
+	 */
+	private byte[] encodePacket() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+				13 + (5 * unacknowledged.size()));
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		try {
+			out.writeInt(getAcknowledgedTick());
+			out.writeInt(checksumTick);
+			out.writeInt(checksum);
+			out.writeByte(unacknowledged.size());
+
+			for (Entry<Integer, List<Command>> batch
+					: unacknowledged.entrySet()) {
+				out.writeInt(batch.getKey());
+				out.writeByte(batch.getValue().size());
+
+				for (Command command : batch.getValue()) {
+					command.write(out);
+				}
+			}
+		} catch (IOException e) {
+			// Writing to a byte array never fails
+			NetworkManager.print(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+}
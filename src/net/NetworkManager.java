@@ -3,17 +3,26 @@ package net;
 import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import scn.Game;
 import btc.Main;
@@ -30,6 +39,19 @@ public abstract class NetworkManager {
 	/** The data transfer extension */
 	public static final String DATA_EXT = "/data";
 	
+	/** The time (in ms) to wait for the server before abandoning a request */
+	public static final int CONNECTION_TIMEOUT = 5000;
+	
+	/**
+	 * The system property used to enable the UDP transport.
+	 * <p>
+	 * This should be set to the server's UDP address, in the form
+	 * <code>host:port</code>. If it is not set, game data is sent
+	 * over HTTP.
+	 * </p>
+	 */
+	public static final String UDP_ADDRESS_PROPERTY = "flyhard.udp";
+	
 	/** The connection ID to the server */
 	private static long id = -1;
 	
@@ -42,15 +64,42 @@ public abstract class NetworkManager {
 	/** The mutex used to protect the header fields */
 	private static Object headerMutex = new Object();
 
+	/** The mutex used to protect starting and stopping the network thread */
+	private static Object threadMutex = new Object();
+
 	/** The task which sends and receives */
-	private static NetworkWorker networkWorker = new NetworkWorker();
+	private static volatile NetworkWorker networkWorker = new NetworkWorker();
 	
 	/** The thread to send and receive data on */
-	private static Thread networkThread = new Thread(networkWorker);
+	private static volatile Thread networkThread = new Thread(networkWorker);
+	
+	/**
+	 * The executor used to send asynchronous messages.
+	 * <p>
+	 * Messages are sent one at a time, in the order they were posted,
+	 * so that control messages (e.g. leaving a lobby, then joining
+	 * another) reach the server in the order the game sent them.
+	 * </p>
+	 */
+	private static ExecutorService messageExecutor =
+			Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Message Worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	
+	/** The asynchronous messages currently awaiting a response */
+	private static HashMap<String, Future<String>> messagesInFlight =
+			new HashMap<String, Future<String>>();
 	
-	/** A map for temporarily storing data in order to make use of entries */
-	private static TreeMap<Long, byte[]> transientDataBuffer =
-			new TreeMap<Long, byte[]>();
+	/** The pool of buffers data is serialised into */
+	private static final BufferPool bufferPool = new BufferPool();
+	
+	/** The codec used to frame data sent over the current connection */
+	private static volatile FrameCodec frameCodec = new FrameCodec();
 	
 	/** Whether to output data to the standard output */
 	private static boolean verbose = false;
@@ -61,19 +110,48 @@ public abstract class NetworkManager {
 	 */
 	public static void startThread() {
 		// Obtain a lock on the network thread
-		synchronized (networkThread) {
-			networkWorker = new NetworkWorker();
+		synchronized (threadMutex) {
+			// Compression is negotiated afresh for each connection
+			frameCodec = new FrameCodec();
+			networkWorker = new NetworkWorker(createTransport());
 			networkThread = new Thread(networkWorker);
 			networkThread.start();
 		}
 	}
 	
+	/**
+	 * Creates the transport to send game data with.
+	 * <p>
+	 * This is a {@link UdpTransport} if {@link #UDP_ADDRESS_PROPERTY}
+	 * is set, otherwise it is an {@link HttpTransport}.
+	 * </p>
+	 * @return the transport to send game data with
+	 */
+	private static Transport createTransport() {
+		String address = System.getProperty(UDP_ADDRESS_PROPERTY);
+		
+		if (address != null && address.contains(":")) {
+			try {
+				String host = address.substring(0, address.lastIndexOf(':'));
+				int port = Integer.parseInt(
+						address.substring(address.lastIndexOf(':') + 1));
+				
+				return new UdpTransport(new InetSocketAddress(host, port));
+			} catch (Exception e) {
+				// Fall back to HTTP
+				print(e);
+			}
+		}
+		
+		return new HttpTransport();
+	}
+	
 	/**
 	 * Stops the network thread and network worker.
 	 */
 	public static void stopThread() {
 		// Obtain a lock on the network thread
-		synchronized (networkThread) {
+		synchronized (threadMutex) {
 			networkWorker.end();
 		}
 	}
@@ -97,24 +175,38 @@ public abstract class NetworkManager {
 	 * The data will then be sent to the server after an arbitrary length
 	 * of time.
 	 * </p>
+	 * <p>
+	 * This never blocks, and must only be called from the game thread.
+	 * </p>
 	 * @param timeValid - the time at which the data was valid
 	 * @param data - the data to send
+	 * @return <code>true</code> if the data was queued to be sent, or
+	 * 			<code>false</code> if priority data was dropped because
+	 * 			too much is waiting to be sent
 	 */
-	public static void sendData(long timeValid, Serializable data) {
-		// Obtain a lock on the network thread
-		synchronized (networkThread) {
-			networkWorker.writeData(timeValid, data);
-		}
+	public static boolean sendData(long timeValid, Serializable data) {
+		return networkWorker.writeData(timeValid, data);
 	}
 	
 	/**
 	 * Retrieve the next response from the network worker.
+	 * <p>
+	 * This never blocks, and must only be called from the game thread.
+	 * </p>
 	 */
 	public static Serializable receiveData() {
-		// Obtain a lock on the network thread
-		synchronized (networkThread) {
-			return networkWorker.readResponse();
-		}
+		return networkWorker.readResponse();
+	}
+	
+	/**
+	 * Gets the time at which the most recently received data was valid.
+	 * <p>
+	 * This is measured using the sending client's clock.
+	 * </p>
+	 * @return the time at which the most recently received data was valid
+	 */
+	public static long getLastReceivedTime() {
+		return networkWorker.getMostRecent();
 	}
 	
 	
@@ -139,6 +231,8 @@ public abstract class NetworkManager {
 			connection.setUseCaches(false);
 			connection.setDoInput(true);
 			connection.setDoOutput(true);
+			connection.setConnectTimeout(CONNECTION_TIMEOUT);
+			connection.setReadTimeout(CONNECTION_TIMEOUT);
 			
 			// Set request properties and headers
 			connection.setRequestProperty("user-agent", Main.VERSION);
@@ -177,10 +271,101 @@ public abstract class NetworkManager {
 	
 	/**
 	 * Sends a message to the server.
+	 * <p>
+	 * This blocks until the server has responded. Messages sent
+	 * from the game thread should use
+	 * {@link #postMessageAsync(String)} instead.
+	 * </p>
 	 * @param message - the message to send
 	 * @return the data the server responded with
 	 */
 	public static String postMessage(String message) {
+		String receivedMessages = sendMessage(message);
+
+		// Handle the received message(s)
+		InstructionHandler.handleInstruction(receivedMessages);
+
+		return receivedMessages;
+	}
+	
+	/**
+	 * Sends a message to the server without blocking.
+	 * <p>
+	 * The message is sent on a separate thread, after any messages
+	 * posted before it have been sent. The future returned
+	 * completes with the server's response, or with <code>null</code>
+	 * if the server could not be reached within
+	 * {@link #CONNECTION_TIMEOUT}.
+	 * </p>
+	 * <p>
+	 * If an identical message is already awaiting a response, no new
+	 * message is sent, and the existing future is returned instead.
+	 * This allows polls to be issued on a timer without them queueing
+	 * up behind a slow server.
+	 * </p>
+	 * <p>
+	 * Any instructions contained in the response are queued to be
+	 * handled on the game thread, as for {@link #postMessage(String)}.
+	 * </p>
+	 * <p>
+	 * This must only be called from the game thread.
+	 * </p>
+	 * @param message - the message to send
+	 * @return a future which will hold the server's response
+	 */
+	public static Future<String> postMessageAsync(final String message) {
+		Future<String> inFlight = messagesInFlight.get(message);
+		
+		if (inFlight != null && !inFlight.isDone()) {
+			return inFlight;
+		}
+		
+		Future<String> response = messageExecutor.submit(
+				new Callable<String>() {
+					@Override
+					public String call() {
+						String receivedMessages = sendMessage(message);
+						
+						// Handle the received message(s)
+						InstructionHandler.handleInstruction(receivedMessages);
+						
+						return receivedMessages;
+					}
+				});
+		
+		messagesInFlight.put(message, response);
+		
+		return response;
+	}
+	
+	/**
+	 * Waits for any asynchronous messages still being sent.
+	 * <p>
+	 * This is used when quitting, so that final messages such
+	 * as END_GAME reach the server.
+	 * </p>
+	 * @param timeout - the maximum time (in ms) to wait
+	 */
+	public static void awaitMessages(long timeout) {
+		messageExecutor.shutdown();
+		
+		try {
+			messageExecutor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			print(e);
+		}
+	}
+	
+	/**
+	 * Sends a message to the server and reads its response.
+	 * <p>
+	 * Unlike {@link #postMessage(String)}, this does not handle
+	 * the instructions in the response.
+	 * </p>
+	 * @param message - the message to send
+	 * @return the data the server responded with
+	 */
+	private static String sendMessage(String message) {
 		String receivedMessages = null;
 
 		ObjectOutputStream outputStream = null;
@@ -196,6 +381,7 @@ public abstract class NetworkManager {
 
 		// Open the connection
 		HttpURLConnection connection = openPostConnection(SERVER_URL + MSG_EXT);
+		long startTime = System.nanoTime();
 
 		try {
 			// Set up the output stream
@@ -219,6 +405,13 @@ public abstract class NetworkManager {
 				receivedMessages = (String) inputStream.readObject();
 			}
 
+			// Record the exchange
+			NetworkMetrics.getInstance().recordRoundTrip(
+					NetworkMetrics.Channel.MESSAGE, startTime);
+			NetworkMetrics.getInstance().recordSent(message.length());
+			NetworkMetrics.getInstance().recordReceived(
+					(receivedMessages != null) ? receivedMessages.length() : 0);
+
 			if (!message.equals("NULL") && receivedMessages != null) {
 				print("Received response: " + receivedMessages);
 			}
@@ -243,9 +436,6 @@ public abstract class NetworkManager {
 			print(e);
 		}
 
-		// Handle the received message(s)
-		InstructionHandler.handleInstruction(receivedMessages);
-
 		return receivedMessages;
 	}
 	
@@ -259,10 +449,13 @@ public abstract class NetworkManager {
 			Entry<Long, Serializable> dataEntry) {
 		ObjectOutputStream outputStream = null;
 		ObjectInputStream inputStream = null;
+		Entry<Long, byte[]> sentData = null;
 		Entry<Long, byte[]> receivedData = null;
 		
 		// Open the connection
 		HttpURLConnection connection = openPostConnection(SERVER_URL + DATA_EXT);
+		long startTime = System.nanoTime();
+		int bytesSent = 0;
 		
 		try {
 			// Set up the output stream
@@ -270,15 +463,22 @@ public abstract class NetworkManager {
 			
 			// Serialise the data
 			if (dataEntry != null && dataEntry.getValue() != null) {
-				transientDataBuffer.put(dataEntry.getKey(),
-						serialiseData(dataEntry.getValue()));
+				ByteBuffer frame = serialiseData(dataEntry.getValue(), 0);
+				
+				if (frame != null) {
+					// The server expects the frame as an exactly sized array
+					byte[] serialisedData = Arrays.copyOfRange(frame.array(),
+							frame.position(), frame.limit());
+					releaseBuffer(frame);
+					
+					sentData = new SimpleImmutableEntry<Long, byte[]>(
+							dataEntry.getKey(), serialisedData);
+					bytesSent = serialisedData.length;
+				}
 			}
 			
 			// Write the data to the output stream
-			outputStream.writeObject(transientDataBuffer.lastEntry());
-			
-			// Clear the transient data buffer
-			transientDataBuffer.clear();
+			outputStream.writeObject(sentData);
 			
 			// Connect to the server
 			connection.connect();
@@ -289,6 +489,17 @@ public abstract class NetworkManager {
 			// Get the received data
 			receivedData = (Entry<Long, byte[]>) inputStream.readObject();
 			
+			// Record the exchange
+			NetworkMetrics.getInstance().recordRoundTrip(
+					(dataEntry != null && dataEntry.getKey() == -1)
+							? NetworkMetrics.Channel.PRIORITY
+							: NetworkMetrics.Channel.STATE,
+					startTime);
+			NetworkMetrics.getInstance().recordSent(bytesSent);
+			NetworkMetrics.getInstance().recordReceived(
+					(receivedData != null && receivedData.getValue() != null)
+							? receivedData.getValue().length : 0);
+			
 			// Get the response headers
 			// Obtain a lock on the header fields
 			synchronized (headerMutex) {
@@ -327,23 +538,46 @@ public abstract class NetworkManager {
 	
 	
 	/**
-	 * Serialises data to a byte array.
+	 * Serialises data into a pooled buffer.
+	 * <p>
+	 * The serialised data is framed by the {@link FrameCodec}, so
+	 * may be compressed.
+	 * </p>
+	 * <p>
+	 * The frame runs from the buffer's position to its limit, and
+	 * the requested headroom is left free before it, so that the
+	 * transport can write its own header in front of the frame and
+	 * send the buffer without copying it. The buffer should be
+	 * returned with {@link #releaseBuffer(ByteBuffer)} once sent.
+	 * </p>
 	 * @param data - the data to serialise
-	 * @return the data in a serialised form
+	 * @param headroom - the number of bytes to leave free before
+	 * 			the frame
+	 * @return the buffer holding the framed data, or <code>null</code>
+	 * 			if the data could not be serialised
 	 */
-	protected static byte[] serialiseData(Serializable data) {
-		ByteArrayOutputStream byteArrayOutputStream = null;
+	protected static ByteBuffer serialiseData(Serializable data,
+			int headroom) {
+		BufferOutputStream bufferOutputStream = null;
 		ObjectOutputStream serializeOutputStream = null;
 		
 		if (data != null) {
 			try {
-				byteArrayOutputStream = new ByteArrayOutputStream();
+				long startTime = System.nanoTime();
+				bufferOutputStream = new BufferOutputStream(bufferPool,
+						headroom + FrameCodec.HEADER_SIZE);
 				serializeOutputStream = new ObjectOutputStream(
-						byteArrayOutputStream);
+						bufferOutputStream);
 				serializeOutputStream.writeObject(data);
 				serializeOutputStream.close();
-				return byteArrayOutputStream.toByteArray();
+				
+				ByteBuffer buffer = bufferOutputStream.toBuffer();
+				buffer.position(headroom);
+				NetworkMetrics.getInstance().recordSerialise(startTime,
+						buffer.remaining() - FrameCodec.HEADER_SIZE);
+				return frameCodec.encode(buffer);
 			} catch (IOException e) {
+				bufferOutputStream.discard();
 				print(e);
 			}
 		}
@@ -352,20 +586,40 @@ public abstract class NetworkManager {
 	}
 	
 	/**
-	 * Deserialises data from a byte array.
-	 * @param data - the byte array to deserialise
+	 * Returns a buffer obtained from {@link #serialiseData(Serializable,
+	 * int)} to the pool.
+	 * @param buffer - the buffer to return
+	 */
+	protected static void releaseBuffer(ByteBuffer buffer) {
+		bufferPool.release(buffer);
+	}
+	
+	/**
+	 * Deserialises data from a buffer.
+	 * <p>
+	 * The data is read in place, so the buffer may be reused once
+	 * this returns.
+	 * </p>
+	 * @param data - the buffer to deserialise, from its position
+	 * 			to its limit
 	 * @return the deserialised data entry
 	 */
-	protected static Serializable deserialiseData(byte[] data) {
+	protected static Serializable deserialiseData(ByteBuffer data) {
 		ByteArrayInputStream byteArrayInputStream = null;
 		ObjectInputStream deserializeInputStream = null;
 		
 		if (data != null) {
 			try {
-				byteArrayInputStream = new ByteArrayInputStream(data);
+				long startTime = System.nanoTime();
+				byteArrayInputStream = frameCodec.decode(data);
+				if (byteArrayInputStream == null) return null;
+				
 				deserializeInputStream = new ObjectInputStream(
 						byteArrayInputStream);
-				return (Serializable) deserializeInputStream.readObject();
+				Serializable deserialisedData =
+						(Serializable) deserializeInputStream.readObject();
+				NetworkMetrics.getInstance().recordDeserialise(startTime);
+				return deserialisedData;
 			} catch (IOException e) {
 				print(e);
 			} catch (ClassNotFoundException e) {
@@ -377,14 +631,50 @@ public abstract class NetworkManager {
 	}
 	
 	
+	/**
+	 * Gets the current network worker.
+	 * <p>
+	 * This is used by {@link NetworkMetrics} to inspect the
+	 * worker's buffers.
+	 * </p>
+	 * @return the current network worker
+	 */
+	static NetworkWorker getNetworkWorker() {
+		return networkWorker;
+	}
+	
+	/**
+	 * Gets the codec used to frame data sent over the current connection.
+	 * @return the current frame codec
+	 */
+	static FrameCodec getFrameCodec() {
+		return frameCodec;
+	}
+	
+	/**
+	 * Gets the pool of buffers data is serialised into.
+	 * @return the buffer pool
+	 */
+	static BufferPool getBufferPool() {
+		return bufferPool;
+	}
+	
 	/**
 	 * Gets the network thread's ID.
 	 * @return the network thread's ID
 	 */
 	public static long getNetworkThreadID() {
-		// Obtain a lock on the network thread
-		synchronized (networkThread) {
-			return networkThread.getId();
+		return networkThread.getId();
+	}
+	
+	/**
+	 * Gets the player's ID.
+	 * @return the player's ID
+	 */
+	public static long getID() {
+		// Obtain a lock on the header fields
+		synchronized (headerMutex) {
+			return id;
 		}
 	}
 	
@@ -0,0 +1,475 @@
+package net;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import lib.Histogram;
+
+/**
+ * Collects metrics for the network layer.
+ * <p>
+ * This records round-trip times for each channel, the bytes and
+ * messages sent and received each second, the time taken to
+ * serialise and deserialise data, the size of serialised payloads,
+ * how well payloads compress and the time taken to compress them,
+ * and the state of the {@link NetworkWorker}'s buffers.
+ * </p>
+ * <p>
+ * The metrics are published through JMX under
+ * {@link #OBJECT_NAME}, and can be drawn in game using
+ * {@link #getSummary()}.
+ * </p>
+ * <p>
+ * All recording methods are thread-safe and lock-free.
+ * </p>
+ */
+public class NetworkMetrics implements NetworkMetricsMXBean {
+
+	/** The name the metrics are registered with JMX under */
+	public static final String OBJECT_NAME = "flyhard.net:type=NetworkMetrics";
+
+	/**
+	 * The channels which round-trip times are recorded for.
+	 */
+	public enum Channel {
+		/** Lobby and control messages */
+		MESSAGE,
+		/** Latest-wins state data */
+		STATE,
+		/** Priority data which must be delivered */
+		PRIORITY
+	}
+
+	/** The metrics instance */
+	private static final NetworkMetrics instance = new NetworkMetrics();
+
+	/** The round-trip times of each channel, in ms */
+	private final Histogram[] roundTripTimes;
+
+	/** The time taken to serialise data, in us */
+	private final Histogram serialiseTimes = new Histogram();
+
+	/** The time taken to deserialise data, in us */
+	private final Histogram deserialiseTimes = new Histogram();
+
+	/** The size of serialised payloads, in bytes */
+	private final Histogram payloadSizes = new Histogram();
+
+	/** The time taken to compress data, in us */
+	private final Histogram compressTimes = new Histogram();
+
+	/** The time taken to decompress data, in us */
+	private final Histogram decompressTimes = new Histogram();
+
+	/** The bytes given to the compressor */
+	private final AtomicLong uncompressedBytes = new AtomicLong();
+
+	/** The bytes produced by the compressor */
+	private final AtomicLong compressedBytes = new AtomicLong();
+
+	/** The bytes sent */
+	private final RateCounter bytesSent = new RateCounter();
+
+	/** The bytes received */
+	private final RateCounter bytesReceived = new RateCounter();
+
+	/** The messages sent */
+	private final RateCounter messagesSent = new RateCounter();
+
+	/** The messages received */
+	private final RateCounter messagesReceived = new RateCounter();
+
+	static {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+					instance, new ObjectName(OBJECT_NAME));
+		} catch (Exception e) {
+			NetworkManager.print(e);
+		}
+	}
+
+
+	/**
+	 * Constructs the metrics instance.
+	 */
+	private NetworkMetrics() {
+		roundTripTimes = new Histogram[Channel.values().length];
+
+		for (int i = 0; i < roundTripTimes.length; i++) {
+			roundTripTimes[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Gets the metrics instance.
+	 * @return the metrics instance
+	 */
+	public static NetworkMetrics getInstance() {
+		return instance;
+	}
+
+
+	// Recording -------------------------------------------------------------------------
+
+	/**
+	 * Records a round-trip to the server.
+	 * @param channel - the channel the round-trip was made on
+	 * @param startTime - the time the request was sent, from
+	 * 			{@link System#nanoTime()}
+	 */
+	public void recordRoundTrip(Channel channel, long startTime) {
+		roundTripTimes[channel.ordinal()].record(
+				(System.nanoTime() - startTime) / 1000000);
+	}
+
+	/**
+	 * Records a round-trip time measured elsewhere.
+	 * @param channel - the channel the round-trip was made on
+	 * @param millis - the round-trip time, in ms
+	 */
+	public void recordRoundTripMillis(Channel channel, long millis) {
+		roundTripTimes[channel.ordinal()].record(millis);
+	}
+
+	/**
+	 * Records that data has been sent.
+	 * @param bytes - the number of bytes sent
+	 */
+	public void recordSent(long bytes) {
+		bytesSent.add(bytes);
+		messagesSent.add(1);
+	}
+
+	/**
+	 * Records that data has been received.
+	 * @param bytes - the number of bytes received
+	 */
+	public void recordReceived(long bytes) {
+		bytesReceived.add(bytes);
+		messagesReceived.add(1);
+	}
+
+	/**
+	 * Records that data has been serialised.
+	 * @param startTime - the time serialisation began, from
+	 * 			{@link System#nanoTime()}
+	 * @param bytes - the size of the serialised data
+	 */
+	public void recordSerialise(long startTime, long bytes) {
+		serialiseTimes.record((System.nanoTime() - startTime) / 1000);
+		payloadSizes.record(bytes);
+	}
+
+	/**
+	 * Records that data has been deserialised.
+	 * @param startTime - the time deserialisation began, from
+	 * 			{@link System#nanoTime()}
+	 */
+	public void recordDeserialise(long startTime) {
+		deserialiseTimes.record((System.nanoTime() - startTime) / 1000);
+	}
+
+	/**
+	 * Records that data has been compressed.
+	 * @param startTime - the time compression began, from
+	 * 			{@link System#nanoTime()}
+	 * @param bytesIn - the size of the data before compression
+	 * @param bytesOut - the size of the data after compression
+	 */
+	public void recordCompress(long startTime, long bytesIn, long bytesOut) {
+		compressTimes.record((System.nanoTime() - startTime) / 1000);
+		uncompressedBytes.addAndGet(bytesIn);
+		compressedBytes.addAndGet(bytesOut);
+	}
+
+	/**
+	 * Records that data has been decompressed.
+	 * @param startTime - the time decompression began, from
+	 * 			{@link System#nanoTime()}
+	 */
+	public void recordDecompress(long startTime) {
+		decompressTimes.record((System.nanoTime() - startTime) / 1000);
+	}
+
+
+	// Summary ---------------------------------------------------------------------------
+
+	/**
+	 * Gets a summary of the metrics, for display in game.
+	 * @return the lines of the summary
+	 */
+	public List<String> getSummary() {
+		List<String> lines = new ArrayList<String>();
+
+		lines.add("Sent: " + getBytesSentPerSecond() + " B/s, "
+				+ getMessagesSentPerSecond() + " msg/s");
+		lines.add("Received: " + getBytesReceivedPerSecond() + " B/s, "
+				+ getMessagesReceivedPerSecond() + " msg/s");
+
+		for (Channel channel : Channel.values()) {
+			Histogram histogram = roundTripTimes[channel.ordinal()];
+			lines.add("RTT " + channel + " (ms): " + describe(histogram));
+		}
+
+		lines.add("Serialise (us): " + describe(serialiseTimes));
+		lines.add("Deserialise (us): " + describe(deserialiseTimes));
+		lines.add("Payload (B): " + describe(payloadSizes));
+		lines.add("Compression: " + (isCompressing() ? "on" : "off")
+				+ ", " + getCompressionRatioPercent() + "% of original");
+		lines.add("Compress (us): " + describe(compressTimes));
+		lines.add("Decompress (us): " + describe(decompressTimes));
+		lines.add("Queues: state " + getStateQueueDepth()
+				+ ", priority " + getPriorityQueueDepth()
+				+ ", responses " + getResponseQueueDepth());
+		lines.add("Dropped: " + getDroppedUpdates()
+				+ ", overwritten: " + getOverwrittenUpdates());
+
+		return lines;
+	}
+
+	/**
+	 * Describes the distribution of a histogram.
+	 * @param histogram - the histogram to describe
+	 * @return the histogram's percentiles
+	 */
+	private static String describe(Histogram histogram) {
+		return "p50 " + histogram.getPercentile(50)
+				+ "  p95 " + histogram.getPercentile(95)
+				+ "  p99 " + histogram.getPercentile(99)
+				+ "  max " + histogram.getMax();
+	}
+
+
+	// Accessors -------------------------------------------------------------------------
+
+	@Override
+	public long getBytesSentPerSecond() {
+		return bytesSent.getRate();
+	}
+
+	@Override
+	public long getBytesReceivedPerSecond() {
+		return bytesReceived.getRate();
+	}
+
+	@Override
+	public long getMessagesSentPerSecond() {
+		return messagesSent.getRate();
+	}
+
+	@Override
+	public long getMessagesReceivedPerSecond() {
+		return messagesReceived.getRate();
+	}
+
+	@Override
+	public long getTotalBytesSent() {
+		return bytesSent.getTotal();
+	}
+
+	@Override
+	public long getTotalBytesReceived() {
+		return bytesReceived.getTotal();
+	}
+
+	@Override
+	public long getMessageRoundTripP50() {
+		return roundTripTimes[Channel.MESSAGE.ordinal()].getPercentile(50);
+	}
+
+	@Override
+	public long getMessageRoundTripP99() {
+		return roundTripTimes[Channel.MESSAGE.ordinal()].getPercentile(99);
+	}
+
+	@Override
+	public long getStateRoundTripP50() {
+		return roundTripTimes[Channel.STATE.ordinal()].getPercentile(50);
+	}
+
+	@Override
+	public long getStateRoundTripP99() {
+		return roundTripTimes[Channel.STATE.ordinal()].getPercentile(99);
+	}
+
+	@Override
+	public long getPriorityRoundTripP50() {
+		return roundTripTimes[Channel.PRIORITY.ordinal()].getPercentile(50);
+	}
+
+	@Override
+	public long getPriorityRoundTripP99() {
+		return roundTripTimes[Channel.PRIORITY.ordinal()].getPercentile(99);
+	}
+
+	@Override
+	public long getSerialiseTimeP50() {
+		return serialiseTimes.getPercentile(50);
+	}
+
+	@Override
+	public long getSerialiseTimeP99() {
+		return serialiseTimes.getPercentile(99);
+	}
+
+	@Override
+	public long getDeserialiseTimeP50() {
+		return deserialiseTimes.getPercentile(50);
+	}
+
+	@Override
+	public long getDeserialiseTimeP99() {
+		return deserialiseTimes.getPercentile(99);
+	}
+
+	@Override
+	public long getPayloadSizeP50() {
+		return payloadSizes.getPercentile(50);
+	}
+
+	@Override
+	public long getPayloadSizeP99() {
+		return payloadSizes.getPercentile(99);
+	}
+
+	@Override
+	public long getPayloadSizeMax() {
+		return payloadSizes.getMax();
+	}
+
+	@Override
+	public boolean isCompressing() {
+		return NetworkManager.getFrameCodec().isCompressing();
+	}
+
+	@Override
+	public long getCompressionRatioPercent() {
+		long bytesIn = uncompressedBytes.get();
+		return (bytesIn == 0) ? 100 : (compressedBytes.get() * 100) / bytesIn;
+	}
+
+	@Override
+	public long getCompressTimeP50() {
+		return compressTimes.getPercentile(50);
+	}
+
+	@Override
+	public long getCompressTimeP99() {
+		return compressTimes.getPercentile(99);
+	}
+
+	@Override
+	public long getDecompressTimeP50() {
+		return decompressTimes.getPercentile(50);
+	}
+
+	@Override
+	public long getDecompressTimeP99() {
+		return decompressTimes.getPercentile(99);
+	}
+
+	@Override
+	public int getStateQueueDepth() {
+		return NetworkManager.getNetworkWorker().getStateQueueDepth();
+	}
+
+	@Override
+	public int getPriorityQueueDepth() {
+		return NetworkManager.getNetworkWorker().getPriorityQueueDepth();
+	}
+
+	@Override
+	public int getResponseQueueDepth() {
+		return NetworkManager.getNetworkWorker().getResponseQueueDepth();
+	}
+
+	@Override
+	public long getDroppedUpdates() {
+		return NetworkManager.getNetworkWorker().getDropped();
+	}
+
+	@Override
+	public long getOverwrittenUpdates() {
+		return NetworkManager.getNetworkWorker().getOverwritten();
+	}
+
+	@Override
+	public void reset() {
+		for (Histogram histogram : roundTripTimes) {
+			histogram.reset();
+		}
+
+		serialiseTimes.reset();
+		deserialiseTimes.reset();
+		payloadSizes.reset();
+		compressTimes.reset();
+		decompressTimes.reset();
+	}
+
+
+	/**
+	 * Counts events, and the rate at which they occur each second.
+	 */
+	private static class RateCounter {
+
+		/** The total count */
+		private final AtomicLong total = new AtomicLong();
+
+		/** The count so far in the current second */
+		private final AtomicLong current = new AtomicLong();
+
+		/** The current second */
+		private final AtomicLong second = new AtomicLong();
+
+		/** The count in the last complete second */
+		private volatile long rate;
+
+		/**
+		 * Adds to the count.
+		 * @param amount - the amount to add
+		 */
+		private void add(long amount) {
+			roll();
+			current.addAndGet(amount);
+			total.addAndGet(amount);
+		}
+
+		/**
+		 * Gets the count in the last complete second.
+		 * @return the rate per second
+		 */
+		private long getRate() {
+			roll();
+			return rate;
+		}
+
+		/**
+		 * Gets the total count.
+		 * @return the total count
+		 */
+		private long getTotal() {
+			return total.get();
+		}
+
+		/**
+		 * Moves on to a new second, if one has begun.
+		 */
+		private void roll() {
+			long now = System.currentTimeMillis() / 1000;
+			long last = second.get();
+
+			if (now != last && second.compareAndSet(last, now)) {
+				long count = current.getAndSet(0);
+
+				// If a whole second passed with no events, the rate is 0
+				rate = (now == last + 1) ? count : 0;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,79 @@
+package net;
+
+/**
+ * The network metrics exposed through JMX.
+ * <p>
+ * Round-trip times are in milliseconds, serialisation times in
+ * microseconds, and payload sizes in bytes. The compression ratio
+ * is the size of compressed payloads as a percentage of their
+ * original size.
+ * </p>
+ */
+public interface NetworkMetricsMXBean {
+
+	public long getBytesSentPerSecond();
+
+	public long getBytesReceivedPerSecond();
+
+	public long getMessagesSentPerSecond();
+
+	public long getMessagesReceivedPerSecond();
+
+	public long getTotalBytesSent();
+
+	public long getTotalBytesReceived();
+
+	public long getMessageRoundTripP50();
+
+	public long getMessageRoundTripP99();
+
+	public long getStateRoundTripP50();
+
+	public long getStateRoundTripP99();
+
+	public long getPriorityRoundTripP50();
+
+	public long getPriorityRoundTripP99();
+
+	public long getSerialiseTimeP50();
+
+	public long getSerialiseTimeP99();
+
+	public long getDeserialiseTimeP50();
+
+	public long getDeserialiseTimeP99();
+
+	public long getPayloadSizeP50();
+
+	public long getPayloadSizeP99();
+
+	public long getPayloadSizeMax();
+
+	public boolean isCompressing();
+
+	public long getCompressionRatioPercent();
+
+	public long getCompressTimeP50();
+
+	public long getCompressTimeP99();
+
+	public long getDecompressTimeP50();
+
+	public long getDecompressTimeP99();
+
+	public int getStateQueueDepth();
+
+	public int getPriorityQueueDepth();
+
+	public int getResponseQueueDepth();
+
+	public long getDroppedUpdates();
+
+	public long getOverwrittenUpdates();
+
+	/**
+	 * Clears all histograms.
+	 */
+	public void reset();
+
+}
@@ -1,9 +1,11 @@
 package net;
 
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Map.Entry;
-import java.util.TreeMap;
+
+import net.RingBuffer.OverflowPolicy;
 
 /**
  * Worker used to transfer data in parallel with the game.
@@ -19,42 +21,69 @@ import java.util.TreeMap;
  * <p>
  * A priority buffer is provided to ensure that specific data will be sent.
  * </p>
+ * <p>
+ * Data is passed between the game thread and the worker through
+ * lock-free single-producer single-consumer ring buffers, so the game
+ * thread never waits on the worker while it is blocked on I/O.
+ * The state buffers overwrite their oldest entries when full, as only
+ * the newest state is ever used. The priority buffers drop (and count)
+ * new entries when full, rather than discard data which must be
+ * delivered.
+ * </p>
  */
 public class NetworkWorker implements Runnable {
 
+	/** The capacity of the state buffers */
+	private static final int STATE_CAPACITY = 8;
+	
+	/** The capacity of the priority buffers */
+	private static final int PRIORITY_CAPACITY = 64;
+
 	/** The data still to be sent */
-	private TreeMap<Long, Serializable> dataBuffer;
+	private RingBuffer<Entry<Long, Serializable>> dataBuffer;
 	
 	/** The priority data still to be sent */
-	private LinkedList<Serializable> priorityDataBuffer;
+	private RingBuffer<Serializable> priorityDataBuffer;
 	
 	/** The data still to be read */
-	private TreeMap<Long, Serializable> responseBuffer;
+	private RingBuffer<Entry<Long, Serializable>> responseBuffer;
 	
 	/** The priority data still to be read */
-	private LinkedList<Serializable> priorityResponseBuffer;
+	private RingBuffer<Serializable> priorityResponseBuffer;
+	
+	/** The transport used to exchange data with the server */
+	private Transport transport;
 	
 	/** The most recent data received so far */
-	private long mostRecent;
+	private volatile long mostRecent;
 	
 	/** The thread's status */
-	private boolean status;
+	private volatile boolean status;
 	
-	/** The status mutex */
-	private Object statusMutex;
 	
+	/**
+	 * Constructs a new thread for sending data over HTTP.
+	 */
+	public NetworkWorker() {
+		this(new HttpTransport());
+	}
 	
 	/**
 	 * Constructs a new thread for sending data.
+	 * @param transport - the transport to exchange data with
 	 */
-	public NetworkWorker() {
-		this.dataBuffer = new TreeMap<Long, Serializable>();
-		this.priorityDataBuffer = new LinkedList<Serializable>();
-		this.responseBuffer = new TreeMap<Long, Serializable>();
-		this.priorityResponseBuffer = new LinkedList<Serializable>();
+	public NetworkWorker(Transport transport) {
+		this.transport = transport;
+		this.dataBuffer = new RingBuffer<Entry<Long, Serializable>>(
+				STATE_CAPACITY, OverflowPolicy.OVERWRITE_OLDEST);
+		this.priorityDataBuffer = new RingBuffer<Serializable>(
+				PRIORITY_CAPACITY, OverflowPolicy.DROP_NEWEST);
+		this.responseBuffer = new RingBuffer<Entry<Long, Serializable>>(
+				STATE_CAPACITY, OverflowPolicy.OVERWRITE_OLDEST);
+		this.priorityResponseBuffer = new RingBuffer<Serializable>(
+				PRIORITY_CAPACITY, OverflowPolicy.DROP_NEWEST);
 		this.mostRecent = 0;
 		this.status = true;
-		this.statusMutex = new Object();
 	}
 	
 	
@@ -67,6 +96,8 @@ public class NetworkWorker implements Runnable {
 		while (getStatus()) {
 			sendNextData();
 		}
+		
+		transport.close();
 	}
 	
 	/**
@@ -77,56 +108,40 @@ public class NetworkWorker implements Runnable {
 	 * </p>
 	 */
 	private void sendNextData() {
-		TreeMap<Long, Serializable> transientMap =
-				new TreeMap<Long, Serializable>();
 		Entry<Long, Serializable> dataEntry = null;
 		
-		// Obtain a lock on the priority data buffer
-		synchronized (priorityDataBuffer) {
-			if (priorityDataBuffer != null
-					&& priorityDataBuffer.size() > 0) {
-				transientMap.put(-1L, priorityDataBuffer.removeFirst());
-				dataEntry = (transientMap.firstEntry());
-			}
-		}
+		// Send priority data first
+		Serializable priorityData = priorityDataBuffer.poll();
 		
-		// If there was no priority data
-		if (dataEntry == null) {
-			// Obtain a lock on the data buffer
-			synchronized (dataBuffer) {
-				if ((dataBuffer.size() != 0)
-						&& (dataBuffer.lastEntry() != null)) {
-					// Get the next data element
-					dataEntry = dataBuffer.lastEntry();
-
-					// Clear the data buffer
-					dataBuffer.clear();
-				}
-			}
+		if (priorityData != null) {
+			dataEntry = new SimpleImmutableEntry<Long, Serializable>(
+					-1L, priorityData);
+		} else {
+			// Otherwise send the newest data, discarding anything older
+			dataEntry = latest(dataBuffer, Long.MIN_VALUE);
 		}
 
-		// Send the post request to the server and read the response
-		Entry<Long, byte[]> receivedData =
-				NetworkManager.postObject(dataEntry);
+		// Send the data to the server and read the response
+		Entry<Long, ByteBuffer> receivedData = transport.exchange(dataEntry);
 
-		// If the entry's key equals -1, add it to the priority response
-		// buffer
-		if (receivedData != null && receivedData.getKey() == -1) {
-			// Obtain a lock on the priority response buffer
-			synchronized(priorityResponseBuffer) {
-				priorityResponseBuffer.add(NetworkManager
-						.deserialiseData(receivedData.getValue()));
-			}
-		}
-
-		// Write the response to the response buffer
 		if (receivedData != null) {
-			// Obtain a lock on the response buffer
-			synchronized(responseBuffer) {
-				Serializable deserialisedData = NetworkManager
-						.deserialiseData(receivedData.getValue());
-
-				responseBuffer.put(receivedData.getKey(), deserialisedData);
+			Serializable deserialisedData = NetworkManager
+					.deserialiseData(receivedData.getValue());
+			
+			// If the entry's key equals -1, add it to the priority
+			// response buffer, otherwise add it to the response buffer
+			// (data which could not be deserialised has been reported)
+			if (deserialisedData == null) {
+				return;
+			} else if (receivedData.getKey() == -1) {
+				if (!priorityResponseBuffer.offer(deserialisedData)) {
+					NetworkManager.print(new Exception(
+							"Priority response buffer full"));
+				}
+			} else {
+				responseBuffer.offer(new SimpleImmutableEntry<Long,
+						Serializable>(receivedData.getKey(),
+								deserialisedData));
 			}
 		}
 	}
@@ -137,28 +152,33 @@ public class NetworkWorker implements Runnable {
 	 * A {@link #timeValid} value of -1 will cause the data to be treated
 	 * as priority data.
 	 * </p>
+	 * <p>
+	 * This must only be called from the game thread.
+	 * </p>
 	 * @param timeValid - the time at which the data was valid
 	 * @param data - the data to write to the data buffer
+	 * @return <code>true</code> if the data was written, or
+	 * 			<code>false</code> if it was dropped because the
+	 * 			priority data buffer was full
 	 */
-	public void writeData(long timeValid, Serializable data) {
+	public boolean writeData(long timeValid, Serializable data) {
+		if (data == null) return false;
+		
 		// Check if data is priority data
 		if (timeValid == -1) {
-			// Obtain a lock on the priority data buffer
-			synchronized(priorityDataBuffer) {
-				if (data != null) {
-					// Write the data to the priority data buffer
-					priorityDataBuffer.add(data);
-				}
+			// Write the data to the priority data buffer
+			if (!priorityDataBuffer.offer(data)) {
+				NetworkManager.print(new Exception(
+						"Priority data buffer full"));
+				return false;
 			}
 		} else {
-			// Obtain a lock on the data buffer
-			synchronized(dataBuffer) {
-				if (data != null) {
-					// Write the data to the data buffer
-					dataBuffer.put(timeValid, data);
-				}
-			}
+			// Write the data to the data buffer
+			dataBuffer.offer(new SimpleImmutableEntry<Long, Serializable>(
+					timeValid, data));
 		}
+		
+		return true;
 	}
 	
 	/**
@@ -167,68 +187,125 @@ public class NetworkWorker implements Runnable {
 	 * NOTE: this method is <b>destructive</b>, i.e. the response buffer
 	 * will be cleared after being read.
 	 * </p>
+	 * <p>
+	 * This must only be called from the game thread.
+	 * </p>
 	 * @return the next object in the response buffer
 	 */
 	public Serializable readResponse() {
-		Serializable data = null;
-		
-		// Obtain a lock on the priority response buffer
-		synchronized(priorityResponseBuffer) {
-			// Read data from the buffer
-			if (priorityResponseBuffer != null
-					&& priorityResponseBuffer.size() > 0) {
-				data = priorityResponseBuffer.removeFirst();
-			}
-		}
+		// Read priority data first
+		Serializable data = priorityResponseBuffer.poll();
 		
 		// If there was no priority data
 		if (data == null) {
-			// Obtain a lock on the response buffer
-			synchronized(responseBuffer) {
-				// Read data from the buffer
-				if (responseBuffer != null
-						&& responseBuffer.size() > 0) {
-					if (responseBuffer.lastEntry() != null) {
-						// Check if the data in the buffer is up-to-date
-						if (responseBuffer.lastEntry().getKey() > mostRecent) {
-							// Update the most recent value
-							mostRecent = responseBuffer.lastEntry().getKey();
-
-							// Data is more up-to-date than any seen so far,
-							// so return it
-							data = responseBuffer.lastEntry().getValue();
-						}
-					}
-
-					// Clear the response buffer
-					responseBuffer.clear();
-				}
+			// Only return data more up-to-date than any seen so far
+			Entry<Long, Serializable> entry =
+					latest(responseBuffer, mostRecent);
+			
+			if (entry != null) {
+				// Update the most recent value
+				mostRecent = entry.getKey();
+				data = entry.getValue();
 			}
 		}
 		
 		return data;
 	}
 	
+	/**
+	 * Empties a state buffer, returning its newest entry.
+	 * @param buffer - the buffer to empty
+	 * @param after - the time which the entry must be newer than
+	 * @return the newest entry, or <code>null</code> if no entry
+	 * 			was newer than the specified time
+	 */
+	private static Entry<Long, Serializable> latest(
+			RingBuffer<Entry<Long, Serializable>> buffer, long after) {
+		Entry<Long, Serializable> latest = null;
+		Entry<Long, Serializable> entry;
+		
+		while ((entry = buffer.poll()) != null) {
+			if (entry.getKey() > after) {
+				after = entry.getKey();
+				latest = entry;
+			}
+		}
+		
+		return latest;
+	}
+	
+	/**
+	 * Gets the time at which the most recent data read was valid.
+	 * <p>
+	 * This is the time value the data was written with on the sending
+	 * client, so is measured using that client's clock.
+	 * </p>
+	 * @return the time at which the most recent data read was valid
+	 */
+	public long getMostRecent() {
+		return mostRecent;
+	}
+	
+	/**
+	 * Gets the number of state updates waiting to be sent.
+	 * @return the state buffer's depth
+	 */
+	public int getStateQueueDepth() {
+		return dataBuffer.size();
+	}
+	
+	/**
+	 * Gets the number of priority updates waiting to be sent.
+	 * @return the priority buffer's depth
+	 */
+	public int getPriorityQueueDepth() {
+		return priorityDataBuffer.size();
+	}
+	
+	/**
+	 * Gets the number of responses waiting to be read.
+	 * @return the combined depth of the response buffers
+	 */
+	public int getResponseQueueDepth() {
+		return responseBuffer.size() + priorityResponseBuffer.size();
+	}
+	
+	/**
+	 * Gets the number of updates rejected because a buffer was full.
+	 * @return the number of dropped updates
+	 */
+	public long getDropped() {
+		return dataBuffer.getDropped() + priorityDataBuffer.getDropped()
+				+ responseBuffer.getDropped()
+				+ priorityResponseBuffer.getDropped();
+	}
+	
+	/**
+	 * Gets the number of stale updates discarded to make room for
+	 * newer ones.
+	 * @return the number of overwritten updates
+	 */
+	public long getOverwritten() {
+		return dataBuffer.getOverwritten()
+				+ priorityDataBuffer.getOverwritten()
+				+ responseBuffer.getOverwritten()
+				+ priorityResponseBuffer.getOverwritten();
+	}
+	
 	/**
 	 * Gets the thread's status.
 	 * @return <code>true</code> if the thread is currently running,
 	 * 			otherwise <code>false</code>
 	 */
 	private boolean getStatus() {
-		// Obtain a lock on the status attribute
-		synchronized (statusMutex) {
-			return status;
-		}
+		return status;
 	}
 	
 	/**
 	 * Stops the worker.
 	 */
 	public void end() {
-		// Obtain a lock on the status attribute
-		synchronized (statusMutex) {
-			status = false;
-		}
+		status = false;
 	}
 	
 }
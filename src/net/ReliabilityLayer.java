@@ -0,0 +1,421 @@
+package net;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tracks packet sequence numbers and acknowledgements for an
+ * unreliable transport.
+ * <p>
+ * Every packet sent carries a sequence number, the most recent
+ * sequence number received from the other end, and a bitfield
+ * acknowledging the 32 packets before that. Each packet therefore
+ * acknowledges many earlier packets, so a single lost packet does
+ * not lose any acknowledgements.
+ * </p>
+ * <p>
+ * Only messages sent through {@link #createMessage(byte, long, byte[])}
+ * are delivered reliably. These are held until acknowledged, and
+ * returned by {@link #getResends(long)} if not acknowledged within
+ * roughly two round-trip times. Each reliable message carries a
+ * message ID, used by the receiver to discard duplicates. A message
+ * which is too old to be checked (see {@link #isTooOld(int)}) must
+ * not be acknowledged, so that it is never mistaken for a duplicate
+ * and silently dropped.
+ * </p>
+ * <p>
+ * Everything else is sent once, and is never resent.
+ * </p>
+ * <p>
+ * This class is not thread-safe; it should only be used by the
+ * network thread.
+ * </p>
+ */
+public class ReliabilityLayer {
+
+	/** The number of earlier packets acknowledged by the ack bitfield */
+	public static final int ACK_BITS = 32;
+
+	/**
+	 * The number of message IDs remembered for duplicate detection.
+	 * This is a power of two, and far more than the number of reliable
+	 * messages sent within {@link #MAX_RESEND_DELAY}.
+	 */
+	private static final int MESSAGE_WINDOW = 1024;
+
+	/** The minimum time (in ms) to wait for an acknowledgement */
+	private static final long MIN_RESEND_DELAY = 50;
+
+	/** The maximum time (in ms) to wait for an acknowledgement */
+	private static final long MAX_RESEND_DELAY = 1000;
+
+	/** The weight given to each new round-trip time sample */
+	private static final double RTT_SMOOTHING = 0.1;
+
+	/** The sequence number of the next packet to be sent */
+	private int localSequence;
+
+	/** The most recent sequence number received */
+	private int remoteSequence;
+
+	/** The packets received before the most recent, as a bitfield */
+	private int receivedBits;
+
+	/** Whether any packets have been received */
+	private boolean hasRemoteSequence;
+
+	/** The ID of the next reliable message to be sent */
+	private int nextMessageId;
+
+	/** The most recent reliable message ID received */
+	private int remoteMessageId;
+
+	/** The reliable messages received, indexed by ID modulo the window */
+	private boolean[] receivedMessages;
+
+	/** Whether any reliable messages have been received */
+	private boolean hasRemoteMessageId;
+
+	/** The reliable messages awaiting acknowledgement, by packet sequence */
+	private HashMap<Integer, Message> unacknowledged;
+
+	/** The smoothed round-trip time, in ms */
+	private double roundTripTime;
+
+
+	/**
+	 * Constructs a new reliability layer.
+	 */
+	public ReliabilityLayer() {
+		this.unacknowledged = new HashMap<Integer, Message>();
+		this.receivedMessages = new boolean[MESSAGE_WINDOW];
+		this.roundTripTime = MAX_RESEND_DELAY / 4;
+	}
+
+
+	/**
+	 * Gets the sequence number to use for the next packet sent.
+	 * @return the next packet's sequence number
+	 */
+	public int nextSequence() {
+		return localSequence++;
+	}
+
+	/**
+	 * Creates a message which will be delivered reliably.
+	 * @param channel - the channel the message is sent on
+	 * @param timeValid - the time at which the message's data was valid
+	 * @param payload - the message's data
+	 * @return the new message
+	 */
+	public Message createMessage(byte channel, long timeValid, byte[] payload) {
+		return new Message(nextMessageId++, channel, timeValid, payload);
+	}
+
+	/**
+	 * Records that a packet has been sent.
+	 * @param sequence - the packet's sequence number
+	 * @param message - the reliable message the packet carried,
+	 * 			or <code>null</code> if it carried no reliable message
+	 * @param now - the current time, in ms
+	 */
+	public void onSent(int sequence, Message message, long now) {
+		if (message != null) {
+			message.sentTime = now;
+			message.attempts++;
+			unacknowledged.put(sequence, message);
+		}
+	}
+
+	/**
+	 * Records that a packet has been received.
+	 * <p>
+	 * This marks the packet as received, so that it will be
+	 * acknowledged, and processes the acknowledgements it carries.
+	 * </p>
+	 * @param sequence - the packet's sequence number
+	 * @param ack - the most recent sequence number the sender received
+	 * @param ackBits - the packets the sender received before that
+	 * @param now - the current time, in ms
+	 * @return <code>true</code> if the packet is new, <code>false</code>
+	 * 			if it is a duplicate or too old to be tracked
+	 */
+	public boolean onReceived(int sequence, int ack, int ackBits, long now) {
+		// Process acknowledgements, even if the packet is a duplicate
+		onAcknowledgements(ack, ackBits, now);
+
+		if (!hasRemoteSequence) {
+			remoteSequence = sequence;
+			receivedBits = 0;
+			hasRemoteSequence = true;
+			return true;
+		}
+
+		if (isNewer(sequence, remoteSequence)) {
+			int shift = sequence - remoteSequence;
+
+			// Move the previous most recent packet into the bitfield
+			receivedBits = (shift > ACK_BITS) ? 0
+					: (shift == ACK_BITS) ? (1 << (ACK_BITS - 1))
+					: (receivedBits << shift) | (1 << (shift - 1));
+			remoteSequence = sequence;
+			return true;
+		}
+
+		int age = remoteSequence - sequence;
+
+		if (age == 0 || age > ACK_BITS
+				|| (receivedBits & (1 << (age - 1))) != 0) {
+			return false;
+		}
+
+		receivedBits |= 1 << (age - 1);
+		return true;
+	}
+
+	/**
+	 * Processes the acknowledgements carried by a received packet,
+	 * without marking the packet itself as received.
+	 * <p>
+	 * This is used for packets which must not be acknowledged, such as
+	 * those carrying a message which is too old to be checked.
+	 * </p>
+	 * @param ack - the most recent sequence number the sender received
+	 * @param ackBits - the packets the sender received before that
+	 * @param now - the current time, in ms
+	 */
+	public void onAcknowledgements(int ack, int ackBits, long now) {
+		acknowledge(ack, now);
+		for (int i = 0; i < ACK_BITS; i++) {
+			if ((ackBits & (1 << i)) != 0) {
+				acknowledge(ack - 1 - i, now);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a reliable message is too old to tell whether it
+	 * has been received before.
+	 * <p>
+	 * Such a message can be neither processed nor discarded safely, so
+	 * the packet carrying it must not be acknowledged (see
+	 * {@link #onAcknowledgements(int, int, long)}).
+	 * </p>
+	 * @param messageId - the ID of the received message
+	 * @return <code>true</code> if the message is older than the
+	 * 			window of remembered IDs, otherwise <code>false</code>
+	 */
+	public boolean isTooOld(int messageId) {
+		return hasRemoteMessageId && !isNewer(messageId, remoteMessageId)
+				&& remoteMessageId - messageId >= MESSAGE_WINDOW;
+	}
+
+	/**
+	 * Checks whether a reliable message has not been received before.
+	 * <p>
+	 * Messages which are resent because their acknowledgement was
+	 * lost will be rejected by this method the second time. Messages
+	 * which are too old to be checked are also rejected, so
+	 * {@link #isTooOld(int)} should be checked first.
+	 * </p>
+	 * @param messageId - the ID of the received message
+	 * @return <code>true</code> if the message should be processed,
+	 * 			<code>false</code> if it is a duplicate or too old
+	 */
+	public boolean acceptMessage(int messageId) {
+		if (!hasRemoteMessageId) {
+			Arrays.fill(receivedMessages, false);
+			remoteMessageId = messageId;
+			hasRemoteMessageId = true;
+		} else if (isNewer(messageId, remoteMessageId)) {
+			int shift = messageId - remoteMessageId;
+
+			// Forget the IDs which have dropped out of the window
+			if (shift >= MESSAGE_WINDOW) {
+				Arrays.fill(receivedMessages, false);
+			} else {
+				for (int i = 1; i <= shift; i++) {
+					receivedMessages[(remoteMessageId + i)
+							& (MESSAGE_WINDOW - 1)] = false;
+				}
+			}
+
+			remoteMessageId = messageId;
+		} else if (isTooOld(messageId)
+				|| receivedMessages[messageId & (MESSAGE_WINDOW - 1)]) {
+			return false;
+		}
+
+		receivedMessages[messageId & (MESSAGE_WINDOW - 1)] = true;
+		return true;
+	}
+
+	/**
+	 * Gets the reliable messages which need to be resent.
+	 * <p>
+	 * The messages returned are no longer tracked; each should be
+	 * resent in a new packet, and passed to
+	 * {@link #onSent(int, Message, long)} again.
+	 * </p>
+	 * @param now - the current time, in ms
+	 * @return the messages to resend
+	 */
+	public List<Message> getResends(long now) {
+		List<Message> resends = new ArrayList<Message>();
+		long delay = getResendDelay();
+
+		Iterator<Message> iterator = unacknowledged.values().iterator();
+
+		while (iterator.hasNext()) {
+			Message message = iterator.next();
+
+			if (now - message.sentTime >= delay) {
+				resends.add(message);
+				iterator.remove();
+			}
+		}
+
+		return resends;
+	}
+
+
+	/**
+	 * Marks a sent packet as acknowledged.
+	 * @param sequence - the acknowledged packet's sequence number
+	 * @param now - the current time, in ms
+	 */
+	private void acknowledge(int sequence, long now) {
+		Message message = unacknowledged.remove(sequence);
+
+		// Only time messages sent once, as it is unclear which
+		// attempt a resent message's acknowledgement belongs to
+		if (message != null && message.attempts == 1) {
+			roundTripTime += RTT_SMOOTHING
+					* ((now - message.sentTime) - roundTripTime);
+			NetworkMetrics.getInstance().recordRoundTripMillis(
+					NetworkMetrics.Channel.PRIORITY, now - message.sentTime);
+		}
+	}
+
+	/**
+	 * Checks whether one sequence number is more recent than another,
+	 * allowing for sequence numbers wrapping around.
+	 * @param a - the first sequence number
+	 * @param b - the second sequence number
+	 * @return <code>true</code> if a is more recent than b,
+	 * 			otherwise <code>false</code>
+	 */
+	public static boolean isNewer(int a, int b) {
+		return (a - b) > 0;
+	}
+
+
+	/**
+	 * Gets the most recent sequence number received.
+	 * @return the sequence number to acknowledge
+	 */
+	public int getAck() {
+		return remoteSequence;
+	}
+
+	/**
+	 * Gets the bitfield of packets received before the most recent.
+	 * <p>
+	 * Bit <i>n</i> is set if packet <code>getAck() - 1 - n</code>
+	 * has been received.
+	 * </p>
+	 * @return the ack bitfield
+	 */
+	public int getAckBits() {
+		return receivedBits;
+	}
+
+	/**
+	 * Gets the number of reliable messages awaiting acknowledgement.
+	 * @return the number of unacknowledged messages
+	 */
+	public int getUnacknowledgedCount() {
+		return unacknowledged.size();
+	}
+
+	/**
+	 * Gets the smoothed round-trip time.
+	 * @return the round-trip time, in ms
+	 */
+	public double getRoundTripTime() {
+		return roundTripTime;
+	}
+
+	/**
+	 * Gets the time to wait for an acknowledgement before resending.
+	 * @return the resend delay, in ms
+	 */
+	public long getResendDelay() {
+		return Math.max(MIN_RESEND_DELAY,
+				Math.min(MAX_RESEND_DELAY, (long) (2 * roundTripTime)));
+	}
+
+
+	/**
+	 * A message which is delivered reliably.
+	 */
+	public static class Message {
+
+		/** The message's ID */
+		private final int id;
+
+		/** The channel the message is sent on */
+		private final byte channel;
+
+		/** The time at which the message's data was valid */
+		private final long timeValid;
+
+		/** The message's data */
+		private final byte[] payload;
+
+		/** The time the message was last sent */
+		private long sentTime;
+
+		/** The number of times the message has been sent */
+		private int attempts;
+
+		/**
+		 * Constructs a new message.
+		 * @param id - the message's ID
+		 * @param channel - the channel the message is sent on
+		 * @param timeValid - the time at which the message's data was valid
+		 * @param payload - the message's data
+		 */
+		private Message(int id, byte channel, long timeValid, byte[] payload) {
+			this.id = id;
+			this.channel = channel;
+			this.timeValid = timeValid;
+			this.payload = payload;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public byte getChannel() {
+			return channel;
+		}
+
+		public long getTimeValid() {
+			return timeValid;
+		}
+
+		public byte[] getPayload() {
+			return payload;
+		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+
+	}
+
+}
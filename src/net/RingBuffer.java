@@ -0,0 +1,198 @@
+package net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, single-producer single-consumer ring buffer.
+ * <p>
+ * Exactly one thread may call {@link #offer(Object)}, and exactly one
+ * (other) thread may call {@link #poll()} and {@link #pollLatest()}.
+ * Neither operation ever blocks.
+ * </p>
+ * <p>
+ * What happens when the buffer is full is decided by its
+ * {@link OverflowPolicy}: either the new element is dropped, or the
+ * oldest element is overwritten. Both events are counted, so that
+ * lost data can be reported.
+ * </p>
+ * @param <T> - the type of element held in the buffer
+ */
+public class RingBuffer<T> {
+
+	/**
+	 * The action to take when an element is offered to a full buffer.
+	 */
+	public enum OverflowPolicy {
+		/** Reject the new element, keeping everything already buffered */
+		DROP_NEWEST,
+		/** Discard the oldest buffered element to make room */
+		OVERWRITE_OLDEST
+	}
+
+	/** The buffer's elements */
+	private final AtomicReferenceArray<T> elements;
+
+	/** The mask used to wrap sequence numbers into element indices */
+	private final int mask;
+
+	/** The buffer's capacity */
+	private final int capacity;
+
+	/** The action to take when the buffer is full */
+	private final OverflowPolicy policy;
+
+	/** The sequence number of the next element to be read */
+	private final AtomicLong head = new AtomicLong();
+
+	/** The sequence number of the next element to be written */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** The number of elements rejected because the buffer was full */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** The number of elements discarded to make room for newer ones */
+	private final AtomicLong overwritten = new AtomicLong();
+
+
+	/**
+	 * Constructs a new ring buffer.
+	 * @param capacity - the minimum number of elements the buffer should
+	 * 			hold; this is rounded up to a power of two
+	 * @param policy - the action to take when the buffer is full
+	 */
+	public RingBuffer(int capacity, OverflowPolicy policy) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Invalid capacity: "
+					+ capacity);
+		}
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+
+		this.elements = new AtomicReferenceArray<T>(size);
+		this.mask = size - 1;
+		this.capacity = size;
+		this.policy = policy;
+	}
+
+
+	/**
+	 * Adds an element to the buffer.
+	 * <p>
+	 * This must only be called from the producing thread.
+	 * </p>
+	 * @param element - the element to add
+	 * @return <code>true</code> if the element was added,
+	 * 			<code>false</code> if it was dropped
+	 */
+	public boolean offer(T element) {
+		if (element == null) return false;
+
+		long t = tail.get();
+
+		// Make room if the buffer is full
+		while (t - head.get() >= capacity) {
+			if (policy == OverflowPolicy.DROP_NEWEST) {
+				dropped.incrementAndGet();
+				return false;
+			}
+
+			// Claim the oldest element, unless the consumer has just
+			// taken it
+			long h = head.get();
+			if (t - h >= capacity && head.compareAndSet(h, h + 1)) {
+				overwritten.incrementAndGet();
+			}
+		}
+
+		// Write the element, then publish it to the consumer
+		elements.set((int) t & mask, element);
+		tail.lazySet(t + 1);
+
+		return true;
+	}
+
+	/**
+	 * Removes the oldest element from the buffer.
+	 * <p>
+	 * This must only be called from the consuming thread.
+	 * </p>
+	 * @return the oldest element, or <code>null</code> if the buffer
+	 * 			is empty
+	 */
+	public T poll() {
+		while (true) {
+			long h = head.get();
+
+			if (h >= tail.get()) return null;
+
+			T element = elements.get((int) h & mask);
+
+			// If the producer overwrote this element in the meantime,
+			// try again with the new oldest element
+			if (head.compareAndSet(h, h + 1)) {
+				return element;
+			}
+		}
+	}
+
+	/**
+	 * Removes every element from the buffer, returning the newest.
+	 * <p>
+	 * This must only be called from the consuming thread.
+	 * </p>
+	 * @return the newest element, or <code>null</code> if the buffer
+	 * 			is empty
+	 */
+	public T pollLatest() {
+		T latest = null;
+		T element;
+
+		while ((element = poll()) != null) {
+			latest = element;
+		}
+
+		return latest;
+	}
+
+
+	/**
+	 * Gets the number of elements currently in the buffer.
+	 * <p>
+	 * This is only an estimate if either thread is active.
+	 * </p>
+	 * @return the number of elements in the buffer
+	 */
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, capacity));
+	}
+
+	/**
+	 * Gets the maximum number of elements the buffer can hold.
+	 * @return the buffer's capacity
+	 */
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the number of elements which have been rejected because
+	 * the buffer was full.
+	 * @return the number of dropped elements
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Gets the number of elements which have been discarded to make
+	 * room for newer elements.
+	 * @return the number of overwritten elements
+	 */
+	public long getOverwritten() {
+		return overwritten.get();
+	}
+
+}
@@ -0,0 +1,395 @@
+package net;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Buffers timestamped snapshots of remote entities for smooth rendering.
+ * <p>
+ * Snapshots are stored against the time at which the remote client
+ * sent them, and are rendered slightly in the past (by the
+ * interpolation delay) so that there is usually a snapshot either
+ * side of the time being drawn. Positions between two snapshots are
+ * linearly interpolated.
+ * </p>
+ * <p>
+ * If no newer snapshot has arrived by the time it is needed, the
+ * entity is dead-reckoned along its last known velocity, for at most
+ * the maximum extrapolation time. After that it is held in place until
+ * fresh data arrives.
+ * </p>
+ * <p>
+ * When a late snapshot disagrees with what has already been drawn,
+ * the difference is recorded as an error offset which is decayed
+ * over the following frames, rather than snapping the entity to its
+ * new position.
+ * </p>
+ * <p>
+ * Positions are handled as relative coordinates, i.e. those returned
+ * by {@link cls.Vector#getRelativeX()} and
+ * {@link cls.Vector#getRelativeY()}, so the buffer is unaffected by
+ * the window size.
+ * </p>
+ */
+public class SnapshotBuffer {
+
+	/** The default time (in ms) by which rendering lags behind the remote client */
+	public static final long DEFAULT_INTERPOLATION_DELAY = 200;
+
+	/** The default maximum time (in ms) an entity will be dead-reckoned for */
+	public static final long DEFAULT_MAX_EXTRAPOLATION = 250;
+
+	/** The index of the x coordinate in a state array */
+	public static final int X = 0;
+
+	/** The index of the y coordinate in a state array */
+	public static final int Y = 1;
+
+	/** The index of the z coordinate (altitude) in a state array */
+	public static final int Z = 2;
+
+	/** The index of the bearing in a state array */
+	public static final int BEARING = 3;
+
+	/** The number of values in a state array */
+	public static final int STATE_SIZE = 4;
+
+	/** The number of snapshots held for each entity */
+	private static final int CAPACITY = 16;
+
+	/** The rate (per second) at which error offsets are decayed */
+	private static final double CORRECTION_RATE = 8;
+
+	/** The relative distance above which errors are snapped rather than smoothed */
+	private static final double SNAP_DISTANCE = 0.15;
+
+	/** The tracks of snapshots, indexed by entity key */
+	private HashMap<String, Track> tracks;
+
+	/** The time (in ms) by which rendering lags behind the remote client */
+	private long interpolationDelay;
+
+	/** The maximum time (in ms) an entity will be dead-reckoned for */
+	private long maxExtrapolation;
+
+	/** The smallest observed difference between local and remote clocks */
+	private long clockOffset;
+
+	/** Whether a clock offset has been observed yet */
+	private boolean hasClockOffset;
+
+	/** Scratch state used when calculating error offsets */
+	private double[] before = new double[STATE_SIZE];
+
+	/** Scratch state used when calculating error offsets */
+	private double[] after = new double[STATE_SIZE];
+
+
+	/**
+	 * Constructs a snapshot buffer using the default delays.
+	 */
+	public SnapshotBuffer() {
+		this(DEFAULT_INTERPOLATION_DELAY, DEFAULT_MAX_EXTRAPOLATION);
+	}
+
+	/**
+	 * Constructs a snapshot buffer.
+	 * @param interpolationDelay - the time (in ms) by which rendering
+	 * 			should lag behind the remote client
+	 * @param maxExtrapolation - the maximum time (in ms) an entity
+	 * 			should be dead-reckoned for
+	 */
+	public SnapshotBuffer(long interpolationDelay, long maxExtrapolation) {
+		this.tracks = new HashMap<String, Track>();
+		this.interpolationDelay = interpolationDelay;
+		this.maxExtrapolation = maxExtrapolation;
+		this.hasClockOffset = false;
+	}
+
+
+	/**
+	 * Adds a snapshot of an entity to the buffer.
+	 * <p>
+	 * Snapshots may be added in any order. A snapshot with the same
+	 * remote time as one already held replaces it, and a snapshot
+	 * older than every snapshot in a full track is discarded.
+	 * </p>
+	 * @param key - the key identifying the entity
+	 * @param remoteTime - the time (in ms, on the remote client's
+	 * 			clock) at which the snapshot was valid
+	 * @param localTime - the local time (in ms) at which the snapshot
+	 * 			was received
+	 * @param x - the entity's relative x position
+	 * @param y - the entity's relative y position
+	 * @param z - the entity's altitude
+	 * @param bearing - the entity's bearing, in radians
+	 */
+	public void addSnapshot(String key, long remoteTime, long localTime,
+			double x, double y, double z, double bearing) {
+		// Track the offset between the two clocks
+		// The smallest offset seen belongs to the fastest delivery, so
+		// it is the best estimate of clock skew plus minimum latency
+		if (!hasClockOffset || (localTime - remoteTime) < clockOffset) {
+			clockOffset = localTime - remoteTime;
+			hasClockOffset = true;
+		}
+
+		Track track = tracks.get(key);
+
+		if (track == null) {
+			track = new Track();
+			tracks.put(key, track);
+		}
+
+		// Record where the entity would have been drawn before the new
+		// snapshot was added
+		boolean correcting = track.hasDrawn
+				&& evaluate(track, track.lastDrawTime, before);
+
+		if (!track.insert(remoteTime, x, y, z, bearing)) return;
+
+		// Carry any discontinuity over into the error offset, so that
+		// it can be smoothed out over the next few frames
+		if (correcting && evaluate(track, track.lastDrawTime, after)) {
+			track.error[X] += before[X] - after[X];
+			track.error[Y] += before[Y] - after[Y];
+			track.error[Z] += before[Z] - after[Z];
+			track.error[BEARING] += wrapAngle(before[BEARING] - after[BEARING]);
+
+			if (Math.abs(track.error[X]) > SNAP_DISTANCE
+					|| Math.abs(track.error[Y]) > SNAP_DISTANCE) {
+				track.clearError();
+			}
+		}
+	}
+
+	/**
+	 * Gets the smoothed state of an entity at a given local time.
+	 * <p>
+	 * The state is written to the result array, using the indices
+	 * {@link #X}, {@link #Y}, {@link #Z} and {@link #BEARING}.
+	 * </p>
+	 * <p>
+	 * This should be called once per frame for each entity drawn,
+	 * as it advances the decay of the entity's error offset.
+	 * </p>
+	 * @param key - the key identifying the entity
+	 * @param localTime - the local time (in ms) to sample at
+	 * @param result - the array to write the state into
+	 * @return <code>true</code> if a state was written,
+	 * 			<code>false</code> if there is no data for the entity
+	 */
+	public boolean sample(String key, long localTime, double[] result) {
+		Track track = tracks.get(key);
+
+		if (track == null || !evaluate(track, localTime, result)) {
+			return false;
+		}
+
+		// Decay the error offset by the time elapsed since the last frame
+		if (track.hasDrawn && localTime > track.lastDrawTime) {
+			double decay = Math.exp(-CORRECTION_RATE
+					* ((localTime - track.lastDrawTime) / 1000d));
+
+			for (int i = 0; i < STATE_SIZE; i++) {
+				track.error[i] *= decay;
+			}
+		}
+
+		for (int i = 0; i < STATE_SIZE; i++) {
+			result[i] += track.error[i];
+		}
+
+		track.lastDrawTime = localTime;
+		track.hasDrawn = true;
+
+		return true;
+	}
+
+	/**
+	 * Removes all entities whose keys are not in the specified collection.
+	 * @param keys - the keys of the entities to keep
+	 */
+	public void retain(Collection<String> keys) {
+		Iterator<String> iterator = tracks.keySet().iterator();
+
+		while (iterator.hasNext()) {
+			if (!keys.contains(iterator.next())) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all entities from the buffer.
+	 */
+	public void clear() {
+		tracks.clear();
+		hasClockOffset = false;
+	}
+
+	/**
+	 * Gets the number of entities held in the buffer.
+	 * @return the number of entities held in the buffer
+	 */
+	public int size() {
+		return tracks.size();
+	}
+
+
+	/**
+	 * Calculates the unsmoothed state of a track at a given local time.
+	 * @param track - the track to evaluate
+	 * @param localTime - the local time (in ms) to evaluate at
+	 * @param result - the array to write the state into
+	 * @return <code>true</code> if a state was written,
+	 * 			otherwise <code>false</code>
+	 */
+	private boolean evaluate(Track track, long localTime, double[] result) {
+		if (track.count == 0) return false;
+
+		// The remote time which should be drawn now
+		long renderTime = localTime - clockOffset - interpolationDelay;
+
+		// Before the first snapshot, hold the first snapshot
+		if (renderTime <= track.times[0] || track.count == 1) {
+			System.arraycopy(track.states[0], 0, result, 0, STATE_SIZE);
+			return true;
+		}
+
+		int last = track.count - 1;
+
+		// Between two snapshots, interpolate
+		for (int i = 0; i < last; i++) {
+			if (renderTime < track.times[i + 1]) {
+				double t = (renderTime - track.times[i])
+						/ (double) (track.times[i + 1] - track.times[i]);
+				interpolate(track.states[i], track.states[i + 1], t, result);
+				return true;
+			}
+		}
+
+		// After the last snapshot, extrapolate along the last velocity
+		long overrun = Math.min(renderTime - track.times[last],
+				maxExtrapolation);
+		double t = 1 + (overrun
+				/ (double) (track.times[last] - track.times[last - 1]));
+		interpolate(track.states[last - 1], track.states[last], t, result);
+
+		// Don't guess at changes in bearing
+		result[BEARING] = track.states[last][BEARING];
+
+		return true;
+	}
+
+	/**
+	 * Interpolates (or extrapolates) between two states.
+	 * @param from - the state at t = 0
+	 * @param to - the state at t = 1
+	 * @param t - the point to interpolate to
+	 * @param result - the array to write the state into
+	 */
+	private static void interpolate(double[] from, double[] to, double t,
+			double[] result) {
+		result[X] = from[X] + ((to[X] - from[X]) * t);
+		result[Y] = from[Y] + ((to[Y] - from[Y]) * t);
+		result[Z] = from[Z] + ((to[Z] - from[Z]) * t);
+		result[BEARING] = from[BEARING]
+				+ (wrapAngle(to[BEARING] - from[BEARING]) * t);
+	}
+
+	/**
+	 * Wraps an angle into the range -&pi; to &pi;.
+	 * @param angle - the angle to wrap, in radians
+	 * @return the equivalent angle in the range -&pi; to &pi;
+	 */
+	private static double wrapAngle(double angle) {
+		while (angle > Math.PI) angle -= 2 * Math.PI;
+		while (angle < -Math.PI) angle += 2 * Math.PI;
+		return angle;
+	}
+
+
+	/**
+	 * The snapshots held for a single entity, ordered by remote time.
+	 */
+	private static class Track {
+
+		/** The remote time of each snapshot */
+		private long[] times = new long[CAPACITY];
+
+		/** The state of each snapshot */
+		private double[][] states = new double[CAPACITY][STATE_SIZE];
+
+		/** The number of snapshots held */
+		private int count = 0;
+
+		/** The error offset currently being smoothed out */
+		private double[] error = new double[STATE_SIZE];
+
+		/** The local time at which the entity was last drawn */
+		private long lastDrawTime;
+
+		/** Whether the entity has been drawn yet */
+		private boolean hasDrawn = false;
+
+		/**
+		 * Inserts a snapshot, keeping the snapshots ordered.
+		 * @return <code>true</code> if the snapshot was stored,
+		 * 			otherwise <code>false</code>
+		 */
+		private boolean insert(long time, double x, double y, double z,
+				double bearing) {
+			// Find the position to insert at
+			int index = count;
+			while (index > 0 && times[index - 1] > time) {
+				index--;
+			}
+
+			if (index > 0 && times[index - 1] == time) {
+				// Replace a snapshot with the same time
+				index--;
+			} else {
+				if (count == CAPACITY) {
+					// Discard a snapshot older than everything held
+					if (index == 0) return false;
+
+					// Otherwise drop the oldest snapshot to make room
+					double[] recycled = states[0];
+					System.arraycopy(times, 1, times, 0, count - 1);
+					System.arraycopy(states, 1, states, 0, count - 1);
+					states[count - 1] = recycled;
+					count--;
+					index--;
+				}
+
+				// Shift newer snapshots along
+				double[] recycled = states[count];
+				System.arraycopy(times, index, times, index + 1, count - index);
+				System.arraycopy(states, index, states, index + 1, count - index);
+				states[index] = recycled;
+				count++;
+			}
+
+			times[index] = time;
+			states[index][X] = x;
+			states[index][Y] = y;
+			states[index][Z] = z;
+			states[index][BEARING] = bearing;
+
+			return true;
+		}
+
+		/**
+		 * Clears the error offset.
+		 */
+		private void clearError() {
+			for (int i = 0; i < STATE_SIZE; i++) {
+				error[i] = 0;
+			}
+		}
+
+	}
+
+}
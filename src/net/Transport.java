@@ -0,0 +1,39 @@
+package net;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Map.Entry;
+
+/**
+ * A means of exchanging game data with the server.
+ * <p>
+ * Transports are used only by the {@link NetworkWorker}, so need
+ * not be thread-safe.
+ * </p>
+ */
+public interface Transport {
+
+	/**
+	 * Sends data to the server, and receives any data waiting.
+	 * <p>
+	 * A key of -1 marks the data as priority data, which must be
+	 * delivered. Other data may be lost, and is superseded by any
+	 * data with a later key.
+	 * </p>
+	 * <p>
+	 * The buffer received may be reused by the next exchange, so
+	 * must be read before then.
+	 * </p>
+	 * @param dataEntry - the data entry to send, or <code>null</code>
+	 * 			to only receive
+	 * @return a data entry received from the server, or
+	 * 			<code>null</code> if none was received
+	 */
+	public Entry<Long, ByteBuffer> exchange(Entry<Long, Serializable> dataEntry);
+
+	/**
+	 * Releases any resources held by the transport.
+	 */
+	public void close();
+
+}
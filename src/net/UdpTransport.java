@@ -0,0 +1,367 @@
+package net;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import net.ReliabilityLayer.Message;
+
+/**
+ * Exchanges game data with the server using UDP datagrams.
+ * <p>
+ * State data is sent once and never resent: if it is lost, the next
+ * update supersedes it anyway. Received state older than any already
+ * received is discarded. A lost packet therefore never holds up the
+ * packets behind it, as it would over TCP.
+ * </p>
+ * <p>
+ * Priority data (e.g. powerup pickups, transfers and game overs) and
+ * instructions from the server are delivered reliably, using the
+ * acknowledgements tracked by a {@link ReliabilityLayer}.
+ * </p>
+ * <p>
+ * Each datagram is laid out as follows (big-endian):
+ * <ul>
+ * <li>int - protocol ID</li>
+ * <li>long - client ID</li>
+ * <li>int - sequence number</li>
+ * <li>int - most recent sequence number received</li>
+ * <li>int - ack bitfield</li>
+ * <li>byte - channel</li>
+ * <li>int - message ID (reliable channels only)</li>
+ * <li>long - time valid</li>
+ * <li>the remaining bytes - payload</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Unreliable data is serialised after space left for the header, so
+ * the datagram is sent straight from the buffer it was serialised
+ * into. Received payloads are read in place from the receive buffer.
+ * </p>
+ */
+public class UdpTransport implements Transport {
+
+	/** Identifies datagrams belonging to this protocol ("FHN1") */
+	private static final int PROTOCOL_ID = 0x46484E31;
+
+	/** The size of the datagram header, in bytes */
+	private static final int HEADER_SIZE = 4 + 8 + 4 + 4 + 4 + 1 + 4 + 8;
+
+	/** The largest datagram which will be sent or received */
+	private static final int MAX_PACKET_SIZE = 65507;
+
+	/** The time (in ms) to wait for a datagram on each exchange */
+	private static final int RECEIVE_TIMEOUT = 10;
+
+	/** The longest time (in ms) to go without sending acknowledgements */
+	private static final long ACK_INTERVAL = 50;
+
+	/** The channel carrying state data */
+	private static final byte CHANNEL_STATE = 0;
+
+	/** The channel carrying priority data */
+	private static final byte CHANNEL_PRIORITY = 1;
+
+	/** The channel carrying instructions from the server */
+	private static final byte CHANNEL_INSTRUCTION = 2;
+
+	/** The channel carrying only acknowledgements */
+	private static final byte CHANNEL_ACK = 3;
+
+	/** The character set used to encode instructions */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** The payload of datagrams carrying only acknowledgements */
+	private static final byte[] NO_PAYLOAD = new byte[0];
+
+	/** The socket used to send and receive datagrams */
+	private DatagramSocket socket;
+
+	/** The address of the server */
+	private InetSocketAddress server;
+
+	/** The sequence and acknowledgement tracking */
+	private ReliabilityLayer reliability;
+
+	/** The buffer reliable messages are written to before sending */
+	private ByteBuffer sendBuffer;
+
+	/** The packet used to send datagrams */
+	private DatagramPacket sendPacket;
+
+	/** The buffer datagrams are received into */
+	private byte[] receiveBuffer;
+
+	/** The packet used to receive datagrams */
+	private DatagramPacket receivePacket;
+
+	/** The sequence number of the most recent state received */
+	private int lastStateSequence;
+
+	/** Whether any state has been received */
+	private boolean hasReceivedState;
+
+	/** The time at which a datagram was last sent */
+	private long lastSendTime;
+
+
+	/**
+	 * Constructs a new UDP transport.
+	 * @param server - the address of the server
+	 * @throws SocketException if the socket could not be opened
+	 */
+	public UdpTransport(InetSocketAddress server) throws SocketException {
+		this.server = server;
+		this.socket = new DatagramSocket();
+		this.socket.setSoTimeout(RECEIVE_TIMEOUT);
+		this.reliability = new ReliabilityLayer();
+		this.sendBuffer = ByteBuffer.allocate(MAX_PACKET_SIZE);
+		this.sendPacket = new DatagramPacket(NO_PAYLOAD, 0, server);
+		this.receiveBuffer = new byte[MAX_PACKET_SIZE];
+		this.receivePacket =
+				new DatagramPacket(receiveBuffer, receiveBuffer.length);
+	}
+
+
+	@Override
+	public Entry<Long, ByteBuffer> exchange(
+			Entry<Long, Serializable> dataEntry) {
+		long now = System.currentTimeMillis();
+
+		// Send the new data
+		if (dataEntry != null && dataEntry.getValue() != null) {
+			ByteBuffer datagram = NetworkManager.serialiseData(
+					dataEntry.getValue(), HEADER_SIZE);
+
+			if (datagram != null) {
+				if (dataEntry.getKey() == -1) {
+					// Reliable messages are held until acknowledged, so
+					// need their own copy of the data
+					byte[] payload = Arrays.copyOfRange(datagram.array(),
+							datagram.position(), datagram.limit());
+					NetworkManager.releaseBuffer(datagram);
+
+					send(reliability.createMessage(CHANNEL_PRIORITY, -1,
+							payload), now);
+				} else {
+					send(CHANNEL_STATE, null, dataEntry.getKey(), datagram,
+							now);
+					NetworkManager.releaseBuffer(datagram);
+				}
+			}
+		}
+
+		// Resend any priority data which hasn't been acknowledged
+		for (Message message : reliability.getResends(now)) {
+			send(message, now);
+		}
+
+		// Make sure the server hears about received packets, even when
+		// there is nothing else to send
+		if (now - lastSendTime >= ACK_INTERVAL) {
+			send(CHANNEL_ACK, null, 0, prepareSendBuffer(NO_PAYLOAD), now);
+		}
+
+		return receive();
+	}
+
+	@Override
+	public void close() {
+		socket.close();
+	}
+
+
+	/**
+	 * Sends a reliable message.
+	 * @param message - the message to send
+	 * @param now - the current time, in ms
+	 */
+	private void send(Message message, long now) {
+		if (HEADER_SIZE + message.getPayload().length > MAX_PACKET_SIZE) {
+			NetworkManager.print(new Exception("Datagram too large: "
+					+ message.getPayload().length + " bytes"));
+			return;
+		}
+
+		send(message.getChannel(), message, message.getTimeValid(),
+				prepareSendBuffer(message.getPayload()), now);
+	}
+
+	/**
+	 * Writes a payload into the send buffer, after space for the header.
+	 * @param payload - the payload to write, which must fit in a datagram
+	 * @return the send buffer, laid out as required by
+	 * 			{@link #send(byte, Message, long, ByteBuffer, long)}
+	 */
+	private ByteBuffer prepareSendBuffer(byte[] payload) {
+		sendBuffer.clear();
+		sendBuffer.position(HEADER_SIZE);
+		sendBuffer.put(payload);
+		sendBuffer.flip();
+		sendBuffer.position(HEADER_SIZE);
+
+		return sendBuffer;
+	}
+
+	/**
+	 * Sends a datagram.
+	 * <p>
+	 * The header is written into the first {@link #HEADER_SIZE} bytes
+	 * of the datagram's buffer, in front of the payload, and the
+	 * datagram is sent straight from the buffer.
+	 * </p>
+	 * @param channel - the channel to send on
+	 * @param message - the reliable message being sent, or
+	 * 			<code>null</code> for unreliable data
+	 * @param timeValid - the time at which the data was valid
+	 * @param datagram - the buffer holding the payload from its
+	 * 			position (which must be {@link #HEADER_SIZE}) to its limit
+	 * @param now - the current time, in ms
+	 */
+	private void send(byte channel, Message message, long timeValid,
+			ByteBuffer datagram, long now) {
+		if (datagram.limit() > MAX_PACKET_SIZE) {
+			NetworkManager.print(new Exception("Datagram too large: "
+					+ datagram.remaining() + " bytes"));
+			return;
+		}
+
+		int sequence = reliability.nextSequence();
+
+		datagram.position(0);
+		datagram.putInt(PROTOCOL_ID);
+		datagram.putLong(NetworkManager.getID());
+		datagram.putInt(sequence);
+		datagram.putInt(reliability.getAck());
+		datagram.putInt(reliability.getAckBits());
+		datagram.put(channel);
+		datagram.putInt((message != null) ? message.getId() : 0);
+		datagram.putLong(timeValid);
+
+		try {
+			sendPacket.setData(datagram.array(), datagram.arrayOffset(),
+					datagram.limit());
+			socket.send(sendPacket);
+			NetworkMetrics.getInstance().recordSent(datagram.limit());
+		} catch (IOException e) {
+			NetworkManager.print(e);
+		}
+
+		// Track the packet even if sending failed, so that reliable
+		// messages are retried
+		reliability.onSent(sequence, message, now);
+		lastSendTime = now;
+	}
+
+	/**
+	 * Receives datagrams until one carrying data arrives, or the
+	 * socket times out.
+	 * <p>
+	 * The data received is held in the receive buffer, so is only
+	 * valid until the next call.
+	 * </p>
+	 * @return the data entry received, or <code>null</code> if none
+	 * 			was received
+	 */
+	private Entry<Long, ByteBuffer> receive() {
+		DatagramPacket packet = receivePacket;
+
+		while (true) {
+			try {
+				packet.setLength(receiveBuffer.length);
+				socket.receive(packet);
+			} catch (SocketTimeoutException e) {
+				return null;
+			} catch (IOException e) {
+				NetworkManager.print(e);
+				return null;
+			}
+
+			NetworkMetrics.getInstance().recordReceived(packet.getLength());
+			
+			if (packet.getLength() < HEADER_SIZE) continue;
+
+			ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), 0,
+					packet.getLength());
+
+			if (buffer.getInt() != PROTOCOL_ID) continue;
+
+			buffer.getLong(); // Client ID, only used by the server
+			int sequence = buffer.getInt();
+			int ack = buffer.getInt();
+			int ackBits = buffer.getInt();
+			byte channel = buffer.get();
+			int messageId = buffer.getInt();
+			long timeValid = buffer.getLong();
+
+			if ((channel == CHANNEL_PRIORITY
+					|| channel == CHANNEL_INSTRUCTION)
+					&& reliability.isTooOld(messageId)) {
+				// Don't acknowledge it, as it can't be told apart from
+				// a duplicate, so would otherwise be lost for good
+				reliability.onAcknowledgements(ack, ackBits,
+						System.currentTimeMillis());
+				NetworkManager.print(new Exception("Reliable message "
+						+ messageId + " is too old to be checked"));
+				continue;
+			}
+
+			if (!reliability.onReceived(sequence, ack, ackBits,
+					System.currentTimeMillis())) {
+				// Duplicate or very old datagram
+				continue;
+			}
+
+			// The payload is read in place, before the next receive
+			ByteBuffer payload = buffer.slice();
+
+			switch (channel) {
+			case CHANNEL_STATE:
+				// Only keep state newer than any already received
+				if (hasReceivedState && !ReliabilityLayer
+						.isNewer(sequence, lastStateSequence)) {
+					break;
+				}
+
+				lastStateSequence = sequence;
+				hasReceivedState = true;
+
+				return new SimpleImmutableEntry<Long, ByteBuffer>(
+						timeValid, payload);
+			case CHANNEL_PRIORITY:
+				if (reliability.acceptMessage(messageId)) {
+					return new SimpleImmutableEntry<Long, ByteBuffer>(
+							-1L, payload);
+				}
+				break;
+			case CHANNEL_INSTRUCTION:
+				if (reliability.acceptMessage(messageId)) {
+					String instructions = new String(payload.array(),
+							payload.arrayOffset(), payload.remaining(), UTF_8);
+					NetworkManager.print("Received response: "
+							+ instructions);
+					InstructionHandler.handleInstruction(instructions);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Gets the sequence and acknowledgement tracking.
+	 * @return the transport's reliability layer
+	 */
+	public ReliabilityLayer getReliabilityLayer() {
+		return reliability;
+	}
+
+}
@@ -0,0 +1,393 @@
+package scn;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import net.Command;
+import btc.Main;
+import cls.Player;
+import lib.jog.window;
+
+/**
+ * Records games, so that they can be replayed exactly (see
+ * {@link Replay}).
+ * <p>
+ * The simulation only depends on the random seed, the commands
+ * applied to it, and the length of each step it is advanced by, so
+ * only these are recorded. Every single player game, and every
+ * lockstep multiplayer game, is recorded to its own file, unless
+ * recording has been disabled with the {@link #ENABLED_PROPERTY}
+ * system property.
+ * </p>
+ * <p>
+ * Logs are only ever appended to, and are laid out as follows
+ * (big-endian):
+ * <ul>
+ * <li>int - magic number ("FHRL")</li>
+ * <li>short - format version</li>
+ * <li>byte - the type of game ({@link #SINGLE_PLAYER} or
+ * {@link #LOCKSTEP})</li>
+ * <li>byte - difficulty</li>
+ * <li>byte - the local player's position</li>
+ * <li>short - the window's width</li>
+ * <li>short - the window's height</li>
+ * <li>the records, to the end of the file</li>
+ * </ul>
+ * Each record starts with a tag:
+ * <ul>
+ * <li>{@link #STEP} - the simulation was advanced; the length of the
+ * step in microseconds, as a variable-length (zig-zag encoded)
+ * difference from the length of the previous step</li>
+ * <li>{@link #COMMAND} - a command was applied; the ID of the player
+ * it was applied to, then the command</li>
+ * <li>{@link #SEED} - the random number generator was seeded;
+ * the seed</li>
+ * <li>{@link #STATE} - a saved game was resumed; the save's format
+ * version, the length of its state, then the state</li>
+ * </ul>
+ * Records are replayed in the order they were recorded, so each
+ * command's tick is the number of steps recorded before it. A step
+ * whose length has not changed takes two bytes, so an hour of a
+ * lockstep game takes around 150KB. Single player games are
+ * advanced once per frame, by the length of the frame, so take
+ * a little more.
+ * </p>
+ * <p>
+ * Records are buffered, and written as the buffer fills. If the game
+ * stops without the log being closed, the log is cut short, but can
+ * still be replayed up to the last record written.
+ * </p>
+ * <p>
+ * This class is not thread-safe; it should only be used by the
+ * game thread.
+ * </p>
+ */
+public class CommandLog {
+
+	/** The type of log recording a single player game */
+	public static final int SINGLE_PLAYER = 0;
+
+	/** The type of log recording a lockstep multiplayer game */
+	public static final int LOCKSTEP = 1;
+
+	/** The system property used to disable recording, if "false" */
+	public static final String ENABLED_PROPERTY = "flyhard.record";
+
+	/** Identifies command logs ("FHRL") */
+	public static final int MAGIC = 0x4648524C;
+
+	/** The current version of the command log format */
+	static final int VERSION = 1;
+
+	/** The tag of a step record */
+	static final int STEP = 1;
+
+	/** The tag of a command record */
+	static final int COMMAND = 2;
+
+	/** The tag of a seed record */
+	static final int SEED = 3;
+
+	/** The tag of a saved state record */
+	static final int STATE = 4;
+
+	/** The directory logs are written to */
+	private static final File LOG_DIRECTORY = new File(
+			System.getProperty("user.home"), ".flyhard" + File.separator
+					+ "replays");
+
+	/** The extension given to log files */
+	private static final String EXTENSION = ".fhr";
+
+	/** The log currently being recorded, if any */
+	private static CommandLog recording;
+
+	/** The file being recorded to */
+	private final File file;
+
+	/** The stream records are written to */
+	private final DataOutputStream out;
+
+	/** The length of the most recent step, in microseconds */
+	private long stepLength;
+
+
+	/**
+	 * Constructs a new command log, writing its header.
+	 * @param file - the file to record to
+	 * @param game - the game being recorded
+	 * @param type - the type of game being recorded
+	 * @param playerPosition - the local player's position
+	 * @throws IOException if the file could not be written
+	 */
+	private CommandLog(File file, Game game, int type, int playerPosition)
+			throws IOException {
+		this.file = file;
+		this.out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file, true)));
+		this.stepLength = 0;
+
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeByte(type);
+		out.writeByte(game.difficulty.ordinal());
+		out.writeByte(playerPosition);
+		out.writeShort(window.width());
+		out.writeShort(window.height());
+	}
+
+
+	// Recording ------------------------------------------------------------------------
+
+	/**
+	 * Starts recording a game.
+	 * <p>
+	 * Any game already being recorded stops being recorded. Nothing
+	 * is recorded while testing, or if recording has been disabled.
+	 * </p>
+	 * @param game - the game to record, which must have been set up
+	 * 			(e.g. its airspace created)
+	 * @param type - the type of game ({@link #SINGLE_PLAYER} or
+	 * 			{@link #LOCKSTEP})
+	 * @param playerPosition - the local player's position
+	 */
+	static void startRecording(Game game, int type, int playerPosition) {
+		stopRecording();
+
+		if (Main.testing || game.replaying
+				|| "false".equals(System.getProperty(ENABLED_PROPERTY))) {
+			return;
+		}
+
+		LOG_DIRECTORY.mkdirs();
+
+		String name = new SimpleDateFormat("yyyyMMdd-HHmmss")
+				.format(new Date());
+		File file = new File(LOG_DIRECTORY, name + EXTENSION);
+
+		for (int i = 2; file.exists(); i++) {
+			file = new File(LOG_DIRECTORY, name + "-" + i + EXTENSION);
+		}
+
+		startRecording(game, type, playerPosition, file);
+	}
+
+	/**
+	 * Starts recording a game to a given file.
+	 * <p>
+	 * Unlike {@link #startRecording(Game, int, int)}, the game is
+	 * recorded even while testing, so that tests can check that
+	 * recorded games replay exactly. Any game already being recorded
+	 * stops being recorded.
+	 * </p>
+	 * @param game - the game to record, which must have been set up
+	 * 			(e.g. its airspace created)
+	 * @param type - the type of game ({@link #SINGLE_PLAYER} or
+	 * 			{@link #LOCKSTEP})
+	 * @param playerPosition - the local player's position
+	 * @param file - the file to record to
+	 */
+	public static void startRecording(Game game, int type,
+			int playerPosition, File file) {
+		stopRecording();
+
+		try {
+			recording = new CommandLog(file, game, type, playerPosition);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Records the random number generator being seeded.
+	 * @param seed - the seed
+	 */
+	public static void recordSeed(int seed) {
+		if (recording == null) return;
+
+		try {
+			recording.out.writeByte(SEED);
+			recording.out.writeInt(seed);
+		} catch (IOException e) {
+			recording.fail(e);
+		}
+	}
+
+	/**
+	 * Records a command being applied.
+	 * @param command - the command
+	 * @param player - the player the command is applied to
+	 */
+	static void recordCommand(Command command, Player player) {
+		if (recording == null) return;
+
+		try {
+			recording.out.writeByte(COMMAND);
+			recording.out.writeByte(player.getID());
+			command.write(recording.out);
+		} catch (IOException e) {
+			recording.fail(e);
+		}
+	}
+
+	/**
+	 * Records a step of the simulation.
+	 * <p>
+	 * The step's length is rounded to the nearest microsecond, and
+	 * the simulation must be advanced by the rounded length, which
+	 * is the length it will be replayed with. Lengths are rounded
+	 * whether or not the game is being recorded.
+	 * </p>
+	 * @param timeDifference - the length of the step, in seconds
+	 * @return the rounded length of the step, in seconds
+	 */
+	static double recordStep(double timeDifference) {
+		long length = Math.round(timeDifference * 1000000);
+
+		if (recording != null) {
+			try {
+				recording.out.writeByte(STEP);
+				writeVarLong(recording.out, length - recording.stepLength);
+				recording.stepLength = length;
+			} catch (IOException e) {
+				recording.fail(e);
+			}
+		}
+
+		return toSeconds(length);
+	}
+
+	/**
+	 * Records a saved game being resumed.
+	 * @param save - the saved game
+	 */
+	static void recordState(SaveGame save) {
+		if (recording == null) return;
+
+		ByteBuffer state = save.getState();
+		byte[] bytes = new byte[state.remaining()];
+		state.get(bytes);
+
+		try {
+			recording.out.writeByte(STATE);
+			recording.out.writeShort(save.getVersion());
+			recording.out.writeInt(bytes.length);
+			recording.out.write(bytes);
+		} catch (IOException e) {
+			recording.fail(e);
+		}
+	}
+
+	/**
+	 * Stops recording, writing any buffered records to the log.
+	 */
+	public static void stopRecording() {
+		if (recording == null) return;
+
+		try {
+			recording.out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		recording = null;
+	}
+
+	/**
+	 * Gets the file the current game is being recorded to.
+	 * @return the file being recorded to, or <code>null</code> if
+	 * 			no game is being recorded
+	 */
+	public static File getRecordingFile() {
+		return (recording != null) ? recording.file : null;
+	}
+
+	/**
+	 * Gets the directory logs are recorded to.
+	 * @return the log directory
+	 */
+	public static File getDirectory() {
+		return LOG_DIRECTORY;
+	}
+
+
+	// Helpers --------------------------------------------------------------------------
+
+	/**
+	 * Stops recording after a record could not be written.
+	 * <p>
+	 * The game continues, but the rest of it is not recorded.
+	 * </p>
+	 * @param e - the error which occurred
+	 */
+	private void fail(IOException e) {
+		e.printStackTrace();
+		stopRecording();
+	}
+
+	/**
+	 * Converts a step length to seconds.
+	 * <p>
+	 * Both recording and replaying convert lengths with this, so
+	 * the simulation is advanced by exactly the same amount.
+	 * </p>
+	 * @param length - the step length, in microseconds
+	 * @return the step length, in seconds
+	 */
+	static double toSeconds(long length) {
+		return length / 1000000d;
+	}
+
+	/**
+	 * Writes a signed value in as few bytes as possible.
+	 * <p>
+	 * The value is zig-zag encoded, so small negative values are as
+	 * short as small positive ones, then written seven bits at a time,
+	 * least significant first, with the top bit of each byte set if
+	 * more bytes follow.
+	 * </p>
+	 * @param out - the output to write to
+	 * @param value - the value to write
+	 * @throws IOException if the value could not be written
+	 */
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		long zigzag = (value << 1) ^ (value >> 63);
+
+		while ((zigzag & ~0x7FL) != 0) {
+			out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+			zigzag >>>= 7;
+		}
+
+		out.writeByte((int) zigzag);
+	}
+
+	/**
+	 * Reads a value written by {@link #writeVarLong(DataOutput, long)}.
+	 * @param in - the input to read from
+	 * @return the value read
+	 * @throws IOException if the value could not be read
+	 */
+	static long readVarLong(DataInput in) throws IOException {
+		long zigzag = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			zigzag |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+			}
+		}
+
+		throw new IOException("Variable-length value is too long");
+	}
+
+}
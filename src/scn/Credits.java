@@ -55,8 +55,18 @@ public class Credits extends Scene {
 	public void update(double time_difference) {
 		boolean hurried = input.isKeyDown(input.KEY_SPACE) || input.isMouseDown(input.MOUSE_LEFT);
 		speed = hurried ? 4f : 1f;
+		int lastPosition = (int) scrollPosition;
 		scrollPosition += SCROLL_SPEED * time_difference * speed;
 		if (scrollPosition > 1500) scrollPosition = -window.height();
+		if ((int) scrollPosition != lastPosition) setChanged();
+	}
+
+	/**
+	 * The credits are only drawn when they have scrolled by a pixel.
+	 */
+	@Override
+	protected boolean tracksChanges() {
+		return true;
 	}
 
 	@Override
@@ -2,6 +2,7 @@ package scn;
 
 import org.newdawn.slick.Color;
 import java.io.File;
+import java.io.IOException;
 
 import scn.Game.DifficultySetting;
 import lib.jog.audio.Sound;
@@ -30,6 +31,11 @@ public class DifficultySelect extends Scene {
 	private final int HARD_BUTTON_X = EASY_BUTTON_X;
 	private final int HARD_BUTTON_Y = MEDIUM_BUTTON_Y + 80;
 
+	private final int RESUME_BUTTON_W = EASY_BUTTON_W;
+	private final int RESUME_BUTTON_H = EASY_BUTTON_H;
+	private final int RESUME_BUTTON_X = EASY_BUTTON_X;
+	private final int RESUME_BUTTON_Y = HARD_BUTTON_Y + 80;
+
 	/** Images for menu icons */
 	public static final Image DIFF1 =
 			graphics.newImage("gfx" + File.separator + "pup"
@@ -92,7 +98,8 @@ public class DifficultySelect extends Scene {
 	 * Initialises scene variables, buttons, text box.
 	 */
 	public void start() {
-		buttons = new lib.ButtonText[3];
+		// Only offer to resume a game if one has been saved
+		buttons = new lib.ButtonText[SaveGame.exists() ? 4 : 3];
 		lib.ButtonText.Action easy = new lib.ButtonText.Action() {
 			@Override
 			public void action() {
@@ -136,7 +143,28 @@ public class DifficultySelect extends Scene {
 		};
 		buttons[2] = new lib.ButtonText("Hard", hard,
 				HARD_BUTTON_X, HARD_BUTTON_Y, HARD_BUTTON_W, HARD_BUTTON_H, 40, -12);
-		buttons[2].setInset(true);
+		buttons[2].setInset(true);
+
+		if (buttons.length > 3) {
+			lib.ButtonText.Action resume = new lib.ButtonText.Action() {
+				@Override
+				public void action() {
+					switch (scene){
+					case DifficultySelect.CREATE_DEMO:
+						try {
+							Main.setScene(SinglePlayerGame.resumeSinglePlayerGame(
+									SaveGame.read(SaveGame.getFile())));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+						break;
+					}
+				}
+			};
+			buttons[3] = new lib.ButtonText("Resume", resume,
+					RESUME_BUTTON_X, RESUME_BUTTON_Y, RESUME_BUTTON_W, RESUME_BUTTON_H, 40, -12);
+			buttons[3].setInset(true);
+		}
 	}
 
 	@Override
@@ -146,6 +174,15 @@ public class DifficultySelect extends Scene {
 	public void update(double timeDifference) {
 	}
 
+	/**
+	 * The buttons are only highlighted in response to input, so the
+	 * screen is only drawn when it has changed.
+	 */
+	@Override
+	protected boolean tracksChanges() {
+		return true;
+	}
+
 	/**
 	 * Draws text box, buttons, and prints strings
 	 */
@@ -158,6 +195,9 @@ public class DifficultySelect extends Scene {
 		graphics.drawScaled(DIFF1, window.height()/3 - 40, yBorder + 80, 0.0625);
 		graphics.drawScaled(DIFF2, window.height()/3 - 40, yBorder + 160, 0.0625);
 		graphics.drawScaled(DIFF3, window.height()/3 - 40, yBorder + 240, 0.0625);
+		if (buttons.length > 3) {
+			graphics.drawScaled(Title.SINGLE_PLAYER, window.height()/3 - 40, yBorder + 320, 0.0625);
+		}
 		graphics.setColour(Color.black);
 		
 		graphics.print("Single Player", window.height()/3,
@@ -176,6 +216,11 @@ public class DifficultySelect extends Scene {
 		graphics.printRight("Difficile", (window.width() - (window.height()/3) + 20), HARD_BUTTON_Y - 10, 0, 0);
 		graphics.printRight("Schwer", (window.width() - (window.height()/3) + 20), HARD_BUTTON_Y + 5, 0, 0);
 		graphics.printRight("Vaikea", (window.width() - (window.height()/3) + 20), HARD_BUTTON_Y + 20, 0, 0);
+		if (buttons.length > 3) {
+			graphics.printRight("Reprendre", (window.width() - (window.height()/3) + 20), RESUME_BUTTON_Y - 10, 0, 0);
+			graphics.printRight("Fortsetzen", (window.width() - (window.height()/3) + 20), RESUME_BUTTON_Y + 5, 0, 0);
+			graphics.printRight("Jatka", (window.width() - (window.height()/3) + 20), RESUME_BUTTON_Y + 20, 0, 0);
+		}
 
 		for (lib.ButtonText b : buttons) {
 			b.draw();
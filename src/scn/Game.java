@@ -1,12 +1,12 @@
 package scn;
 
 import java.io.File;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 
 import org.newdawn.slick.Color;
 
 import lib.SpriteAnimation;
+import lib.TextBuilder;
 import lib.jog.audio;
 import lib.jog.graphics;
 import lib.jog.input;
@@ -14,13 +14,18 @@ import lib.jog.window;
 import lib.jog.audio.Music;
 import lib.jog.audio.Sound;
 import lib.jog.graphics.Image;
+import lib.jog.graphics.Layer;
+import net.Command;
 import cls.Aircraft;
+import cls.AirspaceMap;
 import cls.Airport;
 import cls.FlightStrip;
 import cls.Player;
 import cls.Vector;
 import cls.Player.TurningState;
 import cls.Waypoint;
+import btc.FrameProfiler;
+import btc.FrameProfiler.Phase;
 import btc.Main;
 
 public abstract class Game extends Scene {
@@ -70,6 +75,27 @@ public abstract class Game extends Scene {
 	/** A sprite animation to handle the frame by frame drawing of the explosion */
 	protected ArrayList<SpriteAnimation> explosionAnimations;
 
+	/** Whether the game is being replayed from a log, rather than played */
+	protected boolean replaying;
+
+	/** The turning state most recently requested by the keyboard */
+	private TurningState requestedTurningState = TurningState.NOT_TURNING;
+
+	/** The altitude state most recently requested by the keyboard */
+	private int requestedAltitudeState = Aircraft.ALTITUDE_LEVEL;
+
+	/** The aircraft which the keyboard's requests were made for */
+	private Aircraft requestedAircraft;
+
+	/** The text of the player's score, kept between frames */
+	private final TextBuilder scoreLabel = new TextBuilder();
+
+	/** The layer the parts of the map which rarely change are drawn to */
+	private Layer staticLayer;
+
+	/** The text of the time the game has been played for, kept between frames */
+	private final TextBuilder timeLabel = new TextBuilder();
+
 
 	// Constructors ---------------------------------------------------------------------
 
@@ -97,17 +123,22 @@ public abstract class Game extends Scene {
 				new Airport("Eboracum Airport", (6d/7d), (1d/2d))
 		};
 
-		// Define entry and exit points
+		// Define entry and exit points, in airspace units so that they
+		// are in the same place whatever the size of the window
+		double left = 8 / Vector.AIRSPACE_WIDTH;
+		double top = 8 / Vector.AIRSPACE_HEIGHT;
+		double right = (Vector.AIRSPACE_WIDTH - 4) / Vector.AIRSPACE_WIDTH;
+		double bottom = (Vector.AIRSPACE_HEIGHT - 4) / Vector.AIRSPACE_HEIGHT;
+
 		locationWaypoints = new Waypoint[] {
-				new Waypoint(8, 8,
-						true, "North West Top Leftonia", false),
-						new Waypoint(8, window.height() - (2 * Y_OFFSET) - 4,
-								true, "100 Acre Woods", false),
-								new Waypoint(window.width() - (2 * X_OFFSET) - 4, 8,
-										true, "City of Rightson", false),
-										new Waypoint(window.width() - (2 * X_OFFSET) - 4,
-												window.height() - (2 * Y_OFFSET) - 4,
-												true, "South Sea", false), airports[0], airports[1]
+				new Waypoint(left, top,
+						true, "North West Top Leftonia", true),
+						new Waypoint(left, bottom,
+								true, "100 Acre Woods", true),
+								new Waypoint(right, top,
+										true, "City of Rightson", true),
+										new Waypoint(right, bottom,
+												true, "South Sea", true), airports[0], airports[1]
 		};
 
 		// Define other waypoints
@@ -129,6 +160,10 @@ public abstract class Game extends Scene {
 				new Waypoint(0.92, 0.32, false, true),
 		};
 
+		// Identify the waypoints, so that they are sent by ID
+		AirspaceMap.setCurrent(new AirspaceMap(airspaceWaypoints,
+				locationWaypoints));
+
 		if (!Main.testing) {
 			// Load in graphics
 			background = graphics.newImage("gfx" + File.separator
@@ -145,10 +180,10 @@ public abstract class Game extends Scene {
 			// Start the music
 			music.setVolume(0.5f);
 			music.play();
-			
-			explosionAnimations = new ArrayList<SpriteAnimation>();
 		}
 
+		explosionAnimations = new ArrayList<SpriteAnimation>();
+
 		// Reset game attributes
 		timeElapsed = 0;
 	}
@@ -163,10 +198,51 @@ public abstract class Game extends Scene {
 	 */
 	@Override
 	public void update(double timeDifference) {
+		// Advance the simulation, recording the step so that it can
+		// be replayed
+		simulate(CommandLog.recordStep(timeDifference));
+
+		// Handle directional and altitude control
+		handleKeyboardControl();
+	}
+
+	/**
+	 * Advances the simulation by a single step.
+	 * <p>
+	 * Other than applying commands, this is the only way in which the
+	 * simulation changes, so a recorded game can be replayed by
+	 * applying the recorded commands between the recorded steps (see
+	 * {@link Replay}).
+	 * </p>
+	 * @param timeDifference - the length of the step
+	 */
+	protected void simulate(double timeDifference) {
 		// Update the time the game has run for
 		timeElapsed += timeDifference;
 
 		// Update any explosion animations
+		updateExplosions(timeDifference);
+
+		// Check if any aircraft in the airspace have collided
+		long start = System.nanoTime();
+		checkCollisions(timeDifference);
+		FrameProfiler.getInstance().record(Phase.COLLISION, start);
+
+		// Update the player
+		updatePlayer(timeDifference, player);
+
+		// Update flight strips
+		updateFlightStrips(timeDifference);
+
+		// Deselect and remove any aircraft which have completed their routes
+		removeFinishedAircraft(player);
+	}
+
+	/**
+	 * Updates any explosion animations.
+	 * @param timeDifference - the time since the last update
+	 */
+	protected void updateExplosions(double timeDifference) {
 		if (explosionAnimations.size() > 0) {
 			for (int i = explosionAnimations.size() - 1; i >= 0; i--) {
 				if (!explosionAnimations.get(i).hasFinished()) {
@@ -176,13 +252,13 @@ public abstract class Game extends Scene {
 				}
 			}
 		}
+	}
 
-		// Check if any aircraft in the airspace have collided
-		checkCollisions(timeDifference);
-
-		// Update the player
-		updatePlayer(timeDifference, player);
-
+	/**
+	 * Updates the player's flight strips.
+	 * @param timeDifference - the time since the last update
+	 */
+	protected void updateFlightStrips(double timeDifference) {
 		// Copy flight strip array
 		@SuppressWarnings("unchecked")
 		ArrayList<FlightStrip> shuffledFlightStrips =
@@ -194,8 +270,16 @@ public abstract class Game extends Scene {
 			fs.update(timeDifference);
 			player.getFlightStrips().add(fs);
 		}
+	}
 
-		// Deselect and remove any aircraft which have completed their routes
+	/**
+	 * Deselects and removes any aircraft which have completed their routes.
+	 * <p>
+	 * The player's score and statistics are updated accordingly.
+	 * </p>
+	 * @param player - the player whose aircraft should be removed
+	 */
+	protected void removeFinishedAircraft(Player player) {
 		for (int i = player.getAircraft().size() - 1; i >= 0; i--) {
 			if (player.getAircraft().get(i).isFinished()) {
 				if (player.getAircraft().get(i).equals(player
@@ -224,50 +308,70 @@ public abstract class Game extends Scene {
 				}
 
 				player.getFlightStrips().remove(getFlightStripFromAircraft(
-						player.getAircraft().get(i)));
+						player.getAircraft().get(i), player));
 
 				player.getAircraft().remove(i);
 			}
 		}
+	}
 
-		if (player.getSelectedAircraft() != null) {
-			// Handle directional control
-			if (input.keyPressed(new int[] {input.KEY_LEFT, input.KEY_A})) {
-				// Turn left when 'Left' or 'A' key is pressed
-				player.setTurningState(TurningState.TURNING_LEFT);
-
-				// Activate manual control if it isn't active already
-				if (!player.getSelectedAircraft().isManuallyControlled()) {
-					player.getSelectedAircraft().toggleManualControl();
-				}
-			} else if (input.keyPressed(new int[] {input.KEY_RIGHT, input.KEY_D})) {
-				// Turn right when 'Right' or 'D' key is pressed
-				player.setTurningState(TurningState.TURNING_RIGHT);
+	/**
+	 * Issues commands for the directional and altitude keys.
+	 * <p>
+	 * Commands are only issued when the keys pressed change, or a
+	 * different aircraft is selected.
+	 * </p>
+	 */
+	protected void handleKeyboardControl() {
+		Aircraft selected = player.getSelectedAircraft();
 
-				// Activate manual control if it isn't active already
-				if (!player.getSelectedAircraft().isManuallyControlled()) {
-					player.getSelectedAircraft().toggleManualControl();
-				}
-			} else {
-				// Clear the turning state
-				player.setTurningState(TurningState.NOT_TURNING);
-			}
+		if (selected == null) {
+			requestedAircraft = null;
+			return;
+		}
+
+		// Handle directional control
+		TurningState turningState = TurningState.NOT_TURNING;
 
-			// Handle altitude controls
-			if (input.keyPressed(new int[] {input.KEY_S, input.KEY_DOWN})
-					&& (player.getSelectedAircraft()
-							.getPosition().getZ() > 28000)) {
-				// Descend
-				player.getSelectedAircraft()
-				.setAltitudeState(Aircraft.ALTITUDE_FALL);
-			} else if (input.keyPressed(new int[] {input.KEY_W, input.KEY_UP})
-					&& (player.getSelectedAircraft()
-							.getPosition().getZ() < 30000)) {
-				// Ascend
-				player.getSelectedAircraft()
-				.setAltitudeState(Aircraft.ALTITUDE_CLIMB);
+		if (input.keyPressed(new int[] {input.KEY_LEFT, input.KEY_A})) {
+			// Turn left when 'Left' or 'A' key is pressed
+			turningState = TurningState.TURNING_LEFT;
+		} else if (input.keyPressed(new int[] {input.KEY_RIGHT, input.KEY_D})) {
+			// Turn right when 'Right' or 'D' key is pressed
+			turningState = TurningState.TURNING_RIGHT;
+		}
+
+		// Handle altitude controls
+		int altitudeState = Aircraft.ALTITUDE_LEVEL;
+
+		if (input.keyPressed(new int[] {input.KEY_S, input.KEY_DOWN})
+				&& (selected.getPosition().getZ() > 28000)) {
+			// Descend
+			altitudeState = Aircraft.ALTITUDE_FALL;
+		} else if (input.keyPressed(new int[] {input.KEY_W, input.KEY_UP})
+				&& (selected.getPosition().getZ() < 30000)) {
+			// Ascend
+			altitudeState = Aircraft.ALTITUDE_CLIMB;
+		}
+
+		boolean reselected = !selected.equals(requestedAircraft);
+
+		if (reselected || turningState != requestedTurningState) {
+			issueCommand(new Command(Command.Type.TURN,
+					turningState.ordinal()));
+		}
+
+		if (reselected || altitudeState != requestedAltitudeState) {
+			if (altitudeState == Aircraft.ALTITUDE_FALL) {
+				issueCommand(new Command(Command.Type.DESCEND));
+			} else if (altitudeState == Aircraft.ALTITUDE_CLIMB) {
+				issueCommand(new Command(Command.Type.CLIMB));
 			}
 		}
+
+		requestedTurningState = turningState;
+		requestedAltitudeState = altitudeState;
+		requestedAircraft = selected;
 	}
 
 	/**
@@ -325,36 +429,99 @@ public abstract class Game extends Scene {
 	 */
 	@Override
 	public void draw() {
-		// Draw the rectangle surrounding the map area
-		graphics.setColour(graphics.white);
+		FrameProfiler profiler = FrameProfiler.getInstance();
 		graphics.setFont(Main.mainFont);
-		graphics.rectangle(false, X_OFFSET, Y_OFFSET, window.width() - (2 * X_OFFSET),
-				window.height() - (2 * Y_OFFSET));
+
+		// Draw the parts of the map which rarely change
+		long start = System.nanoTime();
+		drawStaticLayer();
+		profiler.record(Phase.DRAW_STATIC, start);
 
 		// Set the viewport - this is the boundary used when drawing objects
 		graphics.setViewport(X_OFFSET, Y_OFFSET, window.width() - (2 * X_OFFSET),
 				window.height() - (2 * Y_OFFSET));
 
-		// Draw the map background
-		graphics.setColour(255, 255, 255, 80);
-		graphics.drawScaled(background, 0, 0,
-				Math.max(Main.getXScale(), Main.getYScale()));
-
 		// Draw individual map features
+		start = System.nanoTime();
 		drawMapFeatures();
+		profiler.record(Phase.DRAW_MAP, start);
 
 		// Reset the viewport - these statistics can appear outside the game
 		// area
 		graphics.setViewport();
+		start = System.nanoTime();
 		drawAdditional(getAllAircraft().size());
+		profiler.record(Phase.DRAW_HUD, start);
 	}
 
 	/**
-	 * Draws map features.
+	 * Draws the parts of the map which rarely change.
+	 * <p>
+	 * These are drawn to a layer the first time, and again only when the
+	 * window changes size; every other frame, the layer is drawn in their
+	 * place.
+	 * If layers are not supported, they are drawn every frame.
+	 * </p>
 	 */
-	protected void drawMapFeatures() {
+	private void drawStaticLayer() {
+		if (staticLayer == null) staticLayer = graphics.newLayer();
+
+		if (!staticLayer.isValid() && graphics.beginLayer(staticLayer)) {
+			drawStaticFeatures();
+			graphics.endLayer(staticLayer);
+		}
+
+		if (staticLayer.isValid()) {
+			graphics.drawLayer(staticLayer);
+		} else {
+			drawStaticFeatures();
+		}
+	}
+
+	/**
+	 * Draws the parts of the map which rarely change: the border around
+	 * the map, and the features drawn by {@link #drawStaticMapFeatures()}.
+	 */
+	private void drawStaticFeatures() {
+		// Draw the rectangle surrounding the map area
+		graphics.setColour(graphics.white);
+		graphics.rectangle(false, X_OFFSET, Y_OFFSET, window.width() - (2 * X_OFFSET),
+				window.height() - (2 * Y_OFFSET));
+
+		graphics.setViewport(X_OFFSET, Y_OFFSET, window.width() - (2 * X_OFFSET),
+				window.height() - (2 * Y_OFFSET));
+		drawStaticMapFeatures();
+		graphics.setViewport();
+	}
+
+	/**
+	 * Draws the map features which rarely change: the background, the
+	 * airport images and the waypoints.
+	 * <p>
+	 * Anything drawn here is kept between frames, so must not change
+	 * while the game is played.
+	 * </p>
+	 */
+	protected void drawStaticMapFeatures() {
+		drawBackground();
 		drawAirports(player);
 		drawWaypoints(player);
+	}
+
+	/**
+	 * Draws the map background.
+	 */
+	protected void drawBackground() {
+		graphics.setColour(255, 255, 255, 80);
+		graphics.drawScaled(background, 0, 0,
+				Math.max(Main.getXScale(), Main.getYScale()));
+	}
+
+	/**
+	 * Draws map features.
+	 */
+	protected void drawMapFeatures() {
+		drawAirportStatus(player);
 		drawAircraft(player);
 		drawSelectedAircraft();
 
@@ -369,8 +536,9 @@ public abstract class Game extends Scene {
 		graphics.setColour(Color.white);
 
 		// Display the player's score
-		String scoreString = String.format("%6d", player.getScore());
-		graphics.print("Score : ".toUpperCase() + scoreString,
+		String scoreString = scoreLabel.clear().append("SCORE : ")
+				.append(player.getScore(), 6, ' ').toString();
+		graphics.print(scoreString,
 				getXOffset() + 32,
 				window.height() - getYOffset() + 5, 1);
 
@@ -472,7 +640,7 @@ public abstract class Game extends Scene {
 	/**
 	 * Draws airports.
 	 * <p>
-	 * Calls the airport.draw() method for each airport.
+	 * Calls the airport.drawImage() method for each airport.
 	 * </p>
 	 * <p>
 	 * Also prints the names of the airports.
@@ -482,7 +650,7 @@ public abstract class Game extends Scene {
 		// Draw the airports
 		for (Airport airport : player.getAirports()) {
 			graphics.setColour(255, 255, 255, 64);
-			airport.draw();
+			airport.drawImage();
 		}
 
 		// Draw the airport names
@@ -509,9 +677,10 @@ public abstract class Game extends Scene {
 		double seconds = timeElapsed % 60;
 
 		// Display this in the form 'hh:mm:ss'
-		DecimalFormat df = new DecimalFormat("00.00");
-		String timePlayed = String.format("%d:%02d:", hours, minutes)
-				+ df.format(seconds);
+		String timePlayed = timeLabel.clear()
+				.append(hours).append(':')
+				.append(minutes, 2, '0').append(':')
+				.appendFixed(seconds, 2, 2).toString();
 
 		// Print this to the screen
 		graphics.printCentred(timePlayed,
@@ -519,6 +688,18 @@ public abstract class Game extends Scene {
 				Y_OFFSET - 15, 1, 0);
 	}
 
+	/**
+	 * Draws the state of the airports, e.g. the aircraft waiting at them.
+	 * <p>
+	 * Calls the airport.drawStatus() method for each airport.
+	 * </p>
+	 */
+	protected void drawAirportStatus(Player player) {
+		for (Airport airport : player.getAirports()) {
+			airport.drawStatus();
+		}
+	}
+
 	/**
 	 * Plays the music attached to the game.
 	 */
@@ -546,8 +727,8 @@ public abstract class Game extends Scene {
 
 		// Select an aircraft (if an aircraft was clicked)
 		if (aircraftClicked(x, y, player)) {
-			deselectAircraft(player);
-			player.setSelectedAircraft(findClickedAircraft(x, y, player));
+			issueCommand(Command.select(
+					findClickedAircraft(x, y, player).getName()));
 		}
 
 		if (key == input.MOUSE_LEFT) {
@@ -571,25 +752,25 @@ public abstract class Game extends Scene {
 				}
 			}
 
-			for (Airport airport : player.getAirports()) {
+			for (int i = 0; i < player.getAirports().length; i++) {
+				Airport airport = player.getAirports()[i];
+
 				if (player.getSelectedAircraft() != null
 						&& airport.isArrivalsClicked(x, y)) {
 					if ((player.getSelectedAircraft().isWaitingToLand)
-							&& (player.getSelectedAircraft()
-									.currentTarget.equals(airport.getLocation()))) {
+							&& (player.getSelectedAircraft().isHeadingTo(airport))) {
 						// If arrivals is clicked, and the selected aircraft
 						// is waiting to land at that airport, cause the aircraft
 						// to land
 						airport.mousePressed(key, x, y);
-						player.getSelectedAircraft().land();
-						deselectAircraft(player);
+						issueCommand(new Command(Command.Type.LAND, i));
 					}
 				} else if (airport.isDeparturesClicked(x, y)) {
 					if (airport.aircraftHangar.size() > 0) {
 						// If departures is clicked, and there is a flight waiting
 						// to take off, let it take off
 						airport.mousePressed(key, x, y);
-						airport.signalTakeOff();
+						issueCommand(new Command(Command.Type.TAKE_OFF, i));
 					}
 				}
 			}
@@ -598,10 +779,10 @@ public abstract class Game extends Scene {
 				if (compassClicked(x, y, player.getSelectedAircraft())) {
 					player.setCompassClicked(true);
 					if (!player.getSelectedAircraft().isManuallyControlled()) {
-						toggleManualControl(player);
+						issueCommand(new Command(Command.Type.TOGGLE_MANUAL));
 					}
 				} else {
-					deselectAircraft(player);
+					issueCommand(new Command(Command.Type.DESELECT));
 				}
 			}
 		}
@@ -627,8 +808,8 @@ public abstract class Game extends Scene {
 			if (player.isWaypointClicked() && player.getSelectedAircraft() != null) {
 				Waypoint newWaypoint = findClickedWaypoint(x, y, player);
 				if (newWaypoint != null) {
-					player.getSelectedAircraft().alterPath(player.getSelectedPathpoint(),
-							newWaypoint);
+					issueCommand(Command.alterPath(player.getSelectedPathpoint(),
+							indexOf(newWaypoint, player.getWaypoints())));
 				}
 
 				player.setSelectedPathpoint(-1);
@@ -643,8 +824,12 @@ public abstract class Game extends Scene {
 				double dy = (input.mouseY() - Y_OFFSET)
 						- player.getSelectedAircraft().getPosition().getY()
 						- 8;
-				double newBearing = Math.atan2(dy, dx);
-				player.getSelectedAircraft().setBearing(newBearing);
+				// Bearings are in airspace units, which may not be
+				// in proportion to the window
+				Vector direction = new Vector(dx, dy, 0);
+				double newBearing = StrictMath.atan2(
+						direction.getAirspaceY(), direction.getAirspaceX());
+				issueCommand(Command.setBearing(newBearing));
 			}
 		} else if (key == input.MOUSE_WHEEL_UP) {
 			player.setControlAltitude(30000);
@@ -668,7 +853,7 @@ public abstract class Game extends Scene {
 	public void keyReleased(int key) {
 		switch (key) {
 		case input.KEY_SPACE :
-			toggleManualControl(player);
+			issueCommand(new Command(Command.Type.TOGGLE_MANUAL));
 			break;
 			//              case input.KEY_LCRTL :
 			//                      generateFlight(player);
@@ -682,6 +867,99 @@ public abstract class Game extends Scene {
 	}
 
 
+	/**
+	 * Issues a command on behalf of the current player.
+	 * <p>
+	 * By default, the command is recorded and applied immediately.
+	 * Subclasses may instead schedule it to be applied later.
+	 * </p>
+	 * @param command - the command to issue
+	 */
+	public void issueCommand(Command command) {
+		CommandLog.recordCommand(command, player);
+		applyCommand(command, player);
+	}
+
+	/**
+	 * Applies a command to the simulation.
+	 * <p>
+	 * This is the only way in which player input changes the
+	 * simulation, so that the simulation can be reproduced exactly
+	 * from the commands applied to it.
+	 * </p>
+	 * @param command - the command to apply
+	 * @param player - the player who issued the command
+	 */
+	public void applyCommand(Command command, Player player) {
+		Aircraft selected = player.getSelectedAircraft();
+
+		switch (command.getType()) {
+		case SELECT:
+			deselectAircraft(player);
+
+			for (Aircraft aircraft : player.getAircraft()) {
+				if (aircraft.getName().equals(command.getAircraftName())) {
+					player.setSelectedAircraft(aircraft);
+				}
+			}
+			break;
+		case DESELECT:
+			deselectAircraft(player);
+			break;
+		case TURN:
+			TurningState state = TurningState.values()[command.getIndex()];
+			player.setTurningState(state);
+
+			// Activate manual control if it isn't active already
+			if (state != TurningState.NOT_TURNING && selected != null
+					&& !selected.isManuallyControlled()) {
+				selected.toggleManualControl();
+			}
+			break;
+		case TOGGLE_MANUAL:
+			toggleManualControl(player);
+			break;
+		case CLIMB:
+			if (selected != null) {
+				selected.setAltitudeState(Aircraft.ALTITUDE_CLIMB);
+			}
+			break;
+		case DESCEND:
+			if (selected != null) {
+				selected.setAltitudeState(Aircraft.ALTITUDE_FALL);
+			}
+			break;
+		case SET_BEARING:
+			if (selected != null) {
+				selected.setBearing(command.getBearing());
+			}
+			break;
+		case ALTER_PATH:
+			if (selected != null && command.getIndex() >= 0
+					&& command.getIndex() < player.getWaypoints().length) {
+				selected.alterPath(command.getRouteStage(),
+						player.getWaypoints()[command.getIndex()]);
+			}
+			break;
+		case LAND:
+			if (selected != null && command.getIndex() >= 0
+					&& command.getIndex() < player.getAirports().length) {
+				selected.land();
+				deselectAircraft(player);
+			}
+			break;
+		case TAKE_OFF:
+			if (command.getIndex() >= 0
+					&& command.getIndex() < player.getAirports().length) {
+				player.getAirports()[command.getIndex()].signalTakeOff();
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+
 	// Game ending ----------------------------------------------------------------------
 
 	/**
@@ -735,6 +1013,9 @@ public abstract class Game extends Scene {
 
 
 	public void explodePlanes(Aircraft plane1, Aircraft plane2) {
+		// Explosions are only drawn, so aren't needed without a window
+		if (Main.testing) return;
+
 		// The number of frames in each dimension of the animation image
 		int framesAcross = 8;
 		int framesDown = 4;
@@ -778,6 +1059,9 @@ public abstract class Game extends Scene {
 			airport.clear();
 		}
 
+		// A replay ends with its log, rather than changing scene
+		if (replaying) return;
+
 		playSound(audio.newSoundEffect("sfx" + File.separator + "crash.ogg"));
 
 		Main.closeScene();
@@ -793,7 +1077,10 @@ public abstract class Game extends Scene {
 			music.stop();
 		}
 
+		CommandLog.stopRecording();
 		instance = null;
+
+		if (staticLayer != null) staticLayer.delete();
 	}
 
 
@@ -838,13 +1125,24 @@ public abstract class Game extends Scene {
 			// Otherwise, add the aircraft to the airspace
 			player.getAircraft().add(aircraft);
 
-			if (player.equals(this.player)) {
+			// Only the local player's aircraft are shown as flight strips,
+			// unless both players are simulated here and so must match
+			if (player.equals(this.player) || simulatesBothPlayers()) {
 				player.getFlightStrips().add(new FlightStrip(aircraft,
 						FlightStrip.BACKGROUND_COLOURS[player.getID()]));
 			}
 		}
 	}
 
+	/**
+	 * Checks whether this client simulates both players, as in
+	 * lockstep games, rather than being sent the opponent's aircraft.
+	 * @return whether both players are simulated by this client
+	 */
+	protected boolean simulatesBothPlayers() {
+		return false;
+	}
+
 	/**
 	 * Handle aircraft creation.
 	 * @return the created aircraft object
@@ -1027,6 +1325,20 @@ public abstract class Game extends Scene {
 		}
 	}
 
+	/**
+	 * Finds the index of a waypoint in an array of waypoints.
+	 * @param waypoint - the waypoint to find
+	 * @param waypoints - the array to search
+	 * @return the index of the waypoint, or -1 if it is not in the array
+	 */
+	protected static int indexOf(Waypoint waypoint, Waypoint[] waypoints) {
+		for (int i = 0; i < waypoints.length; i++) {
+			if (waypoints[i] == waypoint) return i;
+		}
+
+		return -1;
+	}
+
 	/**
 	 * Returns an array of location waypoints for the specified player.
 	 * @param player - the player whose entry points should be checked
@@ -1074,7 +1386,7 @@ public abstract class Game extends Scene {
 				// exit point/chosen originPoint
 				// Check if any plane is less than what is defined as too close
 				// from the chosen originPoint
-				if (aircraft.currentTarget.equals(entryPoint.getLocation())
+				if (aircraft.isHeadingTo(entryPoint)
 						|| aircraft.isCloseToEntry(entryPoint.getLocation())) {
 					isAvailable = false;
 				}
@@ -1312,6 +1624,17 @@ public abstract class Game extends Scene {
 	 * @return the flight strip for the specified aircraft
 	 */
 	public FlightStrip getFlightStripFromAircraft(Aircraft aircraft) {
+		return getFlightStripFromAircraft(aircraft, player);
+	}
+
+	/**
+	 * Gets one of a player's flight strips from an aircraft.
+	 * @param aircraft - the aircraft who's flight strip should be returned
+	 * @param player - the player whose flight strips should be searched
+	 * @return the flight strip for the specified aircraft
+	 */
+	public FlightStrip getFlightStripFromAircraft(Aircraft aircraft,
+			Player player) {
 		if (aircraft != null) {
 			for (FlightStrip fs : player.getFlightStrips()) {
 				if (aircraft.equals(fs.getAircraft())) {
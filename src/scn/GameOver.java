@@ -121,16 +121,25 @@ public class GameOver extends Scene {
 		if (aircraft1 != null && aircraft2 != null) {
 			if (!explosionAnim.hasFinished()) {
 				explosionAnim.update(timeDifference);
+				setChanged();
 			}
 		}
 
 		for (FlightStrip fs : player.getFlightStrips()) {
 			fs.update(timeDifference);
-			System.out.println(fs.positionY);
 		}
 
 	}
 
+	/**
+	 * Other than the explosion, the game over screen only changes in
+	 * response to input, so is only drawn when it has changed.
+	 */
+	@Override
+	protected boolean tracksChanges() {
+		return true;
+	}
+
 	@Override
 	public void mousePressed(int key, int x, int y) {}
 
@@ -11,11 +11,11 @@ import cls.Player;
 
 public class GameOverMulti extends Scene {
 
-	/** The player who hosted the game */
-	private Player hostPlayer;
+	/** The final state of the player who hosted the game */
+	private Player.Snapshot hostPlayer;
 
-	/** The player who joined the game */
-	private Player opposingPlayer;
+	/** The final state of the player who joined the game */
+	private Player.Snapshot opposingPlayer;
 
 	/** The value corresponding to the key which has most recently been pressed */
 	private int keyPressed;
@@ -25,7 +25,8 @@ public class GameOverMulti extends Scene {
 	/** Integer offset to centre vertically */
 	private int yBorder = (window.height() - 440) / 2 - 20;
 
-	public GameOverMulti(Player hostPlayer, Player opposingPlayer) {
+	public GameOverMulti(Player.Snapshot hostPlayer,
+			Player.Snapshot opposingPlayer) {
 		this.hostPlayer = hostPlayer;
 		this.opposingPlayer = opposingPlayer;
 	}
@@ -67,6 +68,15 @@ public class GameOverMulti extends Scene {
 
 	}
 
+	/**
+	 * The results are fixed once the game has ended, so the screen is
+	 * only drawn again when input changes it.
+	 */
+	@Override
+	protected boolean tracksChanges() {
+		return true;
+	}
+
 	public void draw() {
 		// draw a line separating  both player's stats
 		graphics.setColour(graphics.safetyOrange);
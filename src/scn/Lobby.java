@@ -5,8 +5,9 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-import net.InstructionHandler;
 import net.NetworkManager;
 
 import org.newdawn.slick.Color;
@@ -59,13 +60,16 @@ public class Lobby extends Scene {
 
 	/** The time since the players waiting string was last updated */
 	private double timeSinceWaitingUpdate = 0.5;
-
-	/** The time since the list of instructions was last checked */
-	private double timeSinceStartGameUpdate = 0.1;
 	
 	/** The map of available players */
 	private LinkedHashMap<Integer, String> availablePlayers;
 	
+	/** The pending request for the map of available players */
+	private Future<String> availablePlayersRequest;
+	
+	/** The pending request for the map of high scores */
+	private Future<String> highScoresRequest;
+	
 	/** The map of high scores */
 	private TreeMap<Long, ArrayList<String>> highScores;
 	
@@ -87,6 +91,9 @@ public class Lobby extends Scene {
 	/** The dynamic string of dots to display after text */
 	private String waitingForOpponentDots = "";
 
+	/** The notice shown to the player, e.g. why their last game ended */
+	private static String notice = null;
+
 	/** Declaring location of Multiplayer icon/graphics */
 	public static final Image MULTIPLAYER =
 			graphics.newImage("gfx" + File.separator + "pup"
@@ -134,25 +141,39 @@ public class Lobby extends Scene {
 		timeSincePlayerUpdate += timeDifference;
 		timeSinceScoreUpdate += timeDifference;
 		timeSinceWaitingUpdate += timeDifference;
-		timeSinceStartGameUpdate += timeDifference;
 
-		// Update the map of available players approximately every second
+		// Request the map of available players approximately every second
 		if (timeSincePlayerUpdate > 1) {
-			// Update the list of players
-			updateAvailablePlayers();
+			availablePlayersRequest = NetworkManager
+					.postMessageAsync("GET_OPEN_CONNECTIONS");
 
 			// Reset the time
 			timeSincePlayerUpdate = 0;
 		}
 		
-		// Update the list of high scores approximately every 10 seconds
+		// Request the list of high scores approximately every 2 seconds
 		if (timeSinceScoreUpdate > 2) {
-			// Update the list of players
-			updateHighScores();
+			highScoresRequest = NetworkManager
+					.postMessageAsync("GET_HIGH_SCORES");
 
 			// Reset the time
 			timeSinceScoreUpdate = 0;
 		}
+		
+		// Update the list of players once the server has responded
+		if (availablePlayersRequest != null
+				&& availablePlayersRequest.isDone()) {
+			updateAvailablePlayers(getResponse(availablePlayersRequest));
+			availablePlayersRequest = null;
+			setChanged();
+		}
+		
+		// Update the list of high scores once the server has responded
+		if (highScoresRequest != null && highScoresRequest.isDone()) {
+			updateHighScores(getResponse(highScoresRequest));
+			highScoresRequest = null;
+			setChanged();
+		}
 
 		// Update dots on strings
 		if (timeSinceWaitingUpdate > 0.25) {
@@ -164,39 +185,47 @@ public class Lobby extends Scene {
 
 			// Reset the time
 			timeSinceWaitingUpdate = 0;
+			setChanged();
 		}
 
-		// Check for instructions approximately every tenth of a second
-		if (timeSinceStartGameUpdate > 0.1) {
-			// Process queued instructions
-			String waitingInstructions = InstructionHandler.getMessages();
+		// Update the name entry box, redrawing it when it stops alerting
+		if (nameEntryBox.isAlerting()) setChanged();
+		nameEntryBox.update(timeDifference);
+	}
 
-			if (waitingInstructions != null) {
-				if (waitingInstructions.contains("START_GAME")) {
-					setWaitingForOpponent(false);
-					NetworkManager.setHost(false);
-					InstructionHandler.handleInstruction(waitingInstructions);
-				}
-			}
+	/**
+	 * The lobby only changes in response to input, the server's
+	 * responses and the waiting animation, so is only drawn when it
+	 * has changed.
+	 */
+	@Override
+	protected boolean tracksChanges() {
+		return true;
+	}
 
-			// Reset the time
-			timeSinceStartGameUpdate = 0;
+	/**
+	 * Gets the response to a completed request.
+	 * @param request - the completed request
+	 * @return the server's response, or <code>null</code> if the
+	 * 			request failed
+	 */
+	private String getResponse(Future<String> request) {
+		try {
+			return request.get();
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			return null;
 		}
-		
-		// Update the name entry box
-		nameEntryBox.update(timeDifference);
 	}
 
 	/**
-	 * Checks the server to get any updates to the map of available players.
+	 * Updates the map of available players from the server's response.
+	 * @param openConnectionsString - the server's response to a
+	 * 			GET_OPEN_CONNECTIONS message
 	 */
-	private void updateAvailablePlayers() {
+	private void updateAvailablePlayers(String openConnectionsString) {
 		// Clear the map of available players
 		availablePlayers = new LinkedHashMap<Integer, String>();
-				
-		// Get the available opponents from the server
-		String openConnectionsString = NetworkManager
-				.postMessage("GET_OPEN_CONNECTIONS");
 		
 		if (openConnectionsString != null) {
 			String[] openConnections = openConnectionsString.split("#");
@@ -260,16 +289,14 @@ public class Lobby extends Scene {
 	}
 	
 	/**
-	 * Checks the server to get any updates to the map of high scores.
+	 * Updates the map of high scores from the server's response.
+	 * @param collapsedHighScores - the server's response to a
+	 * 			GET_HIGH_SCORES message
 	 */
-	private void updateHighScores() {
+	private void updateHighScores(String collapsedHighScores) {
 		// Clear the list of high scores
 		highScores = new TreeMap<Long, ArrayList<String>>();
 
-		// Get the collapsed list of high scores from the server
-		String collapsedHighScores = NetworkManager
-				.postMessage("GET_HIGH_SCORES");
-
 		if (collapsedHighScores != null) {
 			String[] highScoresList = collapsedHighScores.split("#");
 
@@ -345,6 +372,12 @@ public class Lobby extends Scene {
 					nameEntryBoxPos.getX(),
 					(nameEntryBoxPos.getY() + Game.getYOffset() + 30),
 					2, 0);
+		} else if (notice != null) {
+			graphics.setColour(graphics.safetyOrange);
+
+			graphics.printCentred(notice, nameEntryBoxPos.getX(),
+					(nameEntryBoxPos.getY() + Game.getYOffset() + 30),
+					2, 0);
 		}
 
 		// Draw the available games table
@@ -558,7 +591,7 @@ public class Lobby extends Scene {
 		setWaitingForOpponent(false);
 		
 		NetworkManager.setHost(false);
-		NetworkManager.postMessage("LEAVING_LOBBY");
+		NetworkManager.postMessageAsync("LEAVING_LOBBY");
 	}
 
 	@Override
@@ -582,6 +615,7 @@ public class Lobby extends Scene {
 		if (isWaiting) {
 			// Set waiting for opponent
 			waitingForOpponent = true;
+			notice = null;
 
 			// Disable the name entry box
 			nameEntryBox.setEnabled(false);
@@ -610,6 +644,18 @@ public class Lobby extends Scene {
 		}
 	}
 	
+	/**
+	 * Sets the notice shown to the player when they return to the lobby.
+	 * <p>
+	 * This is used to tell the player why a game was abandoned. The
+	 * notice is cleared once the player creates or joins a game.
+	 * </p>
+	 * @param notice - the notice to show
+	 */
+	public static void setNotice(String notice) {
+		Lobby.notice = notice;
+	}
+
 	/**
 	 * Selects a game to play.
 	 * @param clientID - the ID of the client to connect to
@@ -619,7 +665,8 @@ public class Lobby extends Scene {
 		// of the game to connect to as a parameter
 		NetworkManager.setName(nameEntryBox.getText());
 		NetworkManager.setHost(false);
-		NetworkManager.postMessage("JOIN:" + clientID);
+		NetworkManager.postMessageAsync("JOIN:" + clientID);
+		notice = null;
 	}
 
 	/**
@@ -2,12 +2,23 @@ package scn;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 import org.newdawn.slick.Color;
 
+import btc.FrameProfiler;
+import btc.FrameProfiler.Phase;
 import btc.Main;
+import net.Command;
+import net.InterestManager;
+import net.Lockstep;
 import net.NetworkManager;
+import net.SnapshotBuffer;
 import lib.SpriteAnimation;
+import lib.TextBuilder;
 import lib.jog.audio;
 import lib.jog.graphics;
 import lib.jog.input;
@@ -18,7 +29,9 @@ import cls.Aircraft;
 import cls.Airport;
 import cls.FlightStrip;
 import cls.Player;
+import cls.PlayerUpdate;
 import cls.Powerup;
+import cls.Vector;
 import cls.Waypoint;
 
 public class MultiPlayerGame extends Game {
@@ -55,12 +68,33 @@ public class MultiPlayerGame extends Game {
 	/** The instruction to send to the server on ending the game */
 	private static String endGameInstruction;
 
+	/** The time (in seconds) between sending updates of the player's data */
+	private static final double DATA_UPDATE_INTERVAL = 0.1;
+
+	/** The maximum number of aircraft to send in full in each update */
+	private static final int AIRCRAFT_UPDATE_BUDGET = 4;
+
+	/** The priority of uninteresting aircraft, which are sent in every fifth update */
+	private static final double LOW_PRIORITY = 0.2;
+
+	/** The distance from the middle zone within which aircraft are sent in every update */
+	private static final int INTEREST_MARGIN = 100;
+
 	/** The x-coordinate at which the left middle zone border is located */
 	public static int leftEntryX = (int) (window.width() * (3d/7d));
 
 	/** The x-coordinate at which the right middle zone border is located */
 	public static int rightEntryX = window.width() - leftEntryX;
 
+	/** The x-coordinate of the left middle zone border, as the simulation
+	 * sees it, in airspace units (where it is drawn in a window of the
+	 * target size) */
+	public static final int LEFT_ENTRY = (int) (Main.TARGET_WIDTH * (3d/7d));
+
+	/** The x-coordinate of the right middle zone border, as the simulation
+	 * sees it, in airspace units */
+	public static final int RIGHT_ENTRY = Main.TARGET_WIDTH - LEFT_ENTRY;
+
 	/** The list of waypoints in the middle f the screen which can hold powerups */
 	private static Waypoint[] powerupPoints;
 
@@ -91,6 +125,48 @@ public class MultiPlayerGame extends Game {
 	/** The list of colliding aircraft passed from the opponent */
 	private Aircraft[] passedCollidingAircraft;
 
+	/** The buffered snapshots of the opposing player's aircraft */
+	private SnapshotBuffer remoteAircraftSnapshots;
+
+	/** The smoothed state of the remote aircraft currently being drawn */
+	private double[] remoteAircraftState;
+
+	/** Decides which of the player's aircraft to send in each update */
+	private InterestManager<String> aircraftInterest;
+
+	/** The names of the player's aircraft which have been sent in full */
+	private HashSet<String> sentAircraft;
+
+	/** The opponent's aircraft which have arrived, but not yet appeared */
+	private HashMap<String, Aircraft> arrivedAircraft;
+
+	/** The lockstep scheduler, or <code>null</code> if lockstep is disabled */
+	private Lockstep lockstep;
+
+	/** The time since the last lockstep tick was simulated */
+	private double tickTimeElapsed;
+
+	/** The time spent waiting for the opponent's lockstep commands */
+	private double stallTimeElapsed;
+
+	/** The time since the unacknowledged lockstep commands were sent */
+	private double resendTimeElapsed;
+
+	/** The time the last lockstep packet was sent with, in ms */
+	private long lockstepPacketTime;
+
+	/** The text of the player's lives, kept between frames */
+	private final TextBuilder livesLabel = new TextBuilder();
+
+	/** The text of the opponent's lives, kept between frames */
+	private final TextBuilder opponentLivesLabel = new TextBuilder();
+
+	/** The text of the player's score, kept between frames */
+	private final TextBuilder scoreLabel = new TextBuilder();
+
+	/** The text of the opponent's score, kept between frames */
+	private final TextBuilder opponentScoreLabel = new TextBuilder();
+
 
 	/**
 	 * Creates a new instance of a multiplayer game.
@@ -135,12 +211,35 @@ public class MultiPlayerGame extends Game {
 		exitingToLobby = false;
 		exitingToGameOver = false;
 		aircraftUnderTransfer = new ArrayList<Aircraft>();
+		remoteAircraftSnapshots = new SnapshotBuffer();
+		remoteAircraftState = new double[SnapshotBuffer.STATE_SIZE];
+		aircraftInterest = new InterestManager<String>(AIRCRAFT_UPDATE_BUDGET);
+		sentAircraft = new HashSet<String>();
+		arrivedAircraft = new HashMap<String, Aircraft>();
 		dataUpdateTimeElapsed = 0;
 		powerupGenerationTimeElapsed = 0;
 		powerUpInterval = 20;
+		tickTimeElapsed = 0;
+		stallTimeElapsed = 0;
+		resendTimeElapsed = 0;
+		lockstepPacketTime = 0;
+		lockstep = (Lockstep.isEnabled() && !replaying)
+				? new Lockstep() : null;
+
+		// Both clients must draw from the same random stream, starting
+		// at the same point, for the simulations to match
+		if (lockstep != null) {
+			// Record the game, so that it can be replayed
+			CommandLog.startRecording(this, CommandLog.LOCKSTEP,
+					playerPosition);
+
+			Main.setRandomSeed(Main.getRandomSeed());
+		}
 
-		// Set up the network manager
-		NetworkManager.startThread();
+		// Set up the network manager, unless the game is being replayed
+		if (!replaying) {
+			NetworkManager.startThread();
+		}
 
 		// Set up the players
 		setUpPlayers(playerPosition);
@@ -234,6 +333,11 @@ public class MultiPlayerGame extends Game {
 			gameOver(passedCollidingAircraft[0],
 					passedCollidingAircraft[1], fs1, fs2, true);
 		}
+
+		if (lockstep != null) {
+			updateLockstep(timeDifference);
+			return;
+		}
 		
 		// Update powerups
 		updatePowerups(timeDifference);
@@ -265,9 +369,11 @@ public class MultiPlayerGame extends Game {
 		// Update game data
 		dataUpdateTimeElapsed += timeDifference;
 
-		if (dataUpdateTimeElapsed > 0.01) {
+		if (dataUpdateTimeElapsed >= DATA_UPDATE_INTERVAL) {
+			dataUpdateTimeElapsed = 0;
+
 			// Send current player's data to the server
-			NetworkManager.sendData(System.currentTimeMillis(), player.clone());
+			sendPlayerUpdate();
 			
 			// If the player's name hasn't been set, set it
 			if (player.getName() == null) {
@@ -284,18 +390,256 @@ public class MultiPlayerGame extends Game {
 		updatePlayer(timeDifference, opposingPlayer);
 	}
 
+	/**
+	 * Updates the game in lockstep with the opponent.
+	 * <p>
+	 * Rather than exchanging the players' states, only the players'
+	 * commands are exchanged, and both clients simulate both players.
+	 * The simulation is advanced in fixed ticks of
+	 * {@link Lockstep#TICK_LENGTH}, and only once the opponent's
+	 * commands for the tick have arrived, so both simulations stay
+	 * identical.
+	 * </p>
+	 * <p>
+	 * While the opponent's commands are awaited, the commands which the
+	 * opponent has not acknowledged are resent, in case they were lost.
+	 * If nothing arrives within {@link Lockstep#STALL_TIMEOUT}, or the
+	 * opponent's simulation is found to differ from this client's, the
+	 * game is abandoned and the player returned to the lobby.
+	 * </p>
+	 * <p>
+	 * Powerups are not used in lockstep games, as their effects are
+	 * applied to the local player alone.
+	 * </p>
+	 * @param timeDifference - the time since the last update
+	 */
+	private void updateLockstep(double timeDifference) {
+		// Receive all of the opponent's commands which have arrived
+		while (updateData());
+
+		updateExplosions(timeDifference);
+		updateFlightStrips(timeDifference);
+		handleKeyboardControl();
+
+		if (player.getName() == null) {
+			player.setName(NetworkManager.getName());
+		}
+
+		// Don't try to catch up on more than a few ticks at once
+		tickTimeElapsed = Math.min(tickTimeElapsed + timeDifference,
+				Lockstep.INPUT_DELAY * Lockstep.TICK_LENGTH);
+		stallTimeElapsed += timeDifference;
+		resendTimeElapsed += timeDifference;
+
+		while (tickTimeElapsed >= Lockstep.TICK_LENGTH
+				&& lockstep.canAdvance()) {
+			tickTimeElapsed -= Lockstep.TICK_LENGTH;
+			stallTimeElapsed = 0;
+			resendTimeElapsed = 0;
+
+			// Send the commands issued since the last tick
+			sendLockstepPacket(lockstep.createBatch());
+
+			simulateTick();
+			lockstep.recordChecksum(getChecksum());
+			lockstep.advance();
+		}
+
+		// Resend the commands the opponent may have missed
+		if (resendTimeElapsed >= Lockstep.RESEND_INTERVAL) {
+			resendTimeElapsed = 0;
+			sendLockstepPacket(lockstep.createResend());
+		}
+
+		// Give up if the opponent has stopped responding, or if the
+		// simulations no longer match
+		if (stallTimeElapsed >= Lockstep.STALL_TIMEOUT) {
+			abandonGame("The opponent stopped responding (tick "
+					+ lockstep.getCurrentTick() + ")");
+		} else if (lockstep.getDesyncTick() != -1) {
+			abandonGame("The game went out of sync with the opponent's"
+					+ " (tick " + lockstep.getDesyncTick() + ")");
+		}
+	}
+
+	/**
+	 * Sends a lockstep packet to the opponent.
+	 * <p>
+	 * Each packet carries every batch of commands the opponent has not
+	 * acknowledged, so only the newest packet needs to arrive. Packets
+	 * are therefore sent as state, which is superseded by newer state
+	 * waiting to be sent, rather than queued as priority data behind
+	 * packets which are already out of date.
+	 * </p>
+	 * @param packet - the packet to send
+	 */
+	private void sendLockstepPacket(byte[] packet) {
+		// Packets sent in the same millisecond must still be ordered
+		lockstepPacketTime = Math.max(System.currentTimeMillis(),
+				lockstepPacketTime + 1);
+		NetworkManager.sendData(lockstepPacketTime, packet);
+	}
+
+	/**
+	 * Abandons the game, returning the player to the lobby.
+	 * <p>
+	 * The opponent is told the game has ended when it closes, and the
+	 * reason is shown to the player in the lobby.
+	 * </p>
+	 * @param reason - the reason the game was abandoned
+	 */
+	private void abandonGame(String reason) {
+		NetworkManager.print(new Exception(reason));
+		Lobby.setNotice(reason);
+		Main.closeScene();
+	}
+
+	/**
+	 * Calculates a checksum of the state of the simulation.
+	 * <p>
+	 * Clients whose simulations match calculate the same checksum.
+	 * Positions are taken in airspace units, so the checksum does not
+	 * depend on the size of the window.
+	 * </p>
+	 * @return the checksum of both players' state
+	 */
+	private int getChecksum() {
+		Player first = (player.getID() == 0) ? player : opposingPlayer;
+		Player second = (player.getID() == 0) ? opposingPlayer : player;
+		int checksum = 17;
+
+		for (Player p : new Player[] {first, second}) {
+			checksum = 31 * checksum + p.getScore();
+			checksum = 31 * checksum + p.getLives();
+
+			for (Aircraft aircraft : p.getAircraft()) {
+				Vector position = aircraft.getPosition();
+
+				checksum = 31 * checksum + aircraft.getName().hashCode();
+				checksum = 31 * checksum + hash(position.getAirspaceX());
+				checksum = 31 * checksum + hash(position.getAirspaceY());
+				checksum = 31 * checksum + hash(position.getZ());
+				checksum = 31 * checksum + hash(aircraft.getBearing());
+				checksum = 31 * checksum + aircraft.getScore();
+			}
+		}
+
+		return checksum;
+	}
+
+	/**
+	 * Hashes a double by its exact value.
+	 * @param value - the value to hash
+	 * @return the hash of the value
+	 */
+	private static int hash(double value) {
+		long bits = Double.doubleToLongBits(value);
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	/**
+	 * Simulates a single lockstep tick.
+	 * <p>
+	 * Both clients must apply the same commands to the same players
+	 * in the same order, so the players are always updated in order
+	 * of ID, regardless of which is local.
+	 * </p>
+	 */
+	private void simulateTick() {
+		Player first = (player.getID() == 0) ? player : opposingPlayer;
+		Player second = (player.getID() == 0) ? opposingPlayer : player;
+
+		applyCommands(first);
+		applyCommands(second);
+
+		simulate(CommandLog.recordStep(Lockstep.TICK_LENGTH));
+	}
+
+	/**
+	 * Checks whether this client simulates both players.
+	 * <p>
+	 * Lockstep games (including replayed games, which are always
+	 * lockstep games) do; other games are sent the opponent's aircraft.
+	 * </p>
+	 * @return whether both players are simulated by this client
+	 */
+	@Override
+	protected boolean simulatesBothPlayers() {
+		return lockstep != null || replaying;
+	}
+
+	/**
+	 * Advances the simulation by a single step.
+	 * <p>
+	 * Lockstep games (including replayed games, which are always
+	 * lockstep games) advance both players, in order of ID.
+	 * </p>
+	 * @param timeDifference - the length of the step
+	 */
+	@Override
+	protected void simulate(double timeDifference) {
+		if (!simulatesBothPlayers()) {
+			super.simulate(timeDifference);
+			return;
+		}
+
+		timeElapsed += timeDifference;
+
+		Player first = (player.getID() == 0) ? player : opposingPlayer;
+		Player second = (player.getID() == 0) ? opposingPlayer : player;
+
+		long start = System.nanoTime();
+		checkCollisions(timeDifference);
+		FrameProfiler.getInstance().record(Phase.COLLISION, start);
+
+		updatePlayer(timeDifference, first);
+		updatePlayer(timeDifference, second);
+
+		removeFinishedAircraft(first);
+		removeFinishedAircraft(second);
+	}
+
+	/**
+	 * Applies a player's commands for the current lockstep tick.
+	 * @param target - the player whose commands should be applied
+	 */
+	private void applyCommands(Player target) {
+		List<Command> commands = (target == player)
+				? lockstep.getLocalCommands() : lockstep.getRemoteCommands();
+
+		for (Command command : commands) {
+			CommandLog.recordCommand(command, target);
+			applyCommand(command, target);
+		}
+	}
+
 	/**
 	 * Sends and receives player and powerup data.
+	 * @return <code>true</code> if any data was received,
+	 * 			otherwise <code>false</code>
 	 */
-	private void updateData() {
+	private boolean updateData() {
 		// Get data from the server
 		Object data = NetworkManager.receiveData();
 
 		if (data != null) {
-			if (data instanceof Player) {
-				// Set the opposing player's data
-				Player newData = (Player) data;
-				opposingPlayer = newData;
+			if (data instanceof Player || data instanceof PlayerUpdate) {
+				if (data instanceof PlayerUpdate) {
+					// Merge the aircraft sent with those already known
+					PlayerUpdate update = (PlayerUpdate) data;
+					opposingPlayer = update.apply(opposingPlayer,
+							arrivedAircraft);
+
+					// Buffer the positions of the aircraft which were sent
+					recordRemoteSnapshots(update.getIncludedAircraft());
+				} else {
+					// Set the opposing player's data
+					opposingPlayer = (Player) data;
+
+					// Buffer the positions of the opponent's aircraft
+					recordRemoteSnapshots(opposingPlayer.snapshot()
+							.getAircraft());
+				}
 
 				// Check if any powerups have been claimed
 				for (int i = 0; i > powerupPoints.length; i++) {
@@ -320,6 +664,10 @@ public class MultiPlayerGame extends Game {
 						}
 					}
 				}
+			} else if (data instanceof Aircraft) {
+				// Hold the aircraft until it appears in an update
+				Aircraft aircraft = (Aircraft) data;
+				arrivedAircraft.put(aircraft.getName(), aircraft);
 			} else if (data instanceof Powerup) {
 				// Add the powerup to the player
 				player.addPowerup((Powerup) data);
@@ -333,6 +681,11 @@ public class MultiPlayerGame extends Game {
 						waypoint.setPowerup(updatedWaypoint.getPowerup());
 					}
 				}
+			} else if (data instanceof byte[]) {
+				// Receive the opponent's lockstep commands
+				if (lockstep != null) {
+					lockstep.receiveBatch((byte[]) data);
+				}
 			} else if (data.getClass().isArray()) {
 				// Set both players' data
 				Player[] playerArray = (Player[]) data;
@@ -340,6 +693,10 @@ public class MultiPlayerGame extends Game {
 				if (playerArray.length == 2) {
 					player = playerArray[1];
 					opposingPlayer = playerArray[0];
+
+					// Buffer the positions of the opponent's aircraft
+					recordRemoteSnapshots(opposingPlayer.snapshot()
+							.getAircraft());
 				}
 
 				// Check if any powerups have been claimed
@@ -355,8 +712,113 @@ public class MultiPlayerGame extends Game {
 				deselectAircraft(player);
 			}
 		}
+
+		return data != null;
 	}
 	
+	/**
+	 * Adds the opposing player's current aircraft positions to the
+	 * snapshot buffer.
+	 * <p>
+	 * Snapshots are stamped with the time at which the opponent sent
+	 * them, so that they can be drawn at an even pace regardless of
+	 * when they arrive.
+	 * </p>
+	 * @param updatedAircraft - the aircraft whose positions were
+	 * 			just received
+	 */
+	private void recordRemoteSnapshots(
+			Collection<Aircraft.Snapshot> updatedAircraft) {
+		long sentTime = NetworkManager.getLastReceivedTime();
+		long receivedTime = System.currentTimeMillis();
+		ArrayList<String> names = new ArrayList<String>();
+
+		for (Aircraft.Snapshot aircraft : updatedAircraft) {
+			remoteAircraftSnapshots.addSnapshot(aircraft.getName(),
+					sentTime, receivedTime,
+					aircraft.getRelativeX(),
+					aircraft.getRelativeY(),
+					aircraft.getAltitude(),
+					aircraft.getBearing());
+		}
+
+		for (Aircraft aircraft : opposingPlayer.getAircraft()) {
+			names.add(aircraft.getName());
+		}
+
+		// Forget any aircraft which the opponent no longer has
+		remoteAircraftSnapshots.retain(names);
+	}
+
+	/**
+	 * Sends the player's data to the server.
+	 * <p>
+	 * To keep the bandwidth used independent of the number of aircraft,
+	 * only some of the player's aircraft are sent in full in each
+	 * update, chosen by {@link #aircraftInterest}. Aircraft which could
+	 * interact with the opponent's are sent in every update; the rest
+	 * are sent at a lower rate, and are simulated by the opponent
+	 * in between.
+	 * </p>
+	 * <p>
+	 * Updates are built from a snapshot of the player, so the network
+	 * thread never reads the live game state. Updates only carry the
+	 * aircraft's changing state, so each new aircraft is also sent
+	 * in full, once, as priority data. If the priority data cannot be
+	 * queued, the aircraft is sent again with the next update.
+	 * </p>
+	 */
+	private void sendPlayerUpdate() {
+		ArrayList<String> names = new ArrayList<String>();
+
+		for (Aircraft aircraft : player.getAircraft()) {
+			aircraftInterest.accumulate(aircraft.getName(),
+					getPriority(aircraft));
+			names.add(aircraft.getName());
+
+			if (!sentAircraft.contains(aircraft.getName())
+					&& NetworkManager.sendData(-1, aircraft.clone())) {
+				sentAircraft.add(aircraft.getName());
+			}
+		}
+
+		// Forget any aircraft which the player no longer has
+		aircraftInterest.retain(names);
+		sentAircraft.retainAll(names);
+
+		NetworkManager.sendData(System.currentTimeMillis(),
+				new PlayerUpdate(player.snapshot(), aircraftInterest.select()));
+	}
+
+	/**
+	 * Gets how often one of the player's aircraft should be sent.
+	 * @param aircraft - the aircraft
+	 * @return {@link InterestManager#FULL_RATE} if the aircraft could
+	 * 			interact with the opponent's, otherwise {@link #LOW_PRIORITY}
+	 */
+	private double getPriority(Aircraft aircraft) {
+		// Aircraft in or approaching the shared middle zone
+		if (aircraft.isNearMiddleZone(INTEREST_MARGIN)) {
+			return InterestManager.FULL_RATE;
+		}
+
+		// Aircraft being controlled by the player
+		if (aircraft.equals(player.getSelectedAircraft())
+				|| aircraftUnderTransfer.contains(aircraft)) {
+			return InterestManager.FULL_RATE;
+		}
+
+		// Aircraft heading for a powerup
+		for (Waypoint waypoint : powerupPoints) {
+			if (waypoint != null && waypoint.getPowerup() != null
+					&& aircraft.isHeadingTo(waypoint)) {
+				return InterestManager.FULL_RATE;
+			}
+		}
+
+		return LOW_PRIORITY;
+	}
+
 	private void updatePowerups(double timeDifference) {
 		powerupGenerationTimeElapsed += timeDifference;
 
@@ -397,20 +859,38 @@ public class MultiPlayerGame extends Game {
 		drawMiddleZone();
 	}
 
+	/**
+	 * Draws the map features which rarely change.
+	 * <p>
+	 * The opponent's airports and waypoints, and the points powerups
+	 * appear at, are drawn as well as the player's. Powerups themselves
+	 * are drawn each frame.
+	 * </p>
+	 */
 	@Override
-	protected void drawMapFeatures() {
+	protected void drawStaticMapFeatures() {
+		drawBackground();
+
 		drawAirports(player);
 		drawAirports(opposingPlayer);
 
 		drawWaypoints(player);
 		drawWaypoints(opposingPlayer);
 
+		drawPowerupPoints();
+	}
+
+	@Override
+	protected void drawMapFeatures() {
+		drawAirportStatus(player);
+		drawAirportStatus(opposingPlayer);
+
 		drawAircraft(player);
-		drawAircraft(opposingPlayer);
+		drawRemoteAircraft(opposingPlayer);
 
 		drawSelectedAircraft();
 
-		drawPowerupPoints();
+		drawPowerups();
 		
 		// Draw any explosions
 		graphics.setColour(graphics.red);
@@ -426,6 +906,54 @@ public class MultiPlayerGame extends Game {
 		drawPlayerNames();
 	}
 
+	/**
+	 * Draws the opposing player's aircraft.
+	 * <p>
+	 * Aircraft are drawn at the positions given by the snapshot buffer,
+	 * rather than their most recently received positions, so that they
+	 * move smoothly between network updates.
+	 * </p>
+	 * <p>
+	 * Aircraft which have not yet been received (e.g. those currently
+	 * being transferred) are drawn at their simulated positions.
+	 * </p>
+	 * @param remotePlayer - the player whose aircraft should be drawn
+	 */
+	private void drawRemoteAircraft(Player remotePlayer) {
+		graphics.setColour(255, 255, 255);
+
+		long now = System.currentTimeMillis();
+
+		for (Aircraft aircraft : remotePlayer.getAircraft()) {
+			Vector offset = null;
+
+			if (remoteAircraftSnapshots.sample(aircraft.getName(), now,
+					remoteAircraftState)) {
+				// Offset the aircraft from its simulated position
+				// to its smoothed position
+				offset = new Vector(
+						remoteAircraftState[SnapshotBuffer.X],
+						remoteAircraftState[SnapshotBuffer.Y],
+						aircraft.getPosition().getZ(), true)
+						.sub(aircraft.getPosition());
+
+				aircraft.draw(remotePlayer.getAircraftColour(),
+						remotePlayer.getControlAltitude(), offset,
+						remoteAircraftState[SnapshotBuffer.BEARING]);
+			} else {
+				aircraft.draw(remotePlayer.getAircraftColour(),
+						remotePlayer.getControlAltitude());
+			}
+
+			// Draw the score and path from where the aircraft is drawn,
+			// so that they move with it
+			aircraft.drawScore(offset);
+			if (aircraft.isMouseOver()) {
+				aircraft.drawFlightPath(offset);
+			}
+		}
+	}
+
 	/**
 	 * Draws the middle zone.
 	 * <p>
@@ -451,13 +979,22 @@ public class MultiPlayerGame extends Game {
 
 	/**
 	 * Draws the middle waypoints.
+	 * <p>
+	 * These are drawn in the same colour whether or not a powerup is
+	 * attached, so do not need to be drawn again when powerups appear.
+	 * </p>
 	 */
 	private void drawPowerupPoints() {
-		// Draw the power-up points
 		for (Waypoint waypoint : powerupPoints) {
-			// Draw the waypoint
 			waypoint.draw(graphics.blue_transp);
+		}
+	}
 
+	/**
+	 * Draws the powerups attached to the middle waypoints.
+	 */
+	private void drawPowerups() {
+		for (Waypoint waypoint : powerupPoints) {
 			// If the waypoint has a powerup attached, draw the powerup
 			if (waypoint.getPowerup() != null) {
 				waypoint.getPowerup().draw(waypoint.getLocation().getX(),
@@ -469,32 +1006,33 @@ public class MultiPlayerGame extends Game {
 	private void drawLives() { 
 		graphics.setColour(Color.white);
 		
-		String livesString =
-				String.format("%6d", player.getLives());
-		String opponentLivesString =
-				String.format("%6d", opposingPlayer.getLives());
+		String livesString = livesLabel.clear().append("Lives : ")
+				.append(player.getLives(), 6, ' ').toString();
+		String opponentLivesString = opponentLivesLabel.clear()
+				.append("Opponent's Lives : ")
+				.append(opposingPlayer.getLives(), 6, ' ').toString();
 
 		switch (playerPosition) {
 		case 0:
 			// Display the player's lives
-			graphics.print("Lives : " + livesString,
+			graphics.print(livesString,
 					getXOffset() + 32,
 					window.height() - getYOffset() + 5, 1);
 
 			// Display the opponent's lives
-			graphics.printRight("Opponent's Lives : " + opponentLivesString,
+			graphics.printRight(opponentLivesString,
 					window.width() - getXOffset() - 32,
 					window.height() - getYOffset() + 5, 1, 0);
 
 			break; 
 		case 1: 
 			// Display the player's lives
-			graphics.printRight("Lives : " + livesString,
+			graphics.printRight(livesString,
 					window.width() - getXOffset() - 32,
 					window.height() - getYOffset() + 5, 1, 0);
 
 			// Display the opponent's lives
-			graphics.print("Opponent's Lives : " + opponentLivesString,
+			graphics.print(opponentLivesString,
 					getXOffset() + 32,
 					window.height() - getYOffset() + 5, 1);
 
@@ -505,32 +1043,33 @@ public class MultiPlayerGame extends Game {
 	private void drawScore() {
 		graphics.setColour(Color.white);
 		
-		String scoreString =
-				String.format("%6d", player.getScore());
-		String opponentScoreString =
-				String.format("%6d", opposingPlayer.getScore());
+		String scoreString = scoreLabel.clear().append("Score : ")
+				.append(player.getScore(), 6, ' ').toString();
+		String opponentScoreString = opponentScoreLabel.clear()
+				.append("Opponent's Score : ")
+				.append(opposingPlayer.getScore(), 6, ' ').toString();
 
 		switch (playerPosition) {
 		case 0:
 			// Display the player's score
-			graphics.print("Score : " + scoreString,
+			graphics.print(scoreString,
 					getXOffset() + 32,
 					window.height() - getYOffset() + 15, 1);
 
 			// Display the opponent's score
-			graphics.printRight("Opponent's Score : " + opponentScoreString,
+			graphics.printRight(opponentScoreString,
 					window.width() - getXOffset() - 32,
 					window.height() - getYOffset() + 15, 1, 0);
 
 			break;
 		case 1:
 			// Display the player's score
-			graphics.printRight("Score : " + scoreString,
+			graphics.printRight(scoreString,
 					window.width() - getXOffset() - 32,
 					window.height() - getYOffset() + 15, 1, 0);
 			
 			// Display the opponent's score
-			graphics.print("Opponent's Score : " + opponentScoreString,
+			graphics.print(opponentScoreString,
 					getXOffset() + 32,
 					window.height() - getYOffset() + 15, 1);
 			
@@ -627,16 +1166,51 @@ public class MultiPlayerGame extends Game {
 
 		switch (key) {
 		case input.KEY_T:
-			if (player.getSelectedAircraft() != null) {
-				aircraftUnderTransfer.add(player.getSelectedAircraft());
-				opposingPlayer.getAircraft().add(player.getSelectedAircraft());
-				player.getAircraft().remove(player.getSelectedAircraft());
+			issueCommand(new Command(Command.Type.TRANSFER));
+		}
+	}
 
-				NetworkManager.sendData(-1, new Player[] {player, opposingPlayer});
+	@Override
+	public void issueCommand(Command command) {
+		if (lockstep != null) {
+			// Apply the command on the same tick as the opponent
+			lockstep.issue(command);
+		} else {
+			super.issueCommand(command);
+		}
+	}
 
-				deselectAircraft(player);
-			}
+	@Override
+	public void applyCommand(Command command, Player player) {
+		if (command.getType() != Command.Type.TRANSFER) {
+			super.applyCommand(command, player);
+			return;
+		}
+
+		Aircraft selected = player.getSelectedAircraft();
+
+		if (selected == null) return;
+
+		if (lockstep != null) {
+			// Both clients move the aircraft, so nothing needs to be sent
+			Player receiver = (player == this.player)
+					? opposingPlayer : this.player;
+
+			player.getFlightStrips().remove(
+					getFlightStripFromAircraft(selected, player));
+			player.getAircraft().remove(selected);
+			receiver.getAircraft().add(selected);
+			receiver.getFlightStrips().add(new FlightStrip(selected,
+					FlightStrip.BACKGROUND_COLOURS[receiver.getID()]));
+		} else {
+			aircraftUnderTransfer.add(selected);
+			opposingPlayer.getAircraft().add(selected);
+			player.getAircraft().remove(selected);
+
+			NetworkManager.sendData(-1, new Player[] {player, opposingPlayer});
 		}
+
+		deselectAircraft(player);
 	}
 
 	/**
@@ -705,6 +1279,9 @@ public class MultiPlayerGame extends Game {
 				airport.clear();
 			}
 
+			// A replay ends with its log, rather than changing scene
+			if (replaying) return;
+
 			if (!override) {
 				endGameInstruction = "GAME_OVER:" + plane1.getName()
 						+ ":" + plane2.getName();
@@ -726,7 +1303,8 @@ public class MultiPlayerGame extends Game {
 			updateData();
 			
 			Main.closeScene();
-			Main.setScene(new GameOverMulti(player, opposingPlayer));
+			Main.setScene(new GameOverMulti(player.snapshot(),
+					opposingPlayer.snapshot()));
 		}
 	}
 
@@ -887,14 +1465,16 @@ public class MultiPlayerGame extends Game {
 	public void close() {
 		super.close();
 
+		if (replaying) return;
+
 		// Send a message to the opponent to let
 		// them know we're closing
 		NetworkManager.stopThread();
 		
 		if (endGameInstruction == null) {
-			NetworkManager.postMessage("END_GAME");
+			NetworkManager.postMessageAsync("END_GAME");
 		} else {
-			NetworkManager.postMessage(endGameInstruction);
+			NetworkManager.postMessageAsync(endGameInstruction);
 			endGameInstruction = null;
 		}
 	}
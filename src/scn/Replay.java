@@ -0,0 +1,423 @@
+package scn;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import net.Command;
+import btc.Main;
+import cls.Player;
+import lib.jog.graphics;
+import lib.jog.input;
+import lib.jog.window;
+import lib.jog.audio.Sound;
+import scn.Game.DifficultySetting;
+
+/**
+ * Replays a game recorded by {@link CommandLog}.
+ * <p>
+ * A new game is set up as the recorded game was, and the recorded
+ * records are applied to it in order: seeds re-seed the random
+ * number generator, commands are applied to the player they were
+ * applied to, and steps advance the simulation by the recorded
+ * length. Live input is ignored, so the game plays out exactly as
+ * it did when it was recorded.
+ * </p>
+ * <p>
+ * As a scene, the replay is drawn, and played at a multiple of the
+ * speed it was recorded at. A replay can be started by passing the
+ * log's path in the {@link #FILE_PROPERTY} system property.
+ * Alternatively, {@link #main(String[])} plays logs without drawing
+ * them, as fast as they can be simulated, e.g. to reproduce a bug
+ * or to benchmark the simulation.
+ * </p>
+ * <p>
+ * The game is simulated in airspace units, which do not depend on
+ * the size of the window (see {@link cls.Vector}), so a game replays
+ * exactly in a window of any size. Single player games can be
+ * replayed without being drawn, but multiplayer games load their
+ * graphics when set up, so can only be replayed while drawn.
+ * </p>
+ */
+public class Replay extends Scene {
+
+	/** The system property giving a log to replay when the game starts */
+	public static final String FILE_PROPERTY = "flyhard.replay";
+
+	/** The system property giving the speed to replay at */
+	public static final String SPEED_PROPERTY = "flyhard.replay.speed";
+
+	/** The file being replayed */
+	private final File file;
+
+	/** The stream the log is read from */
+	private final DataInputStream in;
+
+	/** The type of game recorded */
+	private final int type;
+
+	/** The difficulty of the recorded game */
+	private final DifficultySetting difficulty;
+
+	/** The position of the player who recorded the game */
+	private final int playerPosition;
+
+	/** The width of the window the game was recorded in, which it is
+	 * replayed in when not drawn */
+	private final int width;
+
+	/** The height of the window the game was recorded in */
+	private final int height;
+
+	/** The multiple of the recorded speed to replay at, when drawn */
+	private final double speed;
+
+	/** The game being replayed */
+	private Game game;
+
+	/** The length of the most recent step, in microseconds */
+	private long stepLength;
+
+	/** The length of the next step, or a negative number if not yet read */
+	private double nextStep;
+
+	/** The time which has passed, and has not yet been replayed */
+	private double timeOwed;
+
+	/** The number of steps replayed */
+	private int stepCount;
+
+	/** Whether the end of the log has been reached */
+	private boolean finished;
+
+
+	/**
+	 * Constructs a new replay, reading the log's header.
+	 * @param file - the log to replay
+	 * @param speed - the multiple of the recorded speed to replay at
+	 * @throws IOException if the file could not be read, or is not
+	 * 			a valid log
+	 */
+	public Replay(File file, double speed) throws IOException {
+		this.file = file;
+		this.in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		this.speed = speed;
+
+		try {
+			if (in.readInt() != CommandLog.MAGIC) {
+				throw new IOException("Not a command log: " + file);
+			}
+
+			int version = in.readShort();
+			if (version < 1 || version > CommandLog.VERSION) {
+				throw new IOException("Unsupported log version: " + version);
+			}
+
+			type = in.readUnsignedByte();
+			if (type != CommandLog.SINGLE_PLAYER
+					&& type != CommandLog.LOCKSTEP) {
+				throw new IOException("Invalid game type: " + type);
+			}
+
+			int difficulty = in.readUnsignedByte();
+			if (difficulty >= DifficultySetting.values().length) {
+				throw new IOException("Invalid difficulty: " + difficulty);
+			}
+
+			this.difficulty = DifficultySetting.values()[difficulty];
+			this.playerPosition = in.readUnsignedByte();
+			this.width = in.readUnsignedShort();
+			this.height = in.readUnsignedShort();
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+
+		this.stepLength = 0;
+		this.nextStep = -1;
+	}
+
+
+	// Implemented methods --------------------------------------------------------------
+
+	/**
+	 * Sets up the game to replay, as the recorded game was set up.
+	 */
+	@Override
+	public void start() {
+		if (type == CommandLog.LOCKSTEP) {
+			game = MultiPlayerGame.createMultiPlayerGame(difficulty,
+					playerPosition);
+		} else {
+			game = SinglePlayerGame.createSinglePlayerGame(difficulty);
+		}
+
+		game.replaying = true;
+		game.start();
+
+		timeOwed = 0;
+		stepCount = 0;
+		finished = false;
+	}
+
+	/**
+	 * Replays the steps which fit into the time passed.
+	 * @param timeDifference - the time since the last update
+	 */
+	@Override
+	public void update(double timeDifference) {
+		timeOwed += timeDifference * speed;
+
+		while (!finished) {
+			if (nextStep < 0) {
+				nextStep = readStep();
+				if (nextStep < 0) break;
+			}
+
+			if (timeOwed < nextStep) break;
+
+			timeOwed -= nextStep;
+			game.simulate(nextStep);
+			stepCount++;
+			nextStep = -1;
+		}
+	}
+
+	/**
+	 * Draws the game being replayed.
+	 */
+	@Override
+	public void draw() {
+		game.draw();
+
+		graphics.setColour(graphics.white);
+		graphics.print((finished ? "Replay finished: " : "Replaying: ")
+				+ file.getName() + " (" + stepCount + " steps)",
+				Game.getXOffset(), window.height() - 20);
+	}
+
+	/**
+	 * Closes the game being replayed, and the log.
+	 */
+	@Override
+	public void close() {
+		if (game != null) {
+			game.close();
+		}
+
+		try {
+			in.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Plays a sound effect requested by the game.
+	 * @param sound - the sound to play
+	 */
+	@Override
+	public void playSound(Sound sound) {
+		game.playSound(sound);
+	}
+
+	@Override
+	public void mousePressed(int key, int x, int y) {}
+
+	@Override
+	public void mouseReleased(int key, int x, int y) {}
+
+	@Override
+	public void keyPressed(int key) {}
+
+	/**
+	 * Stops the replay when escape is released.
+	 * @param key - the key which was released
+	 */
+	@Override
+	public void keyReleased(int key) {
+		if (key == input.KEY_ESCAPE) {
+			Main.closeScene();
+		}
+	}
+
+
+	// Replaying ------------------------------------------------------------------------
+
+	/**
+	 * Replays the next step of the game.
+	 * <p>
+	 * The records before the step are applied, then the simulation is
+	 * advanced.
+	 * </p>
+	 * @return <code>true</code> if a step was replayed,
+	 * 			<code>false</code> if the end of the log has been reached
+	 */
+	public boolean step() {
+		double length = (nextStep >= 0) ? nextStep : readStep();
+		nextStep = -1;
+
+		if (length < 0) return false;
+
+		game.simulate(length);
+		stepCount++;
+		return true;
+	}
+
+	/**
+	 * Applies the records before the next step, and reads the step.
+	 * <p>
+	 * If the log ends part of the way through a record (e.g. if the
+	 * game stopped before the log was closed), the log is treated as
+	 * ending before that record.
+	 * </p>
+	 * @return the length of the next step, in seconds, or -1 if the
+	 * 			end of the log has been reached
+	 */
+	private double readStep() {
+		try {
+			while (true) {
+				int tag = in.read();
+
+				switch (tag) {
+				case -1:
+					finished = true;
+					return -1;
+				case CommandLog.STEP:
+					stepLength += CommandLog.readVarLong(in);
+					return CommandLog.toSeconds(stepLength);
+				case CommandLog.COMMAND:
+					Player player = getPlayer(in.readUnsignedByte());
+					Command command = Command.read(in);
+					if (player != null) {
+						game.applyCommand(command, player);
+					}
+					break;
+				case CommandLog.SEED:
+					Main.setRandomSeed(in.readInt());
+					break;
+				case CommandLog.STATE:
+					int version = in.readShort();
+					byte[] state = new byte[in.readInt()];
+					in.readFully(state);
+					new SaveGame(difficulty, version, ByteBuffer.wrap(state))
+							.restore((SinglePlayerGame) game);
+					break;
+				default:
+					throw new IOException("Invalid record: " + tag);
+				}
+			}
+		} catch (EOFException e) {
+			// The log was cut short
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+		}
+
+		finished = true;
+		return -1;
+	}
+
+	/**
+	 * Gets one of the game's players by ID.
+	 * @param id - the ID of the player
+	 * @return the player, or <code>null</code> if there is no player
+	 * 			with the ID
+	 */
+	private Player getPlayer(int id) {
+		if (game.getPlayer().getID() == id) {
+			return game.getPlayer();
+		} else if (game instanceof MultiPlayerGame) {
+			return ((MultiPlayerGame) game).getOpposingPlayer();
+		} else {
+			return null;
+		}
+	}
+
+
+	// Accessors ------------------------------------------------------------------------
+
+	/**
+	 * Gets the game being replayed.
+	 * @return the game, or <code>null</code> if the replay has not
+	 * 			been started
+	 */
+	public Game getGame() {
+		return game;
+	}
+
+	/**
+	 * Gets the number of steps which have been replayed.
+	 * @return the number of steps replayed
+	 */
+	public int getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Checks whether the end of the log has been reached.
+	 * @return <code>true</code> if the whole log has been replayed,
+	 * 			otherwise <code>false</code>
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+
+	// Headless playback ----------------------------------------------------------------
+
+	/**
+	 * Replays each of the logs given, without drawing them, as fast
+	 * as possible.
+	 * <p>
+	 * A summary of each game is printed, along with how long it took
+	 * to replay. The window must not have been created.
+	 * </p>
+	 * @param args - the paths of the logs to replay
+	 */
+	public static void main(String[] args) {
+		for (String path : args) {
+			Replay replay;
+
+			try {
+				replay = new Replay(new File(path), 1);
+			} catch (IOException e) {
+				e.printStackTrace();
+				continue;
+			}
+
+			if (replay.type == CommandLog.LOCKSTEP) {
+				replay.close();
+				System.out.println(path + ": multiplayer games can only"
+						+ " be replayed while drawn");
+				continue;
+			}
+
+			window.setHeadlessSize(replay.width, replay.height);
+
+			long startTime = System.nanoTime();
+
+			replay.start();
+			while (replay.step());
+
+			double wallTime = (System.nanoTime() - startTime) / 1e9;
+			double gameTime = replay.game.getTime();
+			Player player = replay.game.getPlayer();
+
+			replay.close();
+
+			System.out.println(String.format("%s: %d steps, %.1fs of play"
+					+ " replayed in %.3fs (%.0fx real time); score %d,"
+					+ " %d lives, %d landed, %d cleared", path,
+					replay.stepCount, gameTime, wallTime,
+					gameTime / Math.max(wallTime, 1e-9), player.getScore(),
+					player.getLives(), player.getPlanesLanded(),
+					player.getPlanesCleared()));
+		}
+	}
+
+}
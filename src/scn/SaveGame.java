@@ -0,0 +1,555 @@
+package scn;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import btc.Main;
+import cls.Aircraft;
+import cls.Airport;
+import cls.FlightStrip;
+import cls.Player;
+import scn.Game.DifficultySetting;
+
+/**
+ * A saved single player game.
+ * <p>
+ * A save is taken on the game thread by encoding the game's state
+ * into memory, which takes well under a millisecond. The save can
+ * then be written to disk on a background thread with
+ * {@link #writeAsync(File)}, so saving never stalls a frame.
+ * </p>
+ * <p>
+ * Save files are laid out as follows (big-endian):
+ * <ul>
+ * <li>int - magic number ("FHSG")</li>
+ * <li>short - format version</li>
+ * <li>byte - difficulty</li>
+ * <li>int - length of the state</li>
+ * <li>int - CRC-32 of the state</li>
+ * <li>the remaining bytes - the state</li>
+ * </ul>
+ * The state holds the game time, the random seed, the player's
+ * score and statistics, the player's aircraft (including their
+ * flight plans), and the aircraft in each airport's hangar.
+ * Waypoints and airports are stored as indices, as the airspace
+ * is the same in every game.
+ * </p>
+ * <p>
+ * Save files are read into memory in one go, and the state is only
+ * decoded once the game has been started, straight from the
+ * buffer it was read into. The file is closed once read, so the
+ * save can be written again or deleted while the game is played.
+ * </p>
+ */
+public class SaveGame {
+
+	/** Identifies save files ("FHSG") */
+	private static final int MAGIC = 0x46485347;
+
+	/** The current version of the save file format */
+	public static final int VERSION = 1;
+
+	/** The length of the file header, in bytes */
+	private static final int HEADER_SIZE = 4 + 2 + 1 + 4 + 4;
+
+	/** The file games are saved to */
+	private static final File SAVE_FILE = new File(
+			System.getProperty("user.home"), ".flyhard" + File.separator
+					+ "save.dat");
+
+	/** The executor used to write saves in the background */
+	private static ExecutorService writer =
+			Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Save Writer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/** The most recent save being written in the background */
+	private static Future<Void> pendingWrite;
+
+	/** The difficulty of the saved game */
+	private final DifficultySetting difficulty;
+
+	/** The version of the format the state was saved in */
+	private final int version;
+
+	/** The saved state */
+	private final ByteBuffer state;
+
+
+	/**
+	 * Constructs a new save.
+	 * @param difficulty - the difficulty of the saved game
+	 * @param version - the version of the format the state was saved in
+	 * @param state - the saved state
+	 */
+	SaveGame(DifficultySetting difficulty, int version,
+			ByteBuffer state) {
+		this.difficulty = difficulty;
+		this.version = version;
+		this.state = state;
+	}
+
+
+	// Saving ---------------------------------------------------------------------------
+
+	/**
+	 * Saves a game's current state.
+	 * <p>
+	 * This must be called from the game thread. The game's random
+	 * number generator is re-seeded with a seed drawn from it, and
+	 * the seed is saved, so that the resumed game generates the
+	 * same flights as the game would have done.
+	 * </p>
+	 * @param game - the game to save
+	 * @return the save, or <code>null</code> if the game's state could
+	 * 			not be saved
+	 */
+	public static SaveGame capture(SinglePlayerGame game) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		Player player = game.player;
+
+		try {
+			int seed = Main.getRandom().nextInt();
+			Main.setRandomSeed(seed);
+
+			out.writeDouble(Game.timeElapsed);
+			out.writeInt(seed);
+
+			out.writeDouble(player.getFlightGenerationTimeElapsed());
+			out.writeInt(player.getControlAltitude());
+			out.writeInt(player.getScore());
+			out.writeInt(player.getLives());
+			out.writeInt(player.getPlanesCollided());
+			out.writeInt(player.getPowerUpsCollected());
+			out.writeInt(player.getPlanesLanded());
+			out.writeInt(player.getPlanesTakenOff());
+			out.writeInt(player.getPlanesCleared());
+
+			out.writeInt(player.getAircraft().size());
+			for (Aircraft aircraft : player.getAircraft()) {
+				aircraft.write(out, player.getWaypoints(), player.getAirports());
+			}
+
+			out.writeInt(player.getAircraft()
+					.indexOf(player.getSelectedAircraft()));
+
+			for (Airport airport : player.getAirports()) {
+				out.writeBoolean(airport.isActive);
+				out.writeInt(airport.aircraftHangar.size());
+
+				for (int i = 0; i < airport.aircraftHangar.size(); i++) {
+					out.writeDouble(airport.timeEntered.get(i));
+					airport.aircraftHangar.get(i).write(out,
+							player.getWaypoints(), player.getAirports());
+				}
+			}
+		} catch (IOException e) {
+			// Writing to a byte array only fails if the state is invalid
+			e.printStackTrace();
+			return null;
+		}
+
+		return new SaveGame(game.difficulty, VERSION,
+				ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	/**
+	 * Writes the save to a file.
+	 * <p>
+	 * The save is written to a temporary file, which then replaces
+	 * the file, so the file is never left partly written.
+	 * </p>
+	 * @param file - the file to write to
+	 * @throws IOException if the file could not be written
+	 */
+	public void write(File file) throws IOException {
+		ByteBuffer body = state.duplicate();
+		CRC32 crc = new CRC32();
+		crc.update(body.array(), body.arrayOffset() + body.position(),
+				body.remaining());
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putShort((short) version);
+		header.put((byte) difficulty.ordinal());
+		header.putInt(body.remaining());
+		header.putInt((int) crc.getValue());
+		header.flip();
+
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+
+		File temporary = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temporary);
+
+		try {
+			ByteBuffer[] buffers = new ByteBuffer[] {header, body};
+			while (body.hasRemaining()) {
+				out.getChannel().write(buffers);
+			}
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		try {
+			Files.move(temporary.toPath(), file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// The move may not be atomic on this file system, or may
+			// not be able to replace the old save in one step
+			Files.move(temporary.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Writes the save to a file on a background thread.
+	 * <p>
+	 * Saves are written in the order in which this is called. Any
+	 * error is printed.
+	 * </p>
+	 * @param file - the file to write to
+	 */
+	public void writeAsync(final File file) {
+		synchronized (writer) {
+			pendingWrite = writer.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					try {
+						write(file);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Waits for any save being written in the background to finish.
+	 * @param timeout - the longest time to wait, in ms
+	 */
+	public static void awaitWrites(long timeout) {
+		Future<Void> write;
+
+		synchronized (writer) {
+			write = pendingWrite;
+		}
+
+		if (write == null) return;
+
+		try {
+			write.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+
+	// Loading --------------------------------------------------------------------------
+
+	/**
+	 * Reads a save from a file.
+	 * <p>
+	 * The file is read into memory, and its header and checksum are
+	 * checked, but the state is not decoded until the save is
+	 * restored into a game.
+	 * </p>
+	 * @param file - the file to read
+	 * @return the save
+	 * @throws IOException if the file could not be read, or is not
+	 * 			a valid save
+	 */
+	public static SaveGame read(File file) throws IOException {
+		awaitWrites(Long.MAX_VALUE);
+
+		ByteBuffer buffer;
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+
+		try {
+			// Read into the heap rather than mapping the file, as a
+			// mapped file cannot be replaced or deleted on Windows
+			// until the mapping is collected
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Not a save file: " + file);
+			}
+
+			buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) break;
+			}
+			buffer.flip();
+		} finally {
+			channel.close();
+		}
+
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a save file: " + file);
+		}
+
+		int version = buffer.getShort();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported save version: " + version);
+		}
+
+		int difficulty = buffer.get();
+		if (difficulty < 0 || difficulty >= DifficultySetting.values().length) {
+			throw new IOException("Invalid difficulty: " + difficulty);
+		}
+
+		int length = buffer.getInt();
+		int checksum = buffer.getInt();
+
+		if (length != buffer.remaining()) {
+			throw new IOException("Save file is truncated: " + file);
+		}
+
+		ByteBuffer state = buffer.slice();
+
+		if (checksum != checksum(state.duplicate())) {
+			throw new IOException("Save file is corrupt: " + file);
+		}
+
+		return new SaveGame(DifficultySetting.values()[difficulty], version,
+				state);
+	}
+
+	/**
+	 * Restores the saved state into a game.
+	 * <p>
+	 * The game must already have been started, so that its airspace
+	 * has been set up. The game is only changed if the whole state
+	 * can be read.
+	 * </p>
+	 * @param game - the game to restore the state into
+	 * @throws IOException if the state could not be read
+	 */
+	void restore(SinglePlayerGame game) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new ByteBufferInputStream(state.duplicate()));
+		Player player = game.player;
+
+		try {
+			double timeElapsed = in.readDouble();
+			int seed = in.readInt();
+
+			double flightGenerationTimeElapsed = in.readDouble();
+			int controlAltitude = in.readInt();
+			int score = in.readInt();
+			int lives = in.readInt();
+			int planesCollided = in.readInt();
+			int powerUpsCollected = in.readInt();
+			int planesLanded = in.readInt();
+			int planesTakenOff = in.readInt();
+			int planesCleared = in.readInt();
+
+			ArrayList<Aircraft> aircraft = new ArrayList<Aircraft>();
+			for (int i = in.readInt(); i > 0; i--) {
+				aircraft.add(Aircraft.read(in, player.getWaypoints(),
+						player.getAirports(), difficulty));
+			}
+
+			int selected = in.readInt();
+
+			Airport[] airports = player.getAirports();
+			boolean[] active = new boolean[airports.length];
+			ArrayList<ArrayList<Aircraft>> hangars =
+					new ArrayList<ArrayList<Aircraft>>();
+			ArrayList<ArrayList<Double>> timesEntered =
+					new ArrayList<ArrayList<Double>>();
+
+			for (int i = 0; i < airports.length; i++) {
+				active[i] = in.readBoolean();
+				hangars.add(new ArrayList<Aircraft>());
+				timesEntered.add(new ArrayList<Double>());
+
+				for (int j = in.readInt(); j > 0; j--) {
+					timesEntered.get(i).add(in.readDouble());
+					hangars.get(i).add(Aircraft.read(in, player.getWaypoints(),
+							airports, difficulty));
+				}
+			}
+
+			// The whole state has been read, so apply it
+			Game.timeElapsed = timeElapsed;
+			Main.setRandomSeed(seed);
+
+			player.setFlightGenerationTimeElapsed(flightGenerationTimeElapsed);
+			player.setControlAltitude(controlAltitude);
+			player.increaseScore(score - player.getScore());
+			player.setLives(lives);
+			player.setPlanesCollided(planesCollided);
+			player.setPowerUpsCollected(powerUpsCollected);
+			player.setPlanesLanded(planesLanded);
+			player.setPlanesTakenOff(planesTakenOff);
+			player.setPlanesCleared(planesCleared);
+
+			player.setAircraft(aircraft);
+			player.getFlightStrips().clear();
+			for (Aircraft a : aircraft) {
+				player.getFlightStrips().add(new FlightStrip(a,
+						FlightStrip.BACKGROUND_COLOURS[player.getID()]));
+			}
+
+			if (selected >= 0 && selected < aircraft.size()) {
+				player.setSelectedAircraft(aircraft.get(selected));
+			}
+
+			for (int i = 0; i < airports.length; i++) {
+				airports[i].isActive = active[i];
+				airports[i].aircraftHangar = hangars.get(i);
+				airports[i].timeEntered = timesEntered.get(i);
+			}
+		} catch (RuntimeException e) {
+			// e.g. an index outside the airspace
+			throw new IOException("Invalid save state", e);
+		}
+	}
+
+
+	// Files ----------------------------------------------------------------------------
+
+	/**
+	 * Gets the file games are saved to.
+	 * @return the save file
+	 */
+	public static File getFile() {
+		return SAVE_FILE;
+	}
+
+	/**
+	 * Checks whether there is a saved game to resume.
+	 * @return <code>true</code> if the save file exists,
+	 * 			otherwise <code>false</code>
+	 */
+	public static boolean exists() {
+		return SAVE_FILE.isFile();
+	}
+
+	/**
+	 * Deletes the saved game, e.g. once it has ended.
+	 * <p>
+	 * This waits for any save being written to finish first, so
+	 * that the save is not written again afterwards.
+	 * </p>
+	 */
+	public static void delete() {
+		awaitWrites(Long.MAX_VALUE);
+
+		if (SAVE_FILE.exists() && !SAVE_FILE.delete()) {
+			Exception e = new Exception("Unable to delete " + SAVE_FILE);
+			e.printStackTrace();
+		}
+	}
+
+
+	// Accessors ------------------------------------------------------------------------
+
+	/**
+	 * Gets the difficulty of the saved game.
+	 * @return the saved game's difficulty
+	 */
+	public DifficultySetting getDifficulty() {
+		return difficulty;
+	}
+
+	/**
+	 * Gets the version of the format the save was written in.
+	 * @return the save's format version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the saved state, e.g. to record it.
+	 * @return a read-only view of the saved state
+	 */
+	ByteBuffer getState() {
+		return state.asReadOnlyBuffer();
+	}
+
+
+	// Helpers --------------------------------------------------------------------------
+
+	/**
+	 * Calculates the CRC-32 of a buffer's remaining bytes.
+	 * @param buffer - the buffer to check
+	 * @return the checksum
+	 */
+	private static int checksum(ByteBuffer buffer) {
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[4096];
+
+		while (buffer.hasRemaining()) {
+			int length = Math.min(chunk.length, buffer.remaining());
+			buffer.get(chunk, 0, length);
+			crc.update(chunk, 0, length);
+		}
+
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * An input stream which reads straight from a buffer.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		/** The buffer to read from */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Constructs a new input stream.
+		 * @param buffer - the buffer to read from
+		 */
+		private ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) return -1;
+
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+
+	}
+
+}
@@ -4,6 +4,9 @@ import lib.jog.audio.Sound;
 
 public abstract class Scene implements lib.jog.input.EventHandler {
 
+	/** Whether the scene has changed since it was last drawn */
+	private boolean changed = true;
+
 	/**
 	 * Top level constructor for a scene.
 	 * @param main the main class holding the scene, i.e. the running instance of the game
@@ -51,6 +54,52 @@ public abstract class Scene implements lib.jog.input.EventHandler {
 	 */
 	public abstract void playSound(Sound sound);
 
+	/**
+	 * Marks the scene as changed, so that it is drawn in the next frame.
+	 * <p>
+	 * Main marks the current scene as changed whenever there is input,
+	 * so scenes only need to call this for changes they make themselves,
+	 * e.g. an animation advancing or a table being refreshed.
+	 * </p>
+	 */
+	public void setChanged() {
+		changed = true;
+	}
+
+	/**
+	 * Marks the scene as drawn.
+	 * <p>
+	 * Called by main after the scene has been drawn.
+	 * </p>
+	 */
+	public void clearChanged() {
+		changed = false;
+	}
+
+	/**
+	 * Checks whether the scene needs to be drawn in the next frame.
+	 * @return <code>true</code> if the scene does not track its changes,
+	 * 			or has changed since it was last drawn, otherwise
+	 * 			<code>false</code>
+	 */
+	public boolean hasChanged() {
+		return changed || !tracksChanges();
+	}
+
+	/**
+	 * Checks whether the scene calls {@link #setChanged()} whenever it
+	 * changes, so that it only needs to be drawn when it has changed.
+	 * <p>
+	 * Scenes which are animated every frame (i.e. the games) are drawn
+	 * every frame, which is the default.
+	 * </p>
+	 * @return <code>true</code> if the scene tracks its changes,
+	 * 			otherwise <code>false</code>
+	 */
+	protected boolean tracksChanges() {
+		return false;
+	}
+
 }
 
 
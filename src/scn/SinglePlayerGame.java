@@ -1,13 +1,31 @@
 package scn;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Random;
 
+import lib.jog.input;
+import lib.jog.window;
 import cls.Aircraft;
+import cls.FlightStrip;
 import cls.Player;
 import cls.Waypoint;
+import btc.Main;
 
 public class SinglePlayerGame extends Game {
 	
+	/** The time (in seconds) between autosaves */
+	public static final double AUTOSAVE_INTERVAL = 30;
+	
+	/** The save to resume from when the game starts */
+	private SaveGame resumeFrom;
+	
+	/** The game time at which the game was last saved */
+	private double lastSaveTime;
+	
+	/** Whether the game has ended, so should no longer be saved */
+	private boolean hasEnded;
+	
 	/**
 	 * Creates a new instance of a single player game.
 	 * <p>
@@ -29,6 +47,18 @@ public class SinglePlayerGame extends Game {
 		}
 	}
 	
+	/**
+	 * Creates a new instance of a single player game, which resumes
+	 * a saved game when it starts.
+	 * @param save - the saved game to resume
+	 * @return the single player game instance
+	 */
+	public static SinglePlayerGame resumeSinglePlayerGame(SaveGame save) {
+		SinglePlayerGame game = createSinglePlayerGame(save.getDifficulty());
+		game.resumeFrom = save;
+		return game;
+	}
+	
 	/**
 	 * Constructor for SinglePlayerGame.
 	 * @param main the main containing the scene
@@ -69,6 +99,121 @@ public class SinglePlayerGame extends Game {
 
 		// Reset game attributes for each player
 		deselectAircraft(player);
+		
+		// Record the game, so that it can be replayed
+		CommandLog.startRecording(this, CommandLog.SINGLE_PLAYER, 0);
+		
+		boolean resumed = false;
+		
+		// Resume the saved game, if there is one
+		if (resumeFrom != null) {
+			try {
+				resumeFrom.restore(this);
+				CommandLog.recordState(resumeFrom);
+				resumed = true;
+			} catch (IOException e) {
+				// Start a new game instead
+				e.printStackTrace();
+			}
+			
+			// Release the save's mapping of the save file
+			resumeFrom = null;
+		}
+		
+		// Start from a new seed, so the game can be replayed from it
+		if (!resumed && !replaying) {
+			Main.setRandomSeed(new Random().nextInt());
+		}
+		
+		lastSaveTime = timeElapsed;
+		hasEnded = false;
+	}
+	
+	/**
+	 * Updates the game, autosaving every {@link #AUTOSAVE_INTERVAL}
+	 * seconds.
+	 * <p>
+	 * The game is paused while the window is minimised or in the
+	 * background, as the player cannot see it.
+	 * </p>
+	 * @param timeDifference - the time since the last update
+	 */
+	@Override
+	public void update(double timeDifference) {
+		if (window.isThrottled()) return;
+		
+		super.update(timeDifference);
+		
+		if (!hasEnded && timeElapsed - lastSaveTime >= AUTOSAVE_INTERVAL) {
+			save();
+		}
+	}
+	
+	/**
+	 * Handles key release events.
+	 * <p>
+	 * The game is saved before quitting to the menu, so that it can
+	 * be resumed later.
+	 * </p>
+	 * @param key - the key which was released
+	 */
+	@Override
+	public void keyReleased(int key) {
+		if (key == input.KEY_ESCAPE && !hasEnded) {
+			// Save before the airspace is cleared
+			save();
+			hasEnded = true;
+		}
+		
+		super.keyReleased(key);
+	}
+	
+	/**
+	 * Ends the game, deleting any saved game, as it cannot be resumed.
+	 */
+	@Override
+	public void gameOver(Aircraft plane1, Aircraft plane2, FlightStrip fs1,
+			FlightStrip fs2, boolean override) {
+		hasEnded = true;
+		
+		if (!Main.testing && !replaying) {
+			SaveGame.delete();
+		}
+		
+		super.gameOver(plane1, plane2, fs1, fs2, override);
+	}
+	
+	/**
+	 * Saves the game if it is still in progress (e.g. if the window is
+	 * being closed), then closes the scene.
+	 */
+	@Override
+	public void close() {
+		if (!hasEnded) {
+			save();
+			hasEnded = true;
+		}
+		
+		super.close();
+	}
+	
+	/**
+	 * Saves the game.
+	 * <p>
+	 * The game's state is captured immediately, and written to the
+	 * save file in the background. Replayed games are not saved.
+	 * </p>
+	 */
+	public void save() {
+		lastSaveTime = timeElapsed;
+		
+		if (Main.testing || replaying) return;
+		
+		SaveGame save = SaveGame.capture(this);
+		
+		if (save != null) {
+			save.writeAsync(SaveGame.getFile());
+		}
 	}
 
 
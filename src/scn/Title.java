@@ -141,6 +141,15 @@ public class Title extends Scene {
 	public void update(double timeDifference) {
 	}
 
+	/**
+	 * The title screen only changes in response to input, so is
+	 * only drawn when it has changed.
+	 */
+	@Override
+	protected boolean tracksChanges() {
+		return true;
+	}
+
 	/**
 	 * Handles drawing of the scene.
 	 * <p>
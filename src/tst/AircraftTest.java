@@ -3,8 +3,11 @@ package tst;
 import static org.junit.Assert.*;
 
 import org.junit.Test;
+import org.junit.After;
 import org.junit.Before;
 
+import btc.Main;
+import lib.jog.window;
 import scn.Game;
 import scn.SinglePlayerGame;
 import scn.Game.DifficultySetting;
@@ -19,9 +22,16 @@ public class AircraftTest {
 	Aircraft testAircraft;
 	Airport testAirport;
 	Airport testAirport2;
+	int windowWidth;
+	int windowHeight;
 	
 	@Before
 	public void setUp() {
+		// Distances are in airspace units, which are pixels at the target size
+		windowWidth = window.width();
+		windowHeight = window.height();
+		window.setHeadlessSize(Main.TARGET_WIDTH, Main.TARGET_HEIGHT);
+		
 		Waypoint[] waypointList = new Waypoint[]{
 				new Waypoint(25, 75, false, false),
 				new Waypoint(75, 25, false, false),
@@ -37,6 +47,11 @@ public class AircraftTest {
 				10.0, waypointList, DifficultySetting.MEDIUM, testAirport, testAirport2);
 	}
 	
+	@After
+	public void tearDown() {
+		window.setHeadlessSize(windowWidth, windowHeight);
+	}
+	
 	// Test get functions
 	// Test getPosition function
 	@Test
@@ -124,9 +139,9 @@ public class AircraftTest {
 	@Test
 	public void totalDistanceInFlightPlan() {
 		SinglePlayerGame testDemo = SinglePlayerGame.createSinglePlayerGame(DifficultySetting.MEDIUM);
-		testDemo.initializeAircraftArray();
+		testDemo.initializeAircraftArray();
 		Game.getInstance().getPlayer().getAircraft().add(testAircraft);
-		Aircraft plane = Game.getInstance().getPlayer().getAircraft().get(0);
+		Aircraft plane = Game.getInstance().getPlayer().getAircraft().get(0);
 		int distance = 0;
 		
 		for (int i = 0; i < plane.getFlightPlan().getRoute().length - 1; i++) {
@@ -0,0 +1,126 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cls.AirspaceMap;
+import cls.Waypoint;
+
+public class AirspaceMapTest {
+
+	/** The map used by each test */
+	private AirspaceMap map;
+
+	/** The waypoints aircraft can be routed through */
+	private Waypoint[] airspaceWaypoints;
+
+	/** The entry and exit points */
+	private Waypoint[] locationWaypoints;
+
+	@Before
+	public void setUp() {
+		airspaceWaypoints = new Waypoint[] {
+				new Waypoint(10, 10, false, false),
+				new Waypoint(20, 20, false, false)
+		};
+
+		locationWaypoints = new Waypoint[] {
+				new Waypoint(30, 30, true, "Entry", false)
+		};
+
+		map = new AirspaceMap(airspaceWaypoints, locationWaypoints);
+		AirspaceMap.setCurrent(map);
+	}
+
+	@After
+	public void tearDown() {
+		AirspaceMap.setCurrent(null);
+	}
+
+	/**
+	 * Serialises then deserialises an object.
+	 * @param object - the object to copy
+	 * @return the deserialised copy
+	 */
+	private Object roundTrip(Object object)
+			throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+
+		return new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())).readObject();
+	}
+
+	// Test waypoints are given IDs in order
+	@Test
+	public void testIDs() {
+		assertEquals("Size = 3", 3, map.size());
+		assertEquals("First airspace waypoint = 0", 0,
+				map.getID(airspaceWaypoints[0]));
+		assertEquals("Location waypoint = 2", 2,
+				map.getID(locationWaypoints[0]));
+		assertSame("Waypoint 1", airspaceWaypoints[1], map.getWaypoint(1));
+		assertNull("No waypoint 3", map.getWaypoint(3));
+	}
+
+	// Test copies of waypoints are not part of the map
+	@Test
+	public void testCopyNotContained() {
+		assertFalse("Copy not contained",
+				map.contains(airspaceWaypoints[0].clone()));
+		assertEquals("Copy ID = -1", -1,
+				map.getID(airspaceWaypoints[0].clone()));
+	}
+
+	// Test copies of waypoints keep their IDs, so are equal by ID
+	@Test
+	public void testCopyKeepsID() {
+		Waypoint copy = airspaceWaypoints[1].clone();
+
+		assertEquals("Copy ID = 1", 1, copy.getID());
+		assertEquals("Copy equal", airspaceWaypoints[1], copy);
+		assertFalse("Other waypoint not equal",
+				airspaceWaypoints[0].equals(copy));
+	}
+
+	// Test the map's waypoints are deserialised as the map's waypoints
+	@Test
+	public void testSerialisedByID() throws Exception {
+		Waypoint other = new Waypoint(40, 40, false, false);
+		Waypoint[] copy = (Waypoint[]) roundTrip(new Waypoint[] {
+				airspaceWaypoints[1], locationWaypoints[0], other
+		});
+
+		assertSame("Airspace waypoint", airspaceWaypoints[1], copy[0]);
+		assertSame("Location waypoint", locationWaypoints[0], copy[1]);
+		assertNotSame("Other waypoint copied", other, copy[2]);
+		assertEquals("Other waypoint equal", other, copy[2]);
+	}
+
+	// Test a waypoint missing from the receiver's map is rejected
+	@Test(expected = IOException.class)
+	public void testUnknownID() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(locationWaypoints[0]);
+		out.close();
+
+		AirspaceMap.setCurrent(new AirspaceMap(new Waypoint[0],
+				new Waypoint[0]));
+
+		new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())).readObject();
+	}
+
+}
@@ -0,0 +1,52 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import net.BufferPool;
+
+public class BufferPoolTest {
+
+	// Test released buffers are reused rather than allocated again
+	@Test
+	public void testReuse() {
+		BufferPool pool = new BufferPool();
+
+		ByteBuffer first = pool.acquire(100);
+		first.put((byte) 1);
+		pool.release(first);
+
+		ByteBuffer second = pool.acquire(200);
+		assertSame("Buffer reused", first, second);
+		assertEquals("Buffer cleared", 0, second.position());
+		assertEquals("One allocation", 1, pool.getAllocationCount());
+	}
+
+	// Test buffers which are too small are not reused
+	@Test
+	public void testCapacity() {
+		BufferPool pool = new BufferPool();
+
+		pool.release(pool.acquire(100));
+		ByteBuffer large = pool.acquire(BufferPool.MIN_BUFFER_SIZE + 1);
+
+		assertTrue("Large enough",
+				large.capacity() > BufferPool.MIN_BUFFER_SIZE);
+		assertEquals("Two allocations", 2, pool.getAllocationCount());
+	}
+
+	// Test oversized buffers are left for the garbage collector
+	@Test
+	public void testOversized() {
+		BufferPool pool = new BufferPool();
+
+		pool.release(pool.acquire(BufferPool.MAX_POOLED_SIZE + 1));
+		pool.acquire(100);
+
+		assertEquals("Two allocations", 2, pool.getAllocationCount());
+	}
+
+}
@@ -0,0 +1,150 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.BufferPool;
+import net.FrameCodec;
+
+public class FrameCodecTest {
+
+	/** Data which is long enough to be compressed */
+	private static final byte[] DATA = new byte[FrameCodec.MIN_COMPRESSED_SIZE * 4];
+
+	static {
+		for (int i = 0; i < DATA.length; i++) {
+			DATA[i] = (byte) (i % 7);
+		}
+	}
+
+	/**
+	 * Reads all of the data from a stream.
+	 * @param in - the stream to read
+	 * @return the data read
+	 */
+	private static byte[] readAll(ByteArrayInputStream in) {
+		byte[] data = new byte[in.available()];
+		in.read(data, 0, data.length);
+		return data;
+	}
+
+	// Test frames are not compressed until the other client accepts them
+	@Test
+	public void testNegotiation() {
+		FrameCodec local = new FrameCodec(true);
+		FrameCodec remote = new FrameCodec(true);
+
+		byte[] first = local.encode(DATA);
+		assertTrue("First frame uncompressed", first.length > DATA.length);
+		assertFalse("Remote not compressing", remote.isCompressing());
+
+		remote.decode(first);
+		assertTrue("Remote compressing", remote.isCompressing());
+
+		byte[] second = remote.encode(DATA);
+		assertTrue("Second frame compressed", second.length < DATA.length);
+		assertTrue("Decoded correctly",
+				Arrays.equals(DATA, readAll(local.decode(second))));
+	}
+
+	// Test frames are never compressed for a client which disabled it
+	@Test
+	public void testDisabled() {
+		FrameCodec local = new FrameCodec(false);
+		FrameCodec remote = new FrameCodec(true);
+
+		remote.decode(local.encode(DATA));
+		local.decode(remote.encode(DATA));
+
+		assertFalse("Local not compressing", local.isCompressing());
+		assertFalse("Remote not compressing", remote.isCompressing());
+		assertTrue("Frame uncompressed", remote.encode(DATA).length > DATA.length);
+	}
+
+	// Test small frames are not compressed
+	@Test
+	public void testSmallFrames() {
+		FrameCodec local = new FrameCodec(true);
+		local.decode(new FrameCodec(true).encode(DATA));
+
+		byte[] small = Arrays.copyOf(DATA, 16);
+		assertTrue("Decoded correctly",
+				Arrays.equals(small, readAll(local.decode(local.encode(small)))));
+	}
+
+	// Test frames are encoded in place, leaving space in front of them
+	@Test
+	public void testHeadroom() {
+		FrameCodec local = new FrameCodec(true);
+		FrameCodec remote = new FrameCodec(true);
+		remote.decode(local.encode(DATA));
+
+		for (FrameCodec codec : Arrays.asList(local, remote)) {
+			ByteBuffer buffer = ByteBuffer.allocate(
+					8 + FrameCodec.HEADER_SIZE + DATA.length);
+			buffer.position(8 + FrameCodec.HEADER_SIZE);
+			buffer.put(DATA);
+			buffer.flip();
+			buffer.position(8);
+
+			ByteBuffer frame = codec.encode(buffer);
+			assertEquals("Headroom kept", 8, frame.position());
+			assertTrue("Decoded correctly", Arrays.equals(DATA,
+					readAll((codec == local ? remote : local).decode(frame))));
+		}
+	}
+
+	// Test corrupt frames are rejected
+	@Test
+	public void testCorruptFrame() {
+		FrameCodec local = new FrameCodec(true);
+		FrameCodec remote = new FrameCodec(true);
+		remote.decode(local.encode(DATA));
+
+		byte[] frame = remote.encode(DATA);
+		frame = Arrays.copyOf(frame, frame.length / 2);
+
+		assertNull("Corrupt frame rejected", local.decode(frame));
+	}
+
+	// Test frames are not compressed between clients whose dictionaries
+	// differ (i.e. which are running different versions)
+	@Test
+	public void testDictionaryMismatch() {
+		byte[] dictionary = Arrays.copyOf(FrameCodec.DICTIONARY,
+				FrameCodec.DICTIONARY.length + 1);
+		FrameCodec local = new FrameCodec(true);
+		FrameCodec remote = new FrameCodec(true, new BufferPool(), dictionary);
+
+		remote.decode(local.encode(DATA));
+		local.decode(remote.encode(DATA));
+
+		assertFalse("Local not compressing", local.isCompressing());
+		assertFalse("Remote not compressing", remote.isCompressing());
+		assertTrue("Decoded correctly",
+				Arrays.equals(DATA, readAll(local.decode(remote.encode(DATA)))));
+	}
+
+	// Test a frame compressed with a different dictionary is rejected
+	@Test
+	public void testWrongDictionaryRejected() {
+		byte[] dictionary = Arrays.copyOf(FrameCodec.DICTIONARY,
+				FrameCodec.DICTIONARY.length + 1);
+		FrameCodec local = new FrameCodec(true);
+		FrameCodec remote = new FrameCodec(true, new BufferPool(), dictionary);
+		FrameCodec other = new FrameCodec(true, new BufferPool(), dictionary);
+		remote.decode(other.encode(DATA));
+
+		// Claim the local dictionary, so the frame gets as far as inflating
+		byte[] frame = remote.encode(DATA);
+		System.arraycopy(local.encode(new byte[1]), 1, frame, 1, 4);
+
+		assertNull("Frame rejected", local.decode(frame));
+	}
+
+}
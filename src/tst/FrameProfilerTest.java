@@ -0,0 +1,57 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import btc.FrameProfiler;
+import btc.FrameProfiler.Phase;
+
+public class FrameProfilerTest {
+
+	// Test each phase's time is recorded against that phase, in us
+	@Test
+	public void testRecordsPhases() {
+		FrameProfiler profiler = new FrameProfiler();
+		long start = System.nanoTime() - 2000000;
+
+		profiler.record(Phase.COLLISION, start);
+		profiler.endFrame(start);
+
+		assertEquals(1, profiler.getTimes(Phase.COLLISION).getCount());
+		assertTrue(profiler.getTimes(Phase.COLLISION).getMax() >= 2000);
+		assertEquals(1, profiler.getTimes(Phase.FRAME).getCount());
+		assertEquals(0, profiler.getTimes(Phase.DRAW).getCount());
+	}
+
+	// Test the profile is written with a row for each phase
+	@Test
+	public void testWritesCsv() throws IOException {
+		FrameProfiler profiler = new FrameProfiler();
+		long start = System.nanoTime();
+
+		profiler.record(Phase.AUDIO, start);
+		profiler.endFrame(start);
+
+		File file = File.createTempFile("profile", ".csv");
+		try {
+			profiler.writeCsv(file);
+			List<String> lines = Files.readAllLines(file.toPath(),
+					StandardCharsets.UTF_8);
+
+			assertEquals("metric,unit,count,mean,p50,p95,p99,max", lines.get(0));
+			assertTrue(lines.get(1).startsWith("frame,us,1,"));
+			assertTrue(lines.get(2).startsWith("audio,us,1,"));
+			assertTrue(lines.size() > Phase.values().length);
+		} finally {
+			file.delete();
+		}
+	}
+
+}
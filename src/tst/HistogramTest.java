@@ -0,0 +1,62 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import lib.Histogram;
+
+public class HistogramTest {
+
+	// Test an empty histogram reports zero
+	@Test
+	public void testEmpty() {
+		Histogram histogram = new Histogram();
+		assertTrue("Count = 0", histogram.getCount() == 0);
+		assertTrue("p50 = 0", histogram.getPercentile(50) == 0);
+		assertTrue("Max = 0", histogram.getMax() == 0);
+	}
+
+	// Test small values are counted exactly
+	@Test
+	public void testSmallValues() {
+		Histogram histogram = new Histogram();
+
+		for (int i = 1; i <= 4; i++) {
+			histogram.record(i);
+		}
+
+		assertTrue("p50 = 2", histogram.getPercentile(50) == 2);
+		assertTrue("p100 = 4", histogram.getPercentile(100) == 4);
+		assertEquals("Mean = 2.5", 2.5, histogram.getMean(), 0.0001);
+	}
+
+	// Test percentiles of large values are within 12.5%
+	@Test
+	public void testPrecision() {
+		Histogram histogram = new Histogram();
+
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 10);
+		}
+
+		long p50 = histogram.getPercentile(50);
+		long p99 = histogram.getPercentile(99);
+
+		assertTrue("p50 ~= 5000", p50 >= 5000 && p50 <= 5625);
+		assertTrue("p99 ~= 9900", p99 >= 9900 && p99 <= 10000);
+		assertTrue("Max = 10000", histogram.getMax() == 10000);
+	}
+
+	// Test resetting clears all values
+	@Test
+	public void testReset() {
+		Histogram histogram = new Histogram();
+		histogram.record(100);
+		histogram.reset();
+
+		assertTrue("Count = 0", histogram.getCount() == 0);
+		assertTrue("p99 = 0", histogram.getPercentile(99) == 0);
+	}
+
+}
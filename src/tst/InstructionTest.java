@@ -0,0 +1,79 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.Instruction;
+import net.Instruction.Opcode;
+
+public class InstructionTest {
+
+	ArrayList<Instruction> parsed;
+
+
+	@Before
+	public void setup() {
+		parsed = new ArrayList<Instruction>();
+	}
+
+	// Test parsing an instruction with a numeric parameter
+	@Test
+	public void testParseSetSeed() {
+		Instruction.parse("SET_SEED:1234", parsed);
+
+		assertTrue("One instruction", parsed.size() == 1);
+		assertTrue("Opcode = SET_SEED",
+				parsed.get(0).getOpcode() == Opcode.SET_SEED);
+		assertTrue("Seed = 1234", parsed.get(0).getSeed() == 1234);
+	}
+
+	// Test parsing an instruction with named parameters
+	@Test
+	public void testParseGameOver() {
+		Instruction.parse("GAME_OVER:Flight 101:Flight 202", parsed);
+
+		assertTrue("One instruction", parsed.size() == 1);
+		assertEquals("First aircraft", "Flight 101",
+				parsed.get(0).getAircraftNames()[0]);
+		assertEquals("Second aircraft", "Flight 202",
+				parsed.get(0).getAircraftNames()[1]);
+	}
+
+	// Test parsing a list of instructions keeps their order
+	@Test
+	public void testParseList() {
+		Instruction.parse("SET_SEED:7;START_GAME:1;END_GAME", parsed);
+
+		assertTrue("Three instructions", parsed.size() == 3);
+		assertTrue("First = SET_SEED",
+				parsed.get(0).getOpcode() == Opcode.SET_SEED);
+		assertTrue("Second = START_GAME",
+				parsed.get(1).getOpcode() == Opcode.START_GAME);
+		assertTrue("Position = 1", parsed.get(1).getPlayerPosition() == 1);
+		assertTrue("Third = END_GAME",
+				parsed.get(2).getOpcode() == Opcode.END_GAME);
+	}
+
+	// Test unknown and malformed instructions are skipped
+	@Test
+	public void testParseInvalid() {
+		Instruction.parse("NO_CONNECTIONS;SET_SEED:abc;GAME_OVER:Flight 101;"
+				+ "END_GAMES;END_GAME", parsed);
+
+		assertTrue("One instruction", parsed.size() == 1);
+		assertTrue("Opcode = END_GAME",
+				parsed.get(0).getOpcode() == Opcode.END_GAME);
+	}
+
+	// Test null input
+	@Test
+	public void testParseNull() {
+		Instruction.parse(null, parsed);
+		assertTrue("No instructions", parsed.isEmpty());
+	}
+
+}
@@ -0,0 +1,111 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.InterestManager;
+
+public class InterestManagerTest {
+
+	// Test new entities are selected immediately
+	@Test
+	public void testNewEntitiesDue() {
+		InterestManager<String> interest = new InterestManager<String>(4);
+		interest.accumulate("A", 0.2);
+
+		assertTrue("A selected", interest.select().contains("A"));
+	}
+
+	// Test full rate entities are selected every update, and low
+	// rate entities only once their priority has accumulated
+	@Test
+	public void testRates() {
+		InterestManager<String> interest = new InterestManager<String>(4);
+		int fullCount = 0;
+		int lowCount = 0;
+
+		for (int i = 0; i < 10; i++) {
+			interest.accumulate("Full", InterestManager.FULL_RATE);
+			interest.accumulate("Low", 0.25);
+
+			List<String> selected = interest.select();
+			if (selected.contains("Full")) fullCount++;
+			if (selected.contains("Low")) lowCount++;
+		}
+
+		assertTrue("Full sent 10 times", fullCount == 10);
+		assertTrue("Low sent 3 times", lowCount == 3);
+	}
+
+	// Test the budget is respected, and entities which miss out
+	// are selected first next time
+	@Test
+	public void testBudget() {
+		InterestManager<String> interest = new InterestManager<String>(2);
+
+		for (String key : Arrays.asList("A", "B", "C")) {
+			interest.accumulate(key, InterestManager.FULL_RATE);
+		}
+		List<String> first = interest.select();
+		assertTrue("2 selected", first.size() == 2);
+
+		for (String key : Arrays.asList("A", "B", "C")) {
+			interest.accumulate(key, InterestManager.FULL_RATE);
+		}
+		List<String> second = interest.select();
+
+		for (String key : Arrays.asList("A", "B", "C")) {
+			if (!first.contains(key)) {
+				assertEquals("Missed entity first", key, second.get(0));
+			}
+		}
+	}
+
+	// Test full rate entities over the budget take turns, and do not
+	// starve low rate entities
+	@Test
+	public void testFullRateOverBudget() {
+		InterestManager<String> interest = new InterestManager<String>(4);
+		List<String> full = Arrays.asList("A", "B", "C", "D", "E", "F");
+		int[] fullCounts = new int[full.size()];
+		int lowCount = 0;
+
+		for (int i = 0; i < 30; i++) {
+			for (String key : full) {
+				interest.accumulate(key, InterestManager.FULL_RATE);
+			}
+			interest.accumulate("Low", 0.2);
+
+			List<String> selected = interest.select();
+			assertTrue("Budget respected", selected.size() <= 4);
+
+			for (int j = 0; j < full.size(); j++) {
+				if (selected.contains(full.get(j))) fullCounts[j]++;
+			}
+			if (selected.contains("Low")) lowCount++;
+		}
+
+		for (int count : fullCounts) {
+			assertTrue("Full rate entities take turns", count >= 15);
+		}
+		assertTrue("Low sent", lowCount >= 3);
+	}
+
+		// Test forgotten entities are treated as new
+	@Test
+	public void testRetain() {
+		InterestManager<String> interest = new InterestManager<String>(4);
+		interest.accumulate("A", 0.2);
+		interest.select();
+
+		interest.retain(Arrays.<String>asList());
+		interest.accumulate("A", 0.2);
+
+		assertTrue("A selected", interest.select().contains("A"));
+	}
+
+}
@@ -0,0 +1,160 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.Command;
+import net.Lockstep;
+
+public class LockstepTest {
+
+	// Test each kind of command is decoded as it was encoded
+	@Test
+	public void testCommandEncoding() throws IOException {
+		for (Command command : Arrays.asList(
+				new Command(Command.Type.DESELECT),
+				new Command(Command.Type.TURN, 2),
+				new Command(Command.Type.LAND, 0),
+				Command.select("Flight 101"),
+				Command.setBearing(-1.25),
+				Command.alterPath(3, 7))) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			command.write(new DataOutputStream(bytes));
+
+			Command decoded = Command.read(new DataInputStream(
+					new ByteArrayInputStream(bytes.toByteArray())));
+
+			assertEquals("Decoded " + command, command, decoded);
+		}
+	}
+
+	// Test the first ticks can be simulated without any commands
+	@Test
+	public void testInitialTicks() {
+		Lockstep lockstep = new Lockstep();
+
+		for (int i = 0; i < Lockstep.INPUT_DELAY; i++) {
+			assertTrue("Can advance", lockstep.canAdvance());
+			assertTrue("No commands", lockstep.getRemoteCommands().isEmpty());
+			lockstep.createBatch();
+			lockstep.advance();
+		}
+
+		assertFalse("Waiting for opponent", lockstep.canAdvance());
+	}
+
+	// Test commands are applied on the same tick by both clients
+	@Test
+	public void testExchange() {
+		Lockstep local = new Lockstep();
+		Lockstep remote = new Lockstep();
+
+		local.issue(new Command(Command.Type.CLIMB));
+
+		for (int i = 0; i < Lockstep.INPUT_DELAY; i++) {
+			remote.receiveBatch(local.createBatch());
+			local.receiveBatch(remote.createBatch());
+			local.advance();
+			remote.advance();
+		}
+
+		assertTrue("Local can advance", local.canAdvance());
+		assertTrue("Remote can advance", remote.canAdvance());
+		assertEquals("Local applies command",
+				Arrays.asList(new Command(Command.Type.CLIMB)),
+				local.getLocalCommands());
+		assertEquals("Remote applies command",
+				Arrays.asList(new Command(Command.Type.CLIMB)),
+				remote.getRemoteCommands());
+	}
+
+	// Test a lost batch is made up for by the next packet
+	@Test
+	public void testLostBatchResent() {
+		Lockstep local = new Lockstep();
+		Lockstep remote = new Lockstep();
+
+		local.issue(new Command(Command.Type.CLIMB));
+		local.createBatch(); // Lost
+		remote.receiveBatch(local.createResend());
+
+		for (int i = 0; i < Lockstep.INPUT_DELAY; i++) {
+			remote.createBatch();
+			remote.advance();
+		}
+
+		assertTrue("Remote can advance", remote.canAdvance());
+		assertEquals("Remote applies command",
+				Arrays.asList(new Command(Command.Type.CLIMB)),
+				remote.getRemoteCommands());
+	}
+
+	// Test batches stop being resent once acknowledged, and that
+	// duplicated packets are ignored
+	@Test
+	public void testAcknowledgement() {
+		Lockstep local = new Lockstep();
+		Lockstep remote = new Lockstep();
+
+		local.issue(new Command(Command.Type.CLIMB));
+		byte[] packet = local.createBatch();
+		local.advance();
+		local.createBatch();
+		assertEquals("Unacknowledged", 2, local.getUnacknowledgedCount());
+
+		remote.receiveBatch(packet);
+		local.receiveBatch(remote.createBatch());
+		assertEquals("Acknowledged first", 1, local.getUnacknowledgedCount());
+
+		remote.receiveBatch(local.createResend());
+		remote.receiveBatch(packet);
+		local.receiveBatch(remote.createResend());
+		assertEquals("Acknowledged both", 0, local.getUnacknowledgedCount());
+
+		for (int i = 0; i < Lockstep.INPUT_DELAY; i++) {
+			remote.advance();
+		}
+
+		assertEquals("Command applied once",
+				Arrays.asList(new Command(Command.Type.CLIMB)),
+				remote.getRemoteCommands());
+	}
+
+	// Test differing simulations are reported, and matching ones are not
+	@Test
+	public void testDesyncDetected() {
+		Lockstep local = new Lockstep();
+		Lockstep remote = new Lockstep();
+
+		for (int i = 0; i < Lockstep.INPUT_DELAY; i++) {
+			byte[] localPacket = local.createBatch();
+			byte[] remotePacket = remote.createBatch();
+
+			local.recordChecksum(i);
+			remote.recordChecksum((i < 2) ? i : -i);
+			local.receiveBatch(remote.createResend());
+			remote.receiveBatch(local.createResend());
+			local.receiveBatch(remotePacket);
+			remote.receiveBatch(localPacket);
+
+			if (i < 2) {
+				assertEquals("In sync", -1, local.getDesyncTick());
+			}
+
+			local.advance();
+			remote.advance();
+		}
+
+		assertEquals("Local desync", 2, local.getDesyncTick());
+		assertEquals("Remote desync", 2, remote.getDesyncTick());
+	}
+
+}
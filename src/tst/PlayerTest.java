@@ -39,4 +39,17 @@ public class PlayerTest {
 		assertTrue("", testPlayer.equals(testPlayerClone));
 	}
 	
+	@Test
+	public void testSnapshot() {
+		Player.Snapshot first = testPlayer.snapshot();
+		assertTrue("Unchanged snapshot reused", first == testPlayer.snapshot());
+		
+		testPlayer.increaseScore(10);
+		Player.Snapshot second = testPlayer.snapshot();
+		
+		assertTrue("Changed snapshot replaced", first != second);
+		assertEquals("Old snapshot unchanged", 0, first.getScore());
+		assertEquals("New snapshot updated", 10, second.getScore());
+	}
+	
 }
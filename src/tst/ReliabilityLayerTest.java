@@ -0,0 +1,118 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.ReliabilityLayer;
+import net.ReliabilityLayer.Message;
+
+public class ReliabilityLayerTest {
+
+	ReliabilityLayer sender;
+	ReliabilityLayer receiver;
+
+
+	@Before
+	public void setup() {
+		sender = new ReliabilityLayer();
+		receiver = new ReliabilityLayer();
+	}
+
+	// Test the ack bitfield records earlier packets
+	@Test
+	public void testAckBits() {
+		receiver.onReceived(0, 0, 0, 0);
+		receiver.onReceived(1, 0, 0, 0);
+		receiver.onReceived(3, 0, 0, 0);
+
+		assertTrue("Ack = 3", receiver.getAck() == 3);
+		// Packet 2 missing, packets 1 and 0 received
+		assertTrue("Ack bits = 110", receiver.getAckBits() == 6);
+	}
+
+	// Test late packets fill in the ack bitfield
+	@Test
+	public void testLatePacket() {
+		receiver.onReceived(0, 0, 0, 0);
+		receiver.onReceived(2, 0, 0, 0);
+
+		assertTrue("Late packet accepted", receiver.onReceived(1, 0, 0, 0));
+		assertTrue("Ack bits = 11", receiver.getAckBits() == 3);
+	}
+
+	// Test duplicate packets are rejected
+	@Test
+	public void testDuplicatePacket() {
+		receiver.onReceived(5, 0, 0, 0);
+		receiver.onReceived(6, 0, 0, 0);
+
+		assertFalse("Most recent duplicate", receiver.onReceived(6, 0, 0, 0));
+		assertFalse("Earlier duplicate", receiver.onReceived(5, 0, 0, 0));
+	}
+
+	// Test acknowledged messages are not resent
+	@Test
+	public void testAcknowledged() {
+		Message message = sender.createMessage((byte) 1, -1, new byte[] {1});
+		int sequence = sender.nextSequence();
+		sender.onSent(sequence, message, 0);
+
+		// The ack arrives in the bitfield of a later packet
+		sender.onReceived(0, sequence + 1, 1, 10);
+
+		assertTrue("Nothing pending", sender.getUnacknowledgedCount() == 0);
+		assertTrue("Nothing to resend", sender.getResends(10000).isEmpty());
+	}
+
+	// Test unacknowledged messages are resent
+	@Test
+	public void testResend() {
+		Message message = sender.createMessage((byte) 1, -1, new byte[] {1});
+		sender.onSent(sender.nextSequence(), message, 0);
+
+		assertTrue("Not yet resent", sender.getResends(1).isEmpty());
+
+		List<Message> resends = sender.getResends(sender.getResendDelay());
+		assertTrue("Resent once", resends.size() == 1);
+		assertTrue("Same message", resends.get(0).getId() == message.getId());
+	}
+
+	// Test resent messages are only processed once
+	@Test
+	public void testDuplicateMessage() {
+		assertTrue("First delivery", receiver.acceptMessage(0));
+		assertTrue("Next message", receiver.acceptMessage(2));
+		assertTrue("Late message", receiver.acceptMessage(1));
+		assertFalse("Resent message", receiver.acceptMessage(1));
+		assertFalse("Resent message", receiver.acceptMessage(2));
+	}
+
+	// Test messages too old to check are told apart from duplicates
+	@Test
+	public void testTooOldMessage() {
+		assertTrue("First delivery", receiver.acceptMessage(0));
+		assertTrue("Much later message", receiver.acceptMessage(100));
+		assertFalse("Late message in window", receiver.isTooOld(1));
+		assertTrue("Late message", receiver.acceptMessage(1));
+		assertFalse("Resent message", receiver.acceptMessage(100));
+
+		assertTrue("Far later message", receiver.acceptMessage(5000));
+		assertTrue("Too old", receiver.isTooOld(2));
+		assertFalse("Duplicate is not too old", receiver.isTooOld(5000));
+		assertFalse("Resent message", receiver.acceptMessage(5000));
+	}
+
+	// Test sequence numbers wrap around
+	@Test
+	public void testWrapAround() {
+		assertTrue("Newer after wrap",
+				ReliabilityLayer.isNewer(Integer.MIN_VALUE, Integer.MAX_VALUE));
+		assertFalse("Older before wrap",
+				ReliabilityLayer.isNewer(Integer.MAX_VALUE, Integer.MIN_VALUE));
+	}
+
+}
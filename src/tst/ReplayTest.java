@@ -0,0 +1,186 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.Command;
+import btc.Main;
+import cls.Aircraft;
+import cls.Player;
+import lib.jog.window;
+import scn.CommandLog;
+import scn.Game.DifficultySetting;
+import scn.Replay;
+import scn.SinglePlayerGame;
+
+public class ReplayTest {
+
+	/** The file used by each test */
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("replay", ".fhr");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Writes a command log header.
+	 * @param version - the format version to write
+	 * @param type - the type of game to write
+	 */
+	private void writeHeader(int version, int type) throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.writeInt(CommandLog.MAGIC);
+		out.writeShort(version);
+		out.writeByte(type);
+		out.writeByte(0);
+		out.writeByte(0);
+		out.writeShort(1280);
+		out.writeShort(960);
+		out.close();
+	}
+
+	/**
+	 * Checks that opening the file fails.
+	 * @param message - the assertion message
+	 */
+	private void assertRejected(String message) {
+		try {
+			new Replay(file, 1).close();
+			fail(message);
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	// Test files which are not command logs are rejected
+	@Test
+	public void testNotLogFile() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("Not a command log".getBytes("UTF-8"));
+		out.close();
+
+		assertRejected("Not a command log");
+	}
+
+	/**
+	 * Checks that an aircraft was replayed to the state it was
+	 * recorded in.
+	 * @param expected - the aircraft as recorded
+	 * @param actual - the aircraft as replayed
+	 */
+	private void assertSameAircraft(Aircraft.Snapshot expected,
+			Aircraft.Snapshot actual) {
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getRelativeX(), actual.getRelativeX(), 0);
+		assertEquals(expected.getRelativeY(), actual.getRelativeY(), 0);
+		assertEquals(expected.getAltitude(), actual.getAltitude(), 0);
+		assertEquals(expected.getBearing(), actual.getBearing(), 0);
+		assertEquals(expected.getScore(), actual.getScore());
+		assertEquals(expected.getAltitudeState(), actual.getAltitudeState());
+		assertEquals(expected.getRouteStage(), actual.getRouteStage());
+		assertEquals(expected.isManuallyControlled(),
+				actual.isManuallyControlled());
+		assertEquals(expected.isFinished(), actual.isFinished());
+	}
+
+	// Test files which are not command logs are rejected
+	@Test
+	public void testUnsupportedVersion() throws IOException {
+		writeHeader(2, CommandLog.SINGLE_PLAYER);
+		assertRejected("Unsupported version");
+	}
+
+	// Test logs of unknown types of game are rejected
+	@Test
+	public void testInvalidType() throws IOException {
+		writeHeader(1, 7);
+		assertRejected("Invalid game type");
+	}
+
+	// Test a recorded game replays to exactly the state it was recorded in
+	@Test
+	public void testReplaysRecordedGame() throws IOException {
+		int width = window.width();
+		int height = window.height();
+
+		window.setHeadlessSize(1280, 960);
+
+		try {
+			recordAndReplay();
+		} finally {
+			// Leave the window as the other tests expect it
+			window.setHeadlessSize(width, height);
+		}
+	}
+
+	/**
+	 * Records a short game, replays it, and checks the replay ends
+	 * in the state the game ended in.
+	 */
+	private void recordAndReplay() throws IOException {
+
+		SinglePlayerGame game = SinglePlayerGame
+				.createSinglePlayerGame(DifficultySetting.EASY);
+		game.start();
+		CommandLog.startRecording(game, CommandLog.SINGLE_PLAYER, 0, file);
+		Main.setRandomSeed(1234);
+
+		// Play 20 seconds, steering the oldest aircraft every few seconds
+		for (int i = 0; i < 1200; i++) {
+			if (i % 300 == 299 && !game.getPlayer().getAircraft().isEmpty()) {
+				Aircraft aircraft = game.getPlayer().getAircraft().get(0);
+				game.issueCommand(Command.select(aircraft.getName()));
+				game.issueCommand(new Command(Command.Type.TOGGLE_MANUAL));
+				game.issueCommand(Command.setBearing(i / 1000d));
+				game.issueCommand(new Command(Command.Type.DESCEND));
+				game.issueCommand(new Command(Command.Type.DESELECT));
+			}
+
+			game.update((i % 2 == 0) ? 0.016 : 0.017);
+		}
+
+		Player.Snapshot recorded = game.getPlayer().snapshot();
+		game.close();
+
+		assertFalse(recorded.getAircraft().isEmpty());
+
+		Replay replay = new Replay(file, 1);
+		try {
+			replay.start();
+			while (replay.step());
+
+			Player.Snapshot replayed = replay.getGame().getPlayer().snapshot();
+
+			assertEquals(1200, replay.getStepCount());
+			assertEquals(recorded.getScore(), replayed.getScore());
+			assertEquals(recorded.getLives(), replayed.getLives());
+			assertEquals(recorded.getPlanesLanded(), replayed.getPlanesLanded());
+			assertEquals(recorded.getPlanesCleared(),
+					replayed.getPlanesCleared());
+			assertEquals(recorded.getAircraft().size(),
+					replayed.getAircraft().size());
+
+			for (int i = 0; i < recorded.getAircraft().size(); i++) {
+				assertSameAircraft(recorded.getAircraft().get(i),
+						replayed.getAircraft().get(i));
+			}
+		} finally {
+			replay.close();
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import net.RingBuffer;
+import net.RingBuffer.OverflowPolicy;
+
+public class RingBufferTest {
+
+	// Test capacity is rounded up to a power of two
+	@Test
+	public void testCapacity() {
+		RingBuffer<Integer> buffer =
+				new RingBuffer<Integer>(5, OverflowPolicy.DROP_NEWEST);
+		assertTrue("Capacity = 8", buffer.capacity() == 8);
+	}
+
+	// Test elements are read in the order they were written
+	@Test
+	public void testOrder() {
+		RingBuffer<Integer> buffer =
+				new RingBuffer<Integer>(4, OverflowPolicy.DROP_NEWEST);
+		buffer.offer(1);
+		buffer.offer(2);
+		buffer.offer(3);
+
+		assertTrue("First = 1", buffer.poll() == 1);
+		assertTrue("Second = 2", buffer.poll() == 2);
+		assertTrue("Third = 3", buffer.poll() == 3);
+		assertNull("Empty", buffer.poll());
+	}
+
+	// Test the drop policy keeps the oldest elements
+	@Test
+	public void testDropNewest() {
+		RingBuffer<Integer> buffer =
+				new RingBuffer<Integer>(2, OverflowPolicy.DROP_NEWEST);
+		buffer.offer(1);
+		buffer.offer(2);
+
+		assertFalse("Rejected when full", buffer.offer(3));
+		assertTrue("Dropped = 1", buffer.getDropped() == 1);
+		assertTrue("First = 1", buffer.poll() == 1);
+	}
+
+	// Test the overwrite policy keeps the newest elements
+	@Test
+	public void testOverwriteOldest() {
+		RingBuffer<Integer> buffer =
+				new RingBuffer<Integer>(2, OverflowPolicy.OVERWRITE_OLDEST);
+		buffer.offer(1);
+		buffer.offer(2);
+
+		assertTrue("Accepted when full", buffer.offer(3));
+		assertTrue("Overwritten = 1", buffer.getOverwritten() == 1);
+		assertTrue("First = 2", buffer.poll() == 2);
+		assertTrue("Latest = 3", buffer.pollLatest() == 3);
+	}
+
+	// Test nothing is lost or duplicated between two threads
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		final int count = 100000;
+		final RingBuffer<Integer> buffer =
+				new RingBuffer<Integer>(16, OverflowPolicy.DROP_NEWEST);
+
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < count; i++) {
+					while (!buffer.offer(i)) {
+						Thread.yield();
+					}
+				}
+			}
+		});
+		producer.start();
+
+		int expected = 0;
+		while (expected < count) {
+			Integer value = buffer.poll();
+			if (value != null) {
+				assertTrue("In order", value == expected);
+				expected++;
+			}
+		}
+
+		producer.join();
+		assertNull("Empty", buffer.poll());
+	}
+
+}
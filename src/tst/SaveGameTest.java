@@ -0,0 +1,89 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import scn.SaveGame;
+
+public class SaveGameTest {
+
+	/** The magic number which begins every save file */
+	private static final int MAGIC = 0x46485347;
+
+	/** The file used by each test */
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("save", ".dat");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Writes a save file header, followed by a state.
+	 * @param version - the format version to write
+	 * @param checksum - the checksum to write
+	 * @param state - the state to write
+	 */
+	private void writeFile(int version, int checksum, byte[] state)
+			throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.writeInt(MAGIC);
+		out.writeShort(version);
+		out.writeByte(0);
+		out.writeInt(state.length);
+		out.writeInt(checksum);
+		out.write(state);
+		out.close();
+	}
+
+	/**
+	 * Checks that reading the file fails.
+	 * @param message - the assertion message
+	 */
+	private void assertRejected(String message) {
+		try {
+			SaveGame.read(file);
+			fail(message);
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	// Test files which are not saves are rejected
+	@Test
+	public void testNotSaveFile() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("Not a save file".getBytes("UTF-8"));
+		out.close();
+
+		assertRejected("Not a save file");
+	}
+
+	// Test saves from a later version are rejected
+	@Test
+	public void testUnsupportedVersion() throws IOException {
+		writeFile(SaveGame.VERSION + 1, 0, new byte[0]);
+		assertRejected("Unsupported version");
+	}
+
+	// Test saves which have been truncated or corrupted are rejected
+	@Test
+	public void testCorrupt() throws IOException {
+		writeFile(SaveGame.VERSION, 0, new byte[] {1, 2, 3});
+		assertRejected("Corrupt state");
+	}
+
+}
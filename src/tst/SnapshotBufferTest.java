@@ -0,0 +1,123 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.SnapshotBuffer;
+
+public class SnapshotBufferTest {
+
+	SnapshotBuffer buffer;
+	double[] state;
+
+
+	@Before
+	public void setup() {
+		// 100ms interpolation delay, at most 200ms of extrapolation
+		buffer = new SnapshotBuffer(100, 200);
+		state = new double[SnapshotBuffer.STATE_SIZE];
+	}
+
+	// Test sampling an unknown entity
+	@Test
+	public void testSampleUnknown() {
+		assertFalse("No data for unknown entity",
+				buffer.sample("Flight 100", 0, state));
+	}
+
+	// Test interpolating between two snapshots
+	@Test
+	public void testInterpolate() {
+		// Sent at 1000 and 1100, each received 50ms later
+		buffer.addSnapshot("Flight 100", 1000, 1050, 0.0, 0.0, 28000, 0);
+		buffer.addSnapshot("Flight 100", 1100, 1150, 0.2, 0.4, 30000, 0);
+
+		// Drawing at 1200 is 50ms after the first snapshot was sent
+		assertTrue("Data available", buffer.sample("Flight 100", 1200, state));
+		assertEquals("x = 0.1", 0.1, state[SnapshotBuffer.X], 1e-9);
+		assertEquals("y = 0.2", 0.2, state[SnapshotBuffer.Y], 1e-9);
+		assertEquals("z = 29000", 29000, state[SnapshotBuffer.Z], 1e-9);
+	}
+
+	// Test that snapshots received out of order are reordered
+	@Test
+	public void testOutOfOrder() {
+		buffer.addSnapshot("Flight 100", 1100, 1150, 0.2, 0.4, 30000, 0);
+		buffer.addSnapshot("Flight 100", 1000, 1050, 0.0, 0.0, 28000, 0);
+
+		buffer.sample("Flight 100", 1200, state);
+		assertEquals("x = 0.1", 0.1, state[SnapshotBuffer.X], 1e-9);
+	}
+
+	// Test dead-reckoning past the newest snapshot
+	@Test
+	public void testExtrapolate() {
+		buffer.addSnapshot("Flight 100", 1000, 1050, 0.0, 0.0, 28000, 0);
+		buffer.addSnapshot("Flight 100", 1100, 1150, 0.2, 0.0, 28000, 0);
+
+		// 100ms past the newest snapshot
+		buffer.sample("Flight 100", 1350, state);
+		assertEquals("x = 0.4", 0.4, state[SnapshotBuffer.X], 1e-9);
+	}
+
+	// Test that dead-reckoning is bounded
+	@Test
+	public void testExtrapolateBounded() {
+		buffer.addSnapshot("Flight 100", 1000, 1050, 0.0, 0.0, 28000, 0);
+		buffer.addSnapshot("Flight 100", 1100, 1150, 0.2, 0.0, 28000, 0);
+
+		// Far past the newest snapshot, held at 200ms of extrapolation
+		buffer.sample("Flight 100", 5000, state);
+		assertEquals("x = 0.6", 0.6, state[SnapshotBuffer.X], 1e-9);
+	}
+
+	// Test that bearings interpolate the short way round
+	@Test
+	public void testInterpolateBearing() {
+		buffer.addSnapshot("Flight 100", 1000, 1050, 0, 0, 28000, 3.0);
+		buffer.addSnapshot("Flight 100", 1100, 1150, 0, 0, 28000, -3.0);
+
+		buffer.sample("Flight 100", 1200, state);
+		assertEquals("Bearing = pi", Math.PI,
+				Math.abs(state[SnapshotBuffer.BEARING]), 1e-9);
+	}
+
+	// Test that a correction does not cause a jump
+	@Test
+	public void testSmoothCorrection() {
+		buffer.addSnapshot("Flight 100", 1000, 1050, 0.0, 0.0, 28000, 0);
+		buffer.addSnapshot("Flight 100", 1100, 1150, 0.1, 0.0, 28000, 0);
+		buffer.sample("Flight 100", 1300, state);
+		double drawn = state[SnapshotBuffer.X];
+
+		// A late snapshot shows the aircraft was further along
+		buffer.addSnapshot("Flight 100", 1200, 1300, 0.3, 0.0, 28000, 0);
+
+		buffer.sample("Flight 100", 1300, state);
+		assertEquals("No jump", drawn, state[SnapshotBuffer.X], 1e-9);
+
+		// After a second the error should have been smoothed out
+		buffer.sample("Flight 100", 2300, state);
+		buffer.sample("Flight 100", 2301, state);
+		assertEquals("x = 0.7", 0.7, state[SnapshotBuffer.X], 1e-3);
+	}
+
+	// Test removing entities which are no longer present
+	@Test
+	public void testRetain() {
+		buffer.addSnapshot("Flight 100", 1000, 1050, 0, 0, 28000, 0);
+		buffer.addSnapshot("Flight 200", 1000, 1050, 0, 0, 28000, 0);
+
+		ArrayList<String> keys = new ArrayList<String>();
+		keys.add("Flight 200");
+		buffer.retain(keys);
+
+		assertTrue("Size = 1", buffer.size() == 1);
+		assertFalse("Flight 100 removed", buffer.sample("Flight 100", 1200, state));
+	}
+
+}
@@ -0,0 +1,71 @@
+package tst;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+import lib.TextBuilder;
+
+public class TextBuilderTest {
+
+	// Test integers are written as String.format would
+	@Test
+	public void testIntegers() {
+		TextBuilder text = new TextBuilder();
+		long[] values = {0, 7, -7, 1234, -98765, Long.MIN_VALUE, Long.MAX_VALUE};
+
+		for (long value : values) {
+			assertEquals(String.format("%d", value),
+					text.clear().append(value).toString());
+			assertEquals(String.format("%6d", value),
+					text.clear().append(value, 6, ' ').toString());
+			assertEquals(String.format("%06d", value),
+					text.clear().append(value, 6, '0').toString());
+			assertEquals(String.format(Locale.UK, "%,d", value),
+					text.clear().appendGrouped(value).toString());
+		}
+	}
+
+	// Test fixed-point numbers are rounded half up
+	@Test
+	public void testFixed() {
+		TextBuilder text = new TextBuilder();
+
+		assertEquals("1235", text.clear().appendFixed(1234.5, 0).toString());
+		assertEquals("-2.50", text.clear().appendFixed(-2.499, 2).toString());
+		assertEquals("0", text.clear().appendFixed(-0.2, 0).toString());
+		assertEquals("05.07", text.clear().appendFixed(5.069, 2, 2).toString());
+		assertEquals("59.99", text.clear().appendFixed(59.99, 2, 2).toString());
+		assertEquals("NaN", text.clear().appendFixed(Double.NaN, 1).toString());
+	}
+
+	// Test text longer than the buffer is kept whole
+	@Test
+	public void testGrows() {
+		TextBuilder text = new TextBuilder();
+		StringBuilder expected = new StringBuilder();
+
+		for (int i = 0; i < 100; i++) {
+			text.append(i).append(',');
+			expected.append(i).append(',');
+		}
+
+		assertEquals(expected.toString(), text.toString());
+		assertEquals(expected.length(), text.length());
+	}
+
+	// Test unchanged text is returned as the same string
+	@Test
+	public void testUnchangedTextReused() {
+		TextBuilder text = new TextBuilder();
+		String first = text.clear().append("Score : ").append(40, 6, ' ').toString();
+		String second = text.clear().append("Score : ").append(40, 6, ' ').toString();
+		String third = text.clear().append("Score : ").append(50, 6, ' ').toString();
+
+		assertSame("Same text reused", first, second);
+		assertEquals("Score :     50", third);
+	}
+
+}
@@ -2,6 +2,7 @@ package tst;
 
 import static org.junit.Assert.*;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -13,6 +14,9 @@ import cls.Waypoint;
 
 import cls.Vector;
 
+import btc.Main;
+import lib.jog.window;
+
 public class WaypointTest {
 	// Test Get Functions
 	// Test get position function
@@ -20,6 +24,8 @@ public class WaypointTest {
 	Waypoint testWaypoint2;
 	Vector resultVector;
 	Vector comparisonVector;
+	int windowWidth;
+	int windowHeight;
 	
 	@Before
 	public void setup() {
@@ -27,12 +33,22 @@ public class WaypointTest {
 			Game.getInstance().close();
 		}
 		
+		// Costs are in airspace units, which are pixels at the target size
+		windowWidth = window.width();
+		windowHeight = window.height();
+		window.setHeadlessSize(Main.TARGET_WIDTH, Main.TARGET_HEIGHT);
+		
 		SinglePlayerGame.createSinglePlayerGame(DifficultySetting.EASY);
 		testWaypoint = new Waypoint(10, 10, false, false);
 		resultVector = testWaypoint.getLocation();
 		comparisonVector = new Vector(10, 10, 0);
 		testWaypoint2 = new Waypoint(2, 2, true, false);
 	}
+	
+	@After
+	public void tearDown() {
+		window.setHeadlessSize(windowWidth, windowHeight);
+	}
 	@Test
 	public void testGetPosition() {
 	